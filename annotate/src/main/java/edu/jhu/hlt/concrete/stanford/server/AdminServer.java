@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small HTTP server for probes and operators, separate from the Thrift
+ * port so that it answers while models load and while all request
+ * threads are busy.
+ * <br>
+ * <br>
+ * <code>GET /ready</code> answers 200 once the server is ready, and 503
+ * before. <code>GET /status</code> answers one <code>name value</code>
+ * line per status value, sorted by name, including the heap in use.
+ * <br>
+ * <br>
+ * It listens on the loopback interface unless another address is given.
+ */
+final class AdminServer implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdminServer.class);
+
+  /**
+   * Adds values to a status report.
+   */
+  interface StatusSource {
+    void report(Map<String, Object> status);
+  }
+
+  private final HttpServer http;
+  private final ExecutorService executor;
+  private final Readiness readiness;
+  private final List<StatusSource> sources = new ArrayList<>();
+
+  /**
+   * @param port the port to listen on, on the loopback interface
+   * @throws IOException if the port cannot be bound
+   */
+  AdminServer(int port, Readiness readiness) throws IOException {
+    this(InetAddress.getLoopbackAddress(), port, readiness);
+  }
+
+  /**
+   * @param address the address to listen on
+   * @param port the port to listen on
+   * @throws IOException if the port cannot be bound
+   */
+  AdminServer(InetAddress address, int port, Readiness readiness) throws IOException {
+    this.readiness = readiness;
+    this.http = HttpServer.create(new InetSocketAddress(address, port), 0);
+    this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("admin-http")
+        .setDaemon(true)
+        .build());
+    this.http.setExecutor(this.executor);
+    this.http.createContext("/ready", this::ready);
+    this.http.createContext("/status", this::status);
+    this.http.start();
+    LOGGER.info("Admin endpoint listening on {}:{}", address.getHostAddress(), port);
+  }
+
+  /**
+   * Include the values of <code>s</code> in <code>/status</code>.
+   */
+  synchronized void addStatusSource(StatusSource s) {
+    this.sources.add(s);
+  }
+
+  private void ready(HttpExchange ex) throws IOException {
+    Readiness.State s = this.readiness.get();
+    respond(ex, s == Readiness.State.READY ? 200 : 503, s.name().toLowerCase() + "\n");
+  }
+
+  private void status(HttpExchange ex) throws IOException {
+    Map<String, Object> status = new TreeMap<>();
+    status.put("state", this.readiness.get().name().toLowerCase());
+    status.put("uptime_ms", this.readiness.getUptimeMillis());
+    status.put("startup_ms", this.readiness.getStartupMillis());
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    status.put("heap.used_bytes", heap.getUsed());
+    status.put("heap.committed_bytes", heap.getCommitted());
+    status.put("heap.max_bytes", heap.getMax());
+    synchronized (this) {
+      for (StatusSource src : this.sources)
+        try {
+          src.report(status);
+        } catch (RuntimeException e) {
+          LOGGER.warn("Status source failed", e);
+        }
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Object> e : status.entrySet())
+      sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+    respond(ex, 200, sb.toString());
+  }
+
+  private static void respond(HttpExchange ex, int code, String body) throws IOException {
+    byte[] b = body.getBytes(StandardCharsets.UTF_8);
+    ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    if ("HEAD".equals(ex.getRequestMethod())) {
+      ex.sendResponseHeaders(code, -1);
+      ex.close();
+      return;
+    }
+    ex.sendResponseHeaders(code, b.length);
+    try (OutputStream os = ex.getResponseBody()) {
+      os.write(b);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.AutoCloseable#close()
+   */
+  @Override
+  public void close() {
+    this.http.stop(0);
+    this.executor.shutdownNow();
+  }
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+
+/**
+ * Decides whether, and when, a document may be annotated.
+ * <br>
+ * <br>
+ * At most <code>slots</code> documents are annotated at once, and the text
+ * of the documents being annotated may not exceed a character budget.
+ * Documents that cannot start yet wait in a bounded queue, and start in
+ * arrival order within their lane: a document that does not fit yet holds
+ * back the documents of its lane behind it, so a large document is not
+ * overtaken indefinitely by smaller ones.
+ * <br>
+ * <br>
+ * Documents are scheduled in two {@link Lane}s. A document goes to the
+ * short lane if its text is at most a configured length, or if the
+ * Communication's <code>keyValueMap</code> asks for it under
+ * {@link #LANE_KEY}. Some slots, and the text budget to fill them with short
+ * documents, are reserved for the short lane, and queued short documents
+ * start before queued long ones, so short documents do not wait behind
+ * long ones. Neither lane starves the other: while long documents wait,
+ * some slots are kept for them, and at most a configured number of short
+ * documents start ahead of them before the next long one does.
+ * <br>
+ * <br>
+ * The text budget reserved for short documents is not available to long
+ * ones, so the largest document accepted is at most the rest of the
+ * budget; the limit in effect is logged at construction.
+ * <br>
+ * <br>
+ * A document is rejected with a {@link ConcreteThriftException}, before
+ * any work is done on it, if:
+ * <ul>
+ * <li>its text is larger than the per-document limit or the in-flight budget</li>
+ * <li>the queue is full</li>
+ * <li>the estimated time to annotate it, including the work queued ahead of
+ * it, exceeds its deadline</li>
+ * </ul>
+ * or, while queued, if its deadline passes.
+ * <br>
+ * <br>
+ * The time estimate is a moving average of annotation time per character
+ * of text, measured on completed documents. The deadline is read, in
+ * milliseconds from arrival, from the {@link #DEADLINE_KEY} entry of the
+ * Communication's <code>keyValueMap</code>, falling back to a server default.
+ */
+public class AdmissionController implements AdmissionControllerMXBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionController.class);
+
+  /**
+   * <code>keyValueMap</code> key of a request's deadline, in milliseconds.
+   */
+  public static final String DEADLINE_KEY = "concrete-stanford.deadline-ms";
+
+  /**
+   * <code>keyValueMap</code> key of a request's lane: <code>short</code> or <code>long</code>.
+   */
+  public static final String LANE_KEY = "concrete-stanford.lane";
+
+  // weight of the newest observation in the cost estimate
+  private static final double ALPHA = 0.1;
+
+  /**
+   * Scheduling lanes.
+   */
+  public enum Lane {
+    SHORT,
+    LONG
+  }
+
+  /**
+   * Reasons a document is rejected.
+   */
+  public enum Rejection {
+    TOO_LARGE,
+    QUEUE_FULL,
+    OVER_DEADLINE,
+    TIMED_OUT
+  }
+
+  private final int slots;
+  private final int maxQueued;
+  private final long maxInFlightChars;
+  private final long maxDocumentChars;
+  private final long defaultDeadlineMillis;
+  private final long shortMaxChars;
+  private final int reservedShortSlots;
+  private final long reservedShortChars;
+  private final int reservedLongSlots;
+  private final int longYield;
+  private final LongSupplier clock;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition freed = this.lock.newCondition();
+  private int running = 0;
+  private long runningChars = 0;
+  private final Map<Lane, int[]> laneRunning = new EnumMap<>(Lane.class);
+  // the documents waiting in each lane, in arrival order; only the head may start
+  private final Map<Lane, Deque<Object>> laneQueued = new EnumMap<>(Lane.class);
+  private final Map<Lane, long[]> laneQueuedChars = new EnumMap<>(Lane.class);
+  // 0 until the first document completes
+  private double nanosPerChar = 0;
+  // short documents started while long ones waited, since the last long one started
+  private int shortStartsSinceLong = 0;
+
+  private final AtomicLong admitted = new AtomicLong();
+  private final Map<Rejection, AtomicLong> rejections = new EnumMap<>(Rejection.class);
+
+  /**
+   * @param slots the most documents annotated at once
+   * @param maxQueued the most documents waiting to start
+   * @param maxInFlightChars the most text, in characters, annotated at once
+   * @param maxDocumentChars the largest document accepted, in characters; 0 for no limit beyond the in-flight budget
+   * @param defaultDeadlineMillis deadline for requests without one; 0 for none
+   * @param shortMaxChars the longest document, in characters, scheduled in the short lane by default
+   * @param reservedShortSlots slots only short documents may use; at most <code>slots - 1</code>.
+   * If 0, lanes still order the queue but reserve nothing.
+   * @param reservedLongSlots slots short documents may not use while long documents wait; at most
+   * <code>slots - 1 - reservedShortSlots</code>
+   * @param longYield the most short documents started ahead of a waiting long one; at least 1
+   */
+  public AdmissionController(int slots, int maxQueued, long maxInFlightChars, long maxDocumentChars,
+      long defaultDeadlineMillis, long shortMaxChars, int reservedShortSlots, int reservedLongSlots,
+      int longYield) {
+    this(slots, maxQueued, maxInFlightChars, maxDocumentChars, defaultDeadlineMillis, shortMaxChars,
+        reservedShortSlots, reservedLongSlots, longYield, System::nanoTime);
+  }
+
+  /**
+   * @param clock the time in nanoseconds, as {@link System#nanoTime()}, that
+   * annotation time and deadlines are measured with
+   */
+  AdmissionController(int slots, int maxQueued, long maxInFlightChars, long maxDocumentChars,
+      long defaultDeadlineMillis, long shortMaxChars, int reservedShortSlots, int reservedLongSlots,
+      int longYield, LongSupplier clock) {
+    this.clock = clock;
+    this.slots = slots;
+    this.maxQueued = maxQueued;
+    this.maxInFlightChars = maxInFlightChars;
+    this.defaultDeadlineMillis = defaultDeadlineMillis;
+    this.shortMaxChars = shortMaxChars;
+    this.reservedShortSlots = Math.max(0, Math.min(reservedShortSlots, slots - 1));
+    this.reservedShortChars = Math.min(maxInFlightChars / 2, this.reservedShortSlots * shortMaxChars);
+    // a larger document could never start in the long lane.
+    final long fits = maxInFlightChars - this.reservedShortChars;
+    this.maxDocumentChars = maxDocumentChars > 0 ? Math.min(maxDocumentChars, fits) : fits;
+    if (maxDocumentChars <= 0 || maxDocumentChars > fits)
+      LOGGER.info("Accepting documents of up to {} characters: {} of the {} in-flight characters are "
+          + "reserved for the short lane", this.maxDocumentChars, this.reservedShortChars, maxInFlightChars);
+    this.reservedLongSlots = Math.max(0, Math.min(reservedLongSlots, slots - 1 - this.reservedShortSlots));
+    this.longYield = Math.max(1, longYield);
+    for (Rejection r : Rejection.values())
+      this.rejections.put(r, new AtomicLong());
+    for (Lane l : Lane.values()) {
+      this.laneRunning.put(l, new int[1]);
+      this.laneQueued.put(l, new ArrayDeque<>());
+      this.laneQueuedChars.put(l, new long[1]);
+    }
+  }
+
+  /**
+   * A granted admission. Close it when the document is done.
+   */
+  public class Permit implements AutoCloseable {
+    private final Lane lane;
+    private final long chars;
+    private final long start = AdmissionController.this.clock.getAsLong();
+    private boolean closed = false;
+
+    private Permit(Lane lane, long chars) {
+      this.lane = lane;
+      this.chars = chars;
+    }
+
+    /**
+     * @return the lane the document was scheduled in
+     */
+    public Lane getLane() {
+      return this.lane;
+    }
+
+    @Override
+    public void close() {
+      if (this.closed)
+        return;
+      this.closed = true;
+      release(this.lane, this.chars, AdmissionController.this.clock.getAsLong() - this.start);
+    }
+  }
+
+  /**
+   * @return the lane <code>c</code> is scheduled in
+   */
+  public Lane laneOf(Communication c) {
+    if (c.isSetKeyValueMap()) {
+      String v = c.getKeyValueMap().get(LANE_KEY);
+      if (v != null)
+        try {
+          return Lane.valueOf(v.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+          LOGGER.warn("Ignoring unknown lane '{}' on Communication: {}", v, c.getId());
+        }
+    }
+    final long chars = c.isSetText() ? c.getText().length() : 0;
+    return chars <= this.shortMaxChars ? Lane.SHORT : Lane.LONG;
+  }
+
+  private static long deadlineMillis(Communication c, long fallback) {
+    if (c.isSetKeyValueMap()) {
+      String v = c.getKeyValueMap().get(DEADLINE_KEY);
+      if (v != null)
+        try {
+          return Long.parseLong(v.trim());
+        } catch (NumberFormatException e) {
+          LOGGER.warn("Ignoring malformed deadline '{}' on Communication: {}", v, c.getId());
+        }
+    }
+    return fallback;
+  }
+
+  /**
+   * @return the deadline of <code>c</code>, in milliseconds from arrival; 0 for none
+   */
+  public long deadlineOf(Communication c) {
+    return deadlineMillis(c, this.defaultDeadlineMillis);
+  }
+
+  private ConcreteThriftException reject(Rejection r, Communication c, String message) {
+    this.rejections.get(r).incrementAndGet();
+    LOGGER.info("Rejected Communication {} [{}]: {}", c.getId(), r, message);
+    return new ConcreteThriftException(message);
+  }
+
+  // called with the lock held
+  private boolean canStart(Lane lane, long chars) {
+    if (this.running >= this.slots || this.runningChars + chars > this.maxInFlightChars)
+      return false;
+    if (lane == Lane.SHORT)
+      return this.laneQueued.get(Lane.LONG).isEmpty() || this.shortMayGoAhead();
+    // long documents leave the reserved capacity free, and yield to queued short ones that may start.
+    return this.laneRunning.get(Lane.LONG)[0] < this.slots - this.reservedShortSlots
+        && this.runningChars + chars <= this.maxInFlightChars - this.reservedShortChars
+        && (this.laneQueued.get(Lane.SHORT).isEmpty() || !this.shortMayGoAhead());
+  }
+
+  // called with the lock held; whether a short document may start ahead of waiting long ones:
+  // it must leave the long reservation free, and beyond its own reservation only goes
+  // ahead a bounded number of times.
+  private boolean shortMayGoAhead() {
+    final int shortRunning = this.laneRunning.get(Lane.SHORT)[0];
+    return shortRunning < this.slots - this.reservedLongSlots
+        && (shortRunning < this.reservedShortSlots || this.shortStartsSinceLong < this.longYield);
+  }
+
+  // called with the lock held; work ahead of a new request in its lane, spread over the slots
+  private long estimateNanos(Lane lane, long chars) {
+    long queuedAhead = this.laneQueuedChars.get(Lane.SHORT)[0];
+    if (lane == Lane.LONG)
+      queuedAhead += this.laneQueuedChars.get(Lane.LONG)[0];
+    final double ahead = (double) (this.runningChars + queuedAhead) / this.slots;
+    return (long) ((ahead + chars) * this.nanosPerChar);
+  }
+
+  // called with the lock held
+  private int queued() {
+    return this.laneQueued.get(Lane.SHORT).size() + this.laneQueued.get(Lane.LONG).size();
+  }
+
+  /**
+   * Wait until <code>c</code> may be annotated.
+   *
+   * @return a permit to close when annotation of <code>c</code> is done
+   * @throws ConcreteThriftException if <code>c</code> is rejected
+   */
+  public Permit admit(Communication c) throws ConcreteThriftException {
+    final long arrival = this.clock.getAsLong();
+    final long chars = c.isSetText() ? c.getText().length() : 0;
+    if (chars > this.maxDocumentChars)
+      throw this.reject(Rejection.TOO_LARGE, c, "Document has " + chars
+          + " characters of text; this server accepts at most " + this.maxDocumentChars);
+
+    final Lane lane = this.laneOf(c);
+    final long deadline = deadlineMillis(c, this.defaultDeadlineMillis);
+    final long deadlineNanos = deadline > 0 ? TimeUnit.MILLISECONDS.toNanos(deadline) : Long.MAX_VALUE;
+    this.lock.lock();
+    try {
+      if (deadline > 0 && this.nanosPerChar > 0) {
+        final long est = this.estimateNanos(lane, chars);
+        if (est > deadlineNanos)
+          throw this.reject(Rejection.OVER_DEADLINE, c, "Estimated time to annotate, "
+              + TimeUnit.NANOSECONDS.toMillis(est) + " ms, exceeds the deadline of " + deadline + " ms");
+      }
+
+      final Deque<Object> waiting = this.laneQueued.get(lane);
+      if (!waiting.isEmpty() || !this.canStart(lane, chars)) {
+        final int queued = this.queued();
+        if (queued >= this.maxQueued)
+          throw this.reject(Rejection.QUEUE_FULL, c, "Server is at capacity: " + queued
+              + " requests are already waiting");
+        final Object ticket = new Object();
+        waiting.addLast(ticket);
+        this.laneQueuedChars.get(lane)[0] += chars;
+        try {
+          while (waiting.peekFirst() != ticket || !this.canStart(lane, chars)) {
+            final long remaining = deadlineNanos - (this.clock.getAsLong() - arrival);
+            if (remaining <= 0)
+              throw this.reject(Rejection.TIMED_OUT, c, "Deadline of " + deadline
+                  + " ms passed while waiting to be annotated");
+            if (deadline > 0)
+              this.freed.awaitNanos(remaining);
+            else
+              this.freed.await();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ConcreteThriftException("Interrupted while waiting to be annotated");
+        } finally {
+          waiting.remove(ticket);
+          this.laneQueuedChars.get(lane)[0] -= chars;
+          // the next document of the lane, and long documents yielding to
+          // this one, may have been waiting on it to leave the queue.
+          this.freed.signalAll();
+        }
+      }
+
+      if (lane == Lane.LONG)
+        this.shortStartsSinceLong = 0;
+      else if (!this.laneQueued.get(Lane.LONG).isEmpty())
+        this.shortStartsSinceLong++;
+      this.running++;
+      this.runningChars += chars;
+      this.laneRunning.get(lane)[0]++;
+      this.admitted.incrementAndGet();
+      return new Permit(lane, chars);
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private void release(Lane lane, long chars, long elapsedNanos) {
+    this.lock.lock();
+    try {
+      this.running--;
+      this.runningChars -= chars;
+      this.laneRunning.get(lane)[0]--;
+      if (chars > 0) {
+        final double observed = (double) elapsedNanos / chars;
+        this.nanosPerChar = this.nanosPerChar == 0 ? observed
+            : ALPHA * observed + (1 - ALPHA) * this.nanosPerChar;
+      }
+      this.freed.signalAll();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of documents rejected for reason <code>r</code>
+   */
+  public long getRejected(Rejection r) {
+    return this.rejections.get(r).get();
+  }
+
+  @Override
+  public int getRunning() {
+    this.lock.lock();
+    try {
+      return this.running;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public int getQueued() {
+    this.lock.lock();
+    try {
+      return this.queued();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of documents of lane <code>l</code> being annotated
+   */
+  public int getRunning(Lane l) {
+    this.lock.lock();
+    try {
+      return this.laneRunning.get(l)[0];
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of documents of lane <code>l</code> waiting to start
+   */
+  public int getQueued(Lane l) {
+    this.lock.lock();
+    try {
+      return this.laneQueued.get(l).size();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  @Override
+  public int getRunningShort() {
+    return this.getRunning(Lane.SHORT);
+  }
+
+  @Override
+  public int getQueuedShort() {
+    return this.getQueued(Lane.SHORT);
+  }
+
+  @Override
+  public long getInFlightChars() {
+    this.lock.lock();
+    try {
+      return this.runningChars;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * @return the largest document accepted, in characters
+   */
+  public long getMaxDocumentChars() {
+    return this.maxDocumentChars;
+  }
+
+  @Override
+  public long getAdmitted() {
+    return this.admitted.get();
+  }
+
+  @Override
+  public long getRejectedTooLarge() {
+    return this.getRejected(Rejection.TOO_LARGE);
+  }
+
+  @Override
+  public long getRejectedQueueFull() {
+    return this.getRejected(Rejection.QUEUE_FULL);
+  }
+
+  @Override
+  public long getRejectedOverDeadline() {
+    return this.getRejected(Rejection.OVER_DEADLINE);
+  }
+
+  @Override
+  public long getRejectedTimedOut() {
+    return this.getRejected(Rejection.TIMED_OUT);
+  }
+
+  @Override
+  public double getEstimatedNanosPerChar() {
+    this.lock.lock();
+    try {
+      return this.nanosPerChar;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+}
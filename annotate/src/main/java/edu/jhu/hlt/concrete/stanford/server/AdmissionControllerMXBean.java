@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+/**
+ * JMX view of an {@link AdmissionController}.
+ */
+public interface AdmissionControllerMXBean {
+
+  int getRunning();
+
+  int getQueued();
+
+  int getRunningShort();
+
+  int getQueuedShort();
+
+  long getInFlightChars();
+
+  long getAdmitted();
+
+  long getRejectedTooLarge();
+
+  long getRejectedQueueFull();
+
+  long getRejectedOverDeadline();
+
+  long getRejectedTimedOut();
+
+  double getEstimatedNanosPerChar();
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+
+/**
+ * Wire format of the <code>annotateBatch</code> extension method. In
+ * Thrift IDL, the method is:
+ * <pre>
+ * struct AnnotationResult {
+ *   1: optional communication.Communication communication
+ *   2: optional string error
+ * }
+ *
+ * list&lt;AnnotationResult&gt; annotateBatch(1: list&lt;communication.Communication&gt; communications)
+ *     throws (1: services.ConcreteThriftException ex)
+ * </pre>
+ * The arguments and result are encoded as the generated code for that
+ * declaration would encode them, so that clients generated from it
+ * interoperate.
+ */
+public final class AnnotateBatchCodec {
+
+  public static final String METHOD_NAME = "annotateBatch";
+
+  private static final TStruct ARGS = new TStruct("annotateBatch_args");
+  private static final TField ARGS_COMMS = new TField("communications", TType.LIST, (short) 1);
+
+  private static final TStruct RESULT = new TStruct("annotateBatch_result");
+  private static final TField RESULT_SUCCESS = new TField("success", TType.LIST, (short) 0);
+  private static final TField RESULT_EX = new TField("ex", TType.STRUCT, (short) 1);
+
+  private static final TStruct ITEM = new TStruct("AnnotationResult");
+  private static final TField ITEM_COMM = new TField("communication", TType.STRUCT, (short) 1);
+  private static final TField ITEM_ERROR = new TField("error", TType.STRING, (short) 2);
+
+  private AnnotateBatchCodec() {
+  }
+
+  public static void writeArgs(TProtocol out, List<Communication> comms) throws TException {
+    out.writeStructBegin(ARGS);
+    out.writeFieldBegin(ARGS_COMMS);
+    out.writeListBegin(new TList(TType.STRUCT, comms.size()));
+    for (Communication c : comms)
+      c.write(out);
+    out.writeListEnd();
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  public static List<Communication> readArgs(TProtocol in) throws TException {
+    List<Communication> comms = null;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == ARGS_COMMS.id && f.type == TType.LIST) {
+        TList l = in.readListBegin();
+        comms = new ArrayList<>(l.size);
+        for (int i = 0; i < l.size; i++) {
+          Communication c = new Communication();
+          c.read(in);
+          comms.add(c);
+        }
+        in.readListEnd();
+      } else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    if (comms == null)
+      throw new TProtocolException(TProtocolException.INVALID_DATA, "Required field 'communications' was not present");
+    return comms;
+  }
+
+  public static void writeResult(TProtocol out, List<AnnotationResult> results) throws TException {
+    out.writeStructBegin(RESULT);
+    out.writeFieldBegin(RESULT_SUCCESS);
+    out.writeListBegin(new TList(TType.STRUCT, results.size()));
+    for (AnnotationResult r : results)
+      writeItem(out, r);
+    out.writeListEnd();
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  public static void writeException(TProtocol out, ConcreteThriftException ex) throws TException {
+    out.writeStructBegin(RESULT);
+    out.writeFieldBegin(RESULT_EX);
+    ex.write(out);
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  /**
+   * @return the results, in request order
+   * @throws ConcreteThriftException if the server rejected the batch
+   */
+  public static List<AnnotationResult> readResult(TProtocol in) throws TException {
+    List<AnnotationResult> results = null;
+    ConcreteThriftException ex = null;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == RESULT_SUCCESS.id && f.type == TType.LIST) {
+        TList l = in.readListBegin();
+        results = new ArrayList<>(l.size);
+        for (int i = 0; i < l.size; i++)
+          results.add(readItem(in));
+        in.readListEnd();
+      } else if (f.id == RESULT_EX.id && f.type == TType.STRUCT) {
+        ex = new ConcreteThriftException();
+        ex.read(in);
+      } else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    if (ex != null)
+      throw ex;
+    if (results == null)
+      throw new TProtocolException(TProtocolException.INVALID_DATA, METHOD_NAME + " failed: unknown result");
+    return results;
+  }
+
+  private static void writeItem(TProtocol out, AnnotationResult r) throws TException {
+    out.writeStructBegin(ITEM);
+    if (r.getCommunication().isPresent()) {
+      out.writeFieldBegin(ITEM_COMM);
+      r.getCommunication().get().write(out);
+      out.writeFieldEnd();
+    }
+    if (r.getError().isPresent()) {
+      out.writeFieldBegin(ITEM_ERROR);
+      out.writeString(r.getError().get());
+      out.writeFieldEnd();
+    }
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  private static AnnotationResult readItem(TProtocol in) throws TException {
+    Communication c = null;
+    String error = null;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == ITEM_COMM.id && f.type == TType.STRUCT) {
+        c = new Communication();
+        c.read(in);
+      } else if (f.id == ITEM_ERROR.id && f.type == TType.STRING)
+        error = in.readString();
+      else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    return c != null ? AnnotationResult.success(c) : AnnotationResult.failure(error);
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.util.List;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+
+import edu.jhu.hlt.concrete.Communication;
+
+/**
+ * Serves {@link AnnotateBatchCodec#METHOD_NAME} from a
+ * {@link ConcreteStanfordThriftServer}.
+ */
+public class AnnotateBatchMethod implements ExtensionMethod {
+
+  private final ConcreteStanfordThriftServer srv;
+
+  public AnnotateBatchMethod(ConcreteStanfordThriftServer srv) {
+    this.srv = srv;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.stanford.server.ExtensionMethod#getName()
+   */
+  @Override
+  public String getName() {
+    return AnnotateBatchCodec.METHOD_NAME;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.stanford.server.ExtensionMethod#process(int, org.apache.thrift.protocol.TProtocol, org.apache.thrift.protocol.TProtocol)
+   */
+  @Override
+  public void process(int seqid, TProtocol in, TProtocol out) throws TException {
+    final List<Communication> comms;
+    try {
+      comms = AnnotateBatchCodec.readArgs(in);
+    } catch (TProtocolException e) {
+      in.readMessageEnd();
+      ExtendedAnnotateProcessor.replyError(out, this.getName(), seqid,
+          TApplicationException.PROTOCOL_ERROR, e.getMessage());
+      return;
+    }
+    in.readMessageEnd();
+
+    List<AnnotationResult> results = this.srv.annotateBatch(comms);
+    ExtendedAnnotateProcessor.reply(out, this.getName(), seqid,
+        o -> AnnotateBatchCodec.writeResult(o, results));
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+
+/**
+ * Wire format of the <code>annotateByReference</code> extension method. In
+ * Thrift IDL, the method is:
+ * <pre>
+ * struct AnnotationReference {
+ *   1: required string inputPath
+ *   2: optional string communicationId
+ *   3: required string outputPath
+ * }
+ *
+ * struct ReferenceSummary {
+ *   1: required string communicationId
+ *   2: required string outputPath
+ *   3: required i32 sentenceCount
+ *   4: required i32 tokenCount
+ *   5: required i64 outputBytes
+ *   6: required i64 millis
+ * }
+ *
+ * ReferenceSummary annotateByReference(1: AnnotationReference reference)
+ *     throws (1: services.ConcreteThriftException ex)
+ * </pre>
+ * Paths are on the server's file system. The arguments and result are
+ * encoded as the generated code for that declaration would encode them.
+ */
+public final class AnnotateByReferenceCodec {
+
+  public static final String METHOD_NAME = "annotateByReference";
+
+  private static final TStruct ARGS = new TStruct("annotateByReference_args");
+  private static final TField ARGS_REF = new TField("reference", TType.STRUCT, (short) 1);
+
+  private static final TStruct RESULT = new TStruct("annotateByReference_result");
+  private static final TField RESULT_SUCCESS = new TField("success", TType.STRUCT, (short) 0);
+  private static final TField RESULT_EX = new TField("ex", TType.STRUCT, (short) 1);
+
+  private static final TStruct REF = new TStruct("AnnotationReference");
+  private static final TField REF_INPUT = new TField("inputPath", TType.STRING, (short) 1);
+  private static final TField REF_ID = new TField("communicationId", TType.STRING, (short) 2);
+  private static final TField REF_OUTPUT = new TField("outputPath", TType.STRING, (short) 3);
+
+  private static final TStruct SUMMARY = new TStruct("ReferenceSummary");
+  private static final TField SUM_ID = new TField("communicationId", TType.STRING, (short) 1);
+  private static final TField SUM_OUTPUT = new TField("outputPath", TType.STRING, (short) 2);
+  private static final TField SUM_SENTENCES = new TField("sentenceCount", TType.I32, (short) 3);
+  private static final TField SUM_TOKENS = new TField("tokenCount", TType.I32, (short) 4);
+  private static final TField SUM_BYTES = new TField("outputBytes", TType.I64, (short) 5);
+  private static final TField SUM_MILLIS = new TField("millis", TType.I64, (short) 6);
+
+  private AnnotateByReferenceCodec() {
+  }
+
+  public static void writeArgs(TProtocol out, AnnotationReference ref) throws TException {
+    out.writeStructBegin(ARGS);
+    out.writeFieldBegin(ARGS_REF);
+    out.writeStructBegin(REF);
+    writeString(out, REF_INPUT, ref.getInputPath());
+    if (ref.getCommunicationId().isPresent())
+      writeString(out, REF_ID, ref.getCommunicationId().get());
+    writeString(out, REF_OUTPUT, ref.getOutputPath());
+    out.writeFieldStop();
+    out.writeStructEnd();
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  public static AnnotationReference readArgs(TProtocol in) throws TException {
+    AnnotationReference ref = null;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == ARGS_REF.id && f.type == TType.STRUCT)
+        ref = readReference(in);
+      else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    if (ref == null)
+      throw new TProtocolException(TProtocolException.INVALID_DATA, "Required field 'reference' was not present");
+    return ref;
+  }
+
+  private static AnnotationReference readReference(TProtocol in) throws TException {
+    String input = null;
+    String id = null;
+    String output = null;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == REF_INPUT.id && f.type == TType.STRING)
+        input = in.readString();
+      else if (f.id == REF_ID.id && f.type == TType.STRING)
+        id = in.readString();
+      else if (f.id == REF_OUTPUT.id && f.type == TType.STRING)
+        output = in.readString();
+      else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    if (input == null || output == null)
+      throw new TProtocolException(TProtocolException.INVALID_DATA,
+          "Required fields 'inputPath' and 'outputPath' must be present");
+    return new AnnotationReference(input, id, output);
+  }
+
+  public static void writeResult(TProtocol out, ReferenceSummary s) throws TException {
+    out.writeStructBegin(RESULT);
+    out.writeFieldBegin(RESULT_SUCCESS);
+    out.writeStructBegin(SUMMARY);
+    writeString(out, SUM_ID, s.getCommunicationId());
+    writeString(out, SUM_OUTPUT, s.getOutputPath());
+    out.writeFieldBegin(SUM_SENTENCES);
+    out.writeI32(s.getSentenceCount());
+    out.writeFieldEnd();
+    out.writeFieldBegin(SUM_TOKENS);
+    out.writeI32(s.getTokenCount());
+    out.writeFieldEnd();
+    out.writeFieldBegin(SUM_BYTES);
+    out.writeI64(s.getOutputBytes());
+    out.writeFieldEnd();
+    out.writeFieldBegin(SUM_MILLIS);
+    out.writeI64(s.getMillis());
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  public static void writeException(TProtocol out, ConcreteThriftException ex) throws TException {
+    out.writeStructBegin(RESULT);
+    out.writeFieldBegin(RESULT_EX);
+    ex.write(out);
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  /**
+   * @throws ConcreteThriftException if the server could not annotate the reference
+   */
+  public static ReferenceSummary readResult(TProtocol in) throws TException {
+    ReferenceSummary s = null;
+    ConcreteThriftException ex = null;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == RESULT_SUCCESS.id && f.type == TType.STRUCT)
+        s = readSummary(in);
+      else if (f.id == RESULT_EX.id && f.type == TType.STRUCT) {
+        ex = new ConcreteThriftException();
+        ex.read(in);
+      } else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    if (ex != null)
+      throw ex;
+    if (s == null)
+      throw new TProtocolException(TProtocolException.INVALID_DATA, METHOD_NAME + " failed: unknown result");
+    return s;
+  }
+
+  private static ReferenceSummary readSummary(TProtocol in) throws TException {
+    String id = null;
+    String output = null;
+    int sentences = 0;
+    int tokens = 0;
+    long bytes = 0;
+    long millis = 0;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == SUM_ID.id && f.type == TType.STRING)
+        id = in.readString();
+      else if (f.id == SUM_OUTPUT.id && f.type == TType.STRING)
+        output = in.readString();
+      else if (f.id == SUM_SENTENCES.id && f.type == TType.I32)
+        sentences = in.readI32();
+      else if (f.id == SUM_TOKENS.id && f.type == TType.I32)
+        tokens = in.readI32();
+      else if (f.id == SUM_BYTES.id && f.type == TType.I64)
+        bytes = in.readI64();
+      else if (f.id == SUM_MILLIS.id && f.type == TType.I64)
+        millis = in.readI64();
+      else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    return new ReferenceSummary(id, output, sentences, tokens, bytes, millis);
+  }
+
+  private static void writeString(TProtocol out, TField f, String v) throws TException {
+    out.writeFieldBegin(f);
+    out.writeString(v);
+    out.writeFieldEnd();
+  }
+}
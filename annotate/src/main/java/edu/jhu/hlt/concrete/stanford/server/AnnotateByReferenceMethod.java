@@ -0,0 +1,188 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.Sentence;
+import edu.jhu.hlt.concrete.serialization.CommunicationSerializer;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+import edu.jhu.hlt.concrete.stanford.io.CommunicationArchiveReader;
+import edu.jhu.hlt.concrete.util.ConcreteException;
+
+/**
+ * Serves {@link AnnotateByReferenceCodec#METHOD_NAME} from a
+ * {@link ConcreteStanfordThriftServer}, for clients on the same host: the
+ * server reads the Communication from a local file, annotates it as it
+ * would an <code>annotate</code> request, writes the result to a local
+ * file, and replies with a {@link ReferenceSummary} only. The launcher
+ * serves it on a loopback port only, never on the main port.
+ * <br>
+ * <br>
+ * Paths are resolved against a configured root directory, and any path
+ * that resolves outside of it, including through symbolic links, is
+ * rejected. Output is written to a temporary file and moved into place,
+ * so readers never see a partial file.
+ */
+public class AnnotateByReferenceMethod implements ExtensionMethod {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AnnotateByReferenceMethod.class);
+
+  private final ConcreteStanfordThriftServer srv;
+  private final ServerRoot root;
+  private final CommunicationSerializer ser = new CompactCommunicationSerializer();
+
+  /**
+   * @param root the directory that all input and output paths must be under
+   * @throws IOException if <code>root</code> does not exist
+   */
+  public AnnotateByReferenceMethod(ConcreteStanfordThriftServer srv, Path root) throws IOException {
+    this.srv = srv;
+    this.root = new ServerRoot(root);
+    LOGGER.info("Annotating by reference under: {}", this.root);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.stanford.server.ExtensionMethod#getName()
+   */
+  @Override
+  public String getName() {
+    return AnnotateByReferenceCodec.METHOD_NAME;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.stanford.server.ExtensionMethod#process(int, org.apache.thrift.protocol.TProtocol, org.apache.thrift.protocol.TProtocol)
+   */
+  @Override
+  public void process(int seqid, TProtocol in, TProtocol out) throws TException {
+    final AnnotationReference ref;
+    try {
+      ref = AnnotateByReferenceCodec.readArgs(in);
+    } catch (TProtocolException e) {
+      in.readMessageEnd();
+      ExtendedAnnotateProcessor.replyError(out, this.getName(), seqid,
+          TApplicationException.PROTOCOL_ERROR, e.getMessage());
+      return;
+    }
+    in.readMessageEnd();
+
+    try {
+      ReferenceSummary s = this.annotate(ref);
+      ExtendedAnnotateProcessor.reply(out, this.getName(), seqid,
+          o -> AnnotateByReferenceCodec.writeResult(o, s));
+    } catch (ConcreteThriftException e) {
+      LOGGER.info("Failed to annotate {}: {}", ref, e.getMessage());
+      ExtendedAnnotateProcessor.reply(out, this.getName(), seqid,
+          o -> AnnotateByReferenceCodec.writeException(o, e));
+    }
+  }
+
+  private ReferenceSummary annotate(AnnotationReference ref) throws TException {
+    final long start = System.currentTimeMillis();
+    Path input = this.root.resolveInput(ref.getInputPath());
+    Path output = this.root.resolveOutput(ref.getOutputPath());
+    Communication c = this.read(input, ref.getCommunicationId());
+    LOGGER.info("Received annotation request by reference. Annotating: {} from {}", c.getId(), input);
+    Communication annotated = this.srv.annotateReference(c);
+
+    final byte[] b;
+    try {
+      b = this.ser.toBytes(annotated);
+    } catch (ConcreteException e) {
+      throw new ConcreteThriftException("Failed to serialize the annotated Communication: " + e.getMessage());
+    }
+    try {
+      Path tmp = Files.createTempFile(output.getParent(), output.getFileName().toString() + ".", ".tmp");
+      try {
+        Files.write(tmp, b);
+        Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      throw new ConcreteThriftException("Failed to write " + ref.getOutputPath() + ": " + e.getMessage());
+    }
+
+    int sentences = 0;
+    int tokens = 0;
+    if (annotated.isSetSectionList())
+      for (Section s : annotated.getSectionList())
+        if (s.isSetSentenceList())
+          for (Sentence st : s.getSentenceList()) {
+            sentences++;
+            if (st.isSetTokenization() && st.getTokenization().isSetTokenList())
+              tokens += st.getTokenization().getTokenList().getTokenListSize();
+          }
+    return new ReferenceSummary(annotated.getId(), output.toString(), sentences, tokens, b.length,
+        System.currentTimeMillis() - start);
+  }
+
+  private static boolean isArchive(Path p) {
+    final String lower = p.getFileName().toString().toLowerCase();
+    return lower.endsWith(".tar") || lower.endsWith(".tar.gz") || lower.endsWith(".tgz");
+  }
+
+  private static boolean namedFor(String entryName, String id) {
+    final String base = entryName.substring(entryName.lastIndexOf('/') + 1);
+    return base.equals(id) || base.equals(id + ".comm") || base.equals(id + ".concrete");
+  }
+
+  private Communication read(Path input, Optional<String> id) throws ConcreteThriftException {
+    try {
+      if (!isArchive(input)) {
+        Communication c = this.ser.fromBytes(Files.readAllBytes(input));
+        if (id.isPresent() && !id.get().equals(c.getId()))
+          throw new ConcreteThriftException("Input holds " + c.getId() + ", not " + id.get());
+        return c;
+      }
+
+      // entries are usually named after their Communication; look for
+      // the name first, and only decode every entry if that fails.
+      if (id.isPresent()) {
+        Optional<Communication> named = this.scan(input, id.get(), true);
+        if (named.isPresent())
+          return named.get();
+      }
+      return this.scan(input, id.orElse(null), false)
+          .orElseThrow(() -> new ConcreteThriftException("No Communication " + id.orElse("") + " in " + input));
+    } catch (IOException | ConcreteException e) {
+      throw new ConcreteThriftException("Failed to read " + input + ": " + e.getMessage());
+    }
+  }
+
+  private Optional<Communication> scan(Path archive, String id, boolean byName)
+      throws IOException, ConcreteException {
+    try (InputStream in = Files.newInputStream(archive);
+        BufferedInputStream bin = new BufferedInputStream(in);
+        CommunicationArchiveReader reader = new CommunicationArchiveReader(bin,
+            CommunicationArchiveReader.isGzipped(archive.toString()));) {
+      byte[] entry;
+      while ((entry = byName ? reader.next(n -> namedFor(n, id)) : reader.next()) != null) {
+        Communication c = this.ser.fromBytes(entry);
+        if (id == null || id.equals(c.getId()))
+          return Optional.of(c);
+      }
+    }
+    return Optional.empty();
+  }
+}
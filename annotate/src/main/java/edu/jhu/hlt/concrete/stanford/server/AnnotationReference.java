@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.util.Optional;
+
+/**
+ * Where the server should read a Communication from, and write the
+ * annotated Communication to, for {@link AnnotateByReferenceCodec#METHOD_NAME}.
+ */
+public final class AnnotationReference {
+
+  private final String inputPath;
+  private final String communicationId;
+  private final String outputPath;
+
+  /**
+   * @param inputPath a <code>.tar</code> or <code>.tar.gz</code> archive of
+   * Communications, or a single serialized Communication
+   * @param communicationId the ID of the Communication to annotate, if the
+   * input is an archive; if <code>null</code>, the first entry is used
+   * @param outputPath the file to write the annotated Communication to
+   */
+  public AnnotationReference(String inputPath, String communicationId, String outputPath) {
+    this.inputPath = inputPath;
+    this.communicationId = communicationId;
+    this.outputPath = outputPath;
+  }
+
+  public String getInputPath() {
+    return this.inputPath;
+  }
+
+  public Optional<String> getCommunicationId() {
+    return Optional.ofNullable(this.communicationId);
+  }
+
+  public String getOutputPath() {
+    return this.outputPath;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return "AnnotationReference [inputPath=" + this.inputPath + ", communicationId=" + this.communicationId
+        + ", outputPath=" + this.outputPath + "]";
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.util.Optional;
+
+import edu.jhu.hlt.concrete.Communication;
+
+/**
+ * The outcome of annotating one document of a batch: either the
+ * annotated {@link Communication} or an error message.
+ */
+public final class AnnotationResult {
+
+  private final Communication communication;
+  private final String error;
+
+  private AnnotationResult(Communication communication, String error) {
+    this.communication = communication;
+    this.error = error;
+  }
+
+  public static AnnotationResult success(Communication c) {
+    return new AnnotationResult(c, null);
+  }
+
+  public static AnnotationResult failure(String error) {
+    return new AnnotationResult(null, error == null ? "unknown error" : error);
+  }
+
+  /**
+   * @return true if the document was annotated
+   */
+  public boolean isSuccess() {
+    return this.communication != null;
+  }
+
+  /**
+   * @return the annotated Communication, if annotation succeeded
+   */
+  public Optional<Communication> getCommunication() {
+    return Optional.ofNullable(this.communication);
+  }
+
+  /**
+   * @return the error message, if annotation failed
+   */
+  public Optional<String> getError() {
+    return Optional.ofNullable(this.error);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return this.isSuccess()
+        ? "AnnotationResult [communication=" + this.communication.getId() + "]"
+        : "AnnotationResult [error=" + this.error + "]";
+  }
+}
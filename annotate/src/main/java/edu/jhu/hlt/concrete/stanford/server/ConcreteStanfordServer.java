@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadedSelectorServer;
+import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Half-sync/half-async Thrift server for the annotation service.
+ * <br>
+ * <br>
+ * A small number of selector threads read framed, compact-protocol
+ * requests from all connections without blocking, and hand complete
+ * requests to a fixed pool of worker threads that run the analytics. A slow
+ * document therefore only occupies one worker, and the number of documents
+ * annotated at once, which bounds the heap used by annotation, is set by the
+ * size of that pool rather than by the number of connected clients.
+ */
+public class ConcreteStanfordServer implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ConcreteStanfordServer.class);
+
+  private final TNonblockingServerSocket socket;
+  private final ExecutorService workers;
+  private final TServer server;
+  private final int nWorkers;
+
+  /**
+   * @param processor the processor for the service
+   * @param port the port to listen on
+   * @param params server options
+   * @param workers the pool that runs requests, from {@link #newWorkerPool(int)}
+   * @param nWorkers the size of <code>workers</code>
+   * @throws TTransportException if the port cannot be bound
+   */
+  public ConcreteStanfordServer(TProcessor processor, int port, ServerParameterDelegate params,
+      ExecutorService workers, int nWorkers) throws TTransportException {
+    this(processor, new InetSocketAddress(port), params, workers, nWorkers);
+  }
+
+  /**
+   * @param processor the processor for the service
+   * @param address the address and port to listen on
+   * @param params server options
+   * @param workers the pool that runs requests, from {@link #newWorkerPool(int)}
+   * @param nWorkers the size of <code>workers</code>
+   * @throws TTransportException if the address cannot be bound
+   */
+  public ConcreteStanfordServer(TProcessor processor, InetSocketAddress address, ServerParameterDelegate params,
+      ExecutorService workers, int nWorkers) throws TTransportException {
+    this.nWorkers = nWorkers;
+    this.workers = workers;
+    this.socket = new TNonblockingServerSocket(address);
+    TThreadedSelectorServer.Args args = new TThreadedSelectorServer.Args(this.socket)
+        .processor(processor)
+        .protocolFactory(new TCompactProtocol.Factory())
+        .selectorThreads(params.selectorThreads)
+        .acceptQueueSizePerThread(params.acceptQueueSize)
+        .executorService(this.workers);
+    args.maxReadBufferBytes = params.maxReadBufferMb * 1024 * 1024;
+    this.server = new TThreadedSelectorServer(args);
+    LOGGER.info("Listening on {} with {} selector threads and {} request threads",
+        address, params.selectorThreads, this.nWorkers);
+  }
+
+  /**
+   * @return a fixed pool of <code>n</code> annotation workers
+   */
+  public static ExecutorService newWorkerPool(int n) {
+    return Executors.newFixedThreadPool(n, new ThreadFactoryBuilder()
+        .setNameFormat("annotate-worker-%d")
+        .build());
+  }
+
+  /**
+   * If a worker count is configured, use it. Otherwise use one worker per
+   * processor, limited by how many workers fit in the heap that is still
+   * free, so this should be called after the models are loaded.
+   */
+  public static int workerCount(ServerParameterDelegate params, Runtime rt) {
+    if (params.workers > 0)
+      return params.workers;
+    final long used = rt.totalMemory() - rt.freeMemory();
+    final long free = rt.maxMemory() - used;
+    final long perWorker = Math.max(1L, params.workerHeapMb) * 1024 * 1024;
+    final int byHeap = (int) Math.min(Integer.MAX_VALUE, free / perWorker);
+    final int n = Math.max(1, Math.min(rt.availableProcessors(), byHeap));
+    LOGGER.info("Sizing worker pool: {} processors, {} MB heap free after loading models; using {} workers",
+        rt.availableProcessors(), free / (1024 * 1024), n);
+    return n;
+  }
+
+  /**
+   * @return the number of annotation workers
+   */
+  public int getWorkerCount() {
+    return this.nWorkers;
+  }
+
+  /**
+   * @return true once the selector threads are serving requests
+   */
+  public boolean isServing() {
+    return this.server.isServing();
+  }
+
+  /**
+   * Serve requests until {@link #close()} is called.
+   */
+  public void serve() {
+    this.server.serve();
+  }
+
+  /**
+   * Stop accepting requests, and wait briefly for running ones to finish.
+   */
+  @Override
+  public void close() {
+    this.server.stop();
+    this.workers.shutdown();
+    try {
+      if (!this.workers.awaitTermination(30, TimeUnit.SECONDS))
+        this.workers.shutdownNow();
+    } catch (InterruptedException e) {
+      this.workers.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    this.socket.close();
+  }
+}
@@ -4,14 +4,19 @@
  */
 package edu.jhu.hlt.concrete.stanford.server;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ImmutableList;
-
 import edu.jhu.hlt.concrete.AnnotationMetadata;
 import edu.jhu.hlt.concrete.Communication;
 import edu.jhu.hlt.concrete.analytics.base.Analytic;
@@ -20,6 +25,10 @@ import edu.jhu.hlt.concrete.annotate.AnnotateCommunicationService;
 import edu.jhu.hlt.concrete.metadata.AnnotationMetadataFactory;
 import edu.jhu.hlt.concrete.miscommunication.WrappedCommunication;
 import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+import edu.jhu.hlt.concrete.stanford.io.AnnotationInventory;
+import edu.jhu.hlt.concrete.stanford.io.CommunicationDelta;
+import edu.jhu.hlt.concrete.stanford.metrics.DocumentMetrics;
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsRegistry;
 
 /**
  * Implementation of concrete-stanford as a service.
@@ -28,23 +37,54 @@ public class ConcreteStanfordThriftServer implements AnnotateCommunicationServic
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ConcreteStanfordThriftServer.class);
 
-  private final List<Analytic<? extends WrappedCommunication>> analytics;
-  private final Analytic<? extends WrappedCommunication> first;
-  private final List<Analytic<? extends WrappedCommunication>> rest;
+  private final LanguagePipelines pipelines;
+  private final boolean deltaOutput;
+  private final ExecutorService batchWorkers;
+  private final int batchParallelism;
+  private AdmissionController admission = null;
+  private ResultCache cache = null;
 
   /**
    * package ctor is guaranteed to get >0 analytics
    */
   ConcreteStanfordThriftServer(List<Analytic<? extends WrappedCommunication>> analytics) {
-    this.analytics = analytics;
-    final int aSize = this.analytics.size();
-    if (aSize == 0)
-      throw new IllegalArgumentException("need >0 analytics");
-    this.first = analytics.get(0);
-    if (aSize > 1)
-      this.rest = this.analytics.subList(1, aSize);
-    else
-      this.rest = ImmutableList.of();
+    this(analytics, false);
+  }
+
+  /**
+   * @param deltaOutput if true, return only the annotations added
+   * to each Communication; see {@link CommunicationDelta}
+   */
+  ConcreteStanfordThriftServer(List<Analytic<? extends WrappedCommunication>> analytics, boolean deltaOutput) {
+    this(analytics, deltaOutput, null, 1);
+  }
+
+  /**
+   * @param deltaOutput if true, return only the annotations added
+   * to each Communication; see {@link CommunicationDelta}
+   * @param batchWorkers the pool that serves requests, from which batches
+   * borrow idle workers; if <code>null</code>, batches run sequentially
+   * @param batchParallelism the most documents of one batch to annotate at once
+   */
+  ConcreteStanfordThriftServer(List<Analytic<? extends WrappedCommunication>> analytics, boolean deltaOutput,
+      ExecutorService batchWorkers, int batchParallelism) {
+    this(LanguagePipelines.of(analytics), deltaOutput, batchWorkers, batchParallelism);
+  }
+
+  /**
+   * @param pipelines the pipelines to route requests to
+   * @param deltaOutput if true, return only the annotations added
+   * to each Communication; see {@link CommunicationDelta}
+   * @param batchWorkers the pool that serves requests, from which batches
+   * borrow idle workers; if <code>null</code>, batches run sequentially
+   * @param batchParallelism the most documents of one batch to annotate at once
+   */
+  ConcreteStanfordThriftServer(LanguagePipelines pipelines, boolean deltaOutput,
+      ExecutorService batchWorkers, int batchParallelism) {
+    this.pipelines = pipelines;
+    this.deltaOutput = deltaOutput;
+    this.batchWorkers = batchWorkers;
+    this.batchParallelism = batchWorkers == null ? 1 : Math.max(1, batchParallelism);
   }
 
   /* (non-Javadoc)
@@ -53,17 +93,172 @@ public class ConcreteStanfordThriftServer implements AnnotateCommunicationServic
   @Override
   public Communication annotate(Communication original) throws ConcreteThriftException, TException {
     LOGGER.info("Received annotation request. Annotating: {} [UUID: {}]", original.getId(), original.getUuid().getUuidString());
+    return this.annotateCached(original);
+  }
+
+  /**
+   * Annotate a Communication that a client referred to by path, as
+   * {@link #annotate(Communication)} would.
+   */
+  Communication annotateReference(Communication c) throws TException {
+    return this.annotateCached(c);
+  }
+
+  private Communication annotateCached(Communication original) throws TException {
+    if (this.cache == null)
+      return this.annotateAdmitted(original);
+    String pipeline;
+    try {
+      pipeline = this.pipelines.route(original).toString();
+    } catch (AnalyticException e) {
+      throw new ConcreteThriftException(e.getMessage());
+    }
+    final long deadline = this.admission == null ? 0 : this.admission.deadlineOf(original);
+    return this.cache.annotate(original, pipeline, deadline, this::annotateAdmitted);
+  }
+
+  private Communication annotateAdmitted(Communication c) throws ConcreteThriftException {
     try {
-      WrappedCommunication intermed = this.first.annotate(original);
-      for (Analytic<? extends WrappedCommunication> a : this.rest) {
-        intermed = a.annotate(intermed.getRoot());
+      // load a pipeline not yet used before admission, so that loading its models
+      // neither holds a slot nor counts towards the controller's time per character.
+      this.pipelines.route(c).get();
+      try (AdmissionController.Permit p = this.admit(c)) {
+        return this.annotateOne(c);
       }
-      return intermed.getRoot();
     } catch (AnalyticException e) {
       throw new ConcreteThriftException(e.getMessage());
     }
   }
 
+  /**
+   * Serve repeated requests from <code>rc</code>. Call before the server starts.
+   */
+  void setResultCache(ResultCache rc) {
+    this.cache = rc;
+  }
+
+  /**
+   * Limit concurrent annotation with <code>ac</code>. Call before the server starts.
+   */
+  void setAdmissionController(AdmissionController ac) {
+    this.admission = ac;
+  }
+
+  // null if admission control is off; null resources are skipped by try-with-resources
+  private AdmissionController.Permit admit(Communication c) throws ConcreteThriftException {
+    return this.admission == null ? null : this.admission.admit(c);
+  }
+
+  private Communication annotateOne(Communication original) throws AnalyticException {
+    MetricsRegistry metrics = MetricsRegistry.global();
+    metrics.counter(MetricsRegistry.IN_FLIGHT).increment();
+    try (DocumentMetrics dm = DocumentMetrics.open(original)) {
+      AnnotationInventory inv = this.deltaOutput ? AnnotationInventory.of(original) : null;
+      Communication annotated = this.annotateRouted(original);
+      if (this.deltaOutput)
+        annotated = CommunicationDelta.extract(inv, annotated);
+      metrics.record(dm);
+      return annotated;
+    } catch (AnalyticException | RuntimeException e) {
+      metrics.counter(MetricsRegistry.FAILURES).increment();
+      throw e;
+    } finally {
+      metrics.counter(MetricsRegistry.IN_FLIGHT).decrement();
+    }
+  }
+
+  private Communication annotateRouted(Communication original) throws AnalyticException {
+    List<Analytic<? extends WrappedCommunication>> analytics = this.pipelines.route(original).get();
+    WrappedCommunication intermed = analytics.get(0).annotate(original);
+    for (Analytic<? extends WrappedCommunication> a : analytics.subList(1, analytics.size())) {
+      intermed = a.annotate(intermed.getRoot());
+    }
+    return intermed.getRoot();
+  }
+
+  /**
+   * Annotate a document of a bulk job with the pipeline it routes to.
+   * Jobs have their own workers, so this bypasses admission control and
+   * the result cache; the job decides whether to write deltas.
+   */
+  Communication annotateForJob(Communication c) throws AnalyticException {
+    return this.annotateRouted(c);
+  }
+
+  /**
+   * Annotate <code>c</code> and discard the result, bypassing admission
+   * control and the result cache.
+   */
+  void warmUp(Communication c) throws AnalyticException {
+    this.annotateOne(c);
+  }
+
+  /**
+   * Add the load time of each pipeline and model to <code>status</code>.
+   */
+  void report(Map<String, Object> status) {
+    this.pipelines.report(status);
+  }
+
+  private AnnotationResult annotateForBatch(Communication c) {
+    try {
+      return AnnotationResult.success(this.annotateCached(c));
+    } catch (ConcreteThriftException e) {
+      LOGGER.info("Failed to annotate batch document: {}: {}", c.getId(), e.getMessage());
+      return AnnotationResult.failure(e.getMessage());
+    } catch (TException | RuntimeException e) {
+      LOGGER.warn("Failed to annotate batch document: {}", c.getId(), e);
+      return AnnotationResult.failure(e.getMessage());
+    }
+  }
+
+  /**
+   * Annotate several Communications in one call.
+   * <br>
+   * <br>
+   * The calling thread works through the batch, and idle workers of the
+   * request pool join in, up to the configured parallelism. Helpers that
+   * have not started by the time the batch is done are cancelled, so a
+   * batch never waits on a busy pool.
+   *
+   * @return one result per input, in input order; a failed document does
+   * not fail the others
+   */
+  public List<AnnotationResult> annotateBatch(List<Communication> comms) {
+    final int n = comms.size();
+    LOGGER.info("Received batch annotation request with {} documents", n);
+    final AnnotationResult[] results = new AnnotationResult[n];
+    final AtomicInteger next = new AtomicInteger();
+    Runnable drain = () -> {
+      int i;
+      while ((i = next.getAndIncrement()) < n)
+        results[i] = this.annotateForBatch(comms.get(i));
+    };
+
+    List<Future<?>> helpers = new ArrayList<>();
+    for (int h = 1; h < Math.min(n, this.batchParallelism); h++)
+      helpers.add(this.batchWorkers.submit(drain));
+    drain.run();
+    for (Future<?> f : helpers) {
+      if (f.cancel(false))
+        continue;
+      try {
+        f.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException e) {
+        LOGGER.warn("Batch helper failed", e.getCause());
+      }
+    }
+
+    // results are only missing if interrupted while waiting on helpers
+    for (int i = 0; i < n; i++)
+      if (results[i] == null)
+        results[i] = AnnotationResult.failure("Interrupted before the document was annotated");
+    return Arrays.asList(results);
+  }
+
   /* (non-Javadoc)
    * @see edu.jhu.hlt.concrete.annotate.AnnotateCommunicationService.Iface#getMetadata()
    */
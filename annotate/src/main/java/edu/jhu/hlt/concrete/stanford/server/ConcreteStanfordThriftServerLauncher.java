@@ -7,9 +7,19 @@ package edu.jhu.hlt.concrete.stanford.server;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,10 +28,14 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParametersDelegate;
 
 import edu.jhu.hlt.concrete.analytics.base.Analytic;
+import edu.jhu.hlt.concrete.analytics.base.AnalyticException;
+import edu.jhu.hlt.concrete.annotate.AnnotateCommunicationService;
 import edu.jhu.hlt.concrete.miscommunication.WrappedCommunication;
-import edu.jhu.hlt.concrete.server.ConcreteServer;
-import edu.jhu.hlt.concrete.server.ServerException;
+import edu.jhu.hlt.concrete.stanford.client.SharedMemoryChannel;
 import edu.jhu.hlt.concrete.stanford.languages.PipelineLanguage;
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsHttpServer;
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsParameterDelegate;
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsRegistry;
 import edu.jhu.hlt.concrete.stanford.runners.LanguageConverter;
 import edu.jhu.hlt.concrete.stanford.runners.StanfordParameterDelegate;
 import edu.jhu.hlt.utilt.ex.LoggedUncaughtExceptionHandler;
@@ -42,9 +56,19 @@ public class ConcreteStanfordThriftServerLauncher {
   private boolean help;
 
   @Parameter(names = "--language", required = true,
-      description = "The language to launch.",
+      description = "The language to launch. May be given several times, or as a comma-separated list, to host "
+          + "several languages; requests are routed by their lidList, and the first language is the default. "
+          + "Languages other than the first are loaded on first use.",
       converter = LanguageConverter.class)
-  private PipelineLanguage language;
+  private List<PipelineLanguage> languages = new ArrayList<>();
+
+  @Parameter(names = "--detect-language",
+      description = "If hosting several languages, detect the language of requests whose lidList names none of them.")
+  private boolean detectLanguage = false;
+
+  @Parameter(names = "--preload-all-languages",
+      description = "Load every language at startup, side by side, instead of on first use.")
+  private boolean preloadAllLanguages = false;
 
   @Parameter(names = "--port",
       description = "The port on which to listen for clients.")
@@ -53,6 +77,12 @@ public class ConcreteStanfordThriftServerLauncher {
   @ParametersDelegate
   private StanfordParameterDelegate stanfordParams = new StanfordParameterDelegate();
 
+  @ParametersDelegate
+  private ServerParameterDelegate serverParams = new ServerParameterDelegate();
+
+  @ParametersDelegate
+  private MetricsParameterDelegate metricsParams = new MetricsParameterDelegate();
+
   /**
    *
    */
@@ -74,20 +104,158 @@ public class ConcreteStanfordThriftServerLauncher {
       return;
     }
 
+    AdminServer admin = null;
+    JobManager jobs = null;
+    SharedMemoryServer shm = null;
+    MetricsHttpServer metrics = null;
     try {
       // annoying Stanford junk
       SystemErrDisabler dis = new SystemErrDisabler();
       dis.disable();
-      PipelineLanguage lang = rl.language;
-      List<Analytic<? extends WrappedCommunication>> analytics =
-          rl.stanfordParams.getAnalytics(lang);
+      final Readiness readiness = new Readiness(Optional.ofNullable(rl.serverParams.readyFile).map(Paths::get));
+      if (rl.serverParams.adminPort > 0)
+        admin = rl.serverParams.adminBindAddress == null
+            ? new AdminServer(rl.serverParams.adminPort, readiness)
+            : new AdminServer(InetAddress.getByName(rl.serverParams.adminBindAddress), rl.serverParams.adminPort,
+                readiness);
+      metrics = rl.metricsParams.publish();
+      LanguagePipelines pipelines = new LanguagePipelines(rl.languages,
+          rl.stanfordParams.getAnnotationLevel(), rl.stanfordParams::getAnalytics, rl.detectLanguage);
+      // fail at startup, rather than on the first request, if the default language cannot load
+      pipelines.preload(rl.preloadAllLanguages);
+
+      final int nWorkers = ConcreteStanfordServer.workerCount(rl.serverParams, Runtime.getRuntime());
+      // annotation concurrency is limited by admission control; the extra request
+      // threads hold queued requests, and answer rejections while the queue is full.
+      // Each holds at most one request of --max-request-mb, refused before it is deserialized.
+      final int nRequestThreads = nWorkers + 2 * rl.serverParams.maxQueuedRequests;
+      ExecutorService workers = ConcreteStanfordServer.newWorkerPool(nRequestThreads);
+      ConcreteStanfordThriftServer srv = new ConcreteStanfordThriftServer(pipelines,
+          rl.stanfordParams.isDeltaOutput(), workers, nWorkers);
+      final int reserved = rl.serverParams.shortLaneReservedWorkers >= 0
+          ? rl.serverParams.shortLaneReservedWorkers : Math.max(1, nWorkers / 4);
+      AdmissionController ac = new AdmissionController(nWorkers, rl.serverParams.maxQueuedRequests,
+          rl.serverParams.maxInFlightChars, rl.serverParams.maxDocumentChars, rl.serverParams.defaultDeadlineMs,
+          rl.serverParams.shortLaneMaxChars, reserved, rl.serverParams.longLaneReservedWorkers,
+          rl.serverParams.longLaneYield);
+      srv.setAdmissionController(ac);
+      ManagementFactory.getPlatformMBeanServer().registerMBean(ac,
+          new ObjectName("edu.jhu.hlt.concrete.stanford:type=AdmissionController"));
+      MetricsRegistry.global().gauge("admission.running", ac::getRunning);
+      MetricsRegistry.global().gauge("admission.queued", ac::getQueued);
+      MetricsRegistry.global().gauge("admission.inflight_chars", ac::getInFlightChars);
+      if (rl.serverParams.resultCacheMb > 0) {
+        // the routed language is added to each key by the server
+        StringBuilder config = new StringBuilder(rl.stanfordParams.getPipelineDescription());
+        for (Analytic<? extends WrappedCommunication> a : pipelines.getDefault().get())
+          config.append(';').append(a.getClass().getName())
+              .append(':').append(a.getToolName()).append(':').append(a.getToolVersion());
+        ResultCache rc = new ResultCache(config.toString(), rl.serverParams.resultCacheMb * 1024 * 1024,
+            Optional.ofNullable(rl.serverParams.resultCacheDir).map(Paths::get),
+            rl.serverParams.resultCacheDiskMb * 1024 * 1024);
+        srv.setResultCache(rc);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(rc,
+            new ObjectName("edu.jhu.hlt.concrete.stanford:type=ResultCache"));
+      }
+      if (admin != null) {
+        admin.addStatusSource(srv::report);
+        admin.addStatusSource(st -> st.putAll(MetricsRegistry.global().snapshot()));
+        admin.addStatusSource(st -> {
+          st.put("admission.running", ac.getRunning());
+          st.put("admission.queued", ac.getQueued());
+          st.put("admission.inflight_chars", ac.getInFlightChars());
+          st.put("admission.admitted", ac.getAdmitted());
+          st.put("admission.max_document_chars", ac.getMaxDocumentChars());
+          for (AdmissionController.Rejection r : AdmissionController.Rejection.values())
+            st.put("admission.rejected." + r.name().toLowerCase(), ac.getRejected(r));
+        });
+      }
+
+      if (rl.serverParams.warmupCorpus != null) {
+        readiness.set(Readiness.State.WARMING_UP);
+        WarmUp.run(srv, Paths.get(rl.serverParams.warmupCorpus), rl.serverParams.warmupIterations,
+            workers, nWorkers);
+      }
 
-      ConcreteStanfordThriftServer srv = new ConcreteStanfordThriftServer(analytics);
-      ConcreteServer.createServer(srv, rl.port);
-    } catch (ServerException | UnsupportedEncodingException e) {
+      List<ExtensionMethod> methods = new ArrayList<>();
+      methods.add(new AnnotateBatchMethod(srv));
+      // methods that read and write files on this host are only served on loopback
+      List<ExtensionMethod> localMethods = new ArrayList<>(methods);
+      if (rl.serverParams.referenceRoot != null) {
+        localMethods.add(new AnnotateByReferenceMethod(srv, Paths.get(rl.serverParams.referenceRoot)));
+        if (rl.serverParams.jobParallelism >= 0) {
+          jobs = new JobManager(srv, rl.stanfordParams, Paths.get(rl.serverParams.referenceRoot),
+              rl.serverParams.jobParallelism > 0 ? rl.serverParams.jobParallelism : Math.max(1, nWorkers / 4));
+          localMethods.addAll(JobMethod.all(jobs));
+          final JobManager jm = jobs;
+          MetricsRegistry.global().gauge("jobs.queued", () -> jm.count(JobStatus.State.QUEUED));
+          MetricsRegistry.global().gauge("jobs.running", () -> jm.count(JobStatus.State.RUNNING));
+          if (admin != null)
+            admin.addStatusSource(jobs::report);
+        }
+      }
+      ExtendedAnnotateProcessor proc = new ExtendedAnnotateProcessor(
+          new AnnotateCommunicationService.Processor<>(srv), methods.toArray(new ExtensionMethod[methods.size()]));
+      proc.setMaxRequestBytes(rl.serverParams.maxRequestMb * 1024 * 1024);
+      ExtendedAnnotateProcessor localProc = new ExtendedAnnotateProcessor(
+          new AnnotateCommunicationService.Processor<>(srv),
+          localMethods.toArray(new ExtensionMethod[localMethods.size()]));
+      localProc.setMaxRequestBytes(rl.serverParams.maxRequestMb * 1024 * 1024);
+      ConcreteStanfordServer server = new ConcreteStanfordServer(proc, rl.port, rl.serverParams,
+          workers, nRequestThreads);
+      final ConcreteStanfordServer local;
+      if (localMethods.size() > methods.size()) {
+        final int localPort = rl.serverParams.localPort > 0 ? rl.serverParams.localPort : rl.port + 1;
+        local = new ConcreteStanfordServer(localProc,
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), localPort), rl.serverParams,
+            workers, nRequestThreads);
+        Thread t = new Thread(local::serve, "local-server");
+        t.setDaemon(true);
+        t.start();
+      } else {
+        local = null;
+      }
+      if (rl.serverParams.shmPort > 0)
+        shm = new SharedMemoryServer(localProc, rl.serverParams.shmPort,
+            rl.serverParams.shmDir == null ? SharedMemoryChannel.defaultDirectory() : Paths.get(rl.serverParams.shmDir),
+            rl.serverParams.shmRegionMb * 1024 * 1024, rl.serverParams.getMaxMessageBytes(),
+            rl.serverParams.shmMaxChannels);
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        readiness.set(Readiness.State.STOPPING);
+        // the local server shares the request threads; stop it before they are shut down
+        if (local != null)
+          local.close();
+        server.close();
+      }));
+      Thread watcher = new Thread(() -> {
+        try {
+          while (!server.isServing())
+            Thread.sleep(10);
+          readiness.set(Readiness.State.READY);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }, "readiness");
+      watcher.setDaemon(true);
+      watcher.start();
+      server.serve();
+    } catch (TTransportException | UnsupportedEncodingException e) {
       logger.error("Caught exception while running the server.", e);
     } catch (IOException e) {
-      logger.error("Error setting up analytics", e);
+      logger.error("Error setting up the server", e);
+    } catch (JMException e) {
+      logger.error("Error registering server metrics", e);
+    } catch (AnalyticException e) {
+      logger.error("Error loading the default language", e);
+    } finally {
+      if (shm != null)
+        shm.close();
+      if (jobs != null)
+        jobs.close();
+      if (admin != null)
+        admin.close();
+      if (metrics != null)
+        metrics.close();
     }
   }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolDecorator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsRegistry;
+
+/**
+ * Serves {@link ExtensionMethod}s on the same port and protocol as a
+ * generated processor.
+ * <br>
+ * <br>
+ * The message header is read once to find the method name. Extension
+ * methods are dispatched directly; any other call is handed to the
+ * generated processor, which sees the header it expects.
+ * <br>
+ * <br>
+ * If a request size limit is set, larger requests are answered with a
+ * {@link TApplicationException} before their arguments are deserialized,
+ * so a request's size in memory, not only the number of requests held,
+ * is bounded.
+ */
+public class ExtendedAnnotateProcessor implements TProcessor {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExtendedAnnotateProcessor.class);
+
+  /**
+   * A writer of a reply struct.
+   */
+  @FunctionalInterface
+  public interface ReplyWriter {
+    void write(TProtocol out) throws TException;
+  }
+
+  private final TProcessor base;
+  private final Map<String, ExtensionMethod> methods = new HashMap<>();
+  private long maxRequestBytes = 0;
+
+  /**
+   * @param base the processor for the generated service methods
+   * @param methods extension methods; names must not clash with the service's
+   */
+  public ExtendedAnnotateProcessor(TProcessor base, ExtensionMethod... methods) {
+    this.base = base;
+    for (ExtensionMethod m : methods)
+      if (this.methods.put(m.getName(), m) != null)
+        throw new IllegalArgumentException("Duplicate extension method: " + m.getName());
+  }
+
+  /**
+   * Refuse requests whose serialized form is larger than
+   * <code>maxRequestBytes</code>; if 0, accept any size. Call before the
+   * server starts.
+   */
+  public void setMaxRequestBytes(long maxRequestBytes) {
+    this.maxRequestBytes = maxRequestBytes;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.apache.thrift.TProcessor#process(org.apache.thrift.protocol.TProtocol, org.apache.thrift.protocol.TProtocol)
+   */
+  @Override
+  public boolean process(TProtocol in, TProtocol out) throws TException {
+    TMessage msg = in.readMessageBegin();
+    // -1 if the transport does not hold the whole request in memory
+    final int size = in.getTransport().getBytesRemainingInBuffer();
+    if (this.maxRequestBytes > 0 && size > this.maxRequestBytes) {
+      MetricsRegistry.global().counter("requests.rejected.too_large").increment();
+      LOGGER.info("Rejected {} request of {} bytes; at most {} bytes are accepted",
+          msg.name, size, this.maxRequestBytes);
+      if (msg.type == TMessageType.CALL)
+        replyError(out, msg.name, msg.seqid, TApplicationException.PROTOCOL_ERROR, "Request of "
+            + size + " bytes is larger than this server accepts: " + this.maxRequestBytes + " bytes");
+      return true;
+    }
+    ExtensionMethod m = this.methods.get(msg.name);
+    if (m == null)
+      return this.base.process(new StoredMessageProtocol(in, msg), out);
+    if (msg.type != TMessageType.CALL) {
+      LOGGER.warn("Unexpected message type {} for method {}", msg.type, msg.name);
+      return false;
+    }
+    m.process(msg.seqid, in, out);
+    return true;
+  }
+
+  /**
+   * Write a successful reply.
+   */
+  public static void reply(TProtocol out, String name, int seqid, ReplyWriter result) throws TException {
+    out.writeMessageBegin(new TMessage(name, TMessageType.REPLY, seqid));
+    result.write(out);
+    out.writeMessageEnd();
+    out.getTransport().flush();
+  }
+
+  /**
+   * Reply with a {@link TApplicationException}, e.g. for malformed arguments.
+   */
+  public static void replyError(TProtocol out, String name, int seqid, int type, String message) throws TException {
+    out.writeMessageBegin(new TMessage(name, TMessageType.EXCEPTION, seqid));
+    new TApplicationException(type, message).write(out);
+    out.writeMessageEnd();
+    out.getTransport().flush();
+  }
+
+  /**
+   * Returns an already-read message header to the generated processor.
+   */
+  private static class StoredMessageProtocol extends TProtocolDecorator {
+
+    private final TMessage msg;
+
+    StoredMessageProtocol(TProtocol delegate, TMessage msg) {
+      super(delegate);
+      this.msg = msg;
+    }
+
+    @Override
+    public TMessage readMessageBegin() {
+      return this.msg;
+    }
+  }
+}
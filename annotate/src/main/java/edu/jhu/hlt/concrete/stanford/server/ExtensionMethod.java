@@ -0,0 +1,30 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocol;
+
+/**
+ * A service method served next to the generated
+ * AnnotateCommunicationService methods by {@link ExtendedAnnotateProcessor}.
+ */
+public interface ExtensionMethod {
+
+  /**
+   * @return the Thrift message name of the method
+   */
+  String getName();
+
+  /**
+   * Read the arguments struct, which follows the message header on
+   * <code>in</code>, along with the message end; run the method; and write
+   * the reply to <code>out</code>.
+   *
+   * @param seqid the sequence ID of the call, to echo in the reply
+   * @throws TException on transport or protocol error
+   */
+  void process(int seqid, TProtocol in, TProtocol out) throws TException;
+}
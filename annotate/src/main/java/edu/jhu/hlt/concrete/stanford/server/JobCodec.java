@@ -0,0 +1,332 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TList;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+
+/**
+ * Wire format of the bulk job extension methods. In Thrift IDL, the
+ * methods are:
+ * <pre>
+ * struct JobRequest {
+ *   1: required list&lt;string&gt; inputPaths
+ *   2: required string outputPath
+ * }
+ *
+ * struct JobStatus {
+ *   1: required string jobId
+ *   2: required string state
+ *   3: required string outputPath
+ *   4: required i64 documentCount
+ *   5: required i64 failedCount
+ *   6: required i64 tokenCount
+ *   7: required i64 charCount
+ *   8: required i64 elapsedMillis
+ *   9: optional string error
+ *   10: optional double documentsPerSecond
+ *   11: optional double tokensPerSecond
+ * }
+ *
+ * string submitJob(1: JobRequest request)
+ *     throws (1: services.ConcreteThriftException ex)
+ * JobStatus getJobStatus(1: string jobId)
+ *     throws (1: services.ConcreteThriftException ex)
+ * bool cancelJob(1: string jobId)
+ *     throws (1: services.ConcreteThriftException ex)
+ * </pre>
+ * Paths are on the server's file system. The rates are derived from the
+ * counts and are written for clients that do not compute them.
+ */
+public final class JobCodec {
+
+  public static final String SUBMIT_METHOD = "submitJob";
+  public static final String STATUS_METHOD = "getJobStatus";
+  public static final String CANCEL_METHOD = "cancelJob";
+
+  private static final TField ARGS_REQUEST = new TField("request", TType.STRUCT, (short) 1);
+  private static final TField ARGS_ID = new TField("jobId", TType.STRING, (short) 1);
+
+  private static final TField RESULT_EX = new TField("ex", TType.STRUCT, (short) 1);
+
+  private static final TStruct REQUEST = new TStruct("JobRequest");
+  private static final TField REQ_INPUTS = new TField("inputPaths", TType.LIST, (short) 1);
+  private static final TField REQ_OUTPUT = new TField("outputPath", TType.STRING, (short) 2);
+
+  private static final TStruct STATUS = new TStruct("JobStatus");
+  private static final TField ST_ID = new TField("jobId", TType.STRING, (short) 1);
+  private static final TField ST_STATE = new TField("state", TType.STRING, (short) 2);
+  private static final TField ST_OUTPUT = new TField("outputPath", TType.STRING, (short) 3);
+  private static final TField ST_DOCS = new TField("documentCount", TType.I64, (short) 4);
+  private static final TField ST_FAILED = new TField("failedCount", TType.I64, (short) 5);
+  private static final TField ST_TOKENS = new TField("tokenCount", TType.I64, (short) 6);
+  private static final TField ST_CHARS = new TField("charCount", TType.I64, (short) 7);
+  private static final TField ST_ELAPSED = new TField("elapsedMillis", TType.I64, (short) 8);
+  private static final TField ST_ERROR = new TField("error", TType.STRING, (short) 9);
+  private static final TField ST_DOCS_RATE = new TField("documentsPerSecond", TType.DOUBLE, (short) 10);
+  private static final TField ST_TOKENS_RATE = new TField("tokensPerSecond", TType.DOUBLE, (short) 11);
+
+  private JobCodec() {
+  }
+
+  private static TField success(byte type) {
+    return new TField("success", type, (short) 0);
+  }
+
+  public static void writeSubmitArgs(TProtocol out, JobRequest req) throws TException {
+    out.writeStructBegin(new TStruct(SUBMIT_METHOD + "_args"));
+    out.writeFieldBegin(ARGS_REQUEST);
+    out.writeStructBegin(REQUEST);
+    out.writeFieldBegin(REQ_INPUTS);
+    out.writeListBegin(new TList(TType.STRING, req.getInputPaths().size()));
+    for (String s : req.getInputPaths())
+      out.writeString(s);
+    out.writeListEnd();
+    out.writeFieldEnd();
+    writeString(out, REQ_OUTPUT, req.getOutputPath());
+    out.writeFieldStop();
+    out.writeStructEnd();
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  public static JobRequest readSubmitArgs(TProtocol in) throws TException {
+    JobRequest req = null;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == ARGS_REQUEST.id && f.type == TType.STRUCT)
+        req = readRequest(in);
+      else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    if (req == null)
+      throw new TProtocolException(TProtocolException.INVALID_DATA, "Required field 'request' was not present");
+    return req;
+  }
+
+  private static JobRequest readRequest(TProtocol in) throws TException {
+    List<String> inputs = null;
+    String output = null;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == REQ_INPUTS.id && f.type == TType.LIST) {
+        TList l = in.readListBegin();
+        if (l.elemType != TType.STRING)
+          throw new TProtocolException(TProtocolException.INVALID_DATA, "'inputPaths' must be a list of strings");
+        inputs = new ArrayList<>(l.size);
+        for (int i = 0; i < l.size; i++)
+          inputs.add(in.readString());
+        in.readListEnd();
+      } else if (f.id == REQ_OUTPUT.id && f.type == TType.STRING)
+        output = in.readString();
+      else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    if (inputs == null || output == null)
+      throw new TProtocolException(TProtocolException.INVALID_DATA,
+          "Required fields 'inputPaths' and 'outputPath' must be present");
+    return new JobRequest(inputs, output);
+  }
+
+  public static void writeIdArgs(TProtocol out, String method, String jobId) throws TException {
+    out.writeStructBegin(new TStruct(method + "_args"));
+    writeString(out, ARGS_ID, jobId);
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  public static String readIdArgs(TProtocol in) throws TException {
+    String id = null;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == ARGS_ID.id && f.type == TType.STRING)
+        id = in.readString();
+      else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    if (id == null)
+      throw new TProtocolException(TProtocolException.INVALID_DATA, "Required field 'jobId' was not present");
+    return id;
+  }
+
+  public static void writeSubmitResult(TProtocol out, String jobId) throws TException {
+    out.writeStructBegin(new TStruct(SUBMIT_METHOD + "_result"));
+    writeString(out, success(TType.STRING), jobId);
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  public static void writeCancelResult(TProtocol out, boolean cancelled) throws TException {
+    out.writeStructBegin(new TStruct(CANCEL_METHOD + "_result"));
+    out.writeFieldBegin(success(TType.BOOL));
+    out.writeBool(cancelled);
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  public static void writeStatusResult(TProtocol out, JobStatus s) throws TException {
+    out.writeStructBegin(new TStruct(STATUS_METHOD + "_result"));
+    out.writeFieldBegin(success(TType.STRUCT));
+    out.writeStructBegin(STATUS);
+    writeString(out, ST_ID, s.getJobId());
+    writeString(out, ST_STATE, s.getState().name());
+    writeString(out, ST_OUTPUT, s.getOutputPath());
+    writeI64(out, ST_DOCS, s.getDocumentCount());
+    writeI64(out, ST_FAILED, s.getFailedCount());
+    writeI64(out, ST_TOKENS, s.getTokenCount());
+    writeI64(out, ST_CHARS, s.getCharCount());
+    writeI64(out, ST_ELAPSED, s.getElapsedMillis());
+    if (s.getError().isPresent())
+      writeString(out, ST_ERROR, s.getError().get());
+    out.writeFieldBegin(ST_DOCS_RATE);
+    out.writeDouble(s.getDocumentsPerSecond());
+    out.writeFieldEnd();
+    out.writeFieldBegin(ST_TOKENS_RATE);
+    out.writeDouble(s.getTokensPerSecond());
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  public static void writeException(TProtocol out, String method, ConcreteThriftException ex) throws TException {
+    out.writeStructBegin(new TStruct(method + "_result"));
+    out.writeFieldBegin(RESULT_EX);
+    ex.write(out);
+    out.writeFieldEnd();
+    out.writeFieldStop();
+    out.writeStructEnd();
+  }
+
+  private interface ValueReader<T> {
+    T read(TProtocol in) throws TException;
+  }
+
+  private static <T> T readResult(TProtocol in, String method, byte type, ValueReader<T> reader)
+      throws TException {
+    T v = null;
+    ConcreteThriftException ex = null;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == 0 && f.type == type)
+        v = reader.read(in);
+      else if (f.id == RESULT_EX.id && f.type == TType.STRUCT) {
+        ex = new ConcreteThriftException();
+        ex.read(in);
+      } else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    if (ex != null)
+      throw ex;
+    if (v == null)
+      throw new TProtocolException(TProtocolException.INVALID_DATA, method + " failed: unknown result");
+    return v;
+  }
+
+  /**
+   * @throws ConcreteThriftException if the server rejected the job
+   */
+  public static String readSubmitResult(TProtocol in) throws TException {
+    return readResult(in, SUBMIT_METHOD, TType.STRING, TProtocol::readString);
+  }
+
+  /**
+   * @throws ConcreteThriftException if the job is unknown
+   */
+  public static boolean readCancelResult(TProtocol in) throws TException {
+    return readResult(in, CANCEL_METHOD, TType.BOOL, TProtocol::readBool);
+  }
+
+  /**
+   * @throws ConcreteThriftException if the job is unknown
+   */
+  public static JobStatus readStatusResult(TProtocol in) throws TException {
+    return readResult(in, STATUS_METHOD, TType.STRUCT, JobCodec::readStatus);
+  }
+
+  private static JobStatus readStatus(TProtocol in) throws TException {
+    String id = null;
+    String state = null;
+    String output = null;
+    long docs = 0;
+    long failed = 0;
+    long tokens = 0;
+    long chars = 0;
+    long elapsed = 0;
+    String error = null;
+    in.readStructBegin();
+    TField f;
+    while ((f = in.readFieldBegin()).type != TType.STOP) {
+      if (f.id == ST_ID.id && f.type == TType.STRING)
+        id = in.readString();
+      else if (f.id == ST_STATE.id && f.type == TType.STRING)
+        state = in.readString();
+      else if (f.id == ST_OUTPUT.id && f.type == TType.STRING)
+        output = in.readString();
+      else if (f.id == ST_DOCS.id && f.type == TType.I64)
+        docs = in.readI64();
+      else if (f.id == ST_FAILED.id && f.type == TType.I64)
+        failed = in.readI64();
+      else if (f.id == ST_TOKENS.id && f.type == TType.I64)
+        tokens = in.readI64();
+      else if (f.id == ST_CHARS.id && f.type == TType.I64)
+        chars = in.readI64();
+      else if (f.id == ST_ELAPSED.id && f.type == TType.I64)
+        elapsed = in.readI64();
+      else if (f.id == ST_ERROR.id && f.type == TType.STRING)
+        error = in.readString();
+      else
+        TProtocolUtil.skip(in, f.type);
+      in.readFieldEnd();
+    }
+    in.readStructEnd();
+    final JobStatus.State st;
+    try {
+      st = JobStatus.State.valueOf(state);
+    } catch (IllegalArgumentException | NullPointerException e) {
+      throw new TProtocolException(TProtocolException.INVALID_DATA, "Unknown job state: " + state);
+    }
+    return new JobStatus(id, st, output, docs, failed, tokens, chars, elapsed, error);
+  }
+
+  private static void writeString(TProtocol out, TField f, String v) throws TException {
+    out.writeFieldBegin(f);
+    out.writeString(v);
+    out.writeFieldEnd();
+  }
+
+  private static void writeI64(TProtocol out, TField f, long v) throws TException {
+    out.writeFieldBegin(f);
+    out.writeI64(v);
+    out.writeFieldEnd();
+  }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+import edu.jhu.hlt.concrete.stanford.metrics.RunReport;
+import edu.jhu.hlt.concrete.stanford.runners.ArchiveAnnotator;
+import edu.jhu.hlt.concrete.stanford.runners.StanfordParameterDelegate;
+
+/**
+ * Runs bulk jobs on the server's loaded pipelines: each job annotates
+ * one or more archives into an output archive, as the batch runners do,
+ * without starting a JVM or loading models per archive.
+ * <br>
+ * <br>
+ * Jobs run one at a time, in the order submitted, on their own pool of
+ * workers, so they do not take admission permits from, or fill the result
+ * cache of, interactive requests. Input and output paths are confined to
+ * a root directory on the server's host, and an output may not be one of
+ * its job's inputs. Output, and any side files such as the trace, is
+ * written to temporary files and moved into place, after checking each
+ * path against the root again, only if the job succeeds; a failed or
+ * cancelled job leaves the output paths as they were.
+ * The status of the most recent finished jobs is kept for polling.
+ */
+public class JobManager implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobManager.class);
+
+  private static final int MAX_FINISHED = 1000;
+
+  private final ConcreteStanfordThriftServer srv;
+  private final StanfordParameterDelegate params;
+  private final ServerRoot root;
+  private final int parallelism;
+  private final ExecutorService runner;
+  private final ExecutorService workers;
+
+  // guarded by itself; in submission order
+  private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+  /**
+   * @param params the output options of jobs, such as delta output and
+   * columnar export
+   * @param root the directory that all input and output paths must be under
+   * @param parallelism the most documents of a job to annotate at once
+   * @throws IOException if <code>root</code> does not exist
+   */
+  public JobManager(ConcreteStanfordThriftServer srv, StanfordParameterDelegate params, Path root,
+      int parallelism) throws IOException {
+    this.srv = srv;
+    this.params = params;
+    this.root = new ServerRoot(root);
+    this.parallelism = Math.max(1, parallelism);
+    this.runner = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("job-runner").setDaemon(true).build());
+    this.workers = Executors.newFixedThreadPool(this.parallelism, new ThreadFactoryBuilder()
+        .setNameFormat("job-worker-%d").setDaemon(true).build());
+    LOGGER.info("Running jobs under: {}, {} documents at once", this.root, this.parallelism);
+  }
+
+  private final class Job implements ArchiveAnnotator.Listener {
+    final String id = UUID.randomUUID().toString();
+    final List<Path> inputs;
+    final String requestedOutput;
+    final Path output;
+    final AtomicLong documents = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+    final AtomicLong tokens = new AtomicLong();
+    final AtomicLong chars = new AtomicLong();
+    volatile JobStatus.State state = JobStatus.State.QUEUED;
+    volatile boolean cancelled = false;
+    volatile long start = 0;
+    volatile long end = 0;
+    volatile String error = null;
+    Future<?> future;
+
+    Job(List<Path> inputs, String requestedOutput, Path output) {
+      this.inputs = inputs;
+      this.requestedOutput = requestedOutput;
+      this.output = output;
+    }
+
+    @Override
+    public void onDocument(String docId, long nChars, long nTokens, boolean ok) {
+      (ok ? this.documents : this.failed).incrementAndGet();
+      this.tokens.addAndGet(nTokens);
+      this.chars.addAndGet(nChars);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return this.cancelled || Thread.currentThread().isInterrupted();
+    }
+
+    void finish(JobStatus.State s, String why) {
+      this.error = why;
+      this.end = System.currentTimeMillis();
+      this.state = s;
+    }
+
+    JobStatus status() {
+      final long started = this.start;
+      final long stopped = this.end;
+      final long elapsed = started == 0 ? 0 : (stopped == 0 ? System.currentTimeMillis() : stopped) - started;
+      return new JobStatus(this.id, this.state, this.output.toString(), this.documents.get(),
+          this.failed.get(), this.tokens.get(), this.chars.get(), elapsed, this.error);
+    }
+  }
+
+  /**
+   * Queue a job.
+   *
+   * @return the ID of the job
+   * @throws ConcreteThriftException if a path is invalid, or the output is an input
+   */
+  public String submit(JobRequest req) throws ConcreteThriftException {
+    if (req.getInputPaths().isEmpty())
+      throw new ConcreteThriftException("A job needs at least one input");
+    ImmutableList.Builder<Path> ib = ImmutableList.builder();
+    for (String s : req.getInputPaths())
+      ib.add(this.root.resolveInput(s));
+    List<Path> inputs = ib.build();
+    Path output = this.root.resolveOutput(req.getOutputPath());
+    if (Files.exists(output))
+      for (Path in : inputs)
+        try {
+          if (Files.isSameFile(in, output))
+            throw new ConcreteThriftException("Output is also an input: " + req.getOutputPath());
+        } catch (IOException e) {
+          throw new ConcreteThriftException("Cannot compare output " + req.getOutputPath() + " to inputs: "
+              + e.getMessage());
+        }
+    Job j = new Job(inputs, req.getOutputPath(), output);
+    synchronized (this.jobs) {
+      this.evictFinished();
+      this.jobs.put(j.id, j);
+      j.future = this.runner.submit(() -> this.run(j));
+    }
+    LOGGER.info("Queued job {}: {} -> {}", j.id, j.inputs, j.output);
+    return j.id;
+  }
+
+  private void evictFinished() {
+    int finished = 0;
+    for (Job j : this.jobs.values())
+      if (j.state.isFinished())
+        finished++;
+    Iterator<Job> it = this.jobs.values().iterator();
+    while (finished >= MAX_FINISHED && it.hasNext())
+      if (it.next().state.isFinished()) {
+        it.remove();
+        finished--;
+      }
+  }
+
+  private void run(Job j) {
+    // cancelled after the runner took it, but before it started
+    if (j.cancelled) {
+      j.finish(JobStatus.State.CANCELLED, null);
+      return;
+    }
+    j.start = System.currentTimeMillis();
+    j.state = JobStatus.State.RUNNING;
+    LOGGER.info("Starting job {}", j.id);
+    ArchiveAnnotator annotator = new ArchiveAnnotator(this.srv::annotateForJob, this.params);
+    try {
+      RunReport report = annotator.run(j.inputs, suffix -> this.resolveOutput(j, suffix), this.workers,
+          this.parallelism, j);
+      j.finish(JobStatus.State.SUCCEEDED, null);
+      LOGGER.info("Finished job {}: {}", j.id, j.status());
+      report.log(LOGGER);
+    } catch (CancellationException e) {
+      j.finish(JobStatus.State.CANCELLED, null);
+      LOGGER.info("Cancelled job {}", j.id);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Job {} failed", j.id, e);
+      j.finish(JobStatus.State.FAILED, e.getMessage() == null ? e.getClass().getName() : e.getMessage());
+    }
+  }
+
+  // checked against the root each time, as the directories under it may change while the job waits or runs.
+  // Side files, such as the trace, are checked like the archive, as they are written beside it.
+  private Path resolveOutput(Job j, String suffix) throws IOException {
+    try {
+      return this.root.resolveOutput(j.requestedOutput + suffix);
+    } catch (ConcreteThriftException e) {
+      throw new IOException(e.getMessage());
+    }
+  }
+
+  private Job get(String id) throws ConcreteThriftException {
+    synchronized (this.jobs) {
+      Job j = this.jobs.get(id);
+      if (j == null)
+        throw new ConcreteThriftException("No such job: " + id);
+      return j;
+    }
+  }
+
+  /**
+   * @throws ConcreteThriftException if the job is unknown, or was
+   * finished long enough ago to be forgotten
+   */
+  public JobStatus getStatus(String id) throws ConcreteThriftException {
+    return this.get(id).status();
+  }
+
+  /**
+   * Cancel a job. A queued job will not start; a running job stops after
+   * the documents in progress, and its partial output is discarded.
+   *
+   * @return false if the job had already finished
+   * @throws ConcreteThriftException if the job is unknown
+   */
+  public boolean cancel(String id) throws ConcreteThriftException {
+    Job j = this.get(id);
+    synchronized (this.jobs) {
+      if (j.state.isFinished())
+        return false;
+      j.cancelled = true;
+      if (j.future.cancel(false))
+        j.finish(JobStatus.State.CANCELLED, null);
+    }
+    LOGGER.info("Cancelling job {}", id);
+    return true;
+  }
+
+  /**
+   * @return the number of jobs kept in state <code>s</code>
+   */
+  long count(JobStatus.State s) {
+    synchronized (this.jobs) {
+      return this.jobs.values().stream().filter(j -> j.state == s).count();
+    }
+  }
+
+  /**
+   * Add the number of jobs in each state to <code>status</code>.
+   */
+  void report(Map<String, Object> status) {
+    Map<JobStatus.State, Integer> counts = new LinkedHashMap<>();
+    for (JobStatus.State s : JobStatus.State.values())
+      counts.put(s, 0);
+    synchronized (this.jobs) {
+      for (Job j : this.jobs.values())
+        counts.merge(j.state, 1, Integer::sum);
+    }
+    for (Map.Entry<JobStatus.State, Integer> e : counts.entrySet())
+      status.put("jobs." + e.getKey().name().toLowerCase(), e.getValue());
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.AutoCloseable#close()
+   */
+  @Override
+  public void close() {
+    this.runner.shutdownNow();
+    this.workers.shutdownNow();
+  }
+}
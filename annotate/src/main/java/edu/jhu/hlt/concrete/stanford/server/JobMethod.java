@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.util.List;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+
+/**
+ * Serves one of the bulk job methods of {@link JobCodec} from a
+ * {@link JobManager}.
+ */
+public class JobMethod implements ExtensionMethod {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobMethod.class);
+
+  private final JobManager jobs;
+  private final String name;
+
+  private JobMethod(JobManager jobs, String name) {
+    this.jobs = jobs;
+    this.name = name;
+  }
+
+  /**
+   * @return the submit, status and cancel methods of <code>jobs</code>
+   */
+  public static List<ExtensionMethod> all(JobManager jobs) {
+    return ImmutableList.of(
+        new JobMethod(jobs, JobCodec.SUBMIT_METHOD),
+        new JobMethod(jobs, JobCodec.STATUS_METHOD),
+        new JobMethod(jobs, JobCodec.CANCEL_METHOD));
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.stanford.server.ExtensionMethod#getName()
+   */
+  @Override
+  public String getName() {
+    return this.name;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.stanford.server.ExtensionMethod#process(int, org.apache.thrift.protocol.TProtocol, org.apache.thrift.protocol.TProtocol)
+   */
+  @Override
+  public void process(int seqid, TProtocol in, TProtocol out) throws TException {
+    final JobRequest submitted;
+    final String id;
+    try {
+      submitted = this.name.equals(JobCodec.SUBMIT_METHOD) ? JobCodec.readSubmitArgs(in) : null;
+      id = submitted == null ? JobCodec.readIdArgs(in) : null;
+    } catch (TProtocolException e) {
+      in.readMessageEnd();
+      ExtendedAnnotateProcessor.replyError(out, this.name, seqid,
+          TApplicationException.PROTOCOL_ERROR, e.getMessage());
+      return;
+    }
+    in.readMessageEnd();
+
+    try {
+      switch (this.name) {
+      case JobCodec.SUBMIT_METHOD:
+        final String jobId = this.jobs.submit(submitted);
+        ExtendedAnnotateProcessor.reply(out, this.name, seqid, o -> JobCodec.writeSubmitResult(o, jobId));
+        break;
+      case JobCodec.STATUS_METHOD:
+        final JobStatus s = this.jobs.getStatus(id);
+        ExtendedAnnotateProcessor.reply(out, this.name, seqid, o -> JobCodec.writeStatusResult(o, s));
+        break;
+      default:
+        final boolean cancelled = this.jobs.cancel(id);
+        ExtendedAnnotateProcessor.reply(out, this.name, seqid, o -> JobCodec.writeCancelResult(o, cancelled));
+      }
+    } catch (ConcreteThriftException e) {
+      LOGGER.info("{} failed: {}", this.name, e.getMessage());
+      ExtendedAnnotateProcessor.reply(out, this.name, seqid, o -> JobCodec.writeException(o, this.name, e));
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The archives a bulk job should annotate, and where to write the result,
+ * for {@link JobCodec#SUBMIT_METHOD}.
+ */
+public final class JobRequest {
+
+  private final ImmutableList<String> inputPaths;
+  private final String outputPath;
+
+  /**
+   * @param inputPaths <code>.tar</code> or <code>.tar.gz</code> archives of
+   * Communications, annotated in order
+   * @param outputPath the <code>.tar.gz</code> archive to write
+   */
+  public JobRequest(List<String> inputPaths, String outputPath) {
+    this.inputPaths = ImmutableList.copyOf(inputPaths);
+    this.outputPath = outputPath;
+  }
+
+  public ImmutableList<String> getInputPaths() {
+    return this.inputPaths;
+  }
+
+  public String getOutputPath() {
+    return this.outputPath;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return "JobRequest [inputPaths=" + this.inputPaths + ", outputPath=" + this.outputPath + "]";
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.util.Optional;
+
+/**
+ * The progress of a bulk job, as returned by {@link JobCodec#STATUS_METHOD}.
+ */
+public final class JobStatus {
+
+  /**
+   * The states of a job. Jobs run one at a time, in the order submitted.
+   */
+  public enum State {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    CANCELLED;
+
+    public boolean isFinished() {
+      return this != QUEUED && this != RUNNING;
+    }
+  }
+
+  private final String jobId;
+  private final State state;
+  private final String outputPath;
+  private final long documents;
+  private final long failed;
+  private final long tokens;
+  private final long chars;
+  private final long elapsedMillis;
+  private final String error;
+
+  /**
+   * @param documents documents annotated and written so far
+   * @param failed documents that failed to annotate so far
+   * @param elapsedMillis time spent running; 0 while queued
+   * @param error why the job failed, or <code>null</code>
+   */
+  public JobStatus(String jobId, State state, String outputPath, long documents, long failed,
+      long tokens, long chars, long elapsedMillis, String error) {
+    this.jobId = jobId;
+    this.state = state;
+    this.outputPath = outputPath;
+    this.documents = documents;
+    this.failed = failed;
+    this.tokens = tokens;
+    this.chars = chars;
+    this.elapsedMillis = elapsedMillis;
+    this.error = error;
+  }
+
+  public String getJobId() {
+    return this.jobId;
+  }
+
+  public State getState() {
+    return this.state;
+  }
+
+  public String getOutputPath() {
+    return this.outputPath;
+  }
+
+  public long getDocumentCount() {
+    return this.documents;
+  }
+
+  public long getFailedCount() {
+    return this.failed;
+  }
+
+  public long getTokenCount() {
+    return this.tokens;
+  }
+
+  public long getCharCount() {
+    return this.chars;
+  }
+
+  public long getElapsedMillis() {
+    return this.elapsedMillis;
+  }
+
+  public Optional<String> getError() {
+    return Optional.ofNullable(this.error);
+  }
+
+  /**
+   * @return documents, including failed ones, per second of running time
+   */
+  public double getDocumentsPerSecond() {
+    return this.elapsedMillis == 0 ? 0.0d : (this.documents + this.failed) * 1000.0d / this.elapsedMillis;
+  }
+
+  /**
+   * @return output tokens per second of running time
+   */
+  public double getTokensPerSecond() {
+    return this.elapsedMillis == 0 ? 0.0d : this.tokens * 1000.0d / this.elapsedMillis;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return "JobStatus [jobId=" + this.jobId + ", state=" + this.state + ", documents=" + this.documents
+        + ", failed=" + this.failed + ", elapsedMillis=" + this.elapsedMillis
+        + (this.error == null ? "" : ", error=" + this.error) + "]";
+  }
+}
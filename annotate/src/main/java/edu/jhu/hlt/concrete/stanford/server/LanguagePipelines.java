@@ -0,0 +1,293 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.LanguageIdentification;
+import edu.jhu.hlt.concrete.analytics.base.Analytic;
+import edu.jhu.hlt.concrete.analytics.base.AnalyticException;
+import edu.jhu.hlt.concrete.miscommunication.WrappedCommunication;
+import edu.jhu.hlt.concrete.stanford.AnnotatorLoader;
+import edu.jhu.hlt.concrete.stanford.languages.AnnotationLevel;
+import edu.jhu.hlt.concrete.stanford.languages.LanguageDetector;
+import edu.jhu.hlt.concrete.stanford.languages.PipelineLanguage;
+
+/**
+ * The annotation pipelines a server hosts, one per language and
+ * {@link AnnotationLevel}, and the choice of pipeline for each request.
+ * <br>
+ * <br>
+ * A request goes to the most probable hosted language of the
+ * Communication's <code>lidList</code>; failing that, to the language its
+ * text is detected as, if detection is on; failing that, to the default
+ * language. It is annotated up to the level named by {@link #LEVEL_KEY} in
+ * its <code>keyValueMap</code>, or the default level.
+ * <br>
+ * <br>
+ * Pipelines are built on the first request routed to them, before it is
+ * admitted, so that loading does not hold an annotation slot. Annotators
+ * with identical settings are shared by all pipelines through the CoreNLP
+ * annotator pool, so the levels of a language load its models once.
+ */
+final class LanguagePipelines {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LanguagePipelines.class);
+
+  /**
+   * <code>keyValueMap</code> key of the level to annotate a request up to:
+   * <code>tokenize</code>, <code>pre-coref</code> or <code>all</code>.
+   */
+  public static final String LEVEL_KEY = "concrete-stanford.level";
+
+  /**
+   * Builds the analytics of one language and level.
+   */
+  interface Loader {
+    List<Analytic<? extends WrappedCommunication>> load(PipelineLanguage lang, AnnotationLevel level)
+        throws IOException;
+  }
+
+  /**
+   * The analytics of one language and level, built on first use.
+   */
+  static final class Pipeline {
+
+    private final String name;
+    private final PipelineLanguage lang;
+    private final AnnotationLevel level;
+    private final Loader loader;
+    private volatile ImmutableList<Analytic<? extends WrappedCommunication>> analytics;
+    private volatile long loadMillis = -1;
+
+    private Pipeline(String name, PipelineLanguage lang, AnnotationLevel level, Loader loader) {
+      this.name = name;
+      this.lang = lang;
+      this.level = level;
+      this.loader = loader;
+    }
+
+    /**
+     * @return the analytics to run, in order; never empty
+     * @throws AnalyticException if the models failed to load
+     */
+    ImmutableList<Analytic<? extends WrappedCommunication>> get() throws AnalyticException {
+      ImmutableList<Analytic<? extends WrappedCommunication>> a = this.analytics;
+      if (a == null)
+        synchronized (this) {
+          a = this.analytics;
+          if (a == null) {
+            LOGGER.info("Loading pipeline: {}", this.name);
+            final long start = System.currentTimeMillis();
+            try {
+              a = ImmutableList.copyOf(this.loader.load(this.lang, this.level));
+            } catch (IOException | RuntimeException e) {
+              LOGGER.error("Failed to load pipeline: {}", this.name, e);
+              throw new AnalyticException("Failed to load the " + this.name + " pipeline: " + e.getMessage());
+            }
+            if (a.isEmpty())
+              throw new AnalyticException("No analytics for the " + this.name + " pipeline");
+            this.loadMillis = System.currentTimeMillis() - start;
+            LOGGER.info("Loaded pipeline {} in {} ms", this.name, this.loadMillis);
+            this.analytics = a;
+          }
+        }
+      return a;
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+      return this.name;
+    }
+  }
+
+  private final Map<PipelineLanguage, Map<AnnotationLevel, Pipeline>> pipelines = new EnumMap<>(PipelineLanguage.class);
+  private final PipelineLanguage defaultLanguage;
+  private final AnnotationLevel defaultLevel;
+  private final Pipeline defaultPipeline;
+  private final boolean detect;
+
+  /**
+   * @param languages the languages to host; the first is the default
+   * @param defaultLevel the level of requests that do not name one
+   * @param loader builds the analytics of a language and level
+   * @param detect if true, detect the language of requests without a hosted
+   * language in their <code>lidList</code>
+   */
+  LanguagePipelines(List<PipelineLanguage> languages, AnnotationLevel defaultLevel, Loader loader,
+      boolean detect) {
+    if (languages.isEmpty())
+      throw new IllegalArgumentException("need >0 languages");
+    for (PipelineLanguage l : languages) {
+      Map<AnnotationLevel, Pipeline> levels = new EnumMap<>(AnnotationLevel.class);
+      for (AnnotationLevel al : AnnotationLevel.values())
+        levels.put(al, new Pipeline(l.toString() + "/" + al.toString(), l, al, loader));
+      this.pipelines.put(l, levels);
+    }
+    this.defaultLanguage = languages.get(0);
+    this.defaultLevel = defaultLevel;
+    this.defaultPipeline = this.pipelines.get(this.defaultLanguage).get(defaultLevel);
+    this.detect = detect;
+  }
+
+  private LanguagePipelines(List<Analytic<? extends WrappedCommunication>> analytics) {
+    if (analytics.isEmpty())
+      throw new IllegalArgumentException("need >0 analytics");
+    ImmutableList<Analytic<? extends WrappedCommunication>> fixed = ImmutableList.copyOf(analytics);
+    this.defaultLanguage = null;
+    this.defaultLevel = null;
+    this.defaultPipeline = new Pipeline("default", null, null, (l, al) -> fixed);
+    this.detect = false;
+  }
+
+  /**
+   * @return a single pipeline, used for every request regardless of its
+   * language or level
+   */
+  static LanguagePipelines of(List<Analytic<? extends WrappedCommunication>> analytics) {
+    return new LanguagePipelines(analytics);
+  }
+
+  /**
+   * @return the pipeline of requests that name neither a hosted language nor a level
+   */
+  Pipeline getDefault() {
+    return this.defaultPipeline;
+  }
+
+  /**
+   * @return the pipeline to annotate <code>c</code> with
+   * @throws AnalyticException if <code>c</code> asks for an unknown level
+   */
+  Pipeline route(Communication c) throws AnalyticException {
+    if (this.pipelines.isEmpty())
+      return this.defaultPipeline;
+    return this.pipelines.get(this.language(c)).get(this.level(c));
+  }
+
+  /**
+   * Load the default pipeline and, if <code>allLanguages</code>, the default
+   * level of every other language, side by side.
+   *
+   * @throws AnalyticException if a pipeline fails to load
+   */
+  void preload(boolean allLanguages) throws AnalyticException {
+    List<Pipeline> ps = new ArrayList<>();
+    ps.add(this.defaultPipeline);
+    if (allLanguages)
+      for (Map<AnnotationLevel, Pipeline> levels : this.pipelines.values())
+        if (levels.get(this.defaultLevel) != this.defaultPipeline)
+          ps.add(levels.get(this.defaultLevel));
+
+    ExecutorService loaders = Executors.newFixedThreadPool(ps.size(), new ThreadFactoryBuilder()
+        .setNameFormat("pipeline-loader-%d")
+        .setDaemon(true)
+        .build());
+    try {
+      List<Future<?>> fs = new ArrayList<>();
+      for (Pipeline p : ps)
+        fs.add(loaders.submit(() -> p.get()));
+      for (Future<?> f : fs)
+        try {
+          f.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new AnalyticException("Interrupted while loading pipelines");
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof AnalyticException)
+            throw (AnalyticException) e.getCause();
+          throw new AnalyticException("Failed to load pipelines: " + e.getCause().getMessage());
+        }
+    } finally {
+      loaders.shutdown();
+    }
+  }
+
+  /**
+   * Report the load time of each loaded pipeline, and of each model.
+   */
+  void report(Map<String, Object> status) {
+    List<Pipeline> ps = new ArrayList<>();
+    ps.add(this.defaultPipeline);
+    for (Map<AnnotationLevel, Pipeline> levels : this.pipelines.values())
+      ps.addAll(levels.values());
+    for (Pipeline p : ps)
+      if (p.loadMillis >= 0)
+        status.put("pipeline_load_ms." + p.name, p.loadMillis);
+    for (Map.Entry<String, Long> e : AnnotatorLoader.getLoadTimes().entrySet())
+      status.put("model_load_ms." + e.getKey(), e.getValue());
+  }
+
+  private PipelineLanguage language(Communication c) {
+    if (this.pipelines.size() == 1)
+      return this.defaultLanguage;
+
+    Optional<PipelineLanguage> lid = this.fromLidList(c);
+    if (lid.isPresent())
+      return lid.get();
+    if (this.detect && c.isSetText()) {
+      Optional<PipelineLanguage> detected = LanguageDetector.detect(c.getText());
+      if (detected.isPresent() && this.pipelines.containsKey(detected.get()))
+        return detected.get();
+    }
+    return this.defaultLanguage;
+  }
+
+  private AnnotationLevel level(Communication c) throws AnalyticException {
+    String v = c.isSetKeyValueMap() ? c.getKeyValueMap().get(LEVEL_KEY) : null;
+    if (v == null)
+      return this.defaultLevel;
+    try {
+      return AnnotationLevel.getEnumeration(v);
+    } catch (IllegalArgumentException e) {
+      throw new AnalyticException("Unknown " + LEVEL_KEY + ": " + v);
+    }
+  }
+
+  private Optional<PipelineLanguage> fromLidList(Communication c) {
+    if (!c.isSetLidList())
+      return Optional.empty();
+    PipelineLanguage best = null;
+    double bestP = Double.NEGATIVE_INFINITY;
+    for (LanguageIdentification lid : c.getLidList()) {
+      if (!lid.isSetLanguageToProbabilityMap())
+        continue;
+      for (Map.Entry<String, Double> e : lid.getLanguageToProbabilityMap().entrySet()) {
+        PipelineLanguage l;
+        try {
+          l = PipelineLanguage.getEnumeration(e.getKey());
+        } catch (IllegalArgumentException ex) {
+          LOGGER.debug("Ignoring unsupported language in lidList: {}", e.getKey());
+          continue;
+        }
+        if (this.pipelines.containsKey(l) && e.getValue() > bestP) {
+          best = l;
+          bestP = e.getValue();
+        }
+      }
+    }
+    return Optional.ofNullable(best);
+  }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+import edu.jhu.hlt.concrete.stanford.client.ClientParameterDelegate;
+import edu.jhu.hlt.concrete.stanford.client.PooledAnnotateClient;
+import edu.jhu.hlt.concrete.stanford.metrics.LogHistogram;
+
+/**
+ * Replays the Communications of an archive against one or more annotation
+ * servers, and reports throughput, latency percentiles and error rates by
+ * document size, and the servers' heap use over the run.
+ * <br>
+ * <br>
+ * In closed-loop mode, a fixed number of callers each send a request as
+ * soon as their last one is answered, which measures capacity. In
+ * open-loop mode, requests are sent at a fixed rate whether or not earlier
+ * ones were answered, as independent clients would send them; latency is
+ * then measured from when each request was due, so time spent queued
+ * behind a saturated server is counted rather than hidden.
+ * <br>
+ * <br>
+ * Heap use is read from the admin endpoint's <code>/status</code>, if
+ * given. Requests in flight are also limited by
+ * <code>--connections-per-server</code>.
+ */
+public class LoadGenerator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LoadGenerator.class);
+
+  /**
+   * How requests are scheduled.
+   */
+  public enum Mode {
+    OPEN,
+    CLOSED
+  }
+
+  @Parameter(names = "--help", help = true,
+      description = "Print the usage information and exit.")
+  private boolean help;
+
+  @Parameter(names = "--archive", required = true,
+      description = "A .tar or .tar.gz archive of Communications to replay, in order, repeating as needed.")
+  private String archive;
+
+  @Parameter(names = "--mode",
+      description = "CLOSED: --concurrency callers, each waiting for its last answer. OPEN: --rate requests per second.")
+  private Mode mode = Mode.CLOSED;
+
+  @Parameter(names = "--concurrency",
+      description = "The number of callers in closed-loop mode.")
+  private int concurrency = 4;
+
+  @Parameter(names = "--rate",
+      description = "Requests per second in open-loop mode.")
+  private double rate = 10;
+
+  @Parameter(names = "--max-outstanding",
+      description = "In open-loop mode, requests due while this many are unanswered are dropped and counted.")
+  private int maxOutstanding = 1000;
+
+  @Parameter(names = "--duration-s",
+      description = "How long to send requests for.")
+  private long durationS = 60;
+
+  @Parameter(names = "--requests",
+      description = "If positive, stop after sending this many requests.")
+  private long requests = 0;
+
+  @Parameter(names = "--size-buckets",
+      description = "Upper bounds, in characters of text, of the document sizes to report separately.")
+  private List<Integer> sizeBuckets = new ArrayList<>(Arrays.asList(1_000, 10_000, 100_000));
+
+  @Parameter(names = "--admin-url",
+      description = "The admin endpoint of the server, e.g. http://localhost:8080, to sample heap use from.")
+  private String adminUrl = null;
+
+  @ParametersDelegate
+  private ClientParameterDelegate clientParams = new ClientParameterDelegate();
+
+  private static final class Bucket {
+    final String label;
+    final LogHistogram latencyMicros = new LogHistogram();
+    final AtomicLong sent = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+    final AtomicLong failed = new AtomicLong();
+
+    Bucket(String label) {
+      this.label = label;
+    }
+
+    void record(long startNanos, Throwable t) {
+      if (t == null)
+        this.latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+      else if (t instanceof ConcreteThriftException)
+        this.rejected.incrementAndGet();
+      else
+        this.failed.incrementAndGet();
+    }
+  }
+
+  private final List<Bucket> buckets = new ArrayList<>();
+  private final Bucket all = new Bucket("all");
+  private final AtomicLong dropped = new AtomicLong();
+  private final LongSummaryStatistics heap = new LongSummaryStatistics();
+  private volatile boolean running = true;
+
+  private Bucket bucket(Communication c) {
+    final long chars = c.isSetText() ? c.getText().length() : 0;
+    for (int i = 0; i < this.sizeBuckets.size(); i++)
+      if (chars <= this.sizeBuckets.get(i))
+        return this.buckets.get(i);
+    return this.buckets.get(this.buckets.size() - 1);
+  }
+
+  private void record(Communication c, long startNanos, Throwable t) {
+    Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    if (cause != null)
+      LOGGER.debug("Request for {} failed: {}", c.getId(), cause.getMessage());
+    this.bucket(c).record(startNanos, cause);
+    this.all.record(startNanos, cause);
+  }
+
+  private boolean take(AtomicLong issued, long deadline) {
+    if (!this.running || System.nanoTime() >= deadline)
+      return false;
+    return this.requests <= 0 || issued.getAndIncrement() < this.requests;
+  }
+
+  private void closedLoop(PooledAnnotateClient client, List<Communication> docs, long deadline)
+      throws InterruptedException {
+    final AtomicLong issued = new AtomicLong();
+    final AtomicLong next = new AtomicLong();
+    List<Thread> callers = new ArrayList<>();
+    for (int i = 0; i < Math.max(1, this.concurrency); i++) {
+      Thread t = new Thread(() -> {
+        while (this.take(issued, deadline)) {
+          Communication c = docs.get((int) (next.getAndIncrement() % docs.size()));
+          this.bucket(c).sent.incrementAndGet();
+          this.all.sent.incrementAndGet();
+          final long start = System.nanoTime();
+          try {
+            client.annotate(c);
+            this.record(c, start, null);
+          } catch (TException | RuntimeException e) {
+            this.record(c, start, e);
+          }
+        }
+      }, "load-caller-" + i);
+      t.start();
+      callers.add(t);
+    }
+    for (Thread t : callers)
+      t.join();
+  }
+
+  private void openLoop(PooledAnnotateClient client, List<Communication> docs, long deadline)
+      throws InterruptedException {
+    final AtomicLong issued = new AtomicLong();
+    final AtomicInteger outstanding = new AtomicInteger();
+    final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(this.rate, 0.001));
+    long due = System.nanoTime();
+    for (long i = 0; this.take(issued, deadline); i++) {
+      due += interval;
+      for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime())
+        LockSupport.parkNanos(wait);
+      if (outstanding.get() >= this.maxOutstanding) {
+        this.dropped.incrementAndGet();
+        continue;
+      }
+      final Communication c = docs.get((int) (i % docs.size()));
+      final long start = due;
+      this.bucket(c).sent.incrementAndGet();
+      this.all.sent.incrementAndGet();
+      outstanding.incrementAndGet();
+      client.annotateAsync(c).whenComplete((r, t) -> {
+        this.record(c, start, t);
+        outstanding.decrementAndGet();
+      });
+    }
+    while (outstanding.get() > 0)
+      Thread.sleep(10);
+  }
+
+  private void sampleHeap() {
+    while (this.running) {
+      try {
+        HttpURLConnection conn = (HttpURLConnection) new URL(this.adminUrl + "/status").openConnection();
+        conn.setConnectTimeout(1000);
+        conn.setReadTimeout(1000);
+        try (BufferedReader r = new BufferedReader(
+            new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+          String line;
+          while ((line = r.readLine()) != null)
+            if (line.startsWith("heap.used_bytes "))
+              synchronized (this.heap) {
+                this.heap.accept(Long.parseLong(line.substring(line.indexOf(' ') + 1).trim()));
+              }
+        }
+      } catch (IOException | NumberFormatException e) {
+        LOGGER.debug("Failed to read server status", e);
+      }
+      try {
+        Thread.sleep(1000);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void progress(long start) {
+    while (this.running) {
+      try {
+        Thread.sleep(10_000);
+      } catch (InterruptedException e) {
+        return;
+      }
+      final double s = (System.nanoTime() - start) / 1e9;
+      LOGGER.info("{} s: {} sent, {} answered ({} per second), {} errors", String.format("%.0f", s),
+          this.all.sent.get(), this.all.latencyMicros.getCount(),
+          String.format("%.1f", this.all.latencyMicros.getCount() / s),
+          this.all.rejected.get() + this.all.failed.get());
+    }
+  }
+
+  private void run() throws IOException, InterruptedException {
+    List<Communication> docs = WarmUp.read(Paths.get(this.archive));
+    if (docs.isEmpty())
+      throw new IOException("No Communications in " + this.archive);
+    long lower = 0;
+    for (int b : this.sizeBuckets) {
+      this.buckets.add(new Bucket(lower + "-" + b));
+      lower = b + 1;
+    }
+    this.buckets.add(new Bucket(">" + (lower - 1)));
+
+    Thread heapSampler = null;
+    if (this.adminUrl != null) {
+      heapSampler = new Thread(this::sampleHeap, "heap-sampler");
+      heapSampler.setDaemon(true);
+      heapSampler.start();
+    }
+    LOGGER.info("Replaying {} documents, {} mode, for up to {} s", docs.size(), this.mode, this.durationS);
+    final long start = System.nanoTime();
+    Thread progress = new Thread(() -> this.progress(start), "load-progress");
+    progress.setDaemon(true);
+    progress.start();
+    final long deadline = start + TimeUnit.SECONDS.toNanos(this.durationS);
+    try (PooledAnnotateClient client = new PooledAnnotateClient(this.clientParams)) {
+      if (this.mode == Mode.OPEN)
+        this.openLoop(client, docs, deadline);
+      else
+        this.closedLoop(client, docs, deadline);
+    } finally {
+      this.running = false;
+      progress.interrupt();
+      if (heapSampler != null)
+        heapSampler.interrupt();
+    }
+    this.report((System.nanoTime() - start) / 1e9);
+  }
+
+  private static String ms(long micros) {
+    return String.format("%.1f", micros / 1000.0d);
+  }
+
+  private void report(double seconds) {
+    LOGGER.info("Ran for {} s", String.format("%.1f", seconds));
+    LOGGER.info(String.format("%-16s %8s %8s %8s %7s %9s %9s %9s %9s %9s",
+        "chars", "sent", "ok", "errors", "err%", "ok/s", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+    List<Bucket> rows = new ArrayList<>(this.buckets);
+    rows.add(this.all);
+    for (Bucket b : rows) {
+      final long ok = b.latencyMicros.getCount();
+      final long errors = b.rejected.get() + b.failed.get();
+      final long sent = b.sent.get();
+      LOGGER.info(String.format("%-16s %8d %8d %8d %6.2f%% %9.2f %9s %9s %9s %9s",
+          b.label, sent, ok, errors, sent == 0 ? 0.0d : 100.0d * errors / sent, ok / seconds,
+          ms(b.latencyMicros.getPercentile(0.5)), ms(b.latencyMicros.getPercentile(0.9)),
+          ms(b.latencyMicros.getPercentile(0.99)), ms(b.latencyMicros.getMax())));
+    }
+    LOGGER.info("Errors: {} reported by the server (rejected or failed documents), {} connection or protocol errors",
+        this.all.rejected.get(), this.all.failed.get());
+    if (this.mode == Mode.OPEN)
+      LOGGER.info("Dropped {} requests due while {} were outstanding", this.dropped.get(), this.maxOutstanding);
+    synchronized (this.heap) {
+      if (this.heap.getCount() > 0)
+        LOGGER.info("Server heap used: min {} MB, mean {} MB, max {} MB over {} samples",
+            this.heap.getMin() / (1024 * 1024), String.format("%.0f", this.heap.getAverage() / (1024 * 1024)),
+            this.heap.getMax() / (1024 * 1024), this.heap.getCount());
+    }
+  }
+
+  public static void main(String[] args) {
+    LoadGenerator lg = new LoadGenerator();
+    JCommander jc = JCommander.newBuilder().addObject(lg).build();
+    jc.parse(args);
+    jc.setProgramName(LoadGenerator.class.getName());
+    if (lg.help) {
+      jc.usage();
+      return;
+    }
+    try {
+      lg.run();
+    } catch (IOException e) {
+      LOGGER.error("Failed to run the load test", e);
+      System.exit(1);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOGGER.error("Interrupted");
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the startup state of the server, for readiness probes.
+ * <br>
+ * <br>
+ * If a ready file is configured, it is written once the server is
+ * {@link State#READY}, and removed when it stops, so an orchestrator can
+ * wait on the file instead of on the port: the port opens before the
+ * selector threads serve requests.
+ */
+final class Readiness {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(Readiness.class);
+
+  enum State {
+    LOADING,
+    WARMING_UP,
+    READY,
+    STOPPING
+  }
+
+  private final Optional<Path> readyFile;
+  private final long startMillis = System.currentTimeMillis();
+  private volatile State state = State.LOADING;
+  private volatile long readyMillis = -1;
+
+  /**
+   * @param readyFile the file to write once ready, if any; removed now if it
+   * was left by an earlier run
+   * @throws IOException on error removing a stale ready file
+   */
+  Readiness(Optional<Path> readyFile) throws IOException {
+    this.readyFile = readyFile;
+    if (readyFile.isPresent())
+      Files.deleteIfExists(readyFile.get());
+  }
+
+  State get() {
+    return this.state;
+  }
+
+  boolean isReady() {
+    return this.state == State.READY;
+  }
+
+  /**
+   * @return milliseconds from construction until ready, or -1 if not yet ready
+   */
+  long getStartupMillis() {
+    return this.readyMillis;
+  }
+
+  long getUptimeMillis() {
+    return System.currentTimeMillis() - this.startMillis;
+  }
+
+  synchronized void set(State s) {
+    if (this.state == State.STOPPING)
+      return;
+    this.state = s;
+    LOGGER.info("Server state: {}", s);
+    if (s == State.READY) {
+      this.readyMillis = this.getUptimeMillis();
+      LOGGER.info("Server ready {} ms after launch", this.readyMillis);
+      this.writeReadyFile();
+    } else if (s == State.STOPPING && this.readyFile.isPresent()) {
+      try {
+        Files.deleteIfExists(this.readyFile.get());
+      } catch (IOException e) {
+        LOGGER.warn("Failed to remove ready file: {}", this.readyFile.get(), e);
+      }
+    }
+  }
+
+  private void writeReadyFile() {
+    if (!this.readyFile.isPresent())
+      return;
+    Path p = this.readyFile.get();
+    try {
+      Path tmp = p.resolveSibling(p.getFileName().toString() + ".tmp");
+      Files.write(tmp, ("ready " + this.readyMillis + "\n").getBytes(StandardCharsets.UTF_8));
+      Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOGGER.error("Failed to write ready file: {}", p, e);
+    }
+  }
+}
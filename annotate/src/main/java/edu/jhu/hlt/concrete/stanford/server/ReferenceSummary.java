@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+/**
+ * What the server wrote for an {@link AnnotationReference}.
+ */
+public final class ReferenceSummary {
+
+  private final String communicationId;
+  private final String outputPath;
+  private final int sentences;
+  private final int tokens;
+  private final long outputBytes;
+  private final long millis;
+
+  public ReferenceSummary(String communicationId, String outputPath, int sentences, int tokens,
+      long outputBytes, long millis) {
+    this.communicationId = communicationId;
+    this.outputPath = outputPath;
+    this.sentences = sentences;
+    this.tokens = tokens;
+    this.outputBytes = outputBytes;
+    this.millis = millis;
+  }
+
+  public String getCommunicationId() {
+    return this.communicationId;
+  }
+
+  /**
+   * @return the absolute path written to
+   */
+  public String getOutputPath() {
+    return this.outputPath;
+  }
+
+  public int getSentenceCount() {
+    return this.sentences;
+  }
+
+  public int getTokenCount() {
+    return this.tokens;
+  }
+
+  /**
+   * @return the size of the serialized output
+   */
+  public long getOutputBytes() {
+    return this.outputBytes;
+  }
+
+  /**
+   * @return time spent by the server on the request, including I/O
+   */
+  public long getMillis() {
+    return this.millis;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return "ReferenceSummary [communicationId=" + this.communicationId + ", outputPath=" + this.outputPath
+        + ", sentences=" + this.sentences + ", tokens=" + this.tokens + ", outputBytes=" + this.outputBytes
+        + ", millis=" + this.millis + "]";
+  }
+}
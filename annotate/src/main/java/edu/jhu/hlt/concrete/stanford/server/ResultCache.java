@@ -0,0 +1,440 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.Sentence;
+import edu.jhu.hlt.concrete.TextSpan;
+import edu.jhu.hlt.concrete.Token;
+import edu.jhu.hlt.concrete.Tokenization;
+import edu.jhu.hlt.concrete.serialization.CommunicationSerializer;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+import edu.jhu.hlt.concrete.util.ConcreteException;
+
+/**
+ * Caches annotation results by input content, and shares one computation
+ * between identical concurrent requests.
+ * <br>
+ * <br>
+ * The key is a SHA-256 hash of the server configuration, the pipeline the
+ * request is routed to, the text, and the Sections the caller sent: their kind, label and TextSpan, their
+ * Sentences' TextSpans, and any tokens. UUIDs and other fields are not
+ * part of the key; a hit is adapted to the caller by {@link UuidRebinder}.
+ * Requests that already carry entity mentions, entities, or token-level
+ * annotations are not cached, as those are not part of the key.
+ * <br>
+ * <br>
+ * Results are held compact-serialized in memory, evicted least recently
+ * used first once they exceed a byte budget. If a directory is configured,
+ * every result is also written there, evicted the same way under its own
+ * budget, and read back on a memory miss. Entries left by an earlier run
+ * are reused, oldest evicted first if they exceed the budget, and
+ * unfinished writes are removed.
+ * <br>
+ * <br>
+ * A request identical to one being computed waits for that result, up to
+ * its own deadline.
+ */
+public class ResultCache implements ResultCacheMXBean {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResultCache.class);
+
+  /**
+   * Computes a result on a cache miss.
+   */
+  @FunctionalInterface
+  public interface Computation {
+    Communication compute(Communication c) throws TException;
+  }
+
+  private final String configuration;
+  private final long maxMemoryBytes;
+  private final Optional<Path> dir;
+  private final long maxDiskBytes;
+  private final CommunicationSerializer ser = new CompactCommunicationSerializer();
+
+  // access-ordered: iteration starts at the least recently used entry
+  private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+  private long memoryBytes = 0;
+  private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+  private long diskBytes = 0;
+
+  private final ConcurrentHashMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+  private final AtomicLong memoryHits = new AtomicLong();
+  private final AtomicLong diskHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong shared = new AtomicLong();
+  private final AtomicLong uncacheable = new AtomicLong();
+
+  /**
+   * @param configuration identifies everything besides the input that
+   * determines the output, such as the annotators and their versions
+   * @param maxMemoryBytes memory budget for cached results
+   * @param dir directory for the on-disk tier, if any; created if absent
+   * @param maxDiskBytes disk budget for cached results
+   * @throws IOException on error reading the on-disk tier
+   */
+  public ResultCache(String configuration, long maxMemoryBytes, Optional<Path> dir, long maxDiskBytes)
+      throws IOException {
+    this.configuration = configuration;
+    this.maxMemoryBytes = maxMemoryBytes;
+    this.dir = dir;
+    this.maxDiskBytes = maxDiskBytes;
+    if (dir.isPresent()) {
+      Files.createDirectories(dir.get());
+      // entries from an earlier run with the same configuration are reusable,
+      // as the configuration is part of the key.
+      List<Path> files;
+      try (Stream<Path> s = Files.list(dir.get())) {
+        files = s.collect(Collectors.toList());
+      }
+      List<Path> entries = new ArrayList<>();
+      for (Path p : files) {
+        String name = p.getFileName().toString();
+        if (name.endsWith(".comm"))
+          entries.add(p);
+        else if (name.endsWith(".tmp"))
+          // a write interrupted by the end of an earlier run
+          Files.deleteIfExists(p);
+      }
+      // least recently written first, so those are evicted first
+      entries.sort(Comparator.comparing(ResultCache::lastModified));
+      for (Path p : entries) {
+        final long sz = Files.size(p);
+        String name = p.getFileName().toString();
+        this.disk.put(name.substring(0, name.length() - ".comm".length()), sz);
+        this.diskBytes += sz;
+      }
+      LOGGER.info("Result cache found {} entries ({} bytes) on disk", this.disk.size(), this.diskBytes);
+      this.deleteAll(this.evictDisk());
+    }
+  }
+
+  private static long lastModified(Path p) {
+    try {
+      return Files.getLastModifiedTime(p).toMillis();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  static boolean isCacheable(Communication c) {
+    if (!c.isSetText() || c.isSetEntityMentionSetList() || c.isSetEntitySetList())
+      return false;
+    if (c.isSetSectionList())
+      for (Section s : c.getSectionList())
+        if (s.isSetSentenceList())
+          for (Sentence st : s.getSentenceList()) {
+            Tokenization t = st.getTokenization();
+            if (t != null && (t.isSetTokenTaggingList() || t.isSetParseList() || t.isSetDependencyParseList()
+                || t.isSetSpanLinkList()))
+              return false;
+          }
+    return true;
+  }
+
+  String key(Communication c, String variant) {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is required of every JVM", e);
+    }
+    update(md, this.configuration);
+    update(md, variant);
+    update(md, c.getText());
+    if (c.isSetSectionList())
+      for (Section s : c.getSectionList()) {
+        update(md, "section");
+        update(md, s.getKind());
+        update(md, s.getLabel());
+        update(md, s.getTextSpan());
+        if (s.isSetSentenceList())
+          for (Sentence st : s.getSentenceList()) {
+            update(md, "sentence");
+            update(md, st.getTextSpan());
+            if (st.isSetTokenization() && st.getTokenization().isSetTokenList())
+              for (Token t : st.getTokenization().getTokenList().getTokenList()) {
+                update(md, t.getText());
+                update(md, t.getTextSpan());
+              }
+          }
+      }
+    StringBuilder sb = new StringBuilder(64);
+    for (byte b : md.digest())
+      sb.append(String.format("%02x", b));
+    return sb.toString();
+  }
+
+  private static void update(MessageDigest md, String s) {
+    if (s == null) {
+      md.update((byte) 0);
+      return;
+    }
+    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+    md.update((byte) 1);
+    md.update(intBytes(b.length));
+    md.update(b);
+  }
+
+  private static void update(MessageDigest md, TextSpan ts) {
+    if (ts == null) {
+      md.update((byte) 0);
+      return;
+    }
+    md.update((byte) 1);
+    md.update(intBytes(ts.getStart()));
+    md.update(intBytes(ts.getEnding()));
+  }
+
+  private static byte[] intBytes(int i) {
+    return new byte[] { (byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i };
+  }
+
+  /**
+   * Return the cached result for <code>c</code>, adapted to it, or compute
+   * it. If an identical request is being computed, wait for it instead.
+   *
+   * @param variant identifies the pipeline <code>c</code> is annotated with,
+   * if the server hosts several
+   * @param deadlineMillis the longest to wait for an identical request; 0 for no limit
+   * @throws TException as thrown by the computation, or if the deadline passes
+   */
+  public Communication annotate(Communication c, String variant, long deadlineMillis, Computation compute)
+      throws TException {
+    if (!isCacheable(c)) {
+      this.uncacheable.incrementAndGet();
+      return compute.compute(c);
+    }
+
+    final String k = this.key(c, variant);
+    Optional<byte[]> hit = this.lookup(k);
+    if (hit.isPresent())
+      return this.adapt(hit.get(), c);
+
+    CompletableFuture<byte[]> mine = new CompletableFuture<>();
+    CompletableFuture<byte[]> running = this.inFlight.putIfAbsent(k, mine);
+    if (running != null) {
+      this.shared.incrementAndGet();
+      try {
+        byte[] b = deadlineMillis > 0 ? running.get(deadlineMillis, TimeUnit.MILLISECONDS) : running.get();
+        return this.adapt(b, c);
+      } catch (TimeoutException e) {
+        throw new ConcreteThriftException("Deadline of " + deadlineMillis
+            + " ms passed while waiting for an identical request");
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ConcreteThriftException("Interrupted while waiting for an identical request");
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof TException)
+          throw (TException) e.getCause();
+        throw new ConcreteThriftException("Identical request failed: " + e.getCause().getMessage());
+      }
+    }
+
+    this.misses.incrementAndGet();
+    try {
+      Communication result = compute.compute(c);
+      byte[] b = this.toBytes(result);
+      this.store(k, b);
+      mine.complete(b);
+      return result;
+    } catch (TException | RuntimeException e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      this.inFlight.remove(k, mine);
+    }
+  }
+
+  private byte[] toBytes(Communication c) throws ConcreteThriftException {
+    try {
+      return this.ser.toBytes(c);
+    } catch (ConcreteException e) {
+      throw new ConcreteThriftException("Unable to cache result: " + e.getMessage());
+    }
+  }
+
+  private Communication adapt(byte[] b, Communication caller) throws ConcreteThriftException {
+    try {
+      return UuidRebinder.rebind(this.ser.fromBytes(b), caller);
+    } catch (ConcreteException e) {
+      throw new ConcreteThriftException("Unable to read cached result: " + e.getMessage());
+    }
+  }
+
+  private Optional<byte[]> lookup(String k) {
+    synchronized (this) {
+      byte[] b = this.memory.get(k);
+      if (b != null) {
+        this.memoryHits.incrementAndGet();
+        return Optional.of(b);
+      }
+      if (!this.dir.isPresent() || this.disk.get(k) == null)
+        return Optional.empty();
+    }
+
+    try {
+      byte[] b = Files.readAllBytes(this.path(k));
+      this.diskHits.incrementAndGet();
+      synchronized (this) {
+        this.putMemory(k, b);
+      }
+      return Optional.of(b);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to read cached result {}", k, e);
+      synchronized (this) {
+        Long sz = this.disk.remove(k);
+        if (sz != null)
+          this.diskBytes -= sz;
+      }
+      return Optional.empty();
+    }
+  }
+
+  private Path path(String k) {
+    return this.dir.get().resolve(k + ".comm");
+  }
+
+  // called with the monitor held
+  private void putMemory(String k, byte[] b) {
+    if (b.length > this.maxMemoryBytes)
+      return;
+    byte[] prev = this.memory.put(k, b);
+    this.memoryBytes += b.length - (prev == null ? 0 : prev.length);
+    Iterator<Map.Entry<String, byte[]>> it = this.memory.entrySet().iterator();
+    while (this.memoryBytes > this.maxMemoryBytes && it.hasNext()) {
+      this.memoryBytes -= it.next().getValue().length;
+      it.remove();
+    }
+  }
+
+  private void store(String k, byte[] b) {
+    synchronized (this) {
+      this.putMemory(k, b);
+    }
+    if (!this.dir.isPresent() || b.length > this.maxDiskBytes)
+      return;
+    try {
+      Path tmp = Files.createTempFile(this.dir.get(), k, ".tmp");
+      Files.write(tmp, b);
+      Files.move(tmp, this.path(k), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to write cached result {} to disk", k, e);
+      return;
+    }
+    List<String> evicted;
+    synchronized (this) {
+      Long prev = this.disk.put(k, (long) b.length);
+      this.diskBytes += b.length - (prev == null ? 0 : prev);
+      evicted = this.evictDisk();
+    }
+    this.deleteAll(evicted);
+  }
+
+  // called with the monitor held; the files of the keys returned are deleted by the caller
+  private List<String> evictDisk() {
+    List<String> evicted = new ArrayList<>();
+    Iterator<Map.Entry<String, Long>> it = this.disk.entrySet().iterator();
+    while (this.diskBytes > this.maxDiskBytes && it.hasNext()) {
+      Map.Entry<String, Long> e = it.next();
+      this.diskBytes -= e.getValue();
+      evicted.add(e.getKey());
+      it.remove();
+    }
+    return evicted;
+  }
+
+  private void deleteAll(List<String> keys) {
+    for (String k : keys)
+      try {
+        Files.deleteIfExists(this.path(k));
+      } catch (IOException e) {
+        LOGGER.warn("Unable to delete evicted result {}", k, e);
+      }
+  }
+
+  @Override
+  public long getMemoryHits() {
+    return this.memoryHits.get();
+  }
+
+  @Override
+  public long getDiskHits() {
+    return this.diskHits.get();
+  }
+
+  @Override
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+  @Override
+  public long getSharedComputations() {
+    return this.shared.get();
+  }
+
+  @Override
+  public long getUncacheable() {
+    return this.uncacheable.get();
+  }
+
+  @Override
+  public double getHitRate() {
+    final long hits = this.memoryHits.get() + this.diskHits.get() + this.shared.get();
+    final long all = hits + this.misses.get();
+    return all == 0 ? 0 : (double) hits / all;
+  }
+
+  @Override
+  public synchronized int getMemoryEntries() {
+    return this.memory.size();
+  }
+
+  @Override
+  public synchronized long getMemoryBytes() {
+    return this.memoryBytes;
+  }
+
+  @Override
+  public synchronized int getDiskEntries() {
+    return this.disk.size();
+  }
+
+  @Override
+  public synchronized long getDiskBytes() {
+    return this.diskBytes;
+  }
+}
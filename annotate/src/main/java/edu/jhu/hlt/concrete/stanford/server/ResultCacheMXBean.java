@@ -0,0 +1,31 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+/**
+ * JMX view of a {@link ResultCache}.
+ */
+public interface ResultCacheMXBean {
+
+  long getMemoryHits();
+
+  long getDiskHits();
+
+  long getMisses();
+
+  long getSharedComputations();
+
+  long getUncacheable();
+
+  double getHitRate();
+
+  int getMemoryEntries();
+
+  long getMemoryBytes();
+
+  int getDiskEntries();
+
+  long getDiskBytes();
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Options controlling how the annotation server handles connections
+ * and schedules requests.
+ */
+public class ServerParameterDelegate {
+
+  @Parameter(names = "--workers",
+      description = "Number of threads annotating requests. If 0, the pool is sized from the available "
+          + "processors and the heap left after the models are loaded; see --worker-heap-mb.")
+  int workers = 0;
+
+  @Parameter(names = "--worker-heap-mb",
+      description = "Heap, in MB, to reserve per annotation worker when sizing the worker pool automatically.")
+  int workerHeapMb = 512;
+
+  @Parameter(names = "--selector-threads",
+      description = "Number of non-blocking threads reading requests from and writing responses to connections.")
+  int selectorThreads = 2;
+
+  @Parameter(names = "--accept-queue-size",
+      description = "Number of accepted connections each selector thread may have queued.")
+  int acceptQueueSize = 16;
+
+  @Parameter(names = "--max-read-buffer-mb",
+      description = "Upper bound, in MB, on memory held by requests that are being read or waiting for a worker. "
+          + "Connections beyond it are not read from until memory frees up.")
+  long maxReadBufferMb = 512;
+
+  @Parameter(names = "--max-request-mb",
+      description = "Refuse requests larger than this many MB, serialized, before they are deserialized, so that "
+          + "the requests held by the request threads fit in the heap. If 0, any request that fits in "
+          + "--max-read-buffer-mb is read.")
+  long maxRequestMb = 64;
+
+  @Parameter(names = "--max-queued-requests",
+      description = "The most documents waiting for an annotation worker; further requests are rejected.")
+  int maxQueuedRequests = 64;
+
+  @Parameter(names = "--max-inflight-chars",
+      description = "The most text, in characters, annotated at once across all workers. "
+          + "Documents wait in the queue until their text fits.")
+  long maxInFlightChars = 1_000_000;
+
+  @Parameter(names = "--max-document-chars",
+      description = "Reject documents with more text than this, in characters. If 0, only the in-flight limit applies. "
+          + "Either way, the in-flight characters reserved for the short lane are not available to one document; "
+          + "the limit in effect is logged at startup.")
+  long maxDocumentChars = 0;
+
+  @Parameter(names = "--default-deadline-ms",
+      description = "Deadline for requests that do not set '" + AdmissionController.DEADLINE_KEY
+          + "' in their keyValueMap. Requests whose estimated time to annotate exceeds their deadline "
+          + "are rejected. If 0, requests without a deadline are not rejected for time.")
+  long defaultDeadlineMs = 0;
+
+  @Parameter(names = "--short-lane-max-chars",
+      description = "Documents with at most this many characters of text are scheduled in the short lane, unless "
+          + "they set '" + AdmissionController.LANE_KEY + "' in their keyValueMap to 'short' or 'long'.")
+  long shortLaneMaxChars = 2000;
+
+  @Parameter(names = "--short-lane-reserved-workers",
+      description = "Annotation workers only short-lane documents may use. If negative, a quarter of the workers.")
+  int shortLaneReservedWorkers = -1;
+
+  @Parameter(names = "--long-lane-reserved-workers",
+      description = "Annotation workers short-lane documents may not use while long-lane documents wait.")
+  int longLaneReservedWorkers = 1;
+
+  @Parameter(names = "--long-lane-yield",
+      description = "The most short-lane documents started ahead of a waiting long-lane document, beyond "
+          + "the workers reserved for the short lane.")
+  int longLaneYield = 4;
+
+  @Parameter(names = "--result-cache-mb",
+      description = "If positive, keep annotated results of up to this many MB in memory, and answer repeated "
+          + "requests for the same text and segmentation from them.")
+  long resultCacheMb = 0;
+
+  @Parameter(names = "--result-cache-dir",
+      description = "If set, every cached result is also written to this directory, read back when it is no "
+          + "longer in memory, and reused after restarts with the same configuration.")
+  String resultCacheDir = null;
+
+  @Parameter(names = "--result-cache-disk-mb",
+      description = "The most disk, in MB, used by --result-cache-dir.")
+  long resultCacheDiskMb = 4096;
+
+  @Parameter(names = "--warmup-corpus",
+      description = "A .tar or .tar.gz archive of Communications to annotate before the port opens.")
+  String warmupCorpus = null;
+
+  @Parameter(names = "--warmup-iterations",
+      description = "How many times to annotate the warm-up corpus.")
+  int warmupIterations = 1;
+
+  @Parameter(names = "--ready-file",
+      description = "If set, this file is written once the server is ready for requests, and removed on shutdown.")
+  String readyFile = null;
+
+  @Parameter(names = "--admin-port",
+      description = "If positive, serve /ready and /status over HTTP on this port, including while models load.")
+  int adminPort = 0;
+
+  @Parameter(names = "--admin-bind-address",
+      description = "The address the --admin-port listens on, e.g. 0.0.0.0 for probes from outside the host. "
+          + "Defaults to the loopback interface.")
+  String adminBindAddress = null;
+
+  @Parameter(names = "--reference-root",
+      description = "If set, clients on this host may have the server read and write Communications by path "
+          + "with annotateByReference, for paths under this directory only. These methods, and bulk jobs, "
+          + "are served only on --local-port.")
+  String referenceRoot = null;
+
+  @Parameter(names = "--job-parallelism",
+      description = "If --reference-root is set, clients may also submit bulk jobs of archives under it with "
+          + "submitJob. Jobs run one at a time on their own workers, annotating this many documents at once. "
+          + "Job documents do not pass through admission control, so keep this well below the annotation "
+          + "workers. If 0, a quarter of the annotation workers; if negative, bulk jobs are disabled.")
+  int jobParallelism = 0;
+
+  @Parameter(names = "--local-port",
+      description = "The loopback port on which annotateByReference and bulk jobs are served, along with "
+          + "every method of --port. Defaults to --port + 1.")
+  int localPort = 0;
+
+  @Parameter(names = "--shm-port",
+      description = "If positive, also serve clients on this host over shared memory, through this loopback port.")
+  int shmPort = 0;
+
+  @Parameter(names = "--shm-dir",
+      description = "The directory for shared-memory channel files. Defaults to /dev/shm, if it exists.")
+  String shmDir = null;
+
+  @Parameter(names = "--shm-region-mb",
+      description = "The largest message, in MB, passed through shared memory; larger ones go over the loopback port, "
+          + "up to --max-read-buffer-mb, or --max-request-mb if it is smaller. Each channel maps twice this much.")
+  int shmRegionMb = 64;
+
+  @Parameter(names = "--shm-max-channels",
+      description = "The most shared-memory channels open at once.")
+  int shmMaxChannels = 64;
+
+  /**
+   * @return the largest request, in bytes, that may be read into memory
+   */
+  int getMaxMessageBytes() {
+    long mb = this.maxReadBufferMb;
+    if (this.maxRequestMb > 0)
+      mb = Math.min(mb, this.maxRequestMb);
+    return (int) Math.min(Integer.MAX_VALUE, mb * 1024 * 1024);
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+
+/**
+ * The directory that clients may have the server read from and write to.
+ * Client paths are resolved against it, and any path that resolves outside
+ * of it, including through symbolic links, is rejected.
+ */
+final class ServerRoot {
+
+  private final Path root;
+
+  /**
+   * @throws IOException if <code>root</code> does not exist
+   */
+  ServerRoot(Path root) throws IOException {
+    this.root = root.toRealPath();
+  }
+
+  /**
+   * @return the real path of an existing file under the root
+   * @throws ConcreteThriftException if there is no such file under the root
+   */
+  Path resolveInput(String s) throws ConcreteThriftException {
+    Path p;
+    try {
+      p = this.root.resolve(s).normalize().toRealPath();
+    } catch (NoSuchFileException e) {
+      throw new ConcreteThriftException("No such input: " + s);
+    } catch (IOException e) {
+      throw new ConcreteThriftException("Cannot read input " + s + ": " + e.getMessage());
+    }
+    if (!p.startsWith(this.root))
+      throw new ConcreteThriftException("Input is outside of the server's root: " + s);
+    if (!Files.isRegularFile(p))
+      throw new ConcreteThriftException("Input is not a file: " + s);
+    return p;
+  }
+
+  /**
+   * @return a path, in an existing directory under the root, that is
+   * neither a link nor a directory
+   * @throws ConcreteThriftException if the path cannot be written under the root
+   */
+  Path resolveOutput(String s) throws ConcreteThriftException {
+    Path p = this.root.resolve(s).normalize();
+    if (p.getParent() == null || p.getFileName() == null)
+      throw new ConcreteThriftException("Not a file path: " + s);
+    Path parent;
+    try {
+      parent = p.getParent().toRealPath();
+    } catch (IOException e) {
+      throw new ConcreteThriftException("Output directory does not exist: " + s);
+    }
+    if (!parent.startsWith(this.root))
+      throw new ConcreteThriftException("Output is outside of the server's root: " + s);
+    Path target = parent.resolve(p.getFileName());
+    if (Files.isSymbolicLink(target) || Files.isDirectory(target))
+      throw new ConcreteThriftException("Output is a link or a directory: " + s);
+    return target;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return this.root.toString();
+  }
+}
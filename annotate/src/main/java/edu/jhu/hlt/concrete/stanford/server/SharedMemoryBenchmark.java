@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
+import edu.jhu.hlt.concrete.AnnotationMetadata;
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.TextSpan;
+import edu.jhu.hlt.concrete.annotate.AnnotateCommunicationService;
+import edu.jhu.hlt.concrete.serialization.CommunicationSerializer;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+import edu.jhu.hlt.concrete.stanford.client.SharedMemoryChannel;
+import edu.jhu.hlt.concrete.stanford.client.SharedMemoryTransport;
+import edu.jhu.hlt.concrete.stanford.metrics.LogHistogram;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory.AnalyticUUIDGenerator;
+
+/**
+ * Compares the round-trip time of the shared-memory transport with that of
+ * the framed socket transport over loopback, across document sizes.
+ * <br>
+ * <br>
+ * Both transports serve the same processor, backed by a service that
+ * returns each Communication unchanged, so only the transport, Thrift
+ * encoding and server dispatch are measured, not annotation.
+ */
+public class SharedMemoryBenchmark {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SharedMemoryBenchmark.class);
+
+  private static final CommunicationSerializer SER = new CompactCommunicationSerializer();
+
+  @Parameter(names = "--help", help = true,
+      description = "Print the usage information and exit.")
+  private boolean help;
+
+  @Parameter(names = "--sizes",
+      description = "Document sizes to test, in characters of text.")
+  private List<Integer> sizes = new ArrayList<>(Arrays.asList(1_000, 10_000, 100_000, 1_000_000, 10_000_000));
+
+  @Parameter(names = "--iterations",
+      description = "Round trips to time per size and transport.")
+  private int iterations = 200;
+
+  @Parameter(names = "--warmup",
+      description = "Untimed round trips per size and transport, run first.")
+  private int warmup = 50;
+
+  @Parameter(names = "--shm-region-mb",
+      description = "The largest message, in MB, passed through shared memory.")
+  private int regionMb = 64;
+
+  private static class EchoService implements AnnotateCommunicationService.Iface {
+
+    @Override
+    public Communication annotate(Communication original) throws ConcreteThriftException, TException {
+      return original;
+    }
+
+    @Override
+    public AnnotationMetadata getMetadata() throws TException {
+      return new AnnotationMetadata().setTool("echo").setTimestamp(System.currentTimeMillis() / 1000);
+    }
+
+    @Override
+    public String getDocumentation() throws TException {
+      return "Returns each Communication unchanged.";
+    }
+
+    @Override
+    public void shutdown() throws TException {
+    }
+  }
+
+  private static Communication document(int chars, Random r) {
+    StringBuilder sb = new StringBuilder(chars);
+    while (sb.length() < chars) {
+      final int len = 1 + r.nextInt(9);
+      for (int i = 0; i < len && sb.length() < chars; i++)
+        sb.append((char) ('a' + r.nextInt(26)));
+      if (sb.length() < chars)
+        sb.append(sb.length() % 80 < 10 ? '\n' : ' ');
+    }
+    AnalyticUUIDGenerator g = new AnalyticUUIDGeneratorFactory().create();
+    Communication c = new Communication().setId("bench-" + chars).setUuid(g.next()).setType("benchmark")
+        .setText(sb.toString()).setMetadata(new AnnotationMetadata().setTool("benchmark").setTimestamp(0));
+    c.addToSectionList(new Section().setUuid(g.next()).setKind("passage")
+        .setTextSpan(new TextSpan(0, chars)));
+    return c;
+  }
+
+  private static LogHistogram time(AnnotateCommunicationService.Client client, Communication c,
+      int warmup, int iterations) throws TException {
+    for (int i = 0; i < warmup; i++)
+      client.annotate(c);
+    LogHistogram h = new LogHistogram();
+    for (int i = 0; i < iterations; i++) {
+      final long start = System.nanoTime();
+      client.annotate(c);
+      h.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+    return h;
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket s = new ServerSocket(0)) {
+      return s.getLocalPort();
+    }
+  }
+
+  private void run() throws Exception {
+    TProcessor proc = new ExtendedAnnotateProcessor(new AnnotateCommunicationService.Processor<>(new EchoService()));
+    final int tcpPort = freePort();
+    ExecutorService workers = ConcreteStanfordServer.newWorkerPool(2);
+    ServerParameterDelegate params = new ServerParameterDelegate();
+    try (ConcreteStanfordServer tcp = new ConcreteStanfordServer(proc, tcpPort, params, workers, 2);
+        SharedMemoryServer shm = new SharedMemoryServer(proc, 0, SharedMemoryChannel.defaultDirectory(),
+            this.regionMb * 1024 * 1024, params.getMaxMessageBytes(), 2);) {
+      Thread t = new Thread(tcp::serve, "benchmark-server");
+      t.setDaemon(true);
+      t.start();
+      while (!tcp.isServing())
+        Thread.sleep(10);
+
+      TTransport tcpT = new TFramedTransport(new TSocket("localhost", tcpPort), Integer.MAX_VALUE);
+      TTransport shmT = new SharedMemoryTransport("localhost", shm.getPort(), 0);
+      tcpT.open();
+      shmT.open();
+      try {
+        AnnotateCommunicationService.Client tcpC = new AnnotateCommunicationService.Client(new TCompactProtocol(tcpT));
+        AnnotateCommunicationService.Client shmC = new AnnotateCommunicationService.Client(new TCompactProtocol(shmT));
+        Random r = new Random(42);
+        LOGGER.info(String.format("%10s %10s | %10s %10s %10s | %10s %10s %10s | %7s",
+            "chars", "bytes", "tcp p50", "tcp p99", "tcp MB/s", "shm p50", "shm p99", "shm MB/s", "speedup"));
+        for (int chars : this.sizes) {
+          Communication c = document(chars, r);
+          final long bytes = SER.toBytes(c).length;
+          // fewer round trips for large documents, so a run takes minutes rather than hours
+          final int n = (int) Math.max(10, Math.min(this.iterations, 2_000_000_000L / Math.max(1, bytes)));
+          final int w = Math.min(this.warmup, n);
+          LogHistogram tcpH = time(tcpC, c, w, n);
+          LogHistogram shmH = time(shmC, c, w, n);
+          LOGGER.info(String.format("%10d %10d | %10d %10d %10.1f | %10d %10d %10.1f | %6.2fx",
+              chars, bytes,
+              tcpH.getPercentile(0.5), tcpH.getPercentile(0.99), mbPerSecond(bytes, tcpH),
+              shmH.getPercentile(0.5), shmH.getPercentile(0.99), mbPerSecond(bytes, shmH),
+              (double) tcpH.getPercentile(0.5) / Math.max(1, shmH.getPercentile(0.5))));
+        }
+      } finally {
+        tcpT.close();
+        shmT.close();
+      }
+    }
+  }
+
+  // a round trip carries the document both ways
+  private static double mbPerSecond(long bytes, LogHistogram h) {
+    return h.getMean() == 0 ? 0 : 2.0d * bytes / h.getMean();
+  }
+
+  public static void main(String[] args) throws Exception {
+    SharedMemoryBenchmark b = new SharedMemoryBenchmark();
+    JCommander jc = JCommander.newBuilder().addObject(b).build();
+    jc.parse(args);
+    jc.setProgramName(SharedMemoryBenchmark.class.getName());
+    if (b.help) {
+      jc.usage();
+      return;
+    }
+    b.run();
+  }
+}
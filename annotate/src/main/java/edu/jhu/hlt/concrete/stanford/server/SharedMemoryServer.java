@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.apache.thrift.TByteArrayOutputStream;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.jhu.hlt.concrete.stanford.client.SharedMemoryChannel;
+
+/**
+ * Serves the annotation service to clients on the same host over
+ * shared-memory channels, next to the Thrift socket server; see
+ * {@link SharedMemoryChannel}. The service, including extension methods,
+ * is the same, so clients only change their transport.
+ * <br>
+ * <br>
+ * The port is bound to the loopback address. Each channel is served by
+ * its own thread, up to a limit; annotation is still limited by the
+ * admission controller, if one is set.
+ */
+public class SharedMemoryServer implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SharedMemoryServer.class);
+
+  private final TProcessor processor;
+  private final Path dir;
+  private final int regionBytes;
+  private final int maxMessageBytes;
+  private final ServerSocket socket;
+  private final Semaphore channels;
+  private final ExecutorService threads;
+  private volatile boolean closed = false;
+
+  /**
+   * @param port the loopback port clients connect to
+   * @param dir the directory to create channel files in
+   * @param regionBytes the largest message passed through shared memory;
+   * larger ones go over the socket
+   * @param maxMessageBytes the largest request read over the socket; a
+   * client sending a larger one is disconnected
+   * @param maxChannels the most channels open at once; further clients
+   * wait to be accepted
+   * @throws IOException if the port cannot be bound
+   */
+  public SharedMemoryServer(TProcessor processor, int port, Path dir, int regionBytes, int maxMessageBytes,
+      int maxChannels) throws IOException {
+    this.processor = processor;
+    this.dir = dir;
+    this.regionBytes = regionBytes;
+    this.maxMessageBytes = maxMessageBytes;
+    this.socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    this.channels = new Semaphore(Math.max(1, maxChannels));
+    this.threads = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+        .setNameFormat("shm-channel-%d").setDaemon(true).build());
+    Thread acceptor = new Thread(this::accept, "shm-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    LOGGER.info("Serving shared-memory channels on loopback port {}, in {}, up to {} MB per message",
+        this.socket.getLocalPort(), dir, regionBytes / (1024 * 1024));
+  }
+
+  /**
+   * @return the port clients connect to
+   */
+  public int getPort() {
+    return this.socket.getLocalPort();
+  }
+
+  private void accept() {
+    while (!this.closed) {
+      try {
+        this.channels.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      try {
+        Socket s = this.socket.accept();
+        this.threads.execute(() -> {
+          try {
+            this.serve(s);
+          } finally {
+            this.channels.release();
+          }
+        });
+      } catch (IOException e) {
+        this.channels.release();
+        if (!this.closed)
+          LOGGER.warn("Failed to accept a shared-memory client", e);
+      }
+    }
+  }
+
+  private void serve(Socket s) {
+    try (Socket sock = s) {
+      sock.setTcpNoDelay(true);
+      DataInputStream in = new DataInputStream(new BufferedInputStream(sock.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream()));
+      SharedMemoryChannel ch = SharedMemoryChannel.accept(this.dir, this.regionBytes, this.maxMessageBytes, in, out);
+      TByteArrayOutputStream response = new TByteArrayOutputStream(8192);
+      while (!this.closed) {
+        final byte[] request;
+        try {
+          request = ch.receive();
+        } catch (EOFException e) {
+          return;
+        }
+        response.reset();
+        this.processor.process(new TCompactProtocol(new TMemoryInputTransport(request)),
+            new TCompactProtocol(new TIOStreamTransport(response)));
+        ch.send(response.get(), response.len());
+      }
+    } catch (SocketException e) {
+      LOGGER.debug("Shared-memory client disconnected", e);
+    } catch (IOException | TException e) {
+      LOGGER.warn("Closing shared-memory channel after error", e);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.AutoCloseable#close()
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    try {
+      this.socket.close();
+    } catch (IOException e) {
+      LOGGER.warn("Failed to close the shared-memory port", e);
+    }
+    this.threads.shutdownNow();
+  }
+}
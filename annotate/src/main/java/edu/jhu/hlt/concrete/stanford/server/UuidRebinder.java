@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.meta_data.FieldMetaData;
+
+import edu.jhu.hlt.concrete.AnnotationMetadata;
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.Sentence;
+import edu.jhu.hlt.concrete.TextSpan;
+import edu.jhu.hlt.concrete.Tokenization;
+import edu.jhu.hlt.concrete.UUID;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory.AnalyticUUIDGenerator;
+
+/**
+ * Adapts a Communication annotated for one request to an identical
+ * request from another caller.
+ * <br>
+ * <br>
+ * The result takes the caller's ID, UUID and every non-annotation field.
+ * Sections, Sentences and Tokenizations that the caller sent are matched
+ * to the result's by kind and TextSpan, and likewise take the caller's
+ * UUIDs and fields, keeping only the annotations added to them. Every
+ * other UUID in the result, i.e. those generated during annotation, is
+ * replaced by a fresh one from the caller's generator, and the
+ * timestamps of the annotations are set to the time of rebinding. References between
+ * annotations are kept consistent, because each old UUID maps to one new
+ * UUID everywhere it appears.
+ */
+final class UuidRebinder {
+
+  // the fields of the caller's structures that hold annotations, kept from the result
+  private static final Set<Communication._Fields> COMMUNICATION_ANNOTATIONS = EnumSet.of(
+      Communication._Fields.SECTION_LIST, Communication._Fields.ENTITY_MENTION_SET_LIST,
+      Communication._Fields.ENTITY_SET_LIST);
+  private static final Set<Section._Fields> SECTION_ANNOTATIONS = EnumSet.of(Section._Fields.SENTENCE_LIST);
+  private static final Set<Sentence._Fields> SENTENCE_ANNOTATIONS = EnumSet.of(Sentence._Fields.TOKENIZATION);
+  private static final Set<Tokenization._Fields> TOKENIZATION_ANNOTATIONS = EnumSet.of(
+      Tokenization._Fields.TOKEN_TAGGING_LIST, Tokenization._Fields.PARSE_LIST,
+      Tokenization._Fields.DEPENDENCY_PARSE_LIST, Tokenization._Fields.SPAN_LINK_LIST);
+
+  private UuidRebinder() {
+  }
+
+  // a structure of the result, the caller's structure it was matched to, and the fields to keep
+  private static final class Match {
+    final TBase<?, ?> result;
+    final TBase<?, ?> caller;
+    final Set<? extends TFieldIdEnum> kept;
+
+    Match(TBase<?, ?> result, TBase<?, ?> caller, Set<? extends TFieldIdEnum> kept) {
+      this.result = result;
+      this.caller = caller;
+      this.kept = kept;
+    }
+  }
+
+  /**
+   * @param annotated a result computed for another request with the same text and sections
+   * @param caller the request to adapt it to
+   * @return a new Communication; neither argument is modified
+   */
+  static Communication rebind(Communication annotated, Communication caller) {
+    Communication out = new Communication(annotated);
+    Map<String, UUID> map = new HashMap<>();
+    List<Match> matches = new ArrayList<>();
+    map.put(out.getUuid().getUuidString(), caller.getUuid());
+    matches.add(new Match(out, caller, COMMUNICATION_ANNOTATIONS));
+    if (out.isSetSectionList() && caller.isSetSectionList())
+      matchSections(out.getSectionList(), caller.getSectionList(), map, matches);
+
+    AnalyticUUIDGenerator g = new AnalyticUUIDGeneratorFactory(caller).create();
+    remap(out, map, g, System.currentTimeMillis() / 1000);
+
+    // the caller's own fields win; annotations are kept.
+    for (Match m : matches)
+      takeFields(m.result, m.caller, m.kept);
+    return out;
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static void takeFields(TBase result, TBase caller, Set<? extends TFieldIdEnum> kept) {
+    for (TFieldIdEnum f : FieldMetaData.getStructMetaDataMap(result.getClass()).keySet()) {
+      if (kept.contains(f))
+        continue;
+      if (caller.isSet(f))
+        result.setFieldValue(f, caller.getFieldValue(f));
+      else
+        result.setFieldValue(f, null);
+    }
+  }
+
+  private static String spanKey(String kind, TextSpan ts) {
+    return kind + "/" + (ts == null ? "-" : ts.getStart() + ":" + ts.getEnding());
+  }
+
+  private static void matchSections(List<Section> annotated, List<Section> caller, Map<String, UUID> map,
+      List<Match> matches) {
+    Map<String, Section> byKey = new HashMap<>();
+    caller.forEach(s -> byKey.put(spanKey(s.getKind(), s.getTextSpan()), s));
+    for (Section s : annotated) {
+      Section c = byKey.get(spanKey(s.getKind(), s.getTextSpan()));
+      if (c == null)
+        continue;
+      map.put(s.getUuid().getUuidString(), c.getUuid());
+      matches.add(new Match(s, c, SECTION_ANNOTATIONS));
+      if (s.isSetSentenceList() && c.isSetSentenceList())
+        matchSentences(s.getSentenceList(), c.getSentenceList(), map, matches);
+    }
+  }
+
+  private static void matchSentences(List<Sentence> annotated, List<Sentence> caller, Map<String, UUID> map,
+      List<Match> matches) {
+    Map<String, Sentence> byKey = new HashMap<>();
+    caller.forEach(st -> byKey.put(spanKey("", st.getTextSpan()), st));
+    for (Sentence st : annotated) {
+      Sentence c = byKey.get(spanKey("", st.getTextSpan()));
+      if (c == null)
+        continue;
+      map.put(st.getUuid().getUuidString(), c.getUuid());
+      matches.add(new Match(st, c, SENTENCE_ANNOTATIONS));
+      if (st.isSetTokenization() && c.isSetTokenization()) {
+        Tokenization t = st.getTokenization();
+        Tokenization ct = c.getTokenization();
+        map.put(t.getUuid().getUuidString(), ct.getUuid());
+        Set<Tokenization._Fields> kept = EnumSet.copyOf(TOKENIZATION_ANNOTATIONS);
+        // tokens are an annotation unless the caller sent them
+        if (!ct.isSetTokenList())
+          kept.add(Tokenization._Fields.TOKEN_LIST);
+        matches.add(new Match(t, ct, kept));
+      }
+    }
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private static void remap(TBase t, Map<String, UUID> map, AnalyticUUIDGenerator g, long now) {
+    if (t instanceof AnnotationMetadata)
+      ((AnnotationMetadata) t).setTimestamp(now);
+    Map<? extends TFieldIdEnum, FieldMetaData> md = FieldMetaData.getStructMetaDataMap(t.getClass());
+    for (TFieldIdEnum f : md.keySet()) {
+      if (!t.isSet(f))
+        continue;
+      Object v = t.getFieldValue(f);
+      if (v instanceof UUID)
+        t.setFieldValue(f, map.computeIfAbsent(((UUID) v).getUuidString(), k -> g.next()));
+      else if (v instanceof TBase)
+        remap((TBase) v, map, g, now);
+      else if (v instanceof List)
+        remapList((List<Object>) v, map, g, now);
+      else if (v instanceof Map)
+        for (Object mv : ((Map<?, ?>) v).values())
+          if (mv instanceof TBase)
+            remap((TBase) mv, map, g, now);
+    }
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static void remapList(List<Object> l, Map<String, UUID> map, AnalyticUUIDGenerator g, long now) {
+    ListIterator<Object> it = l.listIterator();
+    while (it.hasNext()) {
+      Object o = it.next();
+      if (o instanceof UUID)
+        it.set(map.computeIfAbsent(((UUID) o).getUuidString(), k -> g.next()));
+      else if (o instanceof TBase)
+        remap((TBase) o, map, g, now);
+    }
+  }
+}
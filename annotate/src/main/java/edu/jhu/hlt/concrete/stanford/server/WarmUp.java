@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.analytics.base.AnalyticException;
+import edu.jhu.hlt.concrete.serialization.CommunicationSerializer;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.stanford.io.CommunicationArchiveReader;
+import edu.jhu.hlt.concrete.util.ConcreteException;
+
+/**
+ * Runs a corpus through the analytics before the server takes requests,
+ * so that the first requests do not pay for class loading, lazily built
+ * models and interpreted code.
+ * <br>
+ * <br>
+ * Each Communication is routed as a request would be, so the corpus
+ * decides which languages and levels are loaded and warmed. The corpus is
+ * annotated on the worker pool, as requests are; results are discarded
+ * and are not cached.
+ */
+final class WarmUp {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WarmUp.class);
+
+  private WarmUp() {
+  }
+
+  /**
+   * @param corpus a .tar or .tar.gz archive of Communications
+   * @param iterations how many times to annotate the corpus
+   * @param workers the pool to annotate on
+   * @param parallelism how many documents to annotate at once
+   * @throws IOException on error reading the corpus
+   */
+  static void run(ConcreteStanfordThriftServer srv, Path corpus, int iterations,
+      ExecutorService workers, int parallelism) throws IOException {
+    List<Communication> comms = read(corpus);
+    LOGGER.info("Warming up with {} documents, {} times, {} at once", comms.size(), iterations, parallelism);
+    final long start = System.currentTimeMillis();
+    for (int i = 0; i < iterations; i++) {
+      final long iterStart = System.currentTimeMillis();
+      final AtomicInteger next = new AtomicInteger();
+      final AtomicInteger failed = new AtomicInteger();
+      Runnable drain = () -> {
+        int j;
+        while ((j = next.getAndIncrement()) < comms.size()) {
+          try {
+            srv.warmUp(comms.get(j));
+          } catch (AnalyticException | RuntimeException e) {
+            LOGGER.debug("Warm-up document failed: {}", comms.get(j).getId(), e);
+            failed.incrementAndGet();
+          }
+        }
+      };
+
+      List<Future<?>> fs = new ArrayList<>();
+      for (int h = 0; h < Math.max(1, Math.min(parallelism, comms.size())); h++)
+        fs.add(workers.submit(drain));
+      for (Future<?> f : fs)
+        try {
+          f.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          LOGGER.warn("Interrupted during warm-up");
+          return;
+        } catch (ExecutionException e) {
+          LOGGER.warn("Warm-up worker failed", e.getCause());
+        }
+      LOGGER.info("Warm-up pass {} took {} ms; {} documents failed", i + 1,
+          System.currentTimeMillis() - iterStart, failed.get());
+    }
+    LOGGER.info("Warm-up took {} ms", System.currentTimeMillis() - start);
+  }
+
+  /**
+   * @return every Communication of a .tar or .tar.gz archive, in order
+   */
+  static List<Communication> read(Path corpus) throws IOException {
+    CommunicationSerializer ser = new CompactCommunicationSerializer();
+    List<Communication> comms = new ArrayList<>();
+    try (InputStream in = Files.newInputStream(corpus);
+        BufferedInputStream bin = new BufferedInputStream(in);
+        CommunicationArchiveReader reader = new CommunicationArchiveReader(bin,
+            CommunicationArchiveReader.isGzipped(corpus.toString()));) {
+      byte[] entry;
+      while ((entry = reader.next()) != null)
+        comms.add(ser.fromBytes(entry));
+    } catch (ConcreteException e) {
+      throw new IOException("Failed to read corpus: " + corpus.toString(), e);
+    }
+    return comms;
+  }
+}
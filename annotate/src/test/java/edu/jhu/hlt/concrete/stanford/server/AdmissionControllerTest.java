@@ -0,0 +1,310 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+import edu.jhu.hlt.concrete.stanford.server.AdmissionController.Lane;
+import edu.jhu.hlt.concrete.stanford.server.AdmissionController.Permit;
+import edu.jhu.hlt.concrete.stanford.server.AdmissionController.Rejection;
+
+/**
+ *
+ */
+public class AdmissionControllerTest {
+
+  private static final long WAIT_MILLIS = 10000;
+
+  private final List<Waiter> waiters = new ArrayList<>();
+  private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+
+  @After
+  public void tearDown() throws Exception {
+    for (Waiter w : this.waiters) {
+      w.release.countDown();
+      w.interrupt();
+      w.join(WAIT_MILLIS);
+    }
+  }
+
+  private static Communication doc(String id, int chars) {
+    return new Communication().setId(id).setText(Strings.repeat("x", chars));
+  }
+
+  // admits its document on its own thread and holds the permit until released
+  private final class Waiter extends Thread {
+    private final AdmissionController ac;
+    private final Communication c;
+    private final CountDownLatch admitted = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile Exception error;
+
+    private Waiter(AdmissionController ac, Communication c) {
+      this.ac = ac;
+      this.c = c;
+      this.setDaemon(true);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Thread#run()
+     */
+    @Override
+    public void run() {
+      try (Permit p = this.ac.admit(this.c)) {
+        AdmissionControllerTest.this.started.add(this.c.getId());
+        this.admitted.countDown();
+        this.release.await();
+      } catch (ConcreteThriftException | InterruptedException e) {
+        this.error = e;
+      }
+    }
+
+    private boolean awaitAdmitted() throws InterruptedException {
+      return this.admitted.await(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void finish() throws InterruptedException {
+      this.release.countDown();
+      this.join(WAIT_MILLIS);
+      assertFalse(this.isAlive());
+      assertNull(this.error);
+    }
+  }
+
+  // starts a waiter, and returns once the controller sees it queued behind the others
+  private Waiter queue(AdmissionController ac, Communication c) throws Exception {
+    final int before = ac.getQueued();
+    Waiter w = this.start(ac, c);
+    await(() -> ac.getQueued(), before + 1);
+    return w;
+  }
+
+  private Waiter start(AdmissionController ac, Communication c) {
+    Waiter w = new Waiter(ac, c);
+    this.waiters.add(w);
+    w.start();
+    return w;
+  }
+
+  private static void await(IntSupplier s, int expected) throws InterruptedException {
+    final long until = System.currentTimeMillis() + WAIT_MILLIS;
+    while (s.getAsInt() != expected) {
+      if (System.currentTimeMillis() > until)
+        fail("Expected " + expected + " but was " + s.getAsInt());
+      Thread.sleep(1);
+    }
+  }
+
+  private static AdmissionController controller(int slots, int maxQueued) {
+    return new AdmissionController(slots, maxQueued, 1000000, 1000000, 0, 100, 0, 0, 4);
+  }
+
+  @Test
+  public void blocksAtCapacityAndWakesOnRelease() throws Exception {
+    AdmissionController ac = controller(1, 4);
+    Permit first = ac.admit(doc("a", 10));
+    Waiter w = this.queue(ac, doc("b", 10));
+    assertEquals(1, ac.getRunning());
+    assertEquals(1, w.admitted.getCount());
+
+    first.close();
+    assertTrue(w.awaitAdmitted());
+    assertEquals(1, ac.getRunning());
+    assertEquals(0, ac.getQueued());
+    w.finish();
+    assertEquals(0, ac.getRunning());
+    assertEquals(2, ac.getAdmitted());
+  }
+
+  @Test
+  public void blocksOnInFlightCharacters() throws Exception {
+    AdmissionController ac = new AdmissionController(4, 4, 100, 100, 0, 100, 0, 0, 4);
+    Permit first = ac.admit(doc("a", 60));
+    Waiter w = this.queue(ac, doc("b", 60));
+    assertEquals(60, ac.getInFlightChars());
+
+    first.close();
+    assertTrue(w.awaitAdmitted());
+    assertEquals(60, ac.getInFlightChars());
+    w.finish();
+    assertEquals(0, ac.getInFlightChars());
+  }
+
+  @Test
+  public void rejectsWhenQueueIsFull() throws Exception {
+    AdmissionController ac = controller(1, 1);
+    try (Permit p = ac.admit(doc("a", 10))) {
+      this.queue(ac, doc("b", 10));
+      try {
+        ac.admit(doc("c", 10));
+        fail("Expected the queue to be full");
+      } catch (ConcreteThriftException e) {
+        // expected
+      }
+      assertEquals(1, ac.getRejected(Rejection.QUEUE_FULL));
+      assertEquals(1, ac.getQueued());
+    }
+  }
+
+  @Test
+  public void rejectsTooLarge() throws Exception {
+    AdmissionController ac = new AdmissionController(1, 1, 1000, 50, 0, 100, 0, 0, 4);
+    try {
+      ac.admit(doc("a", 51));
+      fail("Expected the document to be too large");
+    } catch (ConcreteThriftException e) {
+      // expected
+    }
+    assertEquals(1, ac.getRejected(Rejection.TOO_LARGE));
+    assertEquals(0, ac.getRunning());
+  }
+
+  @Test
+  public void closingTwiceReleasesOnce() throws Exception {
+    AdmissionController ac = controller(2, 1);
+    Permit p = ac.admit(doc("a", 10));
+    try (Permit q = ac.admit(doc("b", 10))) {
+      p.close();
+      p.close();
+      assertEquals(1, ac.getRunning(Lane.SHORT));
+    }
+    assertEquals(0, ac.getRunning());
+  }
+
+  @Test
+  public void startsInArrivalOrderWithinALane() throws Exception {
+    AdmissionController ac = controller(1, 4);
+    Permit first = ac.admit(doc("a", 10));
+    List<Waiter> ws = new ArrayList<>();
+    for (String id : ImmutableList.of("b", "c", "d"))
+      ws.add(this.queue(ac, doc(id, 10)));
+
+    first.close();
+    for (Waiter w : ws) {
+      assertTrue(w.awaitAdmitted());
+      w.finish();
+    }
+    assertEquals(ImmutableList.of("b", "c", "d"), this.started);
+  }
+
+  @Test
+  public void shortDocumentPassesWaitingLongOne() throws Exception {
+    AdmissionController ac = controller(1, 4);
+    Permit first = ac.admit(doc("long-a", 500));
+    Waiter longB = this.queue(ac, doc("long-b", 500));
+    Waiter shortC = this.queue(ac, doc("short-c", 10));
+    assertEquals(1, ac.getQueued(Lane.LONG));
+    assertEquals(1, ac.getQueued(Lane.SHORT));
+
+    first.close();
+    assertTrue(shortC.awaitAdmitted());
+    assertEquals(1, longB.admitted.getCount());
+    shortC.finish();
+    assertTrue(longB.awaitAdmitted());
+    longB.finish();
+    assertEquals(ImmutableList.of("short-c", "long-b"), this.started);
+  }
+
+  @Test
+  public void longDocumentStartsAfterYielding() throws Exception {
+    AdmissionController ac = new AdmissionController(1, 4, 1000000, 1000000, 0, 100, 0, 0, 1);
+    Permit first = ac.admit(doc("long-a", 500));
+    Waiter longB = this.queue(ac, doc("long-b", 500));
+    Waiter shortC = this.queue(ac, doc("short-c", 10));
+    Waiter shortD = this.queue(ac, doc("short-d", 10));
+
+    first.close();
+    for (Waiter w : ImmutableList.of(shortC, longB, shortD)) {
+      assertTrue(w.awaitAdmitted());
+      w.finish();
+    }
+    assertEquals(ImmutableList.of("short-c", "long-b", "short-d"), this.started);
+  }
+
+  @Test
+  public void reservedSlotsAreNeverGivenToLongDocuments() throws Exception {
+    AdmissionController ac = new AdmissionController(2, 4, 1000000, 1000000, 0, 100, 1, 0, 4);
+    Permit longA = ac.admit(doc("long-a", 500));
+    Waiter longB = this.queue(ac, doc("long-b", 500));
+    // a slot is free, but it is held for short documents
+    assertEquals(1, ac.getRunning());
+    assertEquals(1, longB.admitted.getCount());
+
+    try (Permit shortC = ac.admit(doc("short-c", 10))) {
+      assertEquals(Lane.SHORT, shortC.getLane());
+      assertEquals(2, ac.getRunning());
+    }
+    assertEquals(1, ac.getRunning(Lane.LONG));
+    assertEquals(1, longB.admitted.getCount());
+
+    longA.close();
+    assertTrue(longB.awaitAdmitted());
+    longB.finish();
+  }
+
+  @Test
+  public void rejectsWhenEstimateExceedsDeadline() throws Exception {
+    final AtomicLong now = new AtomicLong();
+    AdmissionController ac = new AdmissionController(1, 4, 1000000, 1000000, 0, 1000, 0, 0, 4,
+        now::get);
+    // one millisecond per character
+    try (Permit p = ac.admit(doc("a", 100))) {
+      now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+    }
+    assertEquals(1000000, ac.getEstimatedNanosPerChar(), 0.001);
+
+    Communication tight = doc("b", 100);
+    tight.putToKeyValueMap(AdmissionController.DEADLINE_KEY, "50");
+    try {
+      ac.admit(tight);
+      fail("Expected the deadline to be too short");
+    } catch (ConcreteThriftException e) {
+      // expected
+    }
+    assertEquals(1, ac.getRejected(Rejection.OVER_DEADLINE));
+
+    Communication loose = doc("c", 100);
+    loose.putToKeyValueMap(AdmissionController.DEADLINE_KEY, "500");
+    try (Permit p = ac.admit(loose)) {
+      assertEquals(1, ac.getRunning());
+    }
+    assertEquals(2, ac.getAdmitted());
+  }
+
+  @Test
+  public void releasesPermitOnException() throws Exception {
+    AdmissionController ac = controller(1, 4);
+    try (Permit p = ac.admit(doc("a", 10))) {
+      throw new IllegalStateException("annotation failed");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals(0, ac.getRunning());
+    assertEquals(0, ac.getInFlightChars());
+    try (Permit p = ac.admit(doc("b", 10))) {
+      assertEquals(1, ac.getRunning());
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+
+/**
+ *
+ */
+public class ResultCacheTest {
+
+  @Rule
+  public TemporaryFolder tf = new TemporaryFolder();
+
+  private final UuidRebinderTest docs = new UuidRebinderTest();
+  private final AtomicInteger computed = new AtomicInteger();
+
+  private Communication compute(Communication c) {
+    this.computed.incrementAndGet();
+    return UuidRebinderTest.annotate(c);
+  }
+
+  private static ResultCache memoryOnly(long bytes) throws Exception {
+    return new ResultCache("config", bytes, Optional.empty(), 0);
+  }
+
+  @Test
+  public void keyCoversTextSectionsAndConfiguration() throws Exception {
+    ResultCache rc = memoryOnly(1 << 20);
+    Communication a = this.docs.request("a", "Some sample text .");
+    Communication b = this.docs.request("b", "Some sample text .");
+    // UUIDs and IDs are not part of the key
+    assertEquals(rc.key(a, "eng"), rc.key(b, "eng"));
+    assertNotEquals(rc.key(a, "eng"), rc.key(a, "zho"));
+    assertEquals(rc.key(a, "eng"), memoryOnly(1 << 20).key(a, "eng"));
+    assertNotEquals(rc.key(a, "eng"), new ResultCache("other", 1 << 20, Optional.empty(), 0).key(a, "eng"));
+    assertNotEquals(rc.key(a, "eng"), rc.key(this.docs.request("c", "Other sample text ."), "eng"));
+    b.getSectionList().get(0).setLabel("headline");
+    assertNotEquals(rc.key(a, "eng"), rc.key(b, "eng"));
+  }
+
+  @Test
+  public void repeatedRequestIsServedFromMemory() throws Exception {
+    ResultCache rc = memoryOnly(1 << 20);
+    Communication a = this.docs.request("a", "Some sample text .");
+    Communication b = this.docs.request("b", "Some sample text .");
+    rc.annotate(a, "eng", 0, this::compute);
+    Communication out = rc.annotate(b, "eng", 0, this::compute);
+    assertEquals(1, this.computed.get());
+    assertEquals(1, rc.getMemoryHits());
+    assertEquals("b", out.getId());
+    assertEquals(b.getUuid(), out.getUuid());
+  }
+
+  @Test
+  public void requestsWithAnnotationsAreNotCached() throws Exception {
+    ResultCache rc = memoryOnly(1 << 20);
+    Communication annotated = UuidRebinderTest.annotate(this.docs.request("a", "Some sample text ."));
+    assertFalse(ResultCache.isCacheable(annotated));
+    annotated.unsetEntityMentionSetList();
+    // a tokenization with a tagging is not part of the key either
+    assertFalse(ResultCache.isCacheable(annotated));
+    rc.annotate(annotated, "eng", 0, this::compute);
+    assertEquals(1, rc.getUncacheable());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedFirst() throws Exception {
+    Communication a = this.docs.request("a", "Some sample text .");
+    final long size = new CompactCommunicationSerializer().toBytes(UuidRebinderTest.annotate(a)).length;
+    // room for two results
+    ResultCache rc = memoryOnly(2 * size + size / 2);
+    rc.annotate(a, "eng", 0, this::compute);
+    rc.annotate(this.docs.request("b", "Some other text ."), "eng", 0, this::compute);
+    // a is now more recently used than b
+    rc.annotate(this.docs.request("a2", "Some sample text ."), "eng", 0, this::compute);
+    rc.annotate(this.docs.request("c", "Yet more text ."), "eng", 0, this::compute);
+    assertEquals(3, this.computed.get());
+    assertEquals(2, rc.getMemoryEntries());
+    assertTrue(rc.getMemoryBytes() <= 2 * size + size / 2);
+
+    rc.annotate(this.docs.request("a3", "Some sample text ."), "eng", 0, this::compute);
+    assertEquals(3, this.computed.get());
+    rc.annotate(this.docs.request("b2", "Some other text ."), "eng", 0, this::compute);
+    assertEquals(4, this.computed.get());
+  }
+
+  @Test
+  public void diskEntriesOverBudgetAndUnfinishedWritesAreRemovedAtStartup() throws Exception {
+    Path dir = this.tf.newFolder().toPath();
+    Path older = Files.write(dir.resolve("older.comm"), new byte[1000]);
+    Files.setLastModifiedTime(older, FileTime.fromMillis(1000));
+    Path newer = Files.write(dir.resolve("newer.comm"), new byte[1000]);
+    Path unfinished = Files.write(dir.resolve("k123.tmp"), new byte[10]);
+
+    ResultCache rc = new ResultCache("config", 1 << 20, Optional.of(dir), 1500);
+    assertEquals(1, rc.getDiskEntries());
+    assertEquals(1000, rc.getDiskBytes());
+    assertFalse(Files.exists(older));
+    assertTrue(Files.exists(newer));
+    assertFalse(Files.exists(unfinished));
+  }
+
+  @Test
+  public void resultsAreReadBackFromDisk() throws Exception {
+    Path dir = this.tf.newFolder().toPath();
+    new ResultCache("config", 1 << 20, Optional.of(dir), 1 << 20)
+        .annotate(this.docs.request("a", "Some sample text ."), "eng", 0, this::compute);
+    ResultCache restarted = new ResultCache("config", 1 << 20, Optional.of(dir), 1 << 20);
+    Communication out = restarted.annotate(this.docs.request("b", "Some sample text ."), "eng", 0,
+        this::compute);
+    assertEquals(1, this.computed.get());
+    assertEquals(1, restarted.getDiskHits());
+    assertEquals("b", out.getId());
+  }
+
+  @Test
+  public void identicalRequestWaitsUpToItsDeadline() throws Exception {
+    ResultCache rc = memoryOnly(1 << 20);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService ex = Executors.newSingleThreadExecutor();
+    try {
+      Future<Communication> first = ex.submit(() -> rc.annotate(this.docs.request("a", "Some sample text ."), "eng",
+          0, c -> {
+            started.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return this.compute(c);
+          }));
+      started.await();
+      try {
+        rc.annotate(this.docs.request("b", "Some sample text ."), "eng", 50, this::compute);
+        fail("expected the deadline to pass");
+      } catch (ConcreteThriftException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("Deadline of 50 ms"));
+      }
+      release.countDown();
+      first.get();
+      assertEquals(1, this.computed.get());
+      assertEquals(1, rc.getSharedComputations());
+    } finally {
+      ex.shutdownNow();
+    }
+  }
+}
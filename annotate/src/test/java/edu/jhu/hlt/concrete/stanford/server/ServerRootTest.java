@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+
+/**
+ *
+ */
+public class ServerRootTest {
+
+  @Rule
+  public TemporaryFolder tf = new TemporaryFolder();
+
+  private Path root;
+  private Path outside;
+  private ServerRoot sr;
+
+  @Before
+  public void setUp() throws Exception {
+    this.root = this.tf.newFolder("root").toPath().toRealPath();
+    this.outside = this.tf.newFolder("outside").toPath().toRealPath();
+    Files.createDirectory(this.root.resolve("in"));
+    Files.write(this.root.resolve("in/a.tar"), new byte[1]);
+    Files.write(this.outside.resolve("secret.tar"), new byte[1]);
+    this.sr = new ServerRoot(this.root);
+  }
+
+  private void rejectsInput(String s) {
+    try {
+      this.sr.resolveInput(s);
+      fail("expected " + s + " to be rejected");
+    } catch (ConcreteThriftException e) {
+      // expected
+    }
+  }
+
+  private void rejectsOutput(String s) {
+    try {
+      this.sr.resolveOutput(s);
+      fail("expected " + s + " to be rejected");
+    } catch (ConcreteThriftException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void resolvesPathsUnderTheRoot() throws Exception {
+    assertEquals(this.root.resolve("in/a.tar"), this.sr.resolveInput("in/a.tar"));
+    assertEquals(this.root.resolve("in/a.tar"), this.sr.resolveInput("in/../in/a.tar"));
+    assertEquals(this.root.resolve("in/out.tar.gz"), this.sr.resolveOutput("in/out.tar.gz"));
+  }
+
+  @Test
+  public void rejectsParentEscapes() throws Exception {
+    this.rejectsInput("../outside/secret.tar");
+    this.rejectsInput("in/../../outside/secret.tar");
+    this.rejectsInput(this.outside.resolve("secret.tar").toString());
+    this.rejectsOutput("../outside/out.tar.gz");
+    this.rejectsOutput(this.outside.resolve("out.tar.gz").toString());
+  }
+
+  @Test
+  public void rejectsSymbolicLinkEscapes() throws Exception {
+    Files.createSymbolicLink(this.root.resolve("link.tar"), this.outside.resolve("secret.tar"));
+    Files.createSymbolicLink(this.root.resolve("linkdir"), this.outside);
+    this.rejectsInput("link.tar");
+    this.rejectsInput("linkdir/secret.tar");
+    this.rejectsOutput("linkdir/out.tar.gz");
+    // an output that is itself a link, even to a file under the root
+    Files.createSymbolicLink(this.root.resolve("in/out.tar.gz"), this.root.resolve("in/a.tar"));
+    this.rejectsOutput("in/out.tar.gz");
+  }
+
+  @Test
+  public void rejectsMissingInputsAndDirectories() throws Exception {
+    this.rejectsInput("in/missing.tar");
+    this.rejectsInput("in");
+    this.rejectsOutput("in");
+    this.rejectsOutput("missing/out.tar.gz");
+  }
+}
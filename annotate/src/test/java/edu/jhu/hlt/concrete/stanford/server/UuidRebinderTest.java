@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.jhu.hlt.concrete.AnnotationMetadata;
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.EntityMention;
+import edu.jhu.hlt.concrete.EntityMentionSet;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.Sentence;
+import edu.jhu.hlt.concrete.TokenRefSequence;
+import edu.jhu.hlt.concrete.TokenTagging;
+import edu.jhu.hlt.concrete.Tokenization;
+import edu.jhu.hlt.concrete.metadata.AnnotationMetadataFactory;
+import edu.jhu.hlt.concrete.section.SingleSectionSegmenter;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory.AnalyticUUIDGenerator;
+import edu.jhu.hlt.tift.Tokenizer;
+
+/**
+ *
+ */
+public class UuidRebinderTest {
+
+  private final AnalyticUUIDGenerator g = new AnalyticUUIDGeneratorFactory().create();
+
+  /**
+   * @return a request with one Section over <code>text</code>
+   */
+  Communication request(String id, String text) throws Exception {
+    Communication c = new Communication()
+        .setId(id)
+        .setUuid(this.g.next())
+        .setType("doc")
+        .setText(text)
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("test"));
+    c.addToSectionList(SingleSectionSegmenter.createSingleSection(c, "passage"));
+    return c;
+  }
+
+  /**
+   * @return <code>c</code> with what a pipeline would add: a tokenized
+   * Sentence with a tagging, and an entity mention referring to its tokens
+   */
+  static Communication annotate(Communication c) {
+    Communication out = new Communication(c);
+    AnalyticUUIDGenerator g = new AnalyticUUIDGeneratorFactory(out).create();
+    Section s = out.getSectionList().get(0);
+    Tokenization tkz = Tokenizer.WHITESPACE.tokenizeToConcrete(out.getText(), 0);
+    tkz.setUuid(g.next());
+    tkz.addToTokenTaggingList(new TokenTagging().setUuid(g.next())
+        .setTaggingType("POS")
+        .setMetadata(new AnnotationMetadata().setTool("test").setTimestamp(1))
+        .setTaggedTokenList(new ArrayList<>()));
+    s.addToSentenceList(new Sentence().setUuid(g.next()).setTextSpan(s.getTextSpan()).setTokenization(tkz));
+    EntityMention em = new EntityMention().setUuid(g.next())
+        .setTokens(new TokenRefSequence().setTokenizationId(tkz.getUuid()).setTokenIndexList(Arrays.asList(0)));
+    out.addToEntityMentionSetList(new EntityMentionSet().setUuid(g.next())
+        .setMetadata(new AnnotationMetadata().setTool("test").setTimestamp(1))
+        .setMentionList(new ArrayList<>(Arrays.asList(em))));
+    return out;
+  }
+
+  @Test
+  public void takesTheCallersUuidsAndFields() throws Exception {
+    Communication first = this.request("first", "Some sample text .");
+    first.getSectionList().get(0).setNumberList(Arrays.asList(1));
+    first.putToKeyValueMap("from", "first");
+    Communication annotated = annotate(first);
+
+    Communication second = this.request("second", "Some sample text .");
+    second.getSectionList().get(0).setNumberList(Arrays.asList(2));
+    Communication out = UuidRebinder.rebind(annotated, second);
+
+    assertEquals("second", out.getId());
+    assertEquals(second.getUuid(), out.getUuid());
+    assertFalse(out.isSetKeyValueMap());
+    Section s = out.getSectionList().get(0);
+    assertEquals(second.getSectionList().get(0).getUuid(), s.getUuid());
+    assertEquals(Arrays.asList(2), s.getNumberList());
+    // annotations are kept, under new UUIDs
+    assertEquals(1, s.getSentenceListSize());
+    Tokenization tkz = s.getSentenceList().get(0).getTokenization();
+    Tokenization before = annotated.getSectionList().get(0).getSentenceList().get(0).getTokenization();
+    assertEquals(before.getTokenList(), tkz.getTokenList());
+    assertNotEquals(before.getUuid(), tkz.getUuid());
+    assertNotEquals(annotated.getEntityMentionSetList().get(0).getUuid(),
+        out.getEntityMentionSetList().get(0).getUuid());
+    // references follow the UUIDs they refer to
+    assertEquals(tkz.getUuid(),
+        out.getEntityMentionSetList().get(0).getMentionList().get(0).getTokens().getTokenizationId());
+  }
+
+  @Test
+  public void annotationsAreStampedWhenRebound() throws Exception {
+    Communication annotated = annotate(this.request("first", "Some sample text ."));
+    Communication out = UuidRebinder.rebind(annotated, this.request("second", "Some sample text ."));
+    assertNotEquals(1, out.getEntityMentionSetList().get(0).getMetadata().getTimestamp());
+    assertNotEquals(1, out.getSectionList().get(0).getSentenceList().get(0).getTokenization()
+        .getTokenTaggingList().get(0).getMetadata().getTimestamp());
+    // the arguments are not modified
+    assertEquals(1, annotated.getEntityMentionSetList().get(0).getMetadata().getTimestamp());
+  }
+}
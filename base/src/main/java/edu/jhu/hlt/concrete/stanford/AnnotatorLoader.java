@@ -0,0 +1,157 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.stanford.nlp.pipeline.Annotator;
+import edu.stanford.nlp.pipeline.AnnotatorFactories;
+import edu.stanford.nlp.pipeline.AnnotatorFactory;
+import edu.stanford.nlp.pipeline.AnnotatorImplementations;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+
+/**
+ * Builds the CoreNLP annotators of a pipeline concurrently, and shares
+ * annotators built with the same properties between pipelines.
+ * <br>
+ * <br>
+ * CoreNLP's own annotator pool builds one annotator at a time, and
+ * holds one annotator per name. Annotators known here are instead built
+ * on a pool of loader threads, so the POS, NER, parser and coreference
+ * models of a pipeline load side by side, and pipelines of several
+ * languages can be held at once. Other annotators fall back to the
+ * CoreNLP pool. The time taken to build each annotator is kept for
+ * reporting.
+ */
+public class AnnotatorLoader {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AnnotatorLoader.class);
+
+  private static final ImmutableMap<String, BiFunction<Properties, AnnotatorImplementations, AnnotatorFactory>> FACTORIES =
+      ImmutableMap.of(
+          "pos", AnnotatorFactories::posTag,
+          "lemma", AnnotatorFactories::lemma,
+          "ner", AnnotatorFactories::nerTag,
+          "parse", AnnotatorFactories::parse,
+          "dcoref", AnnotatorFactories::dcoref);
+
+  private static final ExecutorService LOADERS = Executors.newFixedThreadPool(
+      Runtime.getRuntime().availableProcessors(),
+      new ThreadFactoryBuilder().setNameFormat("model-loader-%d").setDaemon(true).build());
+
+  // the CoreNLP pool is global and keyed by annotator name; pipelines
+  // are built from it one at a time so each takes its own annotators.
+  private static final Object POOL_LOCK = new Object();
+
+  private static final ConcurrentMap<String, CompletableFuture<Annotator>> SHARED = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, Long> LOAD_MILLIS = new ConcurrentHashMap<>();
+
+  private AnnotatorLoader() {
+  }
+
+  /**
+   * Build, or reuse, the named annotators with the given properties.
+   *
+   * @return the annotators, by name
+   * @throws RuntimeException as thrown by CoreNLP if an annotator fails to build
+   */
+  public static ImmutableMap<String, Annotator> load(Properties props, List<String> names) {
+    final AnnotatorImplementations impl = new AnnotatorImplementations();
+    final String settings = settings(props);
+    Map<String, CompletableFuture<Annotator>> pending = new HashMap<>();
+    for (String name : names) {
+      BiFunction<Properties, AnnotatorImplementations, AnnotatorFactory> f = FACTORIES.get(name);
+      if (f != null)
+        pending.put(name, SHARED.computeIfAbsent(name + settings, k -> CompletableFuture.supplyAsync(() ->
+            timed(label(name, props), () -> f.apply(props, impl).create()), LOADERS)));
+    }
+
+    ImmutableMap.Builder<String, Annotator> b = ImmutableMap.builder();
+    // annotators without a factory here are built while the others load.
+    synchronized (POOL_LOCK) {
+      boolean built = false;
+      for (String name : names) {
+        if (pending.containsKey(name))
+          continue;
+        if (!built) {
+          // needed to avoid NPE when using existingAnnotator.
+          timed("pipeline:" + props.getProperty("annotators").replace(" ", ""), () -> new StanfordCoreNLP(props));
+          built = true;
+        }
+        b.put(name, StanfordCoreNLP.getExistingAnnotator(name));
+      }
+    }
+
+    for (Map.Entry<String, CompletableFuture<Annotator>> e : pending.entrySet())
+      b.put(e.getKey(), join(e.getKey() + settings, e.getValue()));
+    return b.build();
+  }
+
+  private static Annotator join(String key, CompletableFuture<Annotator> f) {
+    try {
+      return f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading annotators", e);
+    } catch (ExecutionException e) {
+      // let a later pipeline try again
+      SHARED.remove(key, f);
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw new IllegalStateException("Failed to load annotator", e.getCause());
+    }
+  }
+
+  private interface Build<T> {
+    T build();
+  }
+
+  private static <T> T timed(String label, Build<T> build) {
+    final long start = System.currentTimeMillis();
+    T t = build.build();
+    final long ms = System.currentTimeMillis() - start;
+    LOGGER.info("Loaded {} in {} ms", label, ms);
+    LOAD_MILLIS.put(label, ms);
+    return t;
+  }
+
+  private static String label(String name, Properties props) {
+    String model = props.getProperty(name + ".model");
+    return model == null ? name : name + ":" + model;
+  }
+
+  private static String settings(Properties props) {
+    StringBuilder sb = new StringBuilder();
+    for (String k : new TreeSet<>(props.stringPropertyNames()))
+      sb.append('\n').append(k).append('=').append(props.getProperty(k));
+    return sb.toString();
+  }
+
+  /**
+   * @return the milliseconds taken to build each annotator loaded so far,
+   * by annotator and model
+   */
+  public static ImmutableSortedMap<String, Long> getLoadTimes() {
+    return ImmutableSortedMap.copyOf(LOAD_MILLIS);
+  }
+}
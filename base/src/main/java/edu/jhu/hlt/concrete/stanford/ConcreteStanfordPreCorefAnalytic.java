@@ -6,6 +6,7 @@ package edu.jhu.hlt.concrete.stanford;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IntSummaryStatistics;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -15,6 +16,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 import edu.jhu.hlt.concrete.Communication;
 import edu.jhu.hlt.concrete.Section;
@@ -25,15 +28,17 @@ import edu.jhu.hlt.concrete.analytics.base.TokenizationedCommunicationAnalytic;
 import edu.jhu.hlt.concrete.miscommunication.MiscommunicationException;
 import edu.jhu.hlt.concrete.miscommunication.tokenized.CachedTokenizationCommunication;
 import edu.jhu.hlt.concrete.miscommunication.tokenized.TokenizedCommunication;
+import edu.jhu.hlt.concrete.stanford.metrics.DocumentMetrics;
 import edu.jhu.hlt.concrete.util.ProjectConstants;
 import edu.jhu.hlt.concrete.util.Timing;
 import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
 import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory.AnalyticUUIDGenerator;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TextAnnotation;
+import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
 import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.Annotator;
 import edu.stanford.nlp.pipeline.ParserAnnotatorUtils;
-import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.semgraph.SemanticGraph;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation;
 import edu.stanford.nlp.trees.GrammaticalStructure;
@@ -50,10 +55,17 @@ public class ConcreteStanfordPreCorefAnalytic implements TokenizationedCommunica
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ConcreteStanfordPreCorefAnalytic.class);
 
+  // pooled annotators that are not safe to run on several
+  // documents at once; calls to these are serialized.
+  private static final ImmutableSet<String> SERIAL_ANNOTATORS = ImmutableSet.of("dcoref");
+  private static final Object SERIAL_LOCK = new Object();
+
   private final HeadFinder hf;
   private final Optional<GrammaticalStructureFactory> gramFactory;
   private final ImmutableList<String> postTokenAnnotators;
+  private final ImmutableMap<String, Annotator> annotators;
   private final boolean isCorefEnabled;
+  private final String parserModel;
 
   /**
    *
@@ -64,9 +76,9 @@ public class ConcreteStanfordPreCorefAnalytic implements TokenizationedCommunica
     this.hf = hf;
     this.gramFactory = gramFactory;
     this.postTokenAnnotators = postTokenAnnotators;
-    // needed to avoid NPE when using existingAnnotator.
-    new StanfordCoreNLP(props);
+    this.annotators = AnnotatorLoader.load(props, postTokenAnnotators);
     this.isCorefEnabled = isCorefEnabled;
+    this.parserModel = props.getProperty("parse.model", LexicalizedParser.DEFAULT_PARSER_LOC);
   }
 
   /*
@@ -106,7 +118,14 @@ public class ConcreteStanfordPreCorefAnalytic implements TokenizationedCommunica
    */
   @Override
   public List<String> getToolNotes() {
-    return new ArrayList<>();
+    // key=value pairs, so that they can be joined into a pipeline description
+    final boolean parse = this.postTokenAnnotators.contains("parse");
+    List<String> notes = new ArrayList<>();
+    notes.add("annotators=" + String.join(",", this.postTokenAnnotators));
+    notes.add("parse.model=" + (parse ? this.parserModel : "none"));
+    notes.add("dependencies=" + (parse && this.gramFactory.isPresent() ? "basic,collapsed,collapsed-cc" : "none"));
+    notes.add("coref=" + this.isCorefEnabled);
+    return notes;
   }
 
   private static List<Sentence> annotationToSentenceList(Annotation anno, HeadFinder hf, final List<Sentence> origSentListRef, final AnalyticUUIDGenerator gen)
@@ -154,22 +173,36 @@ public class ConcreteStanfordPreCorefAnalytic implements TokenizationedCommunica
     Annotation anno = new Annotation(allCoreMaps);
     anno.set(TextAnnotation.class, noMarkup);
 
+    IntSummaryStatistics lengths = arg0.getTokenizations().stream()
+        .mapToInt(t -> t.getTokenList().getTokenListSize()).summaryStatistics();
+    DocumentMetrics.recordLength((int) lengths.getCount(), lengths.getSum(), Math.max(0, lengths.getMax()));
     // TODO: it's possible that fixNullDependencyGraphs needs to be called
     // before dcoref annotator is called. TB investigated further.
     for (String annotator : this.postTokenAnnotators) {
       LOGGER.debug("Running annotator: {}", annotator);
-      (StanfordCoreNLP.getExistingAnnotator(annotator)).annotate(anno);
+      if (SERIAL_ANNOTATORS.contains(annotator))
+        synchronized (SERIAL_LOCK) {
+          try (DocumentMetrics.Stage s = DocumentMetrics.stage(annotator)) {
+            this.annotators.get(annotator).annotate(anno);
+          }
+        }
+      else
+        try (DocumentMetrics.Stage s = DocumentMetrics.stage(annotator)) {
+          this.annotators.get(annotator).annotate(anno);
+        }
     }
 
     anno.get(SentencesAnnotation.class).forEach(cm -> LOGGER.trace("Got CoreMaps post-coref: {}", cm.toShorterString(new String[0])));
     // TODO: not sure if this is necessary - found it in the old code.
-    anno.get(SentencesAnnotation.class).stream().filter(cm -> cm.containsKey(TreeAnnotation.class)).forEach(cm -> {
-      Tree tree = cm.get(TreeAnnotation.class);
-      List<Tree> treeList = new ArrayList<>();
-      treeList.add(tree);
-      this.gramFactory.ifPresent(k ->
-        ParserAnnotatorUtils.fillInParseAnnotations(false, true, k, cm, treeList.get(0), GrammaticalStructure.Extras.NONE));
-    });
+    try (DocumentMetrics.Stage fillIn = DocumentMetrics.stage("fillInParseAnnotations")) {
+      anno.get(SentencesAnnotation.class).stream().filter(cm -> cm.containsKey(TreeAnnotation.class)).forEach(cm -> {
+        Tree tree = cm.get(TreeAnnotation.class);
+        List<Tree> treeList = new ArrayList<>();
+        treeList.add(tree);
+        this.gramFactory.ifPresent(k ->
+          ParserAnnotatorUtils.fillInParseAnnotations(false, true, k, cm, treeList.get(0), GrammaticalStructure.Extras.NONE));
+      });
+    }
 
     anno.get(SentencesAnnotation.class).forEach(cm -> LOGGER.trace("Got CoreMap post-fill-in: {}", cm.toShorterString(new String[0])));
     List<Sentence> postSentences = annotationToSentenceList(anno, hf, arg0.getSentences(), g);
@@ -18,13 +18,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.commons.compress.utils.IOUtils;
 import org.apache.commons.lang3.time.StopWatch;
-import org.joda.time.Duration;
-import org.joda.time.Minutes;
-import org.joda.time.Seconds;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import edu.jhu.hlt.acute.archivers.tar.TarArchiver;
 import edu.jhu.hlt.acute.iterators.tar.TarArchiveEntryByteIterator;
 import edu.jhu.hlt.acute.iterators.tar.TarGzArchiveEntryByteIterator;
 import edu.jhu.hlt.concrete.Communication;
@@ -35,7 +31,12 @@ import edu.jhu.hlt.concrete.miscommunication.WrappedCommunication;
 import edu.jhu.hlt.concrete.miscommunication.tokenized.TokenizedCommunication;
 import edu.jhu.hlt.concrete.serialization.CommunicationSerializer;
 import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
-import edu.jhu.hlt.concrete.serialization.archiver.ArchivableCommunication;
+import edu.jhu.hlt.concrete.stanford.io.StreamingCommunicationArchiver;
+import edu.jhu.hlt.concrete.stanford.metrics.DocumentMetrics;
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsHttpServer;
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsParameterDelegate;
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsRegistry;
+import edu.jhu.hlt.concrete.stanford.metrics.RunReport;
 import edu.jhu.hlt.concrete.util.ConcreteException;
 import edu.jhu.hlt.utilt.AutoCloseableIterator;
 import edu.jhu.hlt.utilt.sys.SystemErrDisabler;
@@ -49,12 +50,20 @@ public class ConcreteStanfordRunner {
 
   private final CommunicationSerializer ser = new CompactCommunicationSerializer();
   private final SystemErrDisabler sed = new SystemErrDisabler();
+  private final MetricsParameterDelegate metricsParams;
 
   /**
    *
    */
   public ConcreteStanfordRunner() {
+    this(new MetricsParameterDelegate());
+  }
 
+  /**
+   * @param metricsParams how to publish the metrics recorded while running
+   */
+  public ConcreteStanfordRunner(MetricsParameterDelegate metricsParams) {
+    this.metricsParams = metricsParams;
   }
 
   public void run(Path inPath, Path outPath, Analytic<? extends TokenizedCommunication> analytic) {
@@ -66,8 +75,10 @@ public class ConcreteStanfordRunner {
     }
 
     String lowerOutPathStr = inPath.toString().toLowerCase();
+    MetricsHttpServer metrics = null;
     try {
       sed.disable();
+      metrics = this.metricsParams.publish();
 
       // Outcomes of outPathStr ending:
       // No valid ending (program exit)
@@ -121,26 +132,43 @@ public class ConcreteStanfordRunner {
           iter = isTarExt ? new TarArchiveEntryByteIterator(bis) : new TarGzArchiveEntryByteIterator(bis);
           try (OutputStream os = Files.newOutputStream(localOutPath);
               BufferedOutputStream bos = new BufferedOutputStream(os, 1024 * 8 * 24);) {
-            TarArchiver archiver = isTarExt ? new TarArchiver(bos) : new TarArchiver(new GzipCompressorOutputStream(bos));
+            StreamingCommunicationArchiver archiver = isTarExt
+                ? new StreamingCommunicationArchiver(bos)
+                : new StreamingCommunicationArchiver(new GzipCompressorOutputStream(bos));
 
             final StopWatch sw = new StopWatch();
             sw.start();
 
             int docCtr = 0;
             final AtomicInteger tokenCtr = new AtomicInteger(0);
+            final RunReport report = new RunReport();
             LOGGER.info("Iterating over archive: {}", inPath.toString());
             while (iter.hasNext()) {
               Communication n = ser.fromBytes(iter.next());
               LOGGER.info("Annotating communication: {}", n.getId());
+              final DocumentMetrics dm = DocumentMetrics.open(n);
               try {
-                TokenizedCommunication a = analytic.annotate(n);
-                a.getTokenizations().parallelStream()
-                    .map(tkzToInt -> tkzToInt.getTokenList().getTokenListSize())
-                    .forEach(ct -> tokenCtr.addAndGet(ct));
-                archiver.addEntry(new ArchivableCommunication(a.getRoot()));
+                TokenizedCommunication a;
+                try {
+                  a = analytic.annotate(n);
+                  archiver.addEntry(a.getRoot());
+                } finally {
+                  dm.close();
+                }
+                // only count documents that made it into the archive
+                tokenCtr.addAndGet(a.getTokenizations().stream()
+                    .mapToInt(tkzToInt -> tkzToInt.getTokenList().getTokenListSize())
+                    .sum());
+                report.add(dm);
+                MetricsRegistry.global().record(dm);
                 docCtr++;
               } catch (AnalyticException | IOException | StringIndexOutOfBoundsException e) {
+                MetricsRegistry.global().counter(MetricsRegistry.FAILURES).increment();
                 LOGGER.error("Caught exception processing document: " + n.getId(), e);
+                if (archiver.isFailed()) {
+                  LOGGER.error("Output archive is incomplete; stopping.");
+                  break;
+                }
               }
             }
 
@@ -153,27 +181,26 @@ public class ConcreteStanfordRunner {
             }
 
             sw.stop();
-            Duration rt = new Duration(sw.getTime());
-            Seconds st = rt.toStandardSeconds();
-            Minutes m = rt.toStandardMinutes();
-            int minutesInt = m.getMinutes();
+            final double seconds = sw.getTime() / 1000.0d;
 
             LOGGER.info("Complete.");
-            LOGGER.info("Runtime: approximately {} minutes.", minutesInt);
+            LOGGER.info("Runtime: {} seconds.", String.format("%.1f", seconds));
             LOGGER.info("Processed {} documents.", docCtr);
             final int tokens = tokenCtr.get();
             LOGGER.info("Processed {} tokens.", tokens);
-            if (docCtr > 0 && minutesInt > 0) {
-              final float minutesFloat = minutesInt;
-              float perMin = docCtr / minutesFloat;
-              LOGGER.info("Processed approximately {} documents/minute.", perMin);
-              LOGGER.info("Processed approximately {} tokens/second.", st.getSeconds() / minutesFloat);
+            if (docCtr > 0 && seconds > 0) {
+              LOGGER.info("Processed {} documents/second.", String.format("%.2f", docCtr / seconds));
+              LOGGER.info("Processed {} tokens/second.", String.format("%.1f", tokens / seconds));
             }
+            report.log(LOGGER);
           }
         }
       }
     } catch (IOException | ConcreteException e) {
       LOGGER.error("Caught exception while running the analytic over archive.", e);
+    } finally {
+      if (metrics != null)
+        metrics.close();
     }
   }
 
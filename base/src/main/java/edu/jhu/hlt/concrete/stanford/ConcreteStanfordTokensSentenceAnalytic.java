@@ -24,6 +24,7 @@ import edu.jhu.hlt.concrete.miscommunication.sectioned.CachedSectionedCommunicat
 import edu.jhu.hlt.concrete.miscommunication.sectioned.SectionedCommunication;
 import edu.jhu.hlt.concrete.miscommunication.tokenized.CachedTokenizationCommunication;
 import edu.jhu.hlt.concrete.miscommunication.tokenized.TokenizedCommunication;
+import edu.jhu.hlt.concrete.stanford.metrics.DocumentMetrics;
 import edu.jhu.hlt.concrete.util.Timing;
 import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
 import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory.AnalyticUUIDGenerator;
@@ -42,11 +43,14 @@ public class ConcreteStanfordTokensSentenceAnalytic implements SectionedCommunic
   private static final Logger LOGGER = LoggerFactory.getLogger(ConcreteStanfordTokensSentenceAnalytic.class);
 
   private final StanfordCoreNLP pipeline;
+  // the stage the pipeline's time is recorded under
+  private final String stage;
   /**
    *
    */
   public ConcreteStanfordTokensSentenceAnalytic(Properties props) {
     this.pipeline = new StanfordCoreNLP(props);
+    this.stage = props.getProperty("annotators", "tokenize,ssplit").replace(" ", "");
   }
 
   /* (non-Javadoc)
@@ -79,7 +83,7 @@ public class ConcreteStanfordTokensSentenceAnalytic implements SectionedCommunic
   @Override
   public List<String> getToolNotes() {
     List<String> notes = new ArrayList<>();
-    notes.add("Tokenization and sentence splitting annotators only.");
+    notes.add("tokenize.annotators=" + this.stage);
     return notes;
   }
 
@@ -152,6 +156,9 @@ public class ConcreteStanfordTokensSentenceAnalytic implements SectionedCommunic
     final int oSize = arg0.getSections().size();
     if (newSize < oSize)
       LOGGER.info("Dropped {} section(s) because they were zero-length or contained only whitespace.", oSize - newSize);
+    int sentences = 0;
+    long tokens = 0;
+    int maxSentenceTokens = 0;
     // for each section, run stanford tokenization and sentence splitting
     for (Section s : sList) {
       LOGGER.debug("Annotating section: {}", s.getUuid().getUuidString());
@@ -162,16 +169,28 @@ public class ConcreteStanfordTokensSentenceAnalytic implements SectionedCommunic
       final Annotation sectAnnotation = new Annotation(sectTxt);
       LOGGER.debug("Got annotation keys:");
       sectAnnotation.keySet().forEach(k -> LOGGER.debug("{}", k));
-      this.pipeline.annotate(sectAnnotation);
+      try (DocumentMetrics.Stage st = DocumentMetrics.stage(this.stage)) {
+        this.pipeline.annotate(sectAnnotation);
+      }
       LOGGER.trace("Post annotation annotation keys:");
       sectAnnotation.keySet().forEach(k -> LOGGER.trace("{}", k));
 
       List<CoreLabel> tokensOnly = sectAnnotation.get(TokensAnnotation.class);
       tokensOnly.forEach(cl -> LOGGER.trace("Got non-sent Stanford token: {}", cl.toShorterString(new String[0])));
       // LOGGER.debug("Got first sentence text annotation: {}", sectAnnotation.get(SentencesAnnotation.class).get(0).get(TextAnnotation.class));
-      List<Sentence> stList = annotationToSentenceList(sectAnnotation, sts.getStart(), g);
+      final List<Sentence> stList;
+      try (DocumentMetrics.Stage convert = DocumentMetrics.stage("to-concrete:tokens")) {
+        stList = annotationToSentenceList(sectAnnotation, sts.getStart(), g);
+      }
       s.setSentenceList(stList);
+      sentences += stList.size();
+      for (Sentence st : stList) {
+        final int n = st.getTokenization().getTokenList().getTokenListSize();
+        tokens += n;
+        maxSentenceTokens = Math.max(maxSentenceTokens, n);
+      }
     }
+    DocumentMetrics.recordLength(sentences, tokens, maxSentenceTokens);
 
     cp.setSectionList(sList);
     try {
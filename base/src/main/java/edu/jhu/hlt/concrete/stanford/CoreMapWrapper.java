@@ -23,6 +23,8 @@ import edu.jhu.hlt.concrete.TokenizationKind;
 import edu.jhu.hlt.concrete.analytics.base.AnalyticException;
 import edu.jhu.hlt.concrete.metadata.AnnotationMetadataFactory;
 import edu.jhu.hlt.concrete.sentence.SentenceFactory;
+import edu.jhu.hlt.concrete.stanford.metrics.AnnotationType;
+import edu.jhu.hlt.concrete.stanford.metrics.DocumentMetrics;
 import edu.jhu.hlt.concrete.spans.TextSpanFactory;
 import edu.jhu.hlt.concrete.tokenization.TokenTaggingFactory;
 import edu.jhu.hlt.concrete.tokenization.TokenizationFactory;
@@ -211,16 +213,21 @@ public class CoreMapWrapper {
   }
 
   private static void addToTokenTaggingListIfNotEmpty(TokenTagging tt, Tokenization tkz) {
-    if (tt.isSetTaggedTokenList() && tt.getTaggedTokenListSize() > 0)
+    if (tt.isSetTaggedTokenList() && tt.getTaggedTokenListSize() > 0) {
       tkz.addToTokenTaggingList(tt);
+      AnnotationType.ofTaggingType(tt.getTaggingType())
+          .ifPresent(t -> DocumentMetrics.recordSize(t, tt));
+    }
   }
 
   private Tokenization coreLabelToTokenization(final int cOffset, final Tokenization orig) throws AnalyticException {
     StanfordToConcreteConversionOutput output = this.convertCoreLabels(cOffset);
     List<Token> outputTL = output.getTokenList();
     List<Token> origTokenList = orig.getTokenList().getTokenList();
-    if (origTokenList.isEmpty())
+    if (origTokenList.isEmpty()) {
       origTokenList.addAll(outputTL);
+      DocumentMetrics.recordSize(AnnotationType.TOKENS, orig.getTokenList());
+    }
 
     // if the "previous" tokenization had tokens,
     // make sure they equal the new ones
@@ -28,6 +28,8 @@ import edu.jhu.hlt.concrete.metadata.AnnotationMetadataFactory;
 import edu.jhu.hlt.concrete.miscommunication.MiscommunicationException;
 import edu.jhu.hlt.concrete.miscommunication.tokenized.CachedTokenizationCommunication;
 import edu.jhu.hlt.concrete.miscommunication.tokenized.TokenizedCommunication;
+import edu.jhu.hlt.concrete.stanford.metrics.AnnotationType;
+import edu.jhu.hlt.concrete.stanford.metrics.DocumentMetrics;
 import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
 import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory.AnalyticUUIDGenerator;
 import edu.stanford.nlp.dcoref.CorefChain;
@@ -59,6 +61,18 @@ class CorefManager {
   }
 
   public TokenizedCommunication addCoreference() throws AnalyticException {
+    try (DocumentMetrics.Stage stage = DocumentMetrics.stage("to-concrete:coref")) {
+      this.addEntities();
+    }
+
+    try {
+      return new CachedTokenizationCommunication(this.tc.getRoot());
+    } catch (MiscommunicationException e) {
+      throw new AnalyticException(e);
+    }
+  }
+
+  private void addEntities() throws AnalyticException {
     List<Tokenization> tkzList = this.tc.getTokenizations();
     Communication root = this.tc.getRoot();
 
@@ -100,12 +114,8 @@ class CorefManager {
 
     root.addToEntityMentionSetList(ems);
     root.addToEntitySetList(es);
-
-    try {
-      return new CachedTokenizationCommunication(root);
-    } catch (MiscommunicationException e) {
-      throw new AnalyticException(e);
-    }
+    DocumentMetrics.recordSize(AnnotationType.ENTITY_MENTIONS, ems);
+    DocumentMetrics.recordSize(AnnotationType.ENTITIES, es);
   }
 
   private void validateTokenRefSeqValidity(final TokenRefSequence trs, final Tokenization owner) throws AnalyticException {
@@ -21,6 +21,8 @@ import edu.jhu.hlt.concrete.Sentence;
 import edu.jhu.hlt.concrete.Tokenization;
 import edu.jhu.hlt.concrete.UUID;
 import edu.jhu.hlt.concrete.analytics.base.AnalyticException;
+import edu.jhu.hlt.concrete.stanford.metrics.AnnotationType;
+import edu.jhu.hlt.concrete.stanford.metrics.DocumentMetrics;
 import edu.jhu.hlt.concrete.tokenization.DependencyFactory;
 import edu.jhu.hlt.concrete.tokenization.ParseFactory;
 import edu.jhu.hlt.concrete.util.Timing;
@@ -44,6 +46,9 @@ public class PreNERCoreMapWrapper {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(PreNERCoreMapWrapper.class);
 
+  // the stage the conversion of each sentence is timed under
+  private static final String STAGE = "to-concrete:sentences";
+
   private final CoreMapWrapper wrapper;
   private final Optional<Tree> tree;
   private final Optional<SemanticGraph> basicDeps;
@@ -154,27 +159,28 @@ public class PreNERCoreMapWrapper {
     // possibly add a check if sg.size() == 0
     this.basicDeps.ifPresent(sg -> {
       LOGGER.debug("Generating DependencyParse from basic dependencies.");
-      depParseList.add(this.makeDepParse(sg, tokUuid, "Stanford CoreNLP basic"));
+      depParseList.add(this.makeDepParse(sg, tokUuid, "Stanford CoreNLP basic", AnnotationType.DEPENDENCY_BASIC));
     });
     this.colDeps.ifPresent(sg -> {
       LOGGER.debug("Generating DependencyParse from collapsed dependencies.");
-      depParseList.add(this.makeDepParse(sg, tokUuid, "Stanford CoreNLP col"));
+      depParseList.add(this.makeDepParse(sg, tokUuid, "Stanford CoreNLP col", AnnotationType.DEPENDENCY_COLLAPSED));
     });
     this.colCCDeps.ifPresent(sg -> {
       LOGGER.debug("Generating DependencyParse from collapsed-CC dependencies.");
-      depParseList.add(this.makeDepParse(sg, tokUuid, "Stanford CoreNLP col-CC"));
+      depParseList.add(this.makeDepParse(sg, tokUuid, "Stanford CoreNLP col-CC", AnnotationType.DEPENDENCY_COLLAPSED_CC));
     });
 
     return depParseList;
   }
 
-  private DependencyParse makeDepParse(SemanticGraph semGraph, UUID tokenizationUUID, String toolName) {
+  private DependencyParse makeDepParse(SemanticGraph semGraph, UUID tokenizationUUID, String toolName, AnnotationType type) {
     DependencyParse depParse = new DependencyParse();
     depParse.setUuid(this.gen.next());
     AnnotationMetadata md = new AnnotationMetadata(toolName, Timing.currentLocalTime(), 1);
     depParse.setMetadata(md);
     List<Dependency> dependencies = makeDependencies(semGraph);
     depParse.setDependencyList(dependencies);
+    DocumentMetrics.recordSize(type, depParse);
     return depParse;
   }
 
@@ -198,11 +204,13 @@ public class PreNERCoreMapWrapper {
   }
 
   public Sentence toSentence(final int offset) throws AnalyticException {
-    Sentence pre = this.wrapper.toSentence(offset);
-    LOGGER.debug("Got sentence from original wrapper: {}", pre.toString());
-    // adds annotations in-place.
-    this.addStanfordAnalyticOutput(pre);
-    return pre;
+    try (DocumentMetrics.Stage s = DocumentMetrics.stage(STAGE)) {
+      Sentence pre = this.wrapper.toSentence(offset);
+      LOGGER.debug("Got sentence from original wrapper: {}", pre.toString());
+      // adds annotations in-place.
+      this.addStanfordAnalyticOutput(pre);
+      return pre;
+    }
   }
 
   /**
@@ -224,12 +232,15 @@ public class PreNERCoreMapWrapper {
     if (this.tree.isPresent()) {
       Parse p = makeConcreteCParse(tree.get(), newTkz.getTokenList().getTokenListSize(), tkzID, this.hf);
       newTkz.addToParseList(p);
+      DocumentMetrics.recordSize(AnnotationType.CONSTITUENCY_PARSE, p);
     }
   }
 
   public Sentence toSentence(final int offset, final Sentence origSent) throws AnalyticException {
-    Sentence updated = this.wrapper.toSentence(offset, origSent);
-    this.addStanfordAnalyticOutput(updated);
-    return updated;
+    try (DocumentMetrics.Stage s = DocumentMetrics.stage(STAGE)) {
+      Sentence updated = this.wrapper.toSentence(offset, origSent);
+      this.addStanfordAnalyticOutput(updated);
+      return updated;
+    }
   }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.DependencyParse;
+import edu.jhu.hlt.concrete.EntityMentionSet;
+import edu.jhu.hlt.concrete.EntitySet;
+import edu.jhu.hlt.concrete.Parse;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.Sentence;
+import edu.jhu.hlt.concrete.TokenTagging;
+import edu.jhu.hlt.concrete.Tokenization;
+import edu.jhu.hlt.concrete.UUID;
+
+/**
+ * Records the UUIDs of the annotations already present on a
+ * {@link Communication}, so that what a run added can be told
+ * apart from what it was given.
+ *
+ * @see CommunicationDelta
+ */
+public final class AnnotationInventory {
+
+  private final Set<String> sentences = new HashSet<>();
+  private final Set<String> tokenizedTokenizations = new HashSet<>();
+  private final Set<String> tokenTaggings = new HashSet<>();
+  private final Set<String> parses = new HashSet<>();
+  private final Set<String> dependencyParses = new HashSet<>();
+  private final Set<String> entityMentionSets = new HashSet<>();
+  private final Set<String> entitySets = new HashSet<>();
+
+  private AnnotationInventory() {
+  }
+
+  /**
+   * Take an inventory of <code>c</code>. Must be called before
+   * <code>c</code> is annotated.
+   */
+  public static AnnotationInventory of(Communication c) {
+    AnnotationInventory inv = new AnnotationInventory();
+    if (c.isSetSectionList())
+      for (Section s : c.getSectionList()) {
+        if (!s.isSetSentenceList())
+          continue;
+        for (Sentence st : s.getSentenceList()) {
+          inv.sentences.add(key(st.getUuid()));
+          if (!st.isSetTokenization())
+            continue;
+          Tokenization tkz = st.getTokenization();
+          if (tkz.isSetTokenList() && tkz.getTokenList().getTokenListSize() > 0)
+            inv.tokenizedTokenizations.add(key(tkz.getUuid()));
+          if (tkz.isSetTokenTaggingList())
+            for (TokenTagging tt : tkz.getTokenTaggingList())
+              inv.tokenTaggings.add(key(tt.getUuid()));
+          if (tkz.isSetParseList())
+            for (Parse p : tkz.getParseList())
+              inv.parses.add(key(p.getUuid()));
+          if (tkz.isSetDependencyParseList())
+            for (DependencyParse dp : tkz.getDependencyParseList())
+              inv.dependencyParses.add(key(dp.getUuid()));
+        }
+      }
+
+    if (c.isSetEntityMentionSetList())
+      for (EntityMentionSet ems : c.getEntityMentionSetList())
+        inv.entityMentionSets.add(key(ems.getUuid()));
+    if (c.isSetEntitySetList())
+      for (EntitySet es : c.getEntitySetList())
+        inv.entitySets.add(key(es.getUuid()));
+    return inv;
+  }
+
+  private static String key(UUID uuid) {
+    return uuid == null ? "" : uuid.getUuidString();
+  }
+
+  boolean hasSentence(Sentence st) {
+    return this.sentences.contains(key(st.getUuid()));
+  }
+
+  boolean hasTokens(Tokenization tkz) {
+    return this.tokenizedTokenizations.contains(key(tkz.getUuid()));
+  }
+
+  boolean hasTokenTagging(TokenTagging tt) {
+    return this.tokenTaggings.contains(key(tt.getUuid()));
+  }
+
+  boolean hasParse(Parse p) {
+    return this.parses.contains(key(p.getUuid()));
+  }
+
+  boolean hasDependencyParse(DependencyParse dp) {
+    return this.dependencyParses.contains(key(dp.getUuid()));
+  }
+
+  boolean hasEntityMentionSet(EntityMentionSet ems) {
+    return this.entityMentionSets.contains(key(ems.getUuid()));
+  }
+
+  boolean hasEntitySet(EntitySet es) {
+    return this.entitySets.contains(key(es.getUuid()));
+  }
+}
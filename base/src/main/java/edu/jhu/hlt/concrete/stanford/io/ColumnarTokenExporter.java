@@ -0,0 +1,211 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.Sentence;
+import edu.jhu.hlt.concrete.TaggedToken;
+import edu.jhu.hlt.concrete.TextSpan;
+import edu.jhu.hlt.concrete.Token;
+import edu.jhu.hlt.concrete.TokenTagging;
+import edu.jhu.hlt.concrete.Tokenization;
+import edu.jhu.hlt.concrete.stanford.io.ColumnarTokenShard.Tag;
+
+/**
+ * Writes token offsets and POS, NER and lemma tags of annotated
+ * Communications into a single columnar shard file, alongside the Concrete
+ * output, so that tags can be scanned with memory-mapped reads and no
+ * Thrift decoding. See {@link ColumnarTokenShard} for the format.
+ * <br>
+ * <br>
+ * Columns are streamed to temporary files next to the output while
+ * documents are added, and concatenated into the shard on {@link #close()};
+ * only the tag vocabularies are held in memory.
+ */
+public class ColumnarTokenExporter implements AutoCloseable {
+
+  private final Path out;
+  private final Map<ColumnarTokenShard.Section, Path> tmp = new EnumMap<>(ColumnarTokenShard.Section.class);
+  private final Map<ColumnarTokenShard.Section, DataOutputStream> cols = new EnumMap<>(ColumnarTokenShard.Section.class);
+
+  private final Map<Tag, Map<String, Integer>> vocab = new EnumMap<>(Tag.class);
+  private final Map<Tag, List<String>> vocabList = new EnumMap<>(Tag.class);
+
+  private long documents = 0;
+  private long sentences = 0;
+  private long tokens = 0;
+
+  /**
+   * @param out the shard file to write
+   * @throws IOException on error creating temporary files
+   */
+  public ColumnarTokenExporter(Path out) throws IOException {
+    this.out = out;
+    Path dir = out.toAbsolutePath().getParent();
+    String prefix = out.getFileName().toString() + ".";
+    for (ColumnarTokenShard.Section s : ColumnarTokenShard.Section.values()) {
+      if (s == ColumnarTokenShard.Section.VOCABULARIES)
+        continue;
+      Path p = Files.createTempFile(dir, prefix, "." + s.name().toLowerCase() + ".tmp");
+      this.tmp.put(s, p);
+      this.cols.put(s, new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(p), 1024 * 64)));
+    }
+    for (Tag t : Tag.values()) {
+      this.vocab.put(t, new HashMap<>());
+      this.vocabList.put(t, new ArrayList<>());
+    }
+  }
+
+  private DataOutputStream col(ColumnarTokenShard.Section s) {
+    return this.cols.get(s);
+  }
+
+  /**
+   * Export the tokens and tags of an annotated {@link Communication}.
+   * Sentences without a token list are skipped.
+   *
+   * @throws IOException on write error
+   */
+  public void add(Communication c) throws IOException {
+    this.col(ColumnarTokenShard.Section.DOCUMENT_SENTENCE_START).writeLong(this.sentences);
+    DataOutputStream docs = this.col(ColumnarTokenShard.Section.DOCUMENTS);
+    writeString(docs, c.getId());
+    writeString(docs, c.getUuid().getUuidString());
+
+    if (c.isSetSectionList())
+      for (Section s : c.getSectionList()) {
+        if (!s.isSetSentenceList())
+          continue;
+        for (Sentence st : s.getSentenceList())
+          if (st.isSetTokenization() && st.getTokenization().isSetTokenList())
+            this.addTokenization(st.getTokenization());
+      }
+
+    this.documents++;
+  }
+
+  private void addTokenization(Tokenization tkz) throws IOException {
+    List<Token> tl = tkz.getTokenList().getTokenList();
+    final int n = tl.size();
+    this.col(ColumnarTokenShard.Section.SENTENCE_TOKEN_START).writeLong(this.tokens);
+
+    DataOutputStream begins = this.col(ColumnarTokenShard.Section.TOKEN_BEGIN);
+    DataOutputStream ends = this.col(ColumnarTokenShard.Section.TOKEN_END);
+    for (Token t : tl) {
+      TextSpan ts = t.getTextSpan();
+      begins.writeInt(ts == null ? -1 : ts.getStart());
+      ends.writeInt(ts == null ? -1 : ts.getEnding());
+    }
+
+    int[] ids = new int[n];
+    for (Tag t : Tag.values()) {
+      Arrays.fill(ids, -1);
+      TokenTagging tt = lastTagging(tkz, t.getTaggingType());
+      if (tt != null && tt.isSetTaggedTokenList())
+        for (TaggedToken tok : tt.getTaggedTokenList()) {
+          final int idx = tok.getTokenIndex();
+          if (idx >= 0 && idx < n)
+            ids[idx] = this.tagId(t, tok.getTag());
+        }
+      DataOutputStream dos = this.col(ColumnarTokenShard.Section.of(t));
+      for (int id : ids)
+        dos.writeInt(id);
+    }
+
+    this.tokens += n;
+    this.sentences++;
+  }
+
+  private static TokenTagging lastTagging(Tokenization tkz, String type) {
+    TokenTagging found = null;
+    if (tkz.isSetTokenTaggingList())
+      for (TokenTagging tt : tkz.getTokenTaggingList())
+        if (type.equalsIgnoreCase(tt.getTaggingType()))
+          found = tt;
+    return found;
+  }
+
+  private int tagId(Tag t, String tag) {
+    Map<String, Integer> m = this.vocab.get(t);
+    Integer id = m.get(tag);
+    if (id == null) {
+      List<String> l = this.vocabList.get(t);
+      id = l.size();
+      l.add(tag);
+      m.put(tag, id);
+    }
+    return id;
+  }
+
+  private static void writeString(DataOutputStream dos, String s) throws IOException {
+    byte[] b = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    dos.writeInt(b.length);
+    dos.write(b);
+  }
+
+  /**
+   * @return the number of tokens exported so far
+   */
+  public long getTokenCount() {
+    return this.tokens;
+  }
+
+  /**
+   * Assemble the shard file and remove the temporary column files.
+   */
+  @Override
+  public void close() throws IOException {
+    this.col(ColumnarTokenShard.Section.SENTENCE_TOKEN_START).writeLong(this.tokens);
+    this.col(ColumnarTokenShard.Section.DOCUMENT_SENTENCE_START).writeLong(this.sentences);
+    for (DataOutputStream dos : this.cols.values())
+      dos.close();
+
+    Path vocabPath = Files.createTempFile(this.out.toAbsolutePath().getParent(),
+        this.out.getFileName().toString() + ".", ".vocabularies.tmp");
+    this.tmp.put(ColumnarTokenShard.Section.VOCABULARIES, vocabPath);
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(vocabPath)))) {
+      for (Tag t : Tag.values()) {
+        List<String> l = this.vocabList.get(t);
+        dos.writeInt(l.size());
+        for (String s : l)
+          writeString(dos, s);
+      }
+    }
+
+    try (OutputStream os = Files.newOutputStream(this.out);
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os, 1024 * 64))) {
+      dos.writeInt(ColumnarTokenShard.MAGIC);
+      dos.writeInt(ColumnarTokenShard.VERSION);
+      dos.writeLong(this.documents);
+      dos.writeLong(this.sentences);
+      dos.writeLong(this.tokens);
+      long offset = ColumnarTokenShard.HEADER_SIZE;
+      for (ColumnarTokenShard.Section s : ColumnarTokenShard.Section.values()) {
+        dos.writeLong(offset);
+        offset += Files.size(this.tmp.get(s));
+      }
+      for (ColumnarTokenShard.Section s : ColumnarTokenShard.Section.values())
+        Files.copy(this.tmp.get(s), dos);
+    } finally {
+      for (Path p : this.tmp.values())
+        Files.deleteIfExists(p);
+    }
+  }
+}
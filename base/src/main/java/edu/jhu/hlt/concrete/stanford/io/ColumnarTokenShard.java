@@ -0,0 +1,330 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Memory-mapped reader for shard files written by {@link ColumnarTokenExporter}.
+ * <br>
+ * <br>
+ * All values are big-endian. Layout:
+ * <pre>
+ * int    magic ("CSTC")
+ * int    version
+ * long   documents, sentences, tokens
+ * long[] offsets of each {@link Section}, in declaration order
+ * long[sentences + 1] first token of each sentence
+ * long[documents + 1] first sentence of each document
+ * int[tokens]         token begin character offsets (-1 if unknown)
+ * int[tokens]         token end character offsets (-1 if unknown)
+ * int[tokens]         tag IDs, one column per {@link Tag} (-1 if untagged)
+ * vocabularies        per Tag: int count, then count x (int length, UTF-8 bytes)
+ * documents           per document: (int length, UTF-8 ID), (int length, UTF-8 UUID)
+ * </pre>
+ * Character offsets index into the Communication's text. Token and
+ * sentence indices are global to the shard.
+ * <br>
+ * <br>
+ * One memory mapping holds at most 2 GB, so the accessors that return a
+ * whole column fail on larger columns (over about 500 million tokens);
+ * read those with the ranged accessors, a window at a time.
+ */
+public class ColumnarTokenShard implements AutoCloseable {
+
+  static final int MAGIC = 0x43535443;
+  static final int VERSION = 1;
+
+  /**
+   * The tag columns, and the Concrete TokenTagging type each is taken from.
+   */
+  public enum Tag {
+    POS("POS"),
+    NER("NER"),
+    LEMMA("LEMMA");
+
+    private final String taggingType;
+
+    private Tag(String taggingType) {
+      this.taggingType = taggingType;
+    }
+
+    /**
+     * @return the <code>taggingType</code> of the TokenTagging this column is exported from
+     */
+    public String getTaggingType() {
+      return this.taggingType;
+    }
+  }
+
+  /**
+   * Sections of the file, in order.
+   */
+  enum Section {
+    SENTENCE_TOKEN_START,
+    DOCUMENT_SENTENCE_START,
+    TOKEN_BEGIN,
+    TOKEN_END,
+    POS,
+    NER,
+    LEMMA,
+    VOCABULARIES,
+    DOCUMENTS;
+
+    static Section of(Tag t) {
+      return Section.valueOf(t.name());
+    }
+  }
+
+  static final int HEADER_SIZE = 4 + 4 + 8 * 3 + 8 * Section.values().length;
+
+  private final FileChannel fc;
+  private final long documents;
+  private final long sentences;
+  private final long tokens;
+  private final long[] offsets = new long[Section.values().length];
+  private final long size;
+
+  /**
+   * @param p path to a shard file
+   * @throws IOException on I/O error or if the file is not a shard
+   */
+  public ColumnarTokenShard(Path p) throws IOException {
+    this.fc = FileChannel.open(p, StandardOpenOption.READ);
+    this.size = this.fc.size();
+    MappedByteBuffer h = this.fc.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+    if (h.getInt() != MAGIC)
+      throw new IOException("Not a columnar token shard: " + p.toString());
+    final int v = h.getInt();
+    if (v != VERSION)
+      throw new IOException("Unsupported shard version: " + v);
+    this.documents = h.getLong();
+    this.sentences = h.getLong();
+    this.tokens = h.getLong();
+    for (int i = 0; i < this.offsets.length; i++)
+      this.offsets[i] = h.getLong();
+  }
+
+  private long start(Section s) {
+    return this.offsets[s.ordinal()];
+  }
+
+  private long end(Section s) {
+    final int i = s.ordinal();
+    return i + 1 < this.offsets.length ? this.offsets[i + 1] : this.size;
+  }
+
+  // a single mapping is limited to Integer.MAX_VALUE bytes
+  private ByteBuffer map(Section s) throws IOException {
+    final long length = this.end(s) - this.start(s);
+    if (length > Integer.MAX_VALUE)
+      throw new IOException("Column " + s + " is " + length + " bytes, larger than one mapping; "
+          + "read it in ranges instead");
+    return this.fc.map(FileChannel.MapMode.READ_ONLY, this.start(s), length);
+  }
+
+  /**
+   * Map <code>count</code> values of <code>width</code> bytes of column
+   * <code>s</code>, from value <code>first</code>.
+   */
+  private ByteBuffer map(Section s, long first, int count, int width) throws IOException {
+    final long values = (this.end(s) - this.start(s)) / width;
+    if (first < 0 || count < 0 || first + count > values)
+      throw new IndexOutOfBoundsException("Values " + first + " to " + (first + count) + " of " + s
+          + ", which has " + values);
+    if ((long) count * width > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("At most " + (Integer.MAX_VALUE / width) + " values of " + s
+          + " can be mapped at once");
+    return this.fc.map(FileChannel.MapMode.READ_ONLY, this.start(s) + first * width, (long) count * width);
+  }
+
+  // reads a variable-length column sequentially, whatever its size
+  private DataInputStream stream(Section s) throws IOException {
+    return new DataInputStream(new BufferedInputStream(
+        ByteStreams.limit(Channels.newInputStream(this.fc.position(this.start(s))), this.end(s) - this.start(s))));
+  }
+
+  /**
+   * @return the number of documents in the shard
+   */
+  public long getDocumentCount() {
+    return this.documents;
+  }
+
+  /**
+   * @return the number of sentences in the shard
+   */
+  public long getSentenceCount() {
+    return this.sentences;
+  }
+
+  /**
+   * @return the number of tokens in the shard
+   */
+  public long getTokenCount() {
+    return this.tokens;
+  }
+
+  /**
+   * @return <code>sentences + 1</code> values: the global index of the first
+   * token of each sentence, followed by the token count
+   */
+  public LongBuffer sentenceTokenStarts() throws IOException {
+    return this.map(Section.SENTENCE_TOKEN_START).asLongBuffer();
+  }
+
+  /**
+   * @return <code>count</code> values of {@link #sentenceTokenStarts()},
+   * from value <code>first</code>
+   */
+  public LongBuffer sentenceTokenStarts(long first, int count) throws IOException {
+    return this.map(Section.SENTENCE_TOKEN_START, first, count, Long.BYTES).asLongBuffer();
+  }
+
+  /**
+   * @return <code>documents + 1</code> values: the global index of the first
+   * sentence of each document, followed by the sentence count
+   */
+  public LongBuffer documentSentenceStarts() throws IOException {
+    return this.map(Section.DOCUMENT_SENTENCE_START).asLongBuffer();
+  }
+
+  /**
+   * @return <code>count</code> values of {@link #documentSentenceStarts()},
+   * from value <code>first</code>
+   */
+  public LongBuffer documentSentenceStarts(long first, int count) throws IOException {
+    return this.map(Section.DOCUMENT_SENTENCE_START, first, count, Long.BYTES).asLongBuffer();
+  }
+
+  /**
+   * @return the begin character offset of each token
+   */
+  public IntBuffer tokenBegins() throws IOException {
+    return this.map(Section.TOKEN_BEGIN).asIntBuffer();
+  }
+
+  /**
+   * @return the begin character offsets of <code>count</code> tokens, from
+   * token <code>first</code>
+   */
+  public IntBuffer tokenBegins(long first, int count) throws IOException {
+    return this.map(Section.TOKEN_BEGIN, first, count, Integer.BYTES).asIntBuffer();
+  }
+
+  /**
+   * @return the end character offset of each token
+   */
+  public IntBuffer tokenEnds() throws IOException {
+    return this.map(Section.TOKEN_END).asIntBuffer();
+  }
+
+  /**
+   * @return the end character offsets of <code>count</code> tokens, from
+   * token <code>first</code>
+   */
+  public IntBuffer tokenEnds(long first, int count) throws IOException {
+    return this.map(Section.TOKEN_END, first, count, Integer.BYTES).asIntBuffer();
+  }
+
+  /**
+   * @return the tag ID of each token for the given column; see {@link #vocabulary(Tag)}
+   */
+  public IntBuffer tags(Tag t) throws IOException {
+    return this.map(Section.of(t)).asIntBuffer();
+  }
+
+  /**
+   * @return the tag IDs of <code>count</code> tokens for the given column,
+   * from token <code>first</code>
+   */
+  public IntBuffer tags(Tag t, long first, int count) throws IOException {
+    return this.map(Section.of(t), first, count, Integer.BYTES).asIntBuffer();
+  }
+
+  /**
+   * @return the tag strings of the given column, indexed by tag ID
+   */
+  public ImmutableList<String> vocabulary(Tag t) throws IOException {
+    return this.vocabularies().get(t);
+  }
+
+  /**
+   * @return the tag strings of every column, indexed by tag ID
+   */
+  public synchronized Map<Tag, ImmutableList<String>> vocabularies() throws IOException {
+    DataInputStream in = this.stream(Section.VOCABULARIES);
+    Map<Tag, ImmutableList<String>> m = new EnumMap<>(Tag.class);
+    for (Tag t : Tag.values()) {
+      final int n = in.readInt();
+      ImmutableList.Builder<String> b = ImmutableList.builder();
+      for (int i = 0; i < n; i++)
+        b.add(readString(in));
+      m.put(t, b.build());
+    }
+    return m;
+  }
+
+  /**
+   * @return the Communication ID of each document
+   */
+  public List<String> documentIds() throws IOException {
+    return this.documentStrings(0);
+  }
+
+  /**
+   * @return the Communication UUID of each document
+   */
+  public List<String> documentUuids() throws IOException {
+    return this.documentStrings(1);
+  }
+
+  // each document has an ID then a UUID
+  private synchronized List<String> documentStrings(int which) throws IOException {
+    DataInputStream in = this.stream(Section.DOCUMENTS);
+    List<String> l = new ArrayList<>((int) Math.min(this.documents, Integer.MAX_VALUE));
+    for (long i = 0; i < this.documents; i++)
+      for (int j = 0; j < 2; j++) {
+        if (j == which)
+          l.add(readString(in));
+        else
+          in.skipBytes(in.readInt());
+      }
+    return l;
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] b = new byte[in.readInt()];
+    in.readFully(b);
+    return new String(b, StandardCharsets.UTF_8);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.AutoCloseable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    this.fc.close();
+  }
+}
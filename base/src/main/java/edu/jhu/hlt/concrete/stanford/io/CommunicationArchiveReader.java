@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Predicate;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+
+/**
+ * Reads the raw bytes of each file entry of a <code>.tar</code> or
+ * <code>.tar.gz</code> archive of serialized Communications, leaving
+ * decoding to the caller (e.g. a {@link CommunicationProjector}).
+ */
+public class CommunicationArchiveReader implements AutoCloseable {
+
+  private final TarArchiveInputStream tis;
+  private String entryName;
+
+  /**
+   * @param is the archive stream; closed when this reader is closed
+   * @param gzipped true if the stream is a gzip compressed tar
+   * @throws IOException on error opening the compressed stream
+   */
+  public CommunicationArchiveReader(InputStream is, boolean gzipped) throws IOException {
+    this.tis = new TarArchiveInputStream(gzipped ? new GzipCompressorInputStream(is, true) : is);
+  }
+
+  /**
+   * @param name an archive file name
+   * @return true if the name ends in <code>.gz</code> or <code>.tgz</code>
+   */
+  public static boolean isGzipped(String name) {
+    final String lower = name.toLowerCase();
+    return lower.endsWith(".gz") || lower.endsWith(".tgz");
+  }
+
+  /**
+   * @return the bytes of the next file entry, or <code>null</code> if there are none left
+   * @throws IOException on read error
+   */
+  public byte[] next() throws IOException {
+    return this.next(name -> true);
+  }
+
+  /**
+   * @param filter accepts entry names to read
+   * @return the bytes of the next file entry whose name <code>filter</code>
+   * accepts, or <code>null</code> if there are none left. Other entries are
+   * skipped without being copied into memory.
+   * @throws IOException on read error
+   */
+  public byte[] next(Predicate<String> filter) throws IOException {
+    TarArchiveEntry e;
+    while ((e = this.tis.getNextTarEntry()) != null) {
+      if (!e.isFile() || !filter.test(e.getName()))
+        continue;
+      this.entryName = e.getName();
+      return IOUtils.toByteArray(this.tis);
+    }
+
+    this.entryName = null;
+    return null;
+  }
+
+  /**
+   * @return the name of the entry most recently returned by {@link #next()}
+   */
+  public String getEntryName() {
+    return this.entryName;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.AutoCloseable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    this.tis.close();
+  }
+}
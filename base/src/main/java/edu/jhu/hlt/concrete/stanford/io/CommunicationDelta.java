@@ -0,0 +1,218 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.DependencyParse;
+import edu.jhu.hlt.concrete.EntityMentionSet;
+import edu.jhu.hlt.concrete.EntitySet;
+import edu.jhu.hlt.concrete.Parse;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.Sentence;
+import edu.jhu.hlt.concrete.TokenTagging;
+import edu.jhu.hlt.concrete.Tokenization;
+import edu.jhu.hlt.concrete.metadata.AnnotationMetadataFactory;
+import edu.jhu.hlt.concrete.stanford.metrics.ProcessingCost;
+
+/**
+ * Extracts the annotations a run added to a {@link Communication} as a
+ * small "delta" Communication, and merges deltas back into their originals.
+ * <br>
+ * <br>
+ * A delta carries the required Communication fields (ID, UUID, type), no
+ * text, and:
+ * <ul>
+ * <li>every output {@link Section}, in output order, with its UUID, kind
+ * and TextSpan</li>
+ * <li>under each Section, {@link Sentence}s that are new, in full, and
+ * Sentences that existed with only the {@link Tokenization} content that is
+ * new: the token list, if the input had none, and any new TokenTaggings,
+ * Parses and DependencyParses</li>
+ * <li>new {@link EntityMentionSet}s and {@link EntitySet}s</li>
+ * <li>the {@link ProcessingCost} entries of the <code>keyValueMap</code>,
+ * if any were recorded</li>
+ * </ul>
+ * Sections are listed even when they gained nothing, because the
+ * tokenization analytic drops empty Sections and the merge has to
+ * reproduce that.
+ */
+public final class CommunicationDelta {
+
+  /**
+   * The tool name set on the metadata of delta Communications.
+   */
+  public static final String TOOL_NAME = "concrete-stanford delta";
+
+  private CommunicationDelta() {
+  }
+
+  /**
+   * @param c an original or delta Communication
+   * @return the archive entry name for the delta of <code>c</code>, keyed by UUID
+   */
+  public static String entryName(Communication c) {
+    return c.getUuid().getUuidString() + ".delta.comm";
+  }
+
+  /**
+   * @param before the inventory of the input, taken before annotation
+   * @param after the annotated Communication
+   * @return a delta Communication with only what was added
+   */
+  public static Communication extract(AnnotationInventory before, Communication after) {
+    Communication d = new Communication()
+        .setId(after.getId())
+        .setUuid(after.getUuid())
+        .setType(after.getType())
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool(TOOL_NAME));
+
+    if (after.isSetSectionList()) {
+      List<Section> sl = new ArrayList<>(after.getSectionListSize());
+      for (Section s : after.getSectionList()) {
+        Section ds = new Section()
+            .setUuid(s.getUuid())
+            .setKind(s.getKind())
+            .setTextSpan(s.getTextSpan());
+        if (s.isSetSentenceList())
+          for (Sentence st : s.getSentenceList())
+            sentenceDelta(before, st).ifPresent(ds::addToSentenceList);
+        sl.add(ds);
+      }
+      d.setSectionList(sl);
+    }
+
+    if (after.isSetEntityMentionSetList())
+      for (EntityMentionSet ems : after.getEntityMentionSetList())
+        if (!before.hasEntityMentionSet(ems))
+          d.addToEntityMentionSetList(ems);
+    if (after.isSetEntitySetList())
+      for (EntitySet es : after.getEntitySetList())
+        if (!before.hasEntitySet(es))
+          d.addToEntitySetList(es);
+    ProcessingCost.get(after).forEach(d::putToKeyValueMap);
+
+    return d;
+  }
+
+  private static Optional<Sentence> sentenceDelta(AnnotationInventory before, Sentence st) {
+    if (!before.hasSentence(st))
+      return Optional.of(st);
+    if (!st.isSetTokenization())
+      return Optional.empty();
+    return tokenizationDelta(before, st.getTokenization())
+        .map(tkz -> new Sentence()
+            .setUuid(st.getUuid())
+            .setTextSpan(st.getTextSpan())
+            .setTokenization(tkz));
+  }
+
+  private static Optional<Tokenization> tokenizationDelta(AnnotationInventory before, Tokenization tkz) {
+    Tokenization d = new Tokenization()
+        .setUuid(tkz.getUuid())
+        .setMetadata(tkz.getMetadata())
+        .setKind(tkz.getKind());
+    boolean added = false;
+    if (tkz.isSetTokenList() && !before.hasTokens(tkz)) {
+      d.setTokenList(tkz.getTokenList());
+      added = true;
+    }
+    if (tkz.isSetTokenTaggingList())
+      for (TokenTagging tt : tkz.getTokenTaggingList())
+        if (!before.hasTokenTagging(tt)) {
+          d.addToTokenTaggingList(tt);
+          added = true;
+        }
+    if (tkz.isSetParseList())
+      for (Parse p : tkz.getParseList())
+        if (!before.hasParse(p)) {
+          d.addToParseList(p);
+          added = true;
+        }
+    if (tkz.isSetDependencyParseList())
+      for (DependencyParse dp : tkz.getDependencyParseList())
+        if (!before.hasDependencyParse(dp)) {
+          d.addToDependencyParseList(dp);
+          added = true;
+        }
+    return added ? Optional.of(d) : Optional.empty();
+  }
+
+  /**
+   * Rebuild a full annotated Communication.
+   *
+   * @param original the Communication that was annotated
+   * @param delta the delta produced from it
+   * @return a new Communication with the delta applied; neither argument is modified
+   * @throws IllegalArgumentException if the UUIDs of the arguments do not match
+   */
+  public static Communication merge(Communication original, Communication delta) {
+    if (!original.getUuid().equals(delta.getUuid()))
+      throw new IllegalArgumentException("Delta UUID " + delta.getUuid().getUuidString()
+          + " does not match Communication UUID " + original.getUuid().getUuidString());
+    Communication out = new Communication(original);
+    Communication dc = new Communication(delta);
+    if (dc.isSetSectionList()) {
+      Map<String, Section> byId = new HashMap<>();
+      if (out.isSetSectionList())
+        out.getSectionList().forEach(s -> byId.put(s.getUuid().getUuidString(), s));
+      List<Section> merged = new ArrayList<>(dc.getSectionListSize());
+      for (Section ds : dc.getSectionList()) {
+        Section base = byId.get(ds.getUuid().getUuidString());
+        if (base == null) {
+          merged.add(ds);
+          continue;
+        }
+        if (ds.isSetSentenceList())
+          mergeSentences(base, ds.getSentenceList());
+        merged.add(base);
+      }
+      out.setSectionList(merged);
+    }
+
+    if (dc.isSetEntityMentionSetList())
+      dc.getEntityMentionSetList().forEach(out::addToEntityMentionSetList);
+    if (dc.isSetEntitySetList())
+      dc.getEntitySetList().forEach(out::addToEntitySetList);
+    if (dc.isSetKeyValueMap())
+      dc.getKeyValueMap().forEach(out::putToKeyValueMap);
+    return out;
+  }
+
+  private static void mergeSentences(Section base, List<Sentence> deltas) {
+    Map<String, Sentence> existing = new HashMap<>();
+    if (base.isSetSentenceList())
+      base.getSentenceList().forEach(st -> existing.put(st.getUuid().getUuidString(), st));
+    for (Sentence ds : deltas) {
+      Sentence e = existing.get(ds.getUuid().getUuidString());
+      if (e == null)
+        base.addToSentenceList(ds);
+      else if (ds.isSetTokenization())
+        mergeTokenization(e, ds.getTokenization());
+    }
+  }
+
+  private static void mergeTokenization(Sentence e, Tokenization dt) {
+    if (!e.isSetTokenization()) {
+      e.setTokenization(dt);
+      return;
+    }
+    Tokenization t = e.getTokenization();
+    if (dt.isSetTokenList()
+        && (!t.isSetTokenList() || t.getTokenList().getTokenListSize() == 0))
+      t.setTokenList(dt.getTokenList());
+    if (dt.isSetTokenTaggingList())
+      dt.getTokenTaggingList().forEach(t::addToTokenTaggingList);
+    if (dt.isSetParseList())
+      dt.getParseList().forEach(t::addToParseList);
+    if (dt.isSetDependencyParseList())
+      dt.getDependencyParseList().forEach(t::addToDependencyParseList);
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.protocol.TType;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TMemoryInputTransport;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import edu.jhu.hlt.concrete.Communication;
+
+/**
+ * Decodes only selected top-level fields of compact-serialized
+ * {@link Communication}s.
+ * <br>
+ * <br>
+ * Fields that are not selected are skipped over without being
+ * materialized and kept as raw bytes in the resulting
+ * {@link ProjectedCommunication}, to be spliced back in on output. Inputs
+ * carrying large annotation sets from other tools therefore cost a scan
+ * and a byte copy instead of a full object graph and a deep copy.
+ */
+public class CommunicationProjector {
+
+  /**
+   * The fields required by the Communication schema.
+   */
+  public static final ImmutableSet<Communication._Fields> REQUIRED_FIELDS =
+      ImmutableSet.copyOf(EnumSet.of(Communication._Fields.ID,
+          Communication._Fields.UUID,
+          Communication._Fields.TYPE,
+          Communication._Fields.METADATA));
+
+  /**
+   * The fields read by the tokenization, pre-coref and coref analytics:
+   * the required fields, <code>text</code>, and <code>sectionList</code>
+   * (which holds the Sentences and Tokenizations of tokenized input).
+   */
+  public static final ImmutableSet<Communication._Fields> ANALYTIC_FIELDS =
+      ImmutableSet.<Communication._Fields>builder()
+          .addAll(REQUIRED_FIELDS)
+          .add(Communication._Fields.TEXT)
+          .add(Communication._Fields.SECTION_LIST)
+          .build();
+
+  private final ImmutableSet<Communication._Fields> fields;
+  private final Set<Short> fieldIds = new HashSet<>();
+
+  /**
+   * Project to {@link #ANALYTIC_FIELDS}.
+   */
+  public CommunicationProjector() {
+    this(ANALYTIC_FIELDS);
+  }
+
+  /**
+   * @param fields the fields to decode; the required fields are always decoded.
+   */
+  public CommunicationProjector(Set<Communication._Fields> fields) {
+    this.fields = ImmutableSet.<Communication._Fields>builder()
+        .addAll(REQUIRED_FIELDS)
+        .addAll(fields)
+        .build();
+    this.fields.forEach(f -> this.fieldIds.add(f.getThriftFieldId()));
+  }
+
+  /**
+   * @return the decoded fields
+   */
+  public ImmutableSet<Communication._Fields> getFields() {
+    return this.fields;
+  }
+
+  /**
+   * @param bytes a compact protocol serialized {@link Communication}
+   * @return the projected Communication
+   * @throws IOException if the bytes are not a valid Communication
+   */
+  public ProjectedCommunication project(byte[] bytes) throws IOException {
+    ImmutableList.Builder<RetainedField> retained = ImmutableList.builder();
+    ByteArrayOutputStream kept = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+    try {
+      TMemoryInputTransport in = new TMemoryInputTransport(bytes);
+      TCompactProtocol ip = new TCompactProtocol(in);
+      TIOStreamTransport ot = new TIOStreamTransport(kept);
+      TCompactProtocol op = new TCompactProtocol(ot);
+
+      ip.readStructBegin();
+      op.writeStructBegin(new TStruct(""));
+      while (true) {
+        TField f = ip.readFieldBegin();
+        if (f.type == TType.STOP)
+          break;
+        final boolean keep = this.fieldIds.contains(f.id);
+        if (f.type == TType.BOOL) {
+          boolean v = ip.readBool();
+          if (keep) {
+            op.writeFieldBegin(f);
+            op.writeBool(v);
+            op.writeFieldEnd();
+          } else {
+            retained.add(RetainedField.ofBool(f.id, v));
+          }
+        } else {
+          final int start = in.getBufferPosition();
+          TProtocolUtil.skip(ip, f.type);
+          final int end = in.getBufferPosition();
+          if (keep) {
+            op.writeFieldBegin(f);
+            ot.write(bytes, start, end - start);
+            op.writeFieldEnd();
+          } else {
+            retained.add(RetainedField.of(f.id, f.type, Arrays.copyOfRange(bytes, start, end)));
+          }
+        }
+        ip.readFieldEnd();
+      }
+      ip.readStructEnd();
+      op.writeFieldStop();
+      op.writeStructEnd();
+
+      Communication c = new Communication();
+      c.read(new TCompactProtocol(new TMemoryInputTransport(kept.toByteArray())));
+      return new ProjectedCommunication(c, retained.build());
+    } catch (TException e) {
+      throw new IOException("Failed to decode Communication.", e);
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolDecorator;
+import org.apache.thrift.protocol.TStruct;
+import org.apache.thrift.transport.TMemoryBuffer;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.jhu.hlt.concrete.Communication;
+
+/**
+ * A {@link Communication} decoded with only a subset of its fields,
+ * along with the raw encodings of the fields that were skipped.
+ *
+ * @see CommunicationProjector
+ */
+public final class ProjectedCommunication {
+
+  private final Communication comm;
+  private final ImmutableList<RetainedField> retained;
+
+  ProjectedCommunication(Communication comm, ImmutableList<RetainedField> retained) {
+    this.comm = comm;
+    this.retained = retained;
+  }
+
+  /**
+   * Wrap a fully decoded {@link Communication}; nothing is retained.
+   */
+  public static ProjectedCommunication full(Communication comm) {
+    return new ProjectedCommunication(comm, ImmutableList.of());
+  }
+
+  /**
+   * @return the decoded subset of the Communication
+   */
+  public Communication getCommunication() {
+    return this.comm;
+  }
+
+  /**
+   * @return the fields that were not decoded
+   */
+  public ImmutableList<RetainedField> getRetainedFields() {
+    return this.retained;
+  }
+
+  /**
+   * @return the total encoded size of the retained fields
+   */
+  public long getRetainedBytes() {
+    long t = 0;
+    for (RetainedField f : this.retained)
+      t += f.getSize();
+    return t;
+  }
+
+  /**
+   * Write <code>annotated</code>, an annotated version of the projected
+   * Communication, with the retained fields spliced back in unchanged.
+   * <br>
+   * <br>
+   * If <code>annotated</code> also sets a retained field (e.g. coref adding
+   * to an <code>entityMentionSetList</code> that was not decoded), the
+   * retained value is decoded and merged: list elements from the input come
+   * first, map entries from <code>annotated</code> win, and any other
+   * field type is replaced by the value in <code>annotated</code>.
+   * <br>
+   * <br>
+   * The protocol must be a {@link TCompactProtocol}, as the retained bytes
+   * are compact protocol encodings.
+   */
+  public void write(Communication annotated, TProtocol p) throws TException {
+    List<RetainedField> toSplice = new ArrayList<>(this.retained.size());
+    Communication merged = annotated;
+    for (RetainedField f : this.retained) {
+      Communication._Fields cf = Communication._Fields.findByThriftId(f.getId());
+      if (cf != null && annotated.isSet(cf)) {
+        if (merged == annotated)
+          merged = new Communication(annotated);
+        mergeInto(merged, cf, decode(annotated, f));
+      } else {
+        toSplice.add(f);
+      }
+    }
+
+    if (toSplice.isEmpty())
+      merged.write(p);
+    else
+      merged.write(new SplicingProtocol(p, toSplice));
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static void mergeInto(Communication target, Communication._Fields cf, Object original) {
+    Object added = target.getFieldValue(cf);
+    if (original instanceof List && added instanceof List) {
+      List combined = new ArrayList((List) original);
+      combined.addAll((List) added);
+      target.setFieldValue(cf, combined);
+    } else if (original instanceof Map && added instanceof Map) {
+      Map combined = new HashMap((Map) original);
+      combined.putAll((Map) added);
+      target.setFieldValue(cf, combined);
+    }
+    // otherwise, the annotated value replaces the original.
+  }
+
+  /**
+   * Decode a single retained field by writing it next to the required
+   * fields of <code>c</code> and reading the result back.
+   */
+  private static Object decode(Communication c, RetainedField f) throws TException {
+    Communication stub = new Communication()
+        .setId(c.getId())
+        .setUuid(c.getUuid())
+        .setType(c.getType())
+        .setMetadata(c.getMetadata());
+    TMemoryBuffer buf = new TMemoryBuffer(f.getSize() + 256);
+    stub.write(new SplicingProtocol(new TCompactProtocol(buf), ImmutableList.of(f)));
+    Communication read = new Communication();
+    read.read(new TCompactProtocol(buf));
+    return read.getFieldValue(Communication._Fields.findByThriftId(f.getId()));
+  }
+
+  /**
+   * Writes retained fields just before the field stop of the outermost struct.
+   */
+  private static class SplicingProtocol extends TProtocolDecorator {
+    private final List<RetainedField> fields;
+    private int depth = 0;
+
+    SplicingProtocol(TProtocol delegate, List<RetainedField> fields) {
+      super(delegate);
+      this.fields = fields;
+    }
+
+    @Override
+    public void writeStructBegin(TStruct struct) throws TException {
+      this.depth++;
+      super.writeStructBegin(struct);
+    }
+
+    @Override
+    public void writeStructEnd() throws TException {
+      this.depth--;
+      super.writeStructEnd();
+    }
+
+    @Override
+    public void writeFieldStop() throws TException {
+      if (this.depth == 1)
+        for (RetainedField f : this.fields)
+          f.write(this);
+      super.writeFieldStop();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TField;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TType;
+
+/**
+ * A top-level field of a serialized struct that was not decoded, held
+ * as the raw compact protocol encoding of its value.
+ * <br>
+ * <br>
+ * Compact protocol encodes boolean field values in the field header,
+ * so those carry their value instead of bytes.
+ */
+public final class RetainedField {
+
+  private final short id;
+  private final byte type;
+  private final byte[] value;
+  private final boolean boolValue;
+
+  private RetainedField(short id, byte type, byte[] value, boolean boolValue) {
+    this.id = id;
+    this.type = type;
+    this.value = value;
+    this.boolValue = boolValue;
+  }
+
+  static RetainedField of(short id, byte type, byte[] value) {
+    return new RetainedField(id, type, value, false);
+  }
+
+  static RetainedField ofBool(short id, boolean value) {
+    return new RetainedField(id, TType.BOOL, new byte[0], value);
+  }
+
+  /**
+   * @return the Thrift field ID
+   */
+  public short getId() {
+    return this.id;
+  }
+
+  /**
+   * @return the Thrift type of the field
+   */
+  public byte getType() {
+    return this.type;
+  }
+
+  /**
+   * @return the number of encoded bytes held
+   */
+  public int getSize() {
+    return this.value.length;
+  }
+
+  /**
+   * Write this field to a compact protocol. Must be called between
+   * the begin and end of the owning struct.
+   */
+  void write(TProtocol p) throws TException {
+    p.writeFieldBegin(new TField("", this.type, this.id));
+    if (this.type == TType.BOOL)
+      p.writeBool(this.boolValue);
+    else
+      p.getTransport().write(this.value, 0, this.value.length);
+    p.writeFieldEnd();
+  }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+import edu.jhu.hlt.concrete.Communication;
+
+/**
+ * Writes {@link Communication}s into a tar stream without materializing
+ * each serialized document as its own <code>byte[]</code>.
+ * <br>
+ * <br>
+ * Documents are serialized (compact protocol, as with
+ * {@link edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer})
+ * into a single reusable buffer that is bounded by <code>bufferLimit</code>.
+ * Tar headers need the entry size up front, so documents that serialize
+ * larger than the limit are counted in the first pass and then serialized a
+ * second time straight into the archive. Peak memory for the write path is
+ * therefore the buffer limit, regardless of document size.
+ * <br>
+ * <br>
+ * If an entry fails once its header is written, such as a document that
+ * changed size between passes, the archive cannot be completed: later
+ * calls to add entries fail, and closing only closes the stream.
+ */
+public class StreamingCommunicationArchiver implements AutoCloseable {
+
+  /**
+   * Default upper bound of the reusable serialization buffer: 8 MiB.
+   */
+  public static final int DEFAULT_BUFFER_LIMIT = 1024 * 1024 * 8;
+
+  private final OutputStream os;
+  private final TarArchiveOutputStream tos;
+  private final BoundedReusableBuffer buffer;
+  private boolean failed = false;
+
+  private long entries = 0;
+  private long bytesWritten = 0;
+  private long twoPassEntries = 0;
+
+  /**
+   * @param os the {@link OutputStream} to write the archive to. Wrap it
+   * in a compressor stream for <code>.tar.gz</code> output. Closed when this
+   * archiver is closed.
+   */
+  public StreamingCommunicationArchiver(OutputStream os) {
+    this(os, DEFAULT_BUFFER_LIMIT);
+  }
+
+  /**
+   * @param os the {@link OutputStream} to write the archive to
+   * @param bufferLimit the maximum number of bytes held in the reusable serialization buffer
+   */
+  public StreamingCommunicationArchiver(OutputStream os, int bufferLimit) {
+    if (bufferLimit < 1)
+      throw new IllegalArgumentException("Buffer limit must be positive.");
+    this.os = os;
+    this.tos = new TarArchiveOutputStream(os);
+    this.tos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+    this.tos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+    this.buffer = new BoundedReusableBuffer(bufferLimit);
+  }
+
+  /**
+   * Functional interface for anything that can write itself as a
+   * Thrift struct to a protocol, e.g. <code>Communication::write</code>.
+   */
+  @FunctionalInterface
+  public interface ThriftStructWriter {
+    void write(TProtocol protocol) throws TException;
+  }
+
+  /**
+   * Serialize and add a {@link Communication} to the archive. The
+   * entry is named after the Communication's ID.
+   *
+   * @param c the {@link Communication} to archive
+   * @return the number of serialized bytes written for the entry
+   * @throws IOException on serialization or I/O error
+   */
+  public long addEntry(Communication c) throws IOException {
+    return this.addEntry(c.getId() + ".comm", c::write);
+  }
+
+  /**
+   * Add an annotated version of a projected {@link Communication} to the
+   * archive, splicing back in the fields that were not decoded.
+   *
+   * @param annotated the annotated {@link Communication}
+   * @param source the projected input that <code>annotated</code> was produced from
+   * @return the number of serialized bytes written for the entry
+   * @throws IOException on serialization or I/O error
+   * @see ProjectedCommunication#write(Communication, TProtocol)
+   */
+  public long addEntry(Communication annotated, ProjectedCommunication source) throws IOException {
+    return this.addEntry(annotated.getId() + ".comm", p -> source.write(annotated, p));
+  }
+
+  /**
+   * Serialize a Thrift struct into an archive entry named <code>name</code>.
+   *
+   * @param name the name of the tar entry
+   * @param writer writes the struct to a protocol; may be invoked twice
+   * for structs larger than the buffer limit, so must be repeatable
+   * @return the number of serialized bytes written for the entry
+   * @throws IOException on serialization or I/O error, or if an earlier
+   * entry left the archive incomplete
+   */
+  public long addEntry(String name, ThriftStructWriter writer) throws IOException {
+    if (this.failed)
+      throw new IOException("Cannot add " + name + ": an earlier entry left the archive incomplete");
+    this.buffer.reset();
+    serialize(writer, this.buffer);
+    final long size = this.buffer.total();
+
+    TarArchiveEntry entry = new TarArchiveEntry(name);
+    entry.setSize(size);
+    // from here until the entry is closed, a failure leaves a partial entry in the stream
+    this.failed = true;
+    this.tos.putArchiveEntry(entry);
+    if (!this.buffer.overflowed()) {
+      this.buffer.writeTo(this.tos);
+    } else {
+      // too big to hold - serialize a second time directly
+      // into the archive, verifying the size did not change.
+      this.twoPassEntries++;
+      CountingOutputStream cos = new CountingOutputStream(this.tos);
+      serialize(writer, cos);
+      if (cos.count != size)
+        throw new IOException("Entry " + name + " changed size between serialization passes: "
+            + size + " vs. " + cos.count);
+    }
+
+    this.tos.closeArchiveEntry();
+    this.failed = false;
+    this.entries++;
+    this.bytesWritten += size;
+    return size;
+  }
+
+  private static void serialize(ThriftStructWriter writer, OutputStream os) throws IOException {
+    TIOStreamTransport transport = new TIOStreamTransport(os);
+    try {
+      writer.write(new TCompactProtocol(transport));
+      transport.flush();
+    } catch (TException e) {
+      throw new IOException("Failed to serialize entry.", e);
+    }
+  }
+
+  /**
+   * @return the number of entries written so far
+   */
+  public long getEntries() {
+    return this.entries;
+  }
+
+  /**
+   * @return the number of serialized (uncompressed) bytes written so far
+   */
+  public long getBytesWritten() {
+    return this.bytesWritten;
+  }
+
+  /**
+   * @return the number of entries that exceeded the buffer limit
+   * and were serialized twice
+   */
+  public long getTwoPassEntries() {
+    return this.twoPassEntries;
+  }
+
+  /**
+   * @return true if an entry failed part way, so that no more can be added
+   */
+  public boolean isFailed() {
+    return this.failed;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.AutoCloseable#close()
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.failed) {
+      // finishing would fail on the partial entry, and leave the stream open
+      this.os.close();
+      return;
+    }
+    this.tos.finish();
+    this.tos.close();
+  }
+
+  /**
+   * A {@link ByteArrayOutputStream} that stops buffering once
+   * <code>limit</code> bytes have been written, but keeps counting.
+   * The backing array is retained across {@link #reset()} calls.
+   */
+  private static class BoundedReusableBuffer extends ByteArrayOutputStream {
+    private final int limit;
+    private long total = 0;
+
+    BoundedReusableBuffer(int limit) {
+      super(Math.min(limit, 1024 * 64));
+      this.limit = limit;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+      this.total++;
+      if (this.total <= this.limit)
+        super.write(b);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      final long prev = this.total;
+      this.total += len;
+      if (this.total <= this.limit)
+        super.write(b, off, len);
+      else if (prev < this.limit)
+        // partial content is useless; drop it.
+        super.reset();
+    }
+
+    @Override
+    public synchronized void reset() {
+      super.reset();
+      this.total = 0;
+    }
+
+    boolean overflowed() {
+      return this.total > this.limit;
+    }
+
+    long total() {
+      return this.total;
+    }
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+    private final OutputStream delegate;
+    private long count = 0;
+
+    CountingOutputStream(OutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      this.delegate.write(b);
+      this.count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      this.delegate.write(b, off, len);
+      this.count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      this.delegate.flush();
+    }
+
+    @Override
+    public void close() {
+      // the tar stream is owned by the archiver.
+    }
+  }
+}
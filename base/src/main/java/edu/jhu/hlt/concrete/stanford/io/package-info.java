@@ -0,0 +1,10 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+
+/**
+ * Contains utilities for reading and writing archives of
+ * Concrete Communications produced by this project.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.languages;
+
+/**
+ * How far to annotate a document: each level includes the ones before it.
+ */
+public enum AnnotationLevel {
+  /**
+   * Sentence splitting and tokenization.
+   */
+  TOKENIZE("tokenize"),
+  /**
+   * Everything but coreference: POS, lemmas, NER, parses and entity mentions.
+   */
+  PRE_COREF("pre-coref"),
+  /**
+   * Every annotator available for the language, including coreference.
+   */
+  ALL("all");
+
+  private final String v;
+
+  private AnnotationLevel(String v) {
+    this.v = v;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Enum#toString()
+   */
+  @Override
+  public String toString() {
+    return this.v;
+  }
+
+  /**
+   * @throws IllegalArgumentException if <code>v</code> names no level
+   */
+  public static AnnotationLevel getEnumeration(String v) {
+    for (AnnotationLevel l : AnnotationLevel.values())
+      if (l.v.equalsIgnoreCase(v.trim()))
+        return l;
+    throw new IllegalArgumentException("No matching annotation level for value: " + v);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.languages;
+
+import java.util.Locale;
+import java.util.Optional;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Guesses which {@link PipelineLanguage} a text is written in, for
+ * documents that carry no language identification.
+ * <br>
+ * <br>
+ * Text mostly in Han characters is Chinese. Otherwise, common function
+ * words and characters particular to Spanish are counted for English and
+ * Spanish; the language with clearly more evidence wins. Only the start of
+ * the text is looked at.
+ */
+public class LanguageDetector {
+
+  private static final int SAMPLE_CHARS = 4096;
+  private static final double MIN_HAN_RATIO = 0.3;
+  private static final int MIN_EVIDENCE = 3;
+
+  private static final ImmutableSet<String> ENGLISH_WORDS = ImmutableSet.of(
+      "the", "and", "of", "to", "is", "that", "with", "for", "was", "it",
+      "this", "are", "be", "have", "from", "by", "which", "has", "were", "they");
+
+  private static final ImmutableSet<String> SPANISH_WORDS = ImmutableSet.of(
+      "el", "la", "de", "que", "y", "los", "las", "del", "por", "para",
+      "una", "con", "es", "se", "lo", "como", "pero", "su", "al", "fue");
+
+  private LanguageDetector() {
+  }
+
+  /**
+   * @return the language <code>text</code> is most likely written in, or
+   * empty if there is too little evidence to tell
+   */
+  public static Optional<PipelineLanguage> detect(String text) {
+    final int end = Math.min(text.length(), SAMPLE_CHARS);
+    int letters = 0;
+    int han = 0;
+    int en = 0;
+    int es = 0;
+    StringBuilder word = new StringBuilder();
+    for (int i = 0; i <= end; i++) {
+      final char ch = i < end ? text.charAt(i) : ' ';
+      if (Character.isLetter(ch)) {
+        letters++;
+        if (Character.UnicodeScript.of(ch) == Character.UnicodeScript.HAN)
+          han++;
+        else if ("ñÑáéíóúÁÉÍÓÚ".indexOf(ch) >= 0)
+          es++;
+        word.append(ch);
+        continue;
+      }
+
+      if (ch == '¿' || ch == '¡')
+        es++;
+      if (word.length() > 0) {
+        String w = word.toString().toLowerCase(Locale.ROOT);
+        if (ENGLISH_WORDS.contains(w))
+          en++;
+        else if (SPANISH_WORDS.contains(w))
+          es++;
+        word.setLength(0);
+      }
+    }
+
+    if (letters > 0 && han >= letters * MIN_HAN_RATIO)
+      return Optional.of(PipelineLanguage.CHINESE);
+    if (Math.max(en, es) < MIN_EVIDENCE || en == es)
+      return Optional.empty();
+    return Optional.of(en > es ? PipelineLanguage.ENGLISH : PipelineLanguage.SPANISH);
+  }
+}
@@ -210,7 +210,11 @@ public enum PipelineLanguage {
    * max thinks it matters.
    */
   public ImmutableList<String> getNonTokenizationAnnotators() {
-    ImmutableList<String> spl = ImmutableList.copyOf(this.allAvailableAnnotators().split(", "));
+    return withoutTokenization(this.allAvailableAnnotators());
+  }
+
+  private static ImmutableList<String> withoutTokenization(String annotators) {
+    ImmutableList<String> spl = ImmutableList.copyOf(annotators.split(", "));
     ImmutableList.Builder<String> b = ImmutableList.builder();
     for (String s : spl) {
       if (!SENTENCE_TOKENS_ANNOTATORS.contains(s))
@@ -236,9 +240,9 @@ public enum PipelineLanguage {
 
   public static final PipelineLanguage getEnumeration(String v) {
     final String lower = v.toLowerCase(Locale.ENGLISH);
-    if (lower.equals("zho"))
+    if (lower.equals("zho") || lower.equals("cmn") || lower.equals("zh"))
       return PipelineLanguage.CHINESE;
-    else if (lower.equals("esp"))
+    else if (lower.equals("esp") || lower.equals("spa"))
       return PipelineLanguage.SPANISH;
     else if (lower.equals("eng"))
       return PipelineLanguage.ENGLISH;
@@ -263,9 +267,10 @@ public enum PipelineLanguage {
 
   public ConcreteStanfordPreCorefAnalytic getPreCorefAnalytic() {
     Properties props = this.getProperties(this.preCorefAnnotators());
+    // coreference output is not converted, so the annotator is not run.
     return new ConcreteStanfordPreCorefAnalytic(props,
         this.getHeadFinder(), this.getGrammaticalFactory(),
-        this.getNonTokenizationAnnotators(), false);
+        withoutTokenization(this.preCorefAnnotators()), false);
   }
 
   public ConcreteStanfordPreCorefAnalytic getAllAnalytic() {
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import java.util.Optional;
+
+/**
+ * The kinds of Concrete output this project adds to a Communication.
+ */
+public enum AnnotationType {
+  TOKENS("tokens"),
+  POS("POS tags"),
+  NER("NER tags"),
+  LEMMA("lemmas"),
+  CONSTITUENCY_PARSE("constituency parses"),
+  DEPENDENCY_BASIC("basic dependencies"),
+  DEPENDENCY_COLLAPSED("collapsed dependencies"),
+  DEPENDENCY_COLLAPSED_CC("collapsed-CC dependencies"),
+  ENTITY_MENTIONS("coref entity mentions"),
+  ENTITIES("coref entities");
+
+  private final String label;
+
+  private AnnotationType(String label) {
+    this.label = label;
+  }
+
+  /**
+   * @return a human readable name, for reports
+   */
+  public String getLabel() {
+    return this.label;
+  }
+
+  /**
+   * @param taggingType the <code>taggingType</code> of a TokenTagging
+   * @return the matching type, if the tagging is one this project produces
+   */
+  public static Optional<AnnotationType> ofTaggingType(String taggingType) {
+    if (taggingType == null)
+      return Optional.empty();
+    switch (taggingType.toUpperCase()) {
+    case "POS":
+      return Optional.of(POS);
+    case "NER":
+      return Optional.of(NER);
+    case "LEMMA":
+      return Optional.of(LEMMA);
+    default:
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.apache.thrift.TBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.jhu.hlt.concrete.Communication;
+
+/**
+ * Measurements taken while annotating a single document.
+ * <br>
+ * <br>
+ * A runner opens a <code>DocumentMetrics</code> on the thread that
+ * annotates a document, and closes it when the document is written. Code on
+ * the annotation path records into whatever instance is open on the current
+ * thread through the static methods of this class; when none is open, they
+ * do nothing and cost nothing beyond a thread local lookup.
+ * <br>
+ * <br>
+ * Documents and {@link #stage(String) stages} are also passed to the
+ * {@link Probe} on the classpath, if any, whether or not a document is open.
+ */
+public class DocumentMetrics implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DocumentMetrics.class);
+
+  private static final ThreadLocal<DocumentMetrics> CURRENT = new ThreadLocal<>();
+  private static final Probe PROBE = loadProbe();
+  // null where per-thread allocation is not measured
+  private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+  /**
+   * A stage being timed; see {@link DocumentMetrics#stage(String)}.
+   */
+  public static final class Stage implements AutoCloseable {
+
+    private static final Stage NONE = new Stage(null, null, null);
+
+    private final DocumentMetrics metrics;
+    private final String name;
+    private final Probe.StageSpan span;
+    private final long startNanos = System.nanoTime();
+
+    private Stage(DocumentMetrics metrics, String name, Probe.StageSpan span) {
+      this.metrics = metrics;
+      this.name = name;
+      this.span = span;
+    }
+
+    /**
+     * End the stage. Call once.
+     */
+    @Override
+    public void close() {
+      if (this.span != null)
+        this.span.end();
+      if (this.metrics != null)
+        this.metrics.stageNanos.merge(this.name, System.nanoTime() - this.startNanos, Long::sum);
+    }
+  }
+
+  private final String id;
+  private final long[] bytes = new long[AnnotationType.values().length];
+  private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+  private final long openedNanos = System.nanoTime();
+  private long elapsedNanos = -1;
+  private int sentences = 0;
+  private long tokens = 0;
+  private int maxSentenceTokens = 0;
+  private final long chars;
+  private final boolean measureSizes;
+  private final long thread = Thread.currentThread().getId();
+  private final long allocatedAtOpen = allocated(this.thread);
+  private long allocatedBytes = -1;
+  private final Probe.DocumentSpan span;
+
+  private DocumentMetrics(String id, long chars, boolean measureSizes) {
+    this.id = id;
+    this.chars = chars;
+    this.measureSizes = measureSizes;
+    this.span = PROBE == null ? null : PROBE.beginDocument(id, chars);
+  }
+
+  private static com.sun.management.ThreadMXBean threadBean() {
+    try {
+      java.lang.management.ThreadMXBean b = ManagementFactory.getThreadMXBean();
+      if (b instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean sb = (com.sun.management.ThreadMXBean) b;
+        if (sb.isThreadAllocatedMemorySupported() && sb.isThreadAllocatedMemoryEnabled())
+          return sb;
+      }
+    } catch (LinkageError e) {
+      // not a HotSpot JVM
+    }
+    return null;
+  }
+
+  private static long allocated(long thread) {
+    return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(thread);
+  }
+
+  private static Probe loadProbe() {
+    try {
+      Iterator<Probe> it = ServiceLoader.load(Probe.class).iterator();
+      if (it.hasNext()) {
+        Probe p = it.next();
+        LOGGER.info("Passing document and stage timings to {}", p.getClass().getName());
+        return p;
+      }
+    } catch (ServiceConfigurationError | LinkageError e) {
+      LOGGER.warn("Failed to load a probe; document and stage timings are not passed on", e);
+    }
+    return null;
+  }
+
+  /**
+   * Start measuring a document on the current thread, replacing any
+   * instance already open on it.
+   *
+   * @param id the Communication ID
+   * @return the opened instance; close it when the document is done
+   */
+  public static DocumentMetrics open(String id) {
+    return open(id, 0, false);
+  }
+
+  /**
+   * Start measuring <code>c</code> on the current thread, replacing any
+   * instance already open on it.
+   *
+   * @return the opened instance; close it when the document is done
+   */
+  public static DocumentMetrics open(Communication c) {
+    return open(c, false);
+  }
+
+  /**
+   * Start measuring <code>c</code> on the current thread, replacing any
+   * instance already open on it.
+   *
+   * @param measureSizes if true, {@link #recordSize(AnnotationType, TBase)}
+   * measures the annotations added; this encodes each of them once more
+   * @return the opened instance; close it when the document is done
+   */
+  public static DocumentMetrics open(Communication c, boolean measureSizes) {
+    return open(c.getId(), c.isSetText() ? c.getText().length() : 0, measureSizes);
+  }
+
+  /**
+   * Start measuring a document on the current thread, replacing any
+   * instance already open on it.
+   *
+   * @param id the Communication ID
+   * @param measureSizes if true, {@link #recordSize(AnnotationType, TBase)}
+   * measures the annotations added; this encodes each of them once more
+   * @return the opened instance; close it when the document is done
+   */
+  public static DocumentMetrics open(String id, boolean measureSizes) {
+    return open(id, 0, measureSizes);
+  }
+
+  private static DocumentMetrics open(String id, long chars, boolean measureSizes) {
+    DocumentMetrics m = new DocumentMetrics(id, chars, measureSizes);
+    CURRENT.set(m);
+    return m;
+  }
+
+  /**
+   * @return the instance open on the current thread, if any
+   */
+  public static Optional<DocumentMetrics> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  /**
+   * Record that the current document's output gained <code>added</code>, of
+   * type <code>t</code>. The struct is only measured if a document was
+   * opened to measure sizes, as measuring encodes it.
+   */
+  public static void recordSize(AnnotationType t, TBase<?, ?> added) {
+    DocumentMetrics m = CURRENT.get();
+    if (m != null && m.measureSizes)
+      m.bytes[t.ordinal()] += SerializedSize.of(added);
+  }
+
+  /**
+   * Start timing <code>stage</code> of the current document:
+   * <pre>
+   * try (DocumentMetrics.Stage s = DocumentMetrics.stage("parse")) {
+   *   ...
+   * }
+   * </pre>
+   * Time spent in a stage several times is summed. When no document is open
+   * and no probe is recording, the returned stage does nothing.
+   *
+   * @param stage the annotator or conversion stage
+   * @return the stage to close when it is done
+   */
+  public static Stage stage(String stage) {
+    DocumentMetrics m = CURRENT.get();
+    Probe.StageSpan span = PROBE == null ? null : PROBE.beginStage(stage, m == null ? null : m.id);
+    if (m == null && span == null)
+      return Stage.NONE;
+    return new Stage(m, stage, span);
+  }
+
+  /**
+   * Record the number of sentences and tokens of the current document, and
+   * the number of tokens of its longest sentence, replacing any recorded
+   * earlier.
+   */
+  public static void recordLength(int sentences, long tokens, int maxSentenceTokens) {
+    DocumentMetrics m = CURRENT.get();
+    if (m != null) {
+      m.sentences = sentences;
+      m.tokens = tokens;
+      m.maxSentenceTokens = maxSentenceTokens;
+    }
+  }
+
+  /**
+   * @return the Communication ID
+   */
+  public String getId() {
+    return this.id;
+  }
+
+  /**
+   * @return the serialized bytes of type <code>t</code> added to the
+   * document; 0 if it was not opened to measure sizes
+   */
+  public long getBytes(AnnotationType t) {
+    return this.bytes[t.ordinal()];
+  }
+
+  /**
+   * @return the serialized bytes of all annotation types added to the document
+   */
+  public long getTotalBytes() {
+    long sum = 0;
+    for (long b : this.bytes)
+      sum += b;
+    return sum;
+  }
+
+  /**
+   * @return the nanoseconds spent in each stage, in the order the stages
+   * were first recorded
+   */
+  public Map<String, Long> getStageNanos() {
+    return Collections.unmodifiableMap(this.stageNanos);
+  }
+
+  /**
+   * @return the nanoseconds from opening to closing this instance, or to
+   * now if it is still open
+   */
+  public long getElapsedNanos() {
+    return this.elapsedNanos < 0 ? System.nanoTime() - this.openedNanos : this.elapsedNanos;
+  }
+
+  /**
+   * @return the number of sentences of the document, or 0 if not recorded
+   */
+  public int getSentences() {
+    return this.sentences;
+  }
+
+  /**
+   * @return the number of tokens of the document, or 0 if not recorded
+   */
+  public long getTokens() {
+    return this.tokens;
+  }
+
+  /**
+   * @return the number of tokens of the longest sentence, or 0 if not recorded
+   */
+  public int getMaxSentenceTokens() {
+    return this.maxSentenceTokens;
+  }
+
+  /**
+   * @return the length of the document's text, or 0 if not known
+   */
+  public long getChars() {
+    return this.chars;
+  }
+
+  /**
+   * @return the bytes the opening thread allocated between opening and
+   * closing this instance, or -1 if not measured, or if it was closed on
+   * another thread
+   */
+  public long getAllocatedBytes() {
+    return this.allocatedBytes;
+  }
+
+  /**
+   * Stop measuring on the current thread. The recorded values remain
+   * readable.
+   */
+  @Override
+  public void close() {
+    if (this.elapsedNanos < 0) {
+      this.elapsedNanos = System.nanoTime() - this.openedNanos;
+      if (this.allocatedAtOpen >= 0 && Thread.currentThread().getId() == this.thread)
+        this.allocatedBytes = allocated(this.thread) - this.allocatedAtOpen;
+      if (this.span != null)
+        this.span.end(this.sentences, this.tokens);
+    }
+    if (CURRENT.get() == this)
+      CURRENT.remove();
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes one JSON object per line for each document of a run, to find
+ * pathological inputs and compare runs.
+ * <br>
+ * <br>
+ * Each line has the fields <code>id</code>, <code>chars</code>,
+ * <code>sentences</code>, <code>tokens</code>,
+ * <code>max_sentence_tokens</code>, <code>elapsed_us</code>,
+ * <code>stages_us</code> (an object of microseconds by stage),
+ * <code>allocated_bytes</code> (-1 if not measured),
+ * <code>annotation_bytes</code> (0 unless sizes were measured),
+ * <code>output_bytes</code>,
+ * <code>outcome</code> (<code>ok</code> or <code>failed</code>) and, for
+ * failed documents, <code>error</code>. Lines are written in the order
+ * documents are written to the output.
+ */
+public class DocumentTrace implements AutoCloseable {
+
+  private final BufferedWriter out;
+
+  /**
+   * @param path the file to write, replacing any file there
+   * @throws IOException if the file cannot be created
+   */
+  public DocumentTrace(Path path) throws IOException {
+    this.out = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param m the measurements of a finished document
+   * @param outputBytes the size of the output entry; 0 for failed documents
+   * @param error the reason the document failed, or <code>null</code>
+   * @throws IOException on I/O error
+   */
+  public synchronized void write(DocumentMetrics m, long outputBytes, Throwable error) throws IOException {
+    StringBuilder sb = new StringBuilder(256);
+    sb.append("{\"id\":");
+    quote(sb, m.getId());
+    sb.append(",\"chars\":").append(m.getChars())
+        .append(",\"sentences\":").append(m.getSentences())
+        .append(",\"tokens\":").append(m.getTokens())
+        .append(",\"max_sentence_tokens\":").append(m.getMaxSentenceTokens())
+        .append(",\"elapsed_us\":").append(TimeUnit.NANOSECONDS.toMicros(m.getElapsedNanos()))
+        .append(",\"stages_us\":{");
+    boolean first = true;
+    for (Map.Entry<String, Long> e : m.getStageNanos().entrySet()) {
+      if (!first)
+        sb.append(',');
+      first = false;
+      quote(sb, e.getKey());
+      sb.append(':').append(TimeUnit.NANOSECONDS.toMicros(e.getValue()));
+    }
+    sb.append("},\"allocated_bytes\":").append(m.getAllocatedBytes())
+        .append(",\"annotation_bytes\":").append(m.getTotalBytes())
+        .append(",\"output_bytes\":").append(outputBytes)
+        .append(",\"outcome\":\"").append(error == null ? "ok" : "failed").append('"');
+    if (error != null) {
+      sb.append(",\"error\":");
+      quote(sb, RunReport.describe(error));
+    }
+    sb.append("}\n");
+    this.out.write(sb.toString());
+  }
+
+  static void quote(StringBuilder sb, String s) {
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      switch (c) {
+      case '"':
+        sb.append("\\\"");
+        break;
+      case '\\':
+        sb.append("\\\\");
+        break;
+      case '\n':
+        sb.append("\\n");
+        break;
+      case '\r':
+        sb.append("\\r");
+        break;
+      case '\t':
+        sb.append("\\t");
+        break;
+      default:
+        if (c < 0x20)
+          sb.append(String.format("\\u%04x", (int) c));
+        else
+          sb.append(c);
+      }
+    }
+    sb.append('"');
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.AutoCloseable#close()
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    this.out.close();
+  }
+}
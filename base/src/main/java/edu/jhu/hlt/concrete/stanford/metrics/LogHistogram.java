@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+/**
+ * A fixed-size histogram of non-negative <code>long</code> values with
+ * logarithmic buckets.
+ * <br>
+ * <br>
+ * Values below 8 are counted exactly. Larger values fall into one of 8
+ * buckets per power of two, so percentiles are reported to within 12.5% of
+ * the recorded value, regardless of how many values are recorded.
+ * Negative values are counted as 0.
+ * <br>
+ * <br>
+ * Instances are thread safe.
+ */
+public class LogHistogram {
+
+  private static final int SUB_BITS = 3;
+  private static final int SUB = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count = 0;
+  private long total = 0;
+  private long min = Long.MAX_VALUE;
+  private long max = 0;
+
+  static int index(long v) {
+    if (v < SUB)
+      return (int) Math.max(v, 0);
+    final int msb = 63 - Long.numberOfLeadingZeros(v);
+    final int sub = (int) ((v >>> (msb - SUB_BITS)) & (SUB - 1));
+    return (msb - SUB_BITS + 1) * SUB + sub;
+  }
+
+  static long lowerBound(int idx) {
+    if (idx < SUB)
+      return idx;
+    final int major = idx / SUB;
+    final int sub = idx % SUB;
+    return (long) (SUB + sub) << (major - 1);
+  }
+
+  static long upperBound(int idx) {
+    if (idx < SUB)
+      return idx;
+    return lowerBound(idx) + (1L << (idx / SUB - 1)) - 1;
+  }
+
+  /**
+   * @param v the value to record
+   */
+  public synchronized void record(long v) {
+    final long c = Math.max(v, 0);
+    this.counts[index(c)]++;
+    this.count++;
+    this.total += c;
+    this.min = Math.min(this.min, c);
+    this.max = Math.max(this.max, c);
+  }
+
+  /**
+   * Add all values recorded in <code>other</code> to this histogram.
+   */
+  public void merge(LogHistogram other) {
+    final long[] oc;
+    final long on, ot, omin, omax;
+    synchronized (other) {
+      oc = other.counts.clone();
+      on = other.count;
+      ot = other.total;
+      omin = other.min;
+      omax = other.max;
+    }
+    synchronized (this) {
+      for (int i = 0; i < BUCKETS; i++)
+        this.counts[i] += oc[i];
+      this.count += on;
+      this.total += ot;
+      this.min = Math.min(this.min, omin);
+      this.max = Math.max(this.max, omax);
+    }
+  }
+
+  /**
+   * @return the number of recorded values
+   */
+  public synchronized long getCount() {
+    return this.count;
+  }
+
+  /**
+   * @return the sum of recorded values
+   */
+  public synchronized long getTotal() {
+    return this.total;
+  }
+
+  /**
+   * @return the smallest recorded value, or 0 if none were recorded
+   */
+  public synchronized long getMin() {
+    return this.count == 0 ? 0 : this.min;
+  }
+
+  /**
+   * @return the largest recorded value, or 0 if none were recorded
+   */
+  public synchronized long getMax() {
+    return this.max;
+  }
+
+  /**
+   * @return the mean of recorded values, or 0 if none were recorded
+   */
+  public synchronized double getMean() {
+    return this.count == 0 ? 0 : (double) this.total / this.count;
+  }
+
+  /**
+   * @param q a quantile, between 0 and 1
+   * @return an upper bound on the value at quantile <code>q</code>, no
+   * larger than the largest recorded value; 0 if none were recorded
+   */
+  public synchronized long getPercentile(double q) {
+    if (this.count == 0)
+      return 0;
+    final long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(q, 0), 1) * this.count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += this.counts[i];
+      if (seen >= rank)
+        return Math.max(Math.min(upperBound(i), this.max), this.min);
+    }
+    return this.max;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public synchronized String toString() {
+    return "LogHistogram [count=" + this.count + ", mean=" + String.format("%.1f", this.getMean())
+        + ", p50=" + this.getPercentile(0.5) + ", p90=" + this.getPercentile(0.9)
+        + ", p99=" + this.getPercentile(0.99) + ", max=" + this.max + "]";
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a {@link MetricsRegistry} over HTTP on the loopback address, for
+ * monitoring agents on the same host to scrape.
+ * <br>
+ * <br>
+ * <code>GET /metrics</code> answers one <code>name value</code> line per
+ * value, sorted by name.
+ */
+public class MetricsHttpServer implements AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetricsHttpServer.class);
+
+  private final HttpServer http;
+  private final ExecutorService executor;
+  private final MetricsRegistry registry;
+
+  /**
+   * @param port the loopback port to listen on; if 0, any free port
+   * @throws IOException if the port cannot be bound
+   */
+  public MetricsHttpServer(int port, MetricsRegistry registry) throws IOException {
+    this.registry = registry;
+    this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("metrics-http")
+        .setDaemon(true)
+        .build());
+    this.http.setExecutor(this.executor);
+    this.http.createContext("/metrics", this::metrics);
+    this.http.start();
+    LOGGER.info("Metrics endpoint listening on http://localhost:{}/metrics", this.getPort());
+  }
+
+  /**
+   * @return the port listened on
+   */
+  public int getPort() {
+    return this.http.getAddress().getPort();
+  }
+
+  private void metrics(HttpExchange ex) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Number> e : this.registry.snapshot().entrySet())
+      sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+    byte[] b = sb.toString().getBytes(StandardCharsets.UTF_8);
+    ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    ex.sendResponseHeaders(200, b.length);
+    try (OutputStream os = ex.getResponseBody()) {
+      os.write(b);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.AutoCloseable#close()
+   */
+  @Override
+  public void close() {
+    this.http.stop(0);
+    // the server does not stop an executor it was given
+    this.executor.shutdownNow();
+  }
+}
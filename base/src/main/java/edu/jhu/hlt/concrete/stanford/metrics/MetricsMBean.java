@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/**
+ * JMX view of a {@link MetricsRegistry}: one read-only <code>long</code>
+ * attribute per value of a snapshot. The attributes are listed anew each
+ * time the bean is described, so metrics created later appear.
+ */
+class MetricsMBean implements DynamicMBean {
+
+  private final MetricsRegistry registry;
+
+  MetricsMBean(MetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see javax.management.DynamicMBean#getAttribute(java.lang.String)
+   */
+  @Override
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    Number n = this.registry.snapshot().get(attribute);
+    if (n == null)
+      throw new AttributeNotFoundException(attribute);
+    return n.longValue();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see javax.management.DynamicMBean#getAttributes(java.lang.String[])
+   */
+  @Override
+  public AttributeList getAttributes(String[] attributes) {
+    SortedMap<String, Number> s = this.registry.snapshot();
+    AttributeList l = new AttributeList();
+    for (String a : attributes) {
+      Number n = s.get(a);
+      if (n != null)
+        l.add(new Attribute(a, n.longValue()));
+    }
+    return l;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see javax.management.DynamicMBean#setAttribute(javax.management.Attribute)
+   */
+  @Override
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see javax.management.DynamicMBean#setAttributes(javax.management.AttributeList)
+   */
+  @Override
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see javax.management.DynamicMBean#invoke(java.lang.String, java.lang.Object[], java.lang.String[])
+   */
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature)
+      throws MBeanException, ReflectionException {
+    throw new ReflectionException(new NoSuchMethodException(actionName));
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see javax.management.DynamicMBean#getMBeanInfo()
+   */
+  @Override
+  public MBeanInfo getMBeanInfo() {
+    SortedMap<String, Number> s = this.registry.snapshot();
+    MBeanAttributeInfo[] attrs = new MBeanAttributeInfo[s.size()];
+    int i = 0;
+    for (Map.Entry<String, Number> e : s.entrySet())
+      attrs[i++] = new MBeanAttributeInfo(e.getKey(), "long", e.getKey(), true, false, false);
+    return new MBeanInfo(MetricsRegistry.class.getName(), "Annotation metrics", attrs, null,
+        new MBeanOperationInfo[0], null);
+  }
+}
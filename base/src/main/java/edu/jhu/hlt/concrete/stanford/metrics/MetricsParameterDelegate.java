@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Options for publishing the {@link MetricsRegistry#global() global
+ * metrics} of a runner or server.
+ */
+public class MetricsParameterDelegate {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetricsParameterDelegate.class);
+
+  /** The JMX name the global metrics are published under. */
+  public static final String OBJECT_NAME = "edu.jhu.hlt.concrete.stanford:type=Metrics";
+
+  @Parameter(names = "--metrics-port",
+      description = "If positive, serve metrics as plain text at http://localhost:<port>/metrics. "
+          + "Metrics are always published over JMX.")
+  public int metricsPort = 0;
+
+  /**
+   * Publish the global metrics over JMX, unless they already are, and
+   * over HTTP if a port is set.
+   *
+   * @return the HTTP server, to close when done, or <code>null</code> if no
+   * port is set
+   * @throws IOException if the port cannot be bound
+   */
+  public MetricsHttpServer publish() throws IOException {
+    try {
+      if (!ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(OBJECT_NAME)))
+        MetricsRegistry.global().registerMBean(OBJECT_NAME);
+    } catch (JMException e) {
+      LOGGER.warn("Failed to publish metrics over JMX", e);
+    }
+    return this.metricsPort > 0 ? new MetricsHttpServer(this.metricsPort, MetricsRegistry.global()) : null;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Named counters, timers and gauges of a process, for monitoring.
+ * <br>
+ * <br>
+ * Runners and the server record into {@link #global()}; its values are
+ * published over JMX by {@link #registerMBean(String)} and over HTTP by
+ * {@link MetricsHttpServer}. Counters only grow, except those used as
+ * gauges of things in progress, which are decremented when the thing ends.
+ * Timers record microseconds. Gauges are read when a snapshot is taken.
+ * <br>
+ * <br>
+ * Instances are thread safe.
+ */
+public class MetricsRegistry {
+
+  /** Documents annotated. */
+  public static final String DOCUMENTS = "documents";
+  /** Documents that failed to annotate. */
+  public static final String FAILURES = "documents.failed";
+  /** Documents being annotated. */
+  public static final String IN_FLIGHT = "documents.in_flight";
+  /** Tokens of the documents annotated. */
+  public static final String TOKENS = "tokens";
+  /** Sentences of the documents annotated. */
+  public static final String SENTENCES = "sentences";
+  /** The time to annotate a document. */
+  public static final String DOCUMENT_TIME = "document.time";
+  /** Prefix of the time spent in each annotator and conversion stage. */
+  public static final String STAGE_TIME = "stage.";
+
+  private static final MetricsRegistry GLOBAL = withJvmGauges(new MetricsRegistry());
+
+  private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LogHistogram> timers = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+  /**
+   * @return the registry of this process
+   */
+  public static MetricsRegistry global() {
+    return GLOBAL;
+  }
+
+  private static MetricsRegistry withJvmGauges(MetricsRegistry r) {
+    r.gauge("jvm.heap.used_bytes", () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+    r.gauge("jvm.heap.committed_bytes",
+        () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getCommitted());
+    r.gauge("jvm.heap.max_bytes", () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax());
+    r.gauge("jvm.threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+    return r;
+  }
+
+  /**
+   * @return the counter named <code>name</code>, created if needed
+   */
+  public LongAdder counter(String name) {
+    return this.counters.computeIfAbsent(name, k -> new LongAdder());
+  }
+
+  /**
+   * @return the timer named <code>name</code>, in microseconds, created if needed
+   */
+  public LogHistogram timer(String name) {
+    return this.timers.computeIfAbsent(name, k -> new LogHistogram());
+  }
+
+  /**
+   * Report the value of <code>value</code> as <code>name</code>, replacing
+   * any gauge of that name.
+   */
+  public void gauge(String name, LongSupplier value) {
+    this.gauges.put(name, value);
+  }
+
+  /**
+   * Count a finished document and time its stages.
+   *
+   * @param m the measurements of a document annotated without error
+   */
+  public void record(DocumentMetrics m) {
+    this.counter(DOCUMENTS).increment();
+    this.counter(TOKENS).add(m.getTokens());
+    this.counter(SENTENCES).add(m.getSentences());
+    this.timer(DOCUMENT_TIME).record(TimeUnit.NANOSECONDS.toMicros(m.getElapsedNanos()));
+    for (Map.Entry<String, Long> e : m.getStageNanos().entrySet())
+      this.timer(STAGE_TIME + e.getKey()).record(TimeUnit.NANOSECONDS.toMicros(e.getValue()));
+  }
+
+  /**
+   * Read every value. Each timer <code>t</code> is reported as
+   * <code>t.count</code>, <code>t.mean_us</code>, <code>t.p50_us</code>,
+   * <code>t.p90_us</code>, <code>t.p99_us</code> and <code>t.max_us</code>.
+   *
+   * @return the values, sorted by name
+   */
+  public SortedMap<String, Number> snapshot() {
+    SortedMap<String, Number> m = new TreeMap<>();
+    this.counters.forEach((k, v) -> m.put(k, v.sum()));
+    this.timers.forEach((k, h) -> {
+      m.put(k + ".count", h.getCount());
+      m.put(k + ".mean_us", Math.round(h.getMean()));
+      m.put(k + ".p50_us", h.getPercentile(0.5));
+      m.put(k + ".p90_us", h.getPercentile(0.9));
+      m.put(k + ".p99_us", h.getPercentile(0.99));
+      m.put(k + ".max_us", h.getMax());
+    });
+    this.gauges.forEach((k, g) -> m.put(k, g.getAsLong()));
+    return m;
+  }
+
+  /**
+   * Publish the values of this registry as the attributes of a JMX bean.
+   *
+   * @param objectName the name of the bean, e.g.
+   * <code>edu.jhu.hlt.concrete.stanford:type=Metrics</code>
+   * @throws JMException if the name is invalid or already registered
+   */
+  public void registerMBean(String objectName) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this),
+        new ObjectName(objectName));
+  }
+}
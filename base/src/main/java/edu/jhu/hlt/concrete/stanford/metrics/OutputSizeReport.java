@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+
+/**
+ * Aggregates, over a run, the serialized bytes each {@link AnnotationType}
+ * added to documents: a per-run total and a per-document distribution.
+ */
+public class OutputSizeReport {
+
+  private final Map<AnnotationType, LogHistogram> perType = new EnumMap<>(AnnotationType.class);
+  private final LogHistogram perDocument = new LogHistogram();
+
+  public OutputSizeReport() {
+    for (AnnotationType t : AnnotationType.values())
+      this.perType.put(t, new LogHistogram());
+  }
+
+  /**
+   * @param m the measurements of a finished document
+   */
+  public void add(DocumentMetrics m) {
+    for (AnnotationType t : AnnotationType.values())
+      this.perType.get(t).record(m.getBytes(t));
+    this.perDocument.record(m.getTotalBytes());
+  }
+
+  /**
+   * @return the per-document distribution of bytes of type <code>t</code>
+   */
+  public LogHistogram get(AnnotationType t) {
+    return this.perType.get(t);
+  }
+
+  /**
+   * @return the per-document distribution of bytes of all types
+   */
+  public LogHistogram getTotal() {
+    return this.perDocument;
+  }
+
+  /**
+   * Write the report at INFO level. Annotation types that added nothing
+   * over the run are omitted.
+   */
+  public void log(Logger logger) {
+    for (String line : this.lines())
+      logger.info(line);
+  }
+
+  /**
+   * @return the lines of the report; none if nothing was added
+   */
+  public List<String> lines() {
+    List<String> lines = new ArrayList<>();
+    final long docs = this.perDocument.getCount();
+    final long all = this.perDocument.getTotal();
+    if (docs == 0 || all == 0)
+      return lines;
+    lines.add(String.format("Annotation output size over %d documents: %d bytes", docs, all));
+    lines.add(String.format("%-28s %14s %7s %10s %10s %10s %10s", "type", "total bytes", "share",
+        "mean/doc", "p50/doc", "p90/doc", "max/doc"));
+    for (AnnotationType t : AnnotationType.values()) {
+      LogHistogram h = this.perType.get(t);
+      if (h.getTotal() == 0)
+        continue;
+      lines.add(String.format("%-28s %14d %6.1f%% %10.0f %10d %10d %10d", t.getLabel(), h.getTotal(),
+          100.0 * h.getTotal() / all, h.getMean(), h.getPercentile(0.5), h.getPercentile(0.9), h.getMax()));
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+/**
+ * Receives the start and end of each document and stage that
+ * {@link DocumentMetrics} measures, for a profiler to record.
+ * <br>
+ * <br>
+ * Implementations are found with {@link java.util.ServiceLoader}; the first
+ * one on the classpath is used. When there is none, as by default, nothing
+ * is recorded. Implementations should return <code>null</code> from the
+ * <code>begin</code> methods when they are not recording, so that no span
+ * is allocated.
+ */
+public interface Probe {
+
+  /**
+   * A document being annotated.
+   */
+  interface DocumentSpan {
+    void end(int sentences, long tokens);
+  }
+
+  /**
+   * A stage being run on a document.
+   */
+  interface StageSpan {
+    void end();
+  }
+
+  /**
+   * @param id the Communication ID
+   * @param chars the length of its text
+   * @return the span to end when the document is done, or <code>null</code>
+   * if not recording
+   */
+  DocumentSpan beginDocument(String id, long chars);
+
+  /**
+   * @param stage the annotator or conversion stage
+   * @param documentId the Communication ID, or <code>null</code> if no
+   * document is being measured
+   * @return the span to end when the stage is done, or <code>null</code> if
+   * not recording
+   */
+  StageSpan beginStage(String stage, String documentId);
+}
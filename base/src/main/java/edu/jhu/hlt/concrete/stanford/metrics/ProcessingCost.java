@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import edu.jhu.hlt.concrete.Communication;
+
+/**
+ * Records what annotating a document cost, and how the pipeline was
+ * configured, in the <code>keyValueMap</code> of the output Communication,
+ * so that cost can be modelled over a corpus from its output alone.
+ * <br>
+ * <br>
+ * All keys start with {@value #PREFIX}. Values are decimal numbers, except
+ * for {@value #STAGES_KEY}, which lists microseconds by stage as
+ * <code>stage=us;stage=us</code> in the order the stages ran, and
+ * {@value #PIPELINE_KEY}, which describes the options and analytics as
+ * <code>key=value;key=value</code>.
+ */
+public final class ProcessingCost {
+
+  public static final String PREFIX = "concrete-stanford.cost.";
+
+  /**
+   * Microseconds from the start to the end of annotation.
+   */
+  public static final String ELAPSED_KEY = PREFIX + "elapsed-us";
+
+  /**
+   * Microseconds spent in each annotator and conversion stage.
+   */
+  public static final String STAGES_KEY = PREFIX + "stages-us";
+
+  public static final String SENTENCES_KEY = PREFIX + "sentences";
+  public static final String TOKENS_KEY = PREFIX + "tokens";
+  public static final String MAX_SENTENCE_TOKENS_KEY = PREFIX + "max-sentence-tokens";
+
+  /**
+   * The configuration the document was annotated with.
+   */
+  public static final String PIPELINE_KEY = PREFIX + "pipeline";
+
+  private ProcessingCost() {
+  }
+
+  /**
+   * Add the measurements of <code>m</code> to <code>c</code>, replacing any
+   * recorded before.
+   *
+   * @param c the annotated Communication
+   * @param m the closed measurements of annotating <code>c</code>
+   * @param pipeline the configuration <code>c</code> was annotated with
+   */
+  public static void record(Communication c, DocumentMetrics m, String pipeline) {
+    StringBuilder stages = new StringBuilder();
+    for (Map.Entry<String, Long> e : m.getStageNanos().entrySet()) {
+      if (stages.length() > 0)
+        stages.append(';');
+      stages.append(e.getKey()).append('=').append(TimeUnit.NANOSECONDS.toMicros(e.getValue()));
+    }
+    c.putToKeyValueMap(ELAPSED_KEY, Long.toString(TimeUnit.NANOSECONDS.toMicros(m.getElapsedNanos())));
+    c.putToKeyValueMap(STAGES_KEY, stages.toString());
+    c.putToKeyValueMap(SENTENCES_KEY, Integer.toString(m.getSentences()));
+    c.putToKeyValueMap(TOKENS_KEY, Long.toString(m.getTokens()));
+    c.putToKeyValueMap(MAX_SENTENCE_TOKENS_KEY, Integer.toString(m.getMaxSentenceTokens()));
+    c.putToKeyValueMap(PIPELINE_KEY, pipeline);
+  }
+
+  /**
+   * @return the entries of <code>c</code> recorded by {@link #record}; empty
+   * if there are none
+   */
+  public static Map<String, String> get(Communication c) {
+    Map<String, String> m = new TreeMap<>();
+    if (c.isSetKeyValueMap())
+      for (Map.Entry<String, String> e : c.getKeyValueMap().entrySet())
+        if (e.getKey().startsWith(PREFIX))
+          m.put(e.getKey(), e.getValue());
+    return m;
+  }
+
+  /**
+   * @return the value of numeric <code>key</code> in <code>c</code>, or -1
+   * if it was not recorded
+   */
+  public static long getLong(Communication c, String key) {
+    String v = c.isSetKeyValueMap() ? c.getKeyValueMap().get(key) : null;
+    return v == null ? -1 : Long.parseLong(v);
+  }
+
+  /**
+   * @return the microseconds spent in each stage on <code>c</code>, in the
+   * order the stages ran; empty if not recorded
+   */
+  public static Map<String, Long> getStageMicros(Communication c) {
+    Map<String, Long> m = new LinkedHashMap<>();
+    String v = c.isSetKeyValueMap() ? c.getKeyValueMap().get(STAGES_KEY) : null;
+    if (v == null || v.isEmpty())
+      return m;
+    for (String kv : v.split(";")) {
+      final int eq = kv.lastIndexOf('=');
+      m.put(kv.substring(0, eq), Long.parseLong(kv.substring(eq + 1)));
+    }
+    return m;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+
+/**
+ * Aggregates the {@link DocumentMetrics} of a run: the time spent in each
+ * stage, the size of the output added, the slowest documents and the
+ * failures by cause.
+ */
+public class RunReport {
+
+  private static final class Slow {
+    final String id;
+    final long nanos;
+    final long chars;
+    final long tokens;
+    final int maxSentenceTokens;
+
+    Slow(DocumentMetrics m) {
+      this.id = m.getId();
+      this.nanos = m.getElapsedNanos();
+      this.chars = m.getChars();
+      this.tokens = m.getTokens();
+      this.maxSentenceTokens = m.getMaxSentenceTokens();
+    }
+  }
+
+  private final StageTimingReport timings = new StageTimingReport();
+  private final OutputSizeReport sizes = new OutputSizeReport();
+  private final int slowestLimit;
+  // fastest of the slowest first, so it is the one evicted
+  private final PriorityQueue<Slow> slowest = new PriorityQueue<>(Comparator.comparingLong((Slow s) -> s.nanos));
+  private final Map<String, Long> failures = new TreeMap<>();
+
+  public RunReport() {
+    this(10);
+  }
+
+  /**
+   * @param slowest the number of slowest documents to list
+   */
+  public RunReport(int slowest) {
+    this.slowestLimit = slowest;
+  }
+
+  /**
+   * @param m the measurements of a document annotated without error
+   */
+  public void add(DocumentMetrics m) {
+    this.timings.add(m);
+    this.sizes.add(m);
+    if (this.slowestLimit <= 0)
+      return;
+    synchronized (this.slowest) {
+      this.slowest.add(new Slow(m));
+      if (this.slowest.size() > this.slowestLimit)
+        this.slowest.poll();
+    }
+  }
+
+  /**
+   * @param m the measurements of a document that failed, or <code>null</code>
+   * @param error the reason it failed
+   */
+  public void addFailure(DocumentMetrics m, Throwable error) {
+    synchronized (this.failures) {
+      this.failures.merge(rootCause(error).getClass().getName(), 1L, Long::sum);
+    }
+  }
+
+  private static Throwable rootCause(Throwable t) {
+    Throwable r = t;
+    while (r.getCause() != null && r.getCause() != r)
+      r = r.getCause();
+    return r;
+  }
+
+  /**
+   * @return the class and message of the innermost cause of <code>t</code>
+   */
+  static String describe(Throwable t) {
+    Throwable r = rootCause(t);
+    return r.getMessage() == null ? r.getClass().getName() : r.getClass().getName() + ": " + r.getMessage();
+  }
+
+  /**
+   * @return the time spent in each stage
+   */
+  public StageTimingReport getTimings() {
+    return this.timings;
+  }
+
+  /**
+   * @return the sizes of the annotations added
+   */
+  public OutputSizeReport getSizes() {
+    return this.sizes;
+  }
+
+  /**
+   * @return the number of documents that failed
+   */
+  public long getFailures() {
+    synchronized (this.failures) {
+      return this.failures.values().stream().mapToLong(Long::longValue).sum();
+    }
+  }
+
+  /**
+   * @return the lines of all reports
+   */
+  public List<String> lines() {
+    List<String> lines = new ArrayList<>(this.timings.lines());
+    List<Slow> slow;
+    synchronized (this.slowest) {
+      slow = new ArrayList<>(this.slowest);
+    }
+    if (!slow.isEmpty()) {
+      slow.sort(Comparator.comparingLong((Slow s) -> s.nanos).reversed());
+      lines.add(String.format("Slowest %d documents:", slow.size()));
+      lines.add(String.format("%-40s %10s %10s %10s %12s", "id", "ms", "chars", "tokens", "max sentence"));
+      for (Slow s : slow)
+        lines.add(String.format("%-40s %10.1f %10d %10d %12d", s.id, s.nanos / 1e6, s.chars, s.tokens,
+            s.maxSentenceTokens));
+    }
+    synchronized (this.failures) {
+      if (!this.failures.isEmpty()) {
+        lines.add(String.format("Failed %d documents:", this.getFailures()));
+        for (Map.Entry<String, Long> e : this.failures.entrySet())
+          lines.add(String.format("%-60s %10d", e.getKey(), e.getValue()));
+      }
+    }
+    lines.addAll(this.sizes.lines());
+    return lines;
+  }
+
+  /**
+   * Write all reports at INFO level.
+   */
+  public void log(Logger logger) {
+    for (String line : this.lines())
+      logger.info(line);
+  }
+
+  /**
+   * Write all reports to <code>path</code>, replacing any file there.
+   *
+   * @throws IOException on I/O error
+   */
+  public void write(Path path) throws IOException {
+    Files.write(path, this.lines(), StandardCharsets.UTF_8);
+  }
+}
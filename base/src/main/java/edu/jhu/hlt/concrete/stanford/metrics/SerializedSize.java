@@ -0,0 +1,40 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * Measures the compact-protocol size of Thrift structs without
+ * buffering the encoded bytes.
+ */
+public final class SerializedSize {
+
+  private SerializedSize() {
+  }
+
+  /**
+   * @param t a Thrift struct
+   * @return the number of bytes <code>t</code> occupies when written with
+   * the compact protocol, as in Communication archives
+   * @throws IllegalArgumentException if the struct cannot be written, e.g.
+   * if a required field is unset
+   */
+  public static long of(TBase<?, ?> t) {
+    CountingOutputStream cos = new CountingOutputStream(ByteStreams.nullOutputStream());
+    try {
+      t.write(new TCompactProtocol(new TIOStreamTransport(cos)));
+    } catch (TException e) {
+      throw new IllegalArgumentException("Unable to serialize " + t.getClass().getSimpleName(), e);
+    }
+    return cos.getCount();
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+/**
+ * Aggregates, over a run, the time documents spent in each annotator and
+ * conversion stage, and the time per document by document length and by
+ * mean sentence length.
+ * <br>
+ * <br>
+ * Throughput over the run is reported against wall time, from the creation
+ * of the report to the last document added, so it reflects any
+ * parallelism. Per-stage and per-length rates are reported against the time
+ * documents spent in them, so they reflect the cost of a stage or of a kind
+ * of document.
+ */
+public class StageTimingReport {
+
+  // upper bounds, in tokens, of the document length buckets
+  private static final long[] DOC_TOKENS = { 100, 1_000, 10_000 };
+  // upper bounds, in tokens, of the mean sentence length buckets
+  private static final long[] SENTENCE_TOKENS = { 10, 20, 40 };
+
+  private static final class Row {
+    // microseconds per document
+    final LogHistogram micros = new LogHistogram();
+    long tokens = 0;
+
+    void add(long nanos, long tokens) {
+      this.micros.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+      this.tokens += tokens;
+    }
+  }
+
+  private final long startNanos = System.nanoTime();
+  private long lastNanos = this.startNanos;
+  private final Row total = new Row();
+  private final Map<String, Row> stages = new LinkedHashMap<>();
+  private final Row[] byDocument = rows(DOC_TOKENS.length + 1);
+  private final Row[] bySentence = rows(SENTENCE_TOKENS.length + 1);
+
+  private static Row[] rows(int n) {
+    Row[] r = new Row[n];
+    for (int i = 0; i < n; i++)
+      r[i] = new Row();
+    return r;
+  }
+
+  private static int bucket(long[] bounds, long v) {
+    int i = 0;
+    while (i < bounds.length && v > bounds[i])
+      i++;
+    return i;
+  }
+
+  /**
+   * @param m the measurements of a finished document
+   */
+  public synchronized void add(DocumentMetrics m) {
+    this.lastNanos = System.nanoTime();
+    final long tokens = m.getTokens();
+    final long elapsed = m.getElapsedNanos();
+    this.total.add(elapsed, tokens);
+    for (Map.Entry<String, Long> e : m.getStageNanos().entrySet())
+      this.stages.computeIfAbsent(e.getKey(), k -> new Row()).add(e.getValue(), tokens);
+    this.byDocument[bucket(DOC_TOKENS, tokens)].add(elapsed, tokens);
+    if (m.getSentences() > 0)
+      this.bySentence[bucket(SENTENCE_TOKENS, tokens / m.getSentences())].add(elapsed, tokens);
+  }
+
+  /**
+   * @return the number of documents added
+   */
+  public synchronized long getDocuments() {
+    return this.total.micros.getCount();
+  }
+
+  /**
+   * @return the number of tokens of the documents added
+   */
+  public synchronized long getTokens() {
+    return this.total.tokens;
+  }
+
+  /**
+   * @return the per-document distribution of microseconds spent in
+   * <code>stage</code>, or <code>null</code> if no document recorded it
+   */
+  public synchronized LogHistogram get(String stage) {
+    Row r = this.stages.get(stage);
+    return r == null ? null : r.micros;
+  }
+
+  private static String label(long[] bounds, int i) {
+    if (i == bounds.length)
+      return "> " + bounds[i - 1];
+    return (i == 0 ? 0 : bounds[i - 1] + 1) + "-" + bounds[i];
+  }
+
+  private static String row(String label, Row r, String share) {
+    final LogHistogram h = r.micros;
+    final double seconds = h.getTotal() / 1e6;
+    return String.format("%-28s %8d %7s %10.1f %10.1f %10.1f %10.1f %12.1f", label, h.getCount(), share,
+        h.getMean() / 1000, h.getPercentile(0.5) / 1000.0, h.getPercentile(0.9) / 1000.0, h.getMax() / 1000.0,
+        seconds == 0 ? 0.0 : r.tokens / seconds);
+  }
+
+  private static String header(String first) {
+    return String.format("%-28s %8s %7s %10s %10s %10s %10s %12s", first, "docs", "share",
+        "mean ms", "p50 ms", "p90 ms", "max ms", "tokens/s");
+  }
+
+  /**
+   * Write the report at INFO level. Nothing is written if no documents were
+   * added.
+   */
+  public void log(Logger logger) {
+    for (String line : this.lines())
+      logger.info(line);
+  }
+
+  /**
+   * @return the lines of the report; none if no documents were added
+   */
+  public synchronized List<String> lines() {
+    List<String> lines = new ArrayList<>();
+    final long docs = this.total.micros.getCount();
+    if (docs == 0)
+      return lines;
+    final double wall = (this.lastNanos - this.startNanos) / 1e9;
+    lines.add(String.format("Annotated %d documents, %d tokens, in %.1f s: %.2f documents/second, %.1f tokens/second",
+        docs, this.total.tokens, wall, wall == 0 ? 0.0 : docs / wall, wall == 0 ? 0.0 : this.total.tokens / wall));
+    final LogHistogram h = this.total.micros;
+    lines.add(String.format("Document latency: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+        h.getPercentile(0.5) / 1000.0, h.getPercentile(0.9) / 1000.0, h.getPercentile(0.99) / 1000.0,
+        h.getMax() / 1000.0));
+
+    long staged = 0;
+    for (Row r : this.stages.values())
+      staged += r.micros.getTotal();
+    if (staged > 0) {
+      lines.add(header("stage"));
+      for (Map.Entry<String, Row> e : this.stages.entrySet())
+        lines.add(row(e.getKey(), e.getValue(),
+            String.format("%.1f%%", 100.0 * e.getValue().micros.getTotal() / staged)));
+    }
+
+    lines.add(header("document tokens"));
+    for (int i = 0; i < this.byDocument.length; i++)
+      if (this.byDocument[i].micros.getCount() > 0)
+        lines.add(row(label(DOC_TOKENS, i), this.byDocument[i], ""));
+    final int first = lines.size();
+    for (int i = 0; i < this.bySentence.length; i++)
+      if (this.bySentence[i].micros.getCount() > 0)
+        lines.add(row(label(SENTENCE_TOKENS, i), this.bySentence[i], ""));
+    if (lines.size() > first)
+      lines.add(first, header("mean sentence tokens"));
+    return lines;
+  }
+}
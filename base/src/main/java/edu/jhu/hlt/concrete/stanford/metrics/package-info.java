@@ -0,0 +1,10 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+
+/**
+ * Contains per-document and per-run measurements of the annotation
+ * pipeline.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.runners;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.CountingInputStream;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.Sentence;
+import edu.jhu.hlt.concrete.analytics.base.AnalyticException;
+import edu.jhu.hlt.concrete.serialization.CommunicationSerializer;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.stanford.io.AnnotationInventory;
+import edu.jhu.hlt.concrete.stanford.io.ColumnarTokenExporter;
+import edu.jhu.hlt.concrete.stanford.io.CommunicationArchiveReader;
+import edu.jhu.hlt.concrete.stanford.io.CommunicationDelta;
+import edu.jhu.hlt.concrete.stanford.io.CommunicationProjector;
+import edu.jhu.hlt.concrete.stanford.io.ProjectedCommunication;
+import edu.jhu.hlt.concrete.stanford.io.StreamingCommunicationArchiver;
+import edu.jhu.hlt.concrete.stanford.metrics.DocumentMetrics;
+import edu.jhu.hlt.concrete.stanford.metrics.DocumentTrace;
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsRegistry;
+import edu.jhu.hlt.concrete.stanford.metrics.ProcessingCost;
+import edu.jhu.hlt.concrete.stanford.metrics.RunReport;
+import edu.jhu.hlt.concrete.util.ConcreteException;
+
+/**
+ * Annotates archives of Communications into one <code>.tar.gz</code>
+ * archive, honoring the projected-input, delta-output, columnar-export,
+ * trace, size-report, record-cost and fail-fast options of a
+ * {@link StanfordParameterDelegate}.
+ * <br>
+ * <br>
+ * Documents are read and written by the calling thread. If an executor is
+ * given, up to <code>parallelism</code> documents are annotated on it at
+ * once; output is written in input order regardless.
+ * <br>
+ * <br>
+ * The archive and its side files are written to temporary files beside
+ * them, and moved into place, side files first, only once the run
+ * succeeds. A failed or cancelled run leaves any earlier files at those
+ * paths as they were.
+ */
+public class ArchiveAnnotator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveAnnotator.class);
+
+  /**
+   * Runs the analytics over one Communication.
+   */
+  @FunctionalInterface
+  public interface Chain {
+    Communication annotate(Communication c) throws AnalyticException;
+  }
+
+  /**
+   * Observes a run, and may cancel it.
+   */
+  public interface Listener {
+
+    /**
+     * Called in input order, once per document.
+     *
+     * @param chars the length of the document's text
+     * @param tokens the number of tokens in the output, or 0 if it failed
+     * @param ok false if the document failed to annotate
+     */
+    void onDocument(String id, long chars, long tokens, boolean ok);
+
+    /**
+     * Called on the reading thread as input is read from disk, before it
+     * is decompressed.
+     *
+     * @param bytes the number of bytes read since the last call
+     */
+    default void onInputRead(long bytes) {
+    }
+
+    /**
+     * @return true to stop the run before the next document
+     */
+    default boolean isCancelled() {
+      return false;
+    }
+  }
+
+  /**
+   * Names the files a run writes.
+   */
+  @FunctionalInterface
+  public interface OutputPaths {
+
+    /**
+     * Called when the run starts, to place the temporary file, and again
+     * when the file is moved into place.
+     *
+     * @param suffix empty for the archive, or the suffix of a side file,
+     * such as <code>.cols</code>
+     * @return the path of the file
+     * @throws IOException if the file may not be written
+     */
+    Path resolve(String suffix) throws IOException;
+  }
+
+  private final Chain chain;
+  private final StanfordParameterDelegate params;
+  private final String pipeline;
+  private final CommunicationSerializer ser = new CompactCommunicationSerializer();
+  private final CommunicationProjector projector = new CommunicationProjector();
+
+  public ArchiveAnnotator(Chain chain, StanfordParameterDelegate params) {
+    this(chain, params, params.getPipelineDescription());
+  }
+
+  /**
+   * @param pipeline the configuration recorded with the cost of each
+   * document; see {@link StanfordParameterDelegate#getPipelineDescription(List)}
+   */
+  public ArchiveAnnotator(Chain chain, StanfordParameterDelegate params, String pipeline) {
+    this.chain = chain;
+    this.params = params;
+    this.pipeline = pipeline;
+  }
+
+  private static final class Outcome {
+    final ProjectedCommunication source;
+    final Communication output;
+    final Communication delta;
+    final DocumentMetrics metrics;
+    final Exception error;
+
+    Outcome(ProjectedCommunication source, Communication output, Communication delta,
+        DocumentMetrics metrics, Exception error) {
+      this.source = source;
+      this.output = output;
+      this.delta = delta;
+      this.metrics = metrics;
+      this.error = error;
+    }
+  }
+
+  private ProjectedCommunication decode(byte[] entry) throws IOException {
+    if (this.params.isInputProjected)
+      return this.projector.project(entry);
+    try {
+      return ProjectedCommunication.full(this.ser.fromBytes(entry));
+    } catch (ConcreteException e) {
+      throw new IOException("Failed to decode Communication.", e);
+    }
+  }
+
+  private Outcome annotate(ProjectedCommunication pc) {
+    Communication c = pc.getCommunication();
+    AnnotationInventory inv = this.params.isDeltaOutput ? AnnotationInventory.of(c) : null;
+    MetricsRegistry metrics = MetricsRegistry.global();
+    metrics.counter(MetricsRegistry.IN_FLIGHT).increment();
+    // opened outside the try so that failed documents keep their measurements
+    DocumentMetrics dm = DocumentMetrics.open(c, this.params.isSizeReportEnabled);
+    final Communication out;
+    try {
+      out = this.chain.annotate(c);
+    } catch (AnalyticException | RuntimeException e) {
+      // CoreNLP throws unchecked exceptions on some odd inputs; fail the document, not the run.
+      metrics.counter(MetricsRegistry.FAILURES).increment();
+      return new Outcome(pc, null, null, dm, e);
+    } finally {
+      dm.close();
+      metrics.counter(MetricsRegistry.IN_FLIGHT).decrement();
+    }
+
+    if (this.params.isCostRecorded)
+      ProcessingCost.record(out, dm, this.pipeline);
+    Communication delta = inv == null ? null : CommunicationDelta.extract(inv, out);
+    metrics.record(dm);
+    return new Outcome(pc, out, delta, dm, null);
+  }
+
+  /**
+   * Annotate every Communication of <code>inputs</code> into <code>output</code>,
+   * with any side files named by appending their suffix to it.
+   *
+   * @see #run(List, OutputPaths, ExecutorService, int, Listener)
+   */
+  public RunReport run(List<Path> inputs, Path output, ExecutorService executor, int parallelism,
+      Listener listener) throws IOException {
+    return this.run(inputs, suffix -> Paths.get(output.toString() + suffix), executor, parallelism, listener);
+  }
+
+  /**
+   * Annotate every Communication of <code>inputs</code> into the archive
+   * named by <code>outputs</code>.
+   *
+   * @param executor runs annotation; if <code>null</code>, documents are
+   * annotated one at a time on the calling thread
+   * @param parallelism the most documents annotated at once on <code>executor</code>
+   * @return the time spent, the slowest documents, the failures and the
+   * sizes of the annotations added
+   * @throws IOException on I/O error, or on the first failed document if fail-fast is on
+   * @throws CancellationException if the listener cancelled the run
+   */
+  public RunReport run(List<Path> inputs, OutputPaths outputs, ExecutorService executor, int parallelism,
+      Listener listener) throws IOException {
+    // temporary files by suffix
+    Map<String, Path> staged = new LinkedHashMap<>();
+    boolean done = false;
+    try {
+      Path archive = this.stage(outputs, "", staged);
+      RunReport report = this.annotateAll(inputs, archive, outputs, staged, executor, parallelism, listener);
+      // the archive last, so that its presence means the run finished
+      List<String> suffixes = new ArrayList<>(staged.keySet());
+      suffixes.remove("");
+      suffixes.add("");
+      for (String suffix : suffixes)
+        Files.move(staged.get(suffix), outputs.resolve(suffix), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      done = true;
+      return report;
+    } finally {
+      if (!done)
+        for (Path p : staged.values())
+          try {
+            Files.deleteIfExists(p);
+          } catch (IOException e) {
+            LOGGER.warn("Failed to remove temporary file: {}", p, e);
+          }
+    }
+  }
+
+  // a path beside the file named by suffix, to write it to and move it into place from when done.
+  // It is not created here, so that the file gets the usual permissions rather than a temporary file's.
+  private Path stage(OutputPaths outputs, String suffix, Map<String, Path> staged) throws IOException {
+    Path target = outputs.resolve(suffix);
+    if (!suffix.isEmpty())
+      LOGGER.info("Writing {} to: {}", suffix.substring(1), target.toString());
+    Path tmp = target.toAbsolutePath().resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    staged.put(suffix, tmp);
+    return tmp;
+  }
+
+  private RunReport annotateAll(List<Path> inputs, Path output, OutputPaths outputs, Map<String, Path> staged,
+      ExecutorService executor, int parallelism, Listener listener) throws IOException {
+    final int window = executor == null ? 1 : Math.max(1, parallelism);
+    final RunReport report = new RunReport();
+    Optional<ColumnarTokenExporter> columns = Optional.empty();
+    if (this.params.isColumnarExportEnabled)
+      columns = Optional.of(new ColumnarTokenExporter(this.stage(outputs, ".cols", staged)));
+    Optional<DocumentTrace> trace = Optional.empty();
+    if (this.params.isTraceEnabled)
+      trace = Optional.of(new DocumentTrace(this.stage(outputs, ".trace.jsonl", staged)));
+
+    Deque<Future<Outcome>> pending = new ArrayDeque<>();
+    try (OutputStream os = Files.newOutputStream(output);
+        BufferedOutputStream bos = new BufferedOutputStream(os, 1024 * 8 * 24);
+        StreamingCommunicationArchiver arch = new StreamingCommunicationArchiver(new GzipCompressorOutputStream(bos));) {
+      for (Path p : inputs) {
+        try (InputStream in = Files.newInputStream(p);
+            CountingInputStream cin = new CountingInputStream(in);
+            BufferedInputStream bin = new BufferedInputStream(cin);
+            CommunicationArchiveReader reader = new CommunicationArchiveReader(bin,
+                CommunicationArchiveReader.isGzipped(p.toString()));) {
+          long read = 0;
+          byte[] entry;
+          while ((entry = reader.next()) != null) {
+            listener.onInputRead(cin.getCount() - read);
+            read = cin.getCount();
+            if (listener.isCancelled())
+              throw new CancellationException("Cancelled");
+            ProjectedCommunication pc = this.decode(entry);
+            if (executor == null)
+              pending.add(CompletableFuture.completedFuture(this.annotate(pc)));
+            else
+              pending.add(executor.submit(() -> this.annotate(pc)));
+            if (pending.size() >= window)
+              this.write(pending.poll(), arch, columns, trace, report, listener);
+          }
+          listener.onInputRead(cin.getCount() - read);
+        }
+      }
+      while (!pending.isEmpty())
+        this.write(pending.poll(), arch, columns, trace, report, listener);
+    } finally {
+      for (Future<Outcome> f : pending)
+        f.cancel(true);
+      if (columns.isPresent())
+        columns.get().close();
+      if (trace.isPresent())
+        trace.get().close();
+    }
+    if (this.params.isTraceEnabled)
+      report.write(this.stage(outputs, ".summary.txt", staged));
+    return report;
+  }
+
+  private void write(Future<Outcome> f, StreamingCommunicationArchiver arch,
+      Optional<ColumnarTokenExporter> columns, Optional<DocumentTrace> trace, RunReport report,
+      Listener listener) throws IOException {
+    final Outcome o;
+    try {
+      o = f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Interrupted");
+    } catch (ExecutionException e) {
+      throw new IOException("Annotation failed unexpectedly", e.getCause());
+    }
+
+    Communication c = o.source.getCommunication();
+    final long chars = c.isSetText() ? c.getText().length() : 0;
+    if (o.error != null) {
+      LOGGER.warn("Caught exception on document", o.error);
+      report.addFailure(o.metrics, o.error);
+      if (trace.isPresent())
+        trace.get().write(o.metrics, 0, o.error);
+      listener.onDocument(c.getId(), chars, 0, false);
+      if (this.params.exitOnException)
+        throw new IOException("Processing failure and fail-fast enabled");
+      return;
+    }
+
+    if (columns.isPresent())
+      columns.get().add(o.output);
+    final long bytes;
+    if (o.delta != null)
+      bytes = arch.addEntry(CommunicationDelta.entryName(o.delta), o.delta::write);
+    else
+      bytes = arch.addEntry(o.output, o.source);
+    report.add(o.metrics);
+    if (trace.isPresent())
+      trace.get().write(o.metrics, bytes, null);
+    listener.onDocument(c.getId(), chars, tokens(o.output), true);
+  }
+
+  private static long tokens(Communication c) {
+    long n = 0;
+    if (c.isSetSectionList())
+      for (Section s : c.getSectionList())
+        if (s.isSetSentenceList())
+          for (Sentence st : s.getSentenceList())
+            if (st.isSetTokenization() && st.getTokenization().isSetTokenList())
+              n += st.getTokenization().getTokenList().getTokenListSize();
+    return n;
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.runners;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.serialization.CommunicationSerializer;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.stanford.io.CommunicationArchiveReader;
+import edu.jhu.hlt.concrete.stanford.io.CommunicationDelta;
+import edu.jhu.hlt.concrete.stanford.io.StreamingCommunicationArchiver;
+import edu.jhu.hlt.concrete.util.ConcreteException;
+
+/**
+ * Rebuilds full annotated Communications from an archive of originals
+ * and an archive of deltas written with <code>--delta-output</code>.
+ * <br>
+ * <br>
+ * Deltas are matched to originals by Communication UUID. The delta
+ * archive is held in memory; originals are streamed. Originals without
+ * a delta are written unchanged.
+ */
+public class DeltaMergeRunner {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DeltaMergeRunner.class);
+
+  @Parameter(names = "--help", help = true,
+      description = "Print the usage information and exit.")
+  private boolean help;
+
+  @Parameter(names = "--original", required = true,
+      description = "Path to the .tar or .tar.gz archive of original Communications.")
+  private String originalPath;
+
+  @Parameter(names = "--delta", required = true,
+      description = "Path to the .tar or .tar.gz archive of deltas.")
+  private String deltaPath;
+
+  @Parameter(names = "--output-path", required = true,
+      description = "Path to write the merged .tar.gz archive to.")
+  private String outputPath;
+
+  private final CommunicationSerializer ser = new CompactCommunicationSerializer();
+
+  private Map<String, Communication> loadDeltas(Path p) throws IOException, ConcreteException {
+    Map<String, Communication> deltas = new HashMap<>();
+    try (InputStream in = Files.newInputStream(p);
+        BufferedInputStream bin = new BufferedInputStream(in);
+        CommunicationArchiveReader reader = new CommunicationArchiveReader(bin,
+            CommunicationArchiveReader.isGzipped(p.toString()));) {
+      byte[] entry;
+      while ((entry = reader.next()) != null) {
+        Communication d = this.ser.fromBytes(entry);
+        deltas.put(d.getUuid().getUuidString(), d);
+      }
+    }
+
+    return deltas;
+  }
+
+  public void merge() throws IOException, ConcreteException {
+    Map<String, Communication> deltas = this.loadDeltas(Paths.get(this.deltaPath));
+    LOGGER.info("Loaded {} deltas", deltas.size());
+    Path orig = Paths.get(this.originalPath);
+    int merged = 0;
+    int unchanged = 0;
+    try (InputStream in = Files.newInputStream(orig);
+        BufferedInputStream bin = new BufferedInputStream(in);
+        CommunicationArchiveReader reader = new CommunicationArchiveReader(bin,
+            CommunicationArchiveReader.isGzipped(orig.toString()));
+        OutputStream os = Files.newOutputStream(Paths.get(this.outputPath));
+        BufferedOutputStream bos = new BufferedOutputStream(os, 1024 * 8 * 24);
+        StreamingCommunicationArchiver arch = new StreamingCommunicationArchiver(new GzipCompressorOutputStream(bos));) {
+      byte[] entry;
+      while ((entry = reader.next()) != null) {
+        Communication c = this.ser.fromBytes(entry);
+        Communication d = deltas.remove(c.getUuid().getUuidString());
+        if (d == null) {
+          LOGGER.warn("No delta for Communication: {} [UUID: {}]", c.getId(), c.getUuid().getUuidString());
+          arch.addEntry(c);
+          unchanged++;
+        } else {
+          arch.addEntry(CommunicationDelta.merge(c, d));
+          merged++;
+        }
+      }
+    }
+
+    LOGGER.info("Merged {} Communications; {} had no delta.", merged, unchanged);
+    if (!deltas.isEmpty())
+      LOGGER.warn("{} deltas did not match any original Communication.", deltas.size());
+  }
+
+  public static void main(String[] args) {
+    DeltaMergeRunner run = new DeltaMergeRunner();
+    JCommander jc = JCommander.newBuilder().addObject(run).build();
+    jc.parse(args);
+    jc.setProgramName(DeltaMergeRunner.class.getName());
+    if (run.help) {
+      jc.usage();
+      return;
+    }
+
+    try {
+      run.merge();
+    } catch (IOException | ConcreteException e) {
+      LOGGER.error("Error during merge", e);
+      System.exit(128);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.runners;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsRegistry;
+
+/**
+ * Logs the progress of an {@link ArchiveAnnotator} run at a fixed interval:
+ * the share of input read, documents, failures, documents and tokens per
+ * second, the estimated time to completion, the heap used and the
+ * documents in flight.
+ * <br>
+ * <br>
+ * Progress is measured in compressed input bytes read against the total
+ * size of the input archives, which tracks work done even when document
+ * counts are not known in advance. Rates and the estimate are taken over
+ * the last {@value #WINDOW} intervals, so they follow changes in speed
+ * during a run rather than averaging them out.
+ */
+public class ProgressReporter implements ArchiveAnnotator.Listener, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProgressReporter.class);
+
+  // the number of intervals that rates are taken over
+  static final int WINDOW = 5;
+
+  private static final class Sample {
+    final long nanos;
+    final long bytes;
+    final long documents;
+    final long tokens;
+
+    Sample(long nanos, long bytes, long documents, long tokens) {
+      this.nanos = nanos;
+      this.bytes = bytes;
+      this.documents = documents;
+      this.tokens = tokens;
+    }
+  }
+
+  private final long totalBytes;
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicLong documents = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong tokens = new AtomicLong();
+  // guarded by itself
+  private final Deque<Sample> samples = new ArrayDeque<>();
+  private ScheduledExecutorService timer = null;
+
+  /**
+   * @param totalBytes the total size of the input archives
+   */
+  public ProgressReporter(long totalBytes) {
+    this.totalBytes = totalBytes;
+    this.samples.add(new Sample(System.nanoTime(), 0, 0, 0));
+  }
+
+  /**
+   * Start logging every <code>intervalSeconds</code>, until closed.
+   *
+   * @return this
+   */
+  public ProgressReporter start(int intervalSeconds) {
+    this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("progress").setDaemon(true).build());
+    this.timer.scheduleAtFixedRate(() -> LOGGER.info(this.line(System.nanoTime())),
+        intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    return this;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.stanford.runners.ArchiveAnnotator.Listener#onDocument(java.lang.String, long, long, boolean)
+   */
+  @Override
+  public void onDocument(String id, long chars, long tokens, boolean ok) {
+    (ok ? this.documents : this.failed).incrementAndGet();
+    this.tokens.addAndGet(tokens);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.stanford.runners.ArchiveAnnotator.Listener#onInputRead(long)
+   */
+  @Override
+  public void onInputRead(long bytes) {
+    this.bytes.addAndGet(bytes);
+  }
+
+  /**
+   * Take a sample at <code>nanos</code> and describe progress since the
+   * oldest sample kept.
+   */
+  String line(long nanos) {
+    final Sample now = new Sample(nanos, this.bytes.get(), this.documents.get(), this.tokens.get());
+    final Sample from;
+    synchronized (this.samples) {
+      from = this.samples.peekFirst();
+      this.samples.addLast(now);
+      while (this.samples.size() > WINDOW + 1)
+        this.samples.removeFirst();
+    }
+    final double seconds = (now.nanos - from.nanos) / 1e9;
+    final double byteRate = seconds <= 0 ? 0.0 : (now.bytes - from.bytes) / seconds;
+
+    StringBuilder sb = new StringBuilder(200);
+    sb.append(String.format("Progress: %.1f%% of input (%s of %s), %d documents, %d failed",
+        this.totalBytes == 0 ? 100.0 : 100.0 * now.bytes / this.totalBytes,
+        megabytes(now.bytes), megabytes(this.totalBytes), now.documents, this.failed.get()));
+    sb.append(String.format("; %.2f documents/second, %.1f tokens/second",
+        seconds <= 0 ? 0.0 : (now.documents - from.documents) / seconds,
+        seconds <= 0 ? 0.0 : (now.tokens - from.tokens) / seconds));
+    sb.append("; ETA ");
+    if (byteRate > 0)
+      sb.append(duration(Math.round(Math.max(0, this.totalBytes - now.bytes) / byteRate)));
+    else
+      sb.append("unknown");
+    final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    sb.append("; heap ").append(megabytes(heap.getUsed()));
+    if (heap.getMax() > 0)
+      sb.append(" of ").append(megabytes(heap.getMax()));
+    sb.append(", ").append(MetricsRegistry.global().counter(MetricsRegistry.IN_FLIGHT).sum())
+        .append(" in flight");
+    return sb.toString();
+  }
+
+  private static String megabytes(long bytes) {
+    return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+  }
+
+  static String duration(long seconds) {
+    if (seconds >= 3600)
+      return String.format("%dh%02dm", seconds / 3600, (seconds % 3600) / 60);
+    if (seconds >= 60)
+      return String.format("%dm%02ds", seconds / 60, seconds % 60);
+    return seconds + "s";
+  }
+
+  /**
+   * Stop logging, and log progress one last time if it was started.
+   */
+  @Override
+  public void close() {
+    if (this.timer != null) {
+      this.timer.shutdownNow();
+      this.timer = null;
+      LOGGER.info(this.line(System.nanoTime()));
+    }
+  }
+}
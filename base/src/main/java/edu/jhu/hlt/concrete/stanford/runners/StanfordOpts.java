@@ -1,8 +1,6 @@
 package edu.jhu.hlt.concrete.stanford.runners;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -18,15 +16,13 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParametersDelegate;
 import com.google.common.collect.ImmutableList;
 
-import edu.jhu.hlt.acute.archivers.tar.TarArchiver;
-import edu.jhu.hlt.concrete.Communication;
 import edu.jhu.hlt.concrete.analytics.base.Analytic;
-import edu.jhu.hlt.concrete.analytics.base.AnalyticException;
 import edu.jhu.hlt.concrete.ingesters.base.IngesterParameterDelegate;
 import edu.jhu.hlt.concrete.miscommunication.WrappedCommunication;
-import edu.jhu.hlt.concrete.serialization.archiver.ArchivableCommunication;
-import edu.jhu.hlt.concrete.serialization.iterators.TarGzArchiveEntryCommunicationIterator;
 import edu.jhu.hlt.concrete.stanford.languages.PipelineLanguage;
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsHttpServer;
+import edu.jhu.hlt.concrete.stanford.metrics.MetricsParameterDelegate;
+import edu.jhu.hlt.concrete.stanford.metrics.RunReport;
 
 public class StanfordOpts {
 
@@ -38,6 +34,14 @@ public class StanfordOpts {
   @ParametersDelegate
   private IngesterParameterDelegate ingesterParams = new IngesterParameterDelegate();
 
+  @ParametersDelegate
+  private MetricsParameterDelegate metricsParams = new MetricsParameterDelegate();
+
+  @Parameter(names = "--progress-interval-s",
+      description = "Log progress through the input, throughput, estimated time to completion and heap use "
+          + "every this many seconds. 0 disables progress logging.")
+  private int progressIntervalSeconds = 60;
+
   @Parameter(description = "/path/to/1.tar.gz /path/to/2.tar.gz ...",
       required = true)
   private List<String> paths;
@@ -85,37 +89,39 @@ public class StanfordOpts {
     else
       rest = ImmutableList.of();
     this.ingesterParams.prepare();
+    // as the archiver of the ingester options did
+    if (Files.exists(this.ingesterParams.outputPath) && !this.ingesterParams.overwrite)
+      throw new IOException("File exists at: " + this.ingesterParams.outputPath.toString()
+          + " and overwrite is disabled; use --overwrite to replace it");
     LOGGER.info("Ingest beginning");
     StopWatch sw = new StopWatch();
     sw.start();
-    try (TarArchiver arch = this.ingesterParams.getArchiver();) {
-      for (Path p : this.validatePaths()) {
-        try (InputStream in = Files.newInputStream(p);
-            BufferedInputStream bin = new BufferedInputStream(in);
-            TarGzArchiveEntryCommunicationIterator iter = new TarGzArchiveEntryCommunicationIterator(bin);) {
-          while (iter.hasNext()) {
-            Communication c = iter.next();
-            try {
-              WrappedCommunication wc = first.annotate(c);
-              // chain add'l analytics
-              for (Analytic<? extends WrappedCommunication> a : rest) {
-                wc = a.annotate(wc.getRoot());
-              }
-              // write output
-              arch.addEntry(new ArchivableCommunication(wc.getRoot()));
-            } catch (AnalyticException ae) {
-              LOGGER.warn("Caught exception on document", ae);
-              if (this.stanfordParams.exitOnException)
-                throw new IOException("Processing failure and fail-fast enabled");
-            }
-          }
-        }
-      }
+    ArchiveAnnotator annotator = new ArchiveAnnotator(c -> {
+      WrappedCommunication wc = first.annotate(c);
+      // chain add'l analytics
+      for (Analytic<? extends WrappedCommunication> a : rest)
+        wc = a.annotate(wc.getRoot());
+      return wc.getRoot();
+    }, this.stanfordParams, this.stanfordParams.getPipelineDescription(analytics));
+    final List<Path> inputs = this.validatePaths();
+    long totalBytes = 0;
+    for (Path p : inputs)
+      totalBytes += Files.size(p);
+    final RunReport report;
+    MetricsHttpServer metrics = this.metricsParams.publish();
+    try (ProgressReporter progress = new ProgressReporter(totalBytes)) {
+      if (this.progressIntervalSeconds > 0)
+        progress.start(this.progressIntervalSeconds);
+      report = annotator.run(inputs, this.ingesterParams.outputPath, null, 1, progress);
+    } finally {
+      if (metrics != null)
+        metrics.close();
     }
 
     sw.stop();
     LOGGER.info("Ingest completed");
     Duration d = new Duration(sw.getTime());
     LOGGER.info("Ingest duration: {}", d.toString());
+    report.log(LOGGER);
   }
 }
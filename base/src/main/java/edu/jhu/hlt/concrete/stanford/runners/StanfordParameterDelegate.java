@@ -13,6 +13,7 @@ import com.google.common.collect.ImmutableList;
 
 import edu.jhu.hlt.concrete.analytics.base.Analytic;
 import edu.jhu.hlt.concrete.miscommunication.WrappedCommunication;
+import edu.jhu.hlt.concrete.stanford.languages.AnnotationLevel;
 import edu.jhu.hlt.concrete.stanford.languages.PipelineLanguage;
 import edu.jhu.hlt.utilt.sys.SystemErrDisabler;
 
@@ -38,11 +39,52 @@ public class StanfordParameterDelegate {
       description = "Run coreference resolution on the communications. Currently only enabled for English.")
   boolean isCoreferenceEnabled = false;
 
+  @Parameter(names = "--projected-input",
+      description = "Only decode the Communication fields the analytics need. Other fields are kept "
+          + "as raw bytes and written back unchanged. Reduces decode time and heap for annotation-heavy inputs.")
+  boolean isInputProjected = false;
+
+  @Parameter(names = "--delta-output",
+      description = "Only output what this run added (Sections, Sentences, Tokenizations, taggings, parses, "
+          + "entities), keyed by Communication UUID. See DeltaMergeRunner to rebuild full Communications.")
+  boolean isDeltaOutput = false;
+
+  @Parameter(names = "--columnar-export",
+      description = "Also write token offsets and POS/NER/lemma tag IDs of each output archive "
+          + "to a memory-mappable columnar shard next to it, with a '.cols' suffix.")
+  boolean isColumnarExportEnabled = false;
+
+  @Parameter(names = "--trace",
+      description = "Also write a JSON line per document (size, sentence lengths, time per stage, allocation, "
+          + "outcome) next to each output archive with a '.trace.jsonl' suffix, and an end-of-run "
+          + "performance summary with a '.summary.txt' suffix.")
+  boolean isTraceEnabled = false;
+
+  @Parameter(names = "--size-report",
+      description = "Measure the serialized bytes each annotation type adds to documents, and report them "
+          + "at the end of the run. Encodes each added annotation once more, so it slows annotation down.")
+  boolean isSizeReportEnabled = false;
+
+  @Parameter(names = "--record-cost",
+      description = "Record in the keyValueMap of each output Communication the time spent in each annotator, "
+          + "its sentence and token counts and the pipeline configuration, under 'concrete-stanford.cost.' keys.")
+  boolean isCostRecorded = false;
+
   @Parameter(names = "--silence-std-err",
       description = "Silence standard error. By default, Stanford prints a lot of output to std err.")
   boolean isStdErrSilenced = true;
 
   public ImmutableList<Analytic<? extends WrappedCommunication>> getAnalytics(PipelineLanguage lang) throws IOException {
+    return this.getAnalytics(lang, this.getAnnotationLevel());
+  }
+
+  /**
+   * @return the analytics that annotate <code>lang</code> up to <code>level</code>,
+   * in the order to run them
+   * @throws IOException if the configuration results in no analytics
+   */
+  public ImmutableList<Analytic<? extends WrappedCommunication>> getAnalytics(PipelineLanguage lang,
+      AnnotationLevel level) throws IOException {
     List<Analytic<? extends WrappedCommunication>> al = new ArrayList<>();
     // if the input is not tokenized, the segment/tokenization
     // analytics have to be run first.
@@ -51,10 +93,10 @@ public class StanfordParameterDelegate {
     else
       LOGGER.info("Omiting tokenization step");
     // if NOT stopping at tokenization, add other analytics
-    if (!this.isOnlyUpToTokenization) {
+    if (level != AnnotationLevel.TOKENIZE) {
       // if coref is enabled, only add it for english -
       // the others don't have it implemented.
-      if (this.isCoreferenceEnabled) {
+      if (level == AnnotationLevel.ALL) {
         if (lang == PipelineLanguage.ENGLISH) {
           al.add(lang.getAllAnalytic());
         } else {
@@ -75,6 +117,47 @@ public class StanfordParameterDelegate {
     return analytics;
   }
 
+  /**
+   * @return how far the options say to annotate
+   */
+  public AnnotationLevel getAnnotationLevel() {
+    if (this.isOnlyUpToTokenization)
+      return AnnotationLevel.TOKENIZE;
+    return this.isCoreferenceEnabled ? AnnotationLevel.ALL : AnnotationLevel.PRE_COREF;
+  }
+
+  /**
+   * @return true if only the annotations added by a run should be output
+   */
+  public boolean isDeltaOutput() {
+    return this.isDeltaOutput;
+  }
+
+  /**
+   * @return the options that change what the analytics output, for
+   * telling results of differently configured runs apart
+   */
+  public String getPipelineDescription() {
+    return "tokenized-input=" + this.isInputTokenized
+        + ";only-tokenize=" + this.isOnlyUpToTokenization
+        + ";run-coref=" + this.isCoreferenceEnabled
+        + ";projected-input=" + this.isInputProjected
+        + ";delta-output=" + this.isDeltaOutput;
+  }
+
+  /**
+   * @return the options that change what the analytics output, followed
+   * by the tool notes of <code>analytics</code>, which describe their
+   * annotators and models
+   */
+  public String getPipelineDescription(List<? extends Analytic<? extends WrappedCommunication>> analytics) {
+    StringBuilder sb = new StringBuilder(this.getPipelineDescription());
+    for (Analytic<? extends WrappedCommunication> a : analytics)
+      for (String note : a.getToolNotes())
+        sb.append(';').append(note);
+    return sb.toString();
+  }
+
   public void handleStdErr() throws UnsupportedEncodingException {
     if (this.isStdErrSilenced)
       this.errDisabler.disable();
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.Sentence;
+import edu.jhu.hlt.concrete.TaggedToken;
+import edu.jhu.hlt.concrete.TokenTagging;
+import edu.jhu.hlt.concrete.Tokenization;
+import edu.jhu.hlt.concrete.metadata.AnnotationMetadataFactory;
+import edu.jhu.hlt.concrete.section.SingleSectionSegmenter;
+import edu.jhu.hlt.concrete.stanford.io.ColumnarTokenShard.Tag;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory.AnalyticUUIDGenerator;
+import edu.jhu.hlt.tift.Tokenizer;
+
+/**
+ *
+ */
+public class ColumnarTokenExporterTest {
+
+  @Rule
+  public TemporaryFolder tf = new TemporaryFolder();
+
+  private final AnalyticUUIDGenerator g = new AnalyticUUIDGeneratorFactory().create();
+
+  private Communication tagged(String id, String text, String... pos) throws Exception {
+    Communication c = new Communication()
+        .setId(id)
+        .setUuid(this.g.next())
+        .setType("doc")
+        .setText(text)
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("test"));
+    Section s = SingleSectionSegmenter.createSingleSection(c, "passage");
+    Tokenization tkz = Tokenizer.WHITESPACE.tokenizeToConcrete(text, 0);
+    TokenTagging tt = new TokenTagging().setUuid(this.g.next())
+        .setTaggingType("POS")
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("test"))
+        .setTaggedTokenList(new ArrayList<>());
+    for (int i = 0; i < pos.length; i++)
+      tt.addToTaggedTokenList(new TaggedToken().setTokenIndex(i).setTag(pos[i]));
+    tkz.addToTokenTaggingList(tt);
+    s.addToSentenceList(new Sentence().setUuid(this.g.next())
+        .setTextSpan(s.getTextSpan())
+        .setTokenization(tkz));
+    c.addToSectionList(s);
+    return c;
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void rangePastEnd() throws Exception {
+    Path p = this.tf.getRoot().toPath().resolve("out.tar.gz.cols");
+    try (ColumnarTokenExporter ex = new ColumnarTokenExporter(p)) {
+      ex.add(this.tagged("a", "Dogs bark", "NNS", "VBP"));
+    }
+    try (ColumnarTokenShard sh = new ColumnarTokenShard(p)) {
+      sh.tokenBegins(1, 2);
+    }
+  }
+
+  @Test
+  public void roundTrip() throws Exception {
+    Path p = this.tf.getRoot().toPath().resolve("out.tar.gz.cols");
+    Communication a = this.tagged("a", "Dogs bark", "NNS", "VBP");
+    Communication b = this.tagged("b", "Cats sleep soundly", "NNS", "VBP", "RB");
+    try (ColumnarTokenExporter ex = new ColumnarTokenExporter(p)) {
+      ex.add(a);
+      ex.add(b);
+    }
+    // only the shard is left behind
+    assertEquals(1, this.tf.getRoot().list().length);
+
+    try (ColumnarTokenShard sh = new ColumnarTokenShard(p)) {
+      assertEquals(2, sh.getDocumentCount());
+      assertEquals(2, sh.getSentenceCount());
+      assertEquals(5, sh.getTokenCount());
+      assertEquals("b", sh.documentIds().get(1));
+      assertEquals(b.getUuid().getUuidString(), sh.documentUuids().get(1));
+
+      LongBuffer sts = sh.sentenceTokenStarts();
+      assertEquals(2, sts.get(1));
+      assertEquals(5, sts.get(2));
+      LongBuffer dss = sh.documentSentenceStarts();
+      assertEquals(1, dss.get(1));
+      assertEquals(2, dss.get(2));
+
+      IntBuffer begins = sh.tokenBegins();
+      IntBuffer ends = sh.tokenEnds();
+      assertEquals(5, begins.get(1));
+      assertEquals(9, ends.get(1));
+      assertEquals(11, begins.get(4));
+
+      IntBuffer tags = sh.tags(Tag.POS);
+      assertEquals(3, sh.vocabulary(Tag.POS).size());
+      assertEquals("RB", sh.vocabulary(Tag.POS).get(tags.get(4)));
+      assertEquals(tags.get(0), tags.get(2));
+      assertEquals(-1, sh.tags(Tag.NER).get(0));
+      assertEquals(0, sh.vocabulary(Tag.LEMMA).size());
+
+      // ranged reads, as used for columns too large for one mapping
+      assertEquals(11, sh.tokenBegins(3, 2).get(1));
+      assertEquals(9, sh.tokenEnds(1, 1).get(0));
+      assertEquals(tags.get(4), sh.tags(Tag.POS, 4, 1).get(0));
+      assertEquals(5, sh.sentenceTokenStarts(2, 1).get(0));
+      assertEquals(2, sh.documentSentenceStarts(1, 2).get(1));
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.EntityMentionSet;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.Sentence;
+import edu.jhu.hlt.concrete.TaggedToken;
+import edu.jhu.hlt.concrete.TokenTagging;
+import edu.jhu.hlt.concrete.Tokenization;
+import edu.jhu.hlt.concrete.metadata.AnnotationMetadataFactory;
+import edu.jhu.hlt.concrete.section.SingleSectionSegmenter;
+import edu.jhu.hlt.concrete.stanford.metrics.ProcessingCost;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory.AnalyticUUIDGenerator;
+import edu.jhu.hlt.tift.Tokenizer;
+
+/**
+ *
+ */
+public class CommunicationDeltaTest {
+
+  AnalyticUUIDGenerator g;
+  Communication c;
+
+  @Before
+  public void setUp() throws Exception {
+    this.g = new AnalyticUUIDGeneratorFactory().create();
+    this.c = new Communication()
+        .setId("delta")
+        .setUuid(g.next())
+        .setType("doc")
+        .setText("This is some sample text.")
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("test"));
+    Section s = SingleSectionSegmenter.createSingleSection(this.c, "passage");
+    this.c.addToSectionList(s);
+  }
+
+  private Sentence tokenizedSentence() {
+    Sentence st = new Sentence().setUuid(this.g.next())
+        .setTextSpan(this.c.getSectionList().get(0).getTextSpan());
+    Tokenization tkz = Tokenizer.WHITESPACE.tokenizeToConcrete(this.c.getText(), 0);
+    st.setTokenization(tkz);
+    return st;
+  }
+
+  @Test
+  public void newSentences() throws Exception {
+    AnnotationInventory inv = AnnotationInventory.of(this.c);
+    Communication after = new Communication(this.c);
+    after.getSectionList().get(0).addToSentenceList(this.tokenizedSentence());
+
+    Communication d = CommunicationDelta.extract(inv, after);
+    assertFalse(d.isSetText());
+    assertEquals(1, d.getSectionList().get(0).getSentenceListSize());
+    assertEquals(after, CommunicationDelta.merge(this.c, d));
+  }
+
+  @Test
+  public void addedTaggingsAndEntities() throws Exception {
+    this.c.getSectionList().get(0).addToSentenceList(this.tokenizedSentence());
+    AnnotationInventory inv = AnnotationInventory.of(this.c);
+
+    Communication after = new Communication(this.c);
+    TokenTagging pos = new TokenTagging().setUuid(this.g.next())
+        .setTaggingType("POS")
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("test"))
+        .setTaggedTokenList(new ArrayList<>());
+    pos.addToTaggedTokenList(new TaggedToken().setTokenIndex(0).setTag("DT"));
+    after.getSectionList().get(0).getSentenceList().get(0).getTokenization().addToTokenTaggingList(pos);
+    after.addToEntityMentionSetList(new EntityMentionSet().setUuid(this.g.next())
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("test"))
+        .setMentionList(new ArrayList<>()));
+
+    Communication d = CommunicationDelta.extract(inv, after);
+    Tokenization dt = d.getSectionList().get(0).getSentenceList().get(0).getTokenization();
+    // tokens were in the input; only the tagging is new.
+    assertFalse(dt.isSetTokenList());
+    assertEquals(1, dt.getTokenTaggingListSize());
+    assertTrue(d.isSetEntityMentionSetList());
+    assertEquals(after, CommunicationDelta.merge(this.c, d));
+  }
+
+  @Test
+  public void carriesProcessingCost() throws Exception {
+    AnnotationInventory inv = AnnotationInventory.of(this.c);
+    Communication after = new Communication(this.c);
+    after.getSectionList().get(0).addToSentenceList(this.tokenizedSentence());
+    after.putToKeyValueMap(ProcessingCost.TOKENS_KEY, "5");
+
+    Communication d = CommunicationDelta.extract(inv, after);
+    assertEquals(1, d.getKeyValueMapSize());
+    assertEquals(5, ProcessingCost.getLong(d, ProcessingCost.TOKENS_KEY));
+    assertEquals(after, CommunicationDelta.merge(this.c, d));
+  }
+
+  @Test
+  public void nothingAdded() throws Exception {
+    this.c.getSectionList().get(0).addToSentenceList(this.tokenizedSentence());
+    Communication d = CommunicationDelta.extract(AnnotationInventory.of(this.c), this.c);
+    assertFalse(d.getSectionList().get(0).isSetSentenceList());
+    assertEquals(this.c, CommunicationDelta.merge(this.c, d));
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.EntityMentionSet;
+import edu.jhu.hlt.concrete.EntitySet;
+import edu.jhu.hlt.concrete.Section;
+import edu.jhu.hlt.concrete.metadata.AnnotationMetadataFactory;
+import edu.jhu.hlt.concrete.section.SingleSectionSegmenter;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory.AnalyticUUIDGenerator;
+
+/**
+ *
+ */
+public class CommunicationProjectorTest {
+
+  AnalyticUUIDGenerator g;
+  Communication c;
+  EntityMentionSet origEms;
+  EntitySet origEs;
+
+  @Before
+  public void setUp() throws Exception {
+    this.g = new AnalyticUUIDGeneratorFactory().create();
+    this.c = new Communication()
+        .setId("projected")
+        .setUuid(g.next())
+        .setType("doc")
+        .setText("This is some sample text.")
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("test"));
+    Section s = SingleSectionSegmenter.createSingleSection(this.c, "passage");
+    this.c.addToSectionList(s);
+    this.origEms = new EntityMentionSet().setUuid(g.next())
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("other tool"))
+        .setMentionList(new ArrayList<>());
+    this.origEs = new EntitySet().setUuid(g.next())
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("other tool"))
+        .setEntityList(new ArrayList<>());
+    this.c.addToEntityMentionSetList(this.origEms);
+    this.c.addToEntitySetList(this.origEs);
+  }
+
+  @Test
+  public void projectAndSplice() throws Exception {
+    byte[] bytes = new CompactCommunicationSerializer().toBytes(this.c);
+    ProjectedCommunication pc = new CommunicationProjector().project(bytes);
+    Communication projected = pc.getCommunication();
+    assertEquals(this.c.getText(), projected.getText());
+    assertEquals(this.c.getSectionList(), projected.getSectionList());
+    assertFalse(projected.isSetEntityMentionSetList());
+    assertFalse(projected.isSetEntitySetList());
+    assertEquals(2, pc.getRetainedFields().size());
+    assertTrue(pc.getRetainedBytes() > 0);
+
+    // "annotate": add a new EntityMentionSet, which collides
+    // with the retained field and must be merged.
+    Communication annotated = new Communication(projected);
+    EntityMentionSet added = new EntityMentionSet().setUuid(g.next())
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("Stanford Coref"))
+        .setMentionList(new ArrayList<>());
+    annotated.addToEntityMentionSetList(added);
+
+    TMemoryBuffer buf = new TMemoryBuffer(bytes.length * 2);
+    pc.write(annotated, new TCompactProtocol(buf));
+    Communication read = new Communication();
+    read.read(new TCompactProtocol(buf));
+
+    assertEquals(this.c.getText(), read.getText());
+    assertEquals(2, read.getEntityMentionSetListSize());
+    assertEquals(this.origEms, read.getEntityMentionSetList().get(0));
+    assertEquals(added, read.getEntityMentionSetList().get(1));
+    assertEquals(1, read.getEntitySetListSize());
+    assertEquals(this.origEs, read.getEntitySetList().get(0));
+  }
+
+  @Test
+  public void fullRoundTrip() throws Exception {
+    byte[] bytes = new CompactCommunicationSerializer().toBytes(this.c);
+    ProjectedCommunication pc = new CommunicationProjector().project(bytes);
+    TMemoryBuffer buf = new TMemoryBuffer(bytes.length);
+    pc.write(pc.getCommunication(), new TCompactProtocol(buf));
+    Communication read = new Communication();
+    read.read(new TCompactProtocol(buf));
+    assertEquals(this.c, read);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.metadata.AnnotationMetadataFactory;
+import edu.jhu.hlt.concrete.serialization.CommunicationSerializer;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.serialization.iterators.TarArchiveEntryCommunicationIterator;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory.AnalyticUUIDGenerator;
+
+/**
+ *
+ */
+public class StreamingCommunicationArchiverTest {
+
+  @Rule
+  public TemporaryFolder tf = new TemporaryFolder();
+
+  Communication small;
+  Communication large;
+
+  @Before
+  public void setUp() throws Exception {
+    AnalyticUUIDGenerator g = new AnalyticUUIDGeneratorFactory().create();
+    this.small = new Communication()
+        .setId("small")
+        .setUuid(g.next())
+        .setType("doc")
+        .setText("Short text.")
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("test"));
+    this.large = new Communication(this.small)
+        .setId("large")
+        .setUuid(g.next())
+        .setText(StringUtils.repeat("Much longer text. ", 1000));
+  }
+
+  @Test
+  public void roundTripWithinAndOverLimit() throws Exception {
+    Path out = this.tf.newFile("out.tar").toPath();
+    CommunicationSerializer ser = new CompactCommunicationSerializer();
+    final int largeSize = ser.toBytes(this.large).length;
+    try (OutputStream os = Files.newOutputStream(out);
+        BufferedOutputStream bos = new BufferedOutputStream(os);
+        StreamingCommunicationArchiver arch = new StreamingCommunicationArchiver(bos, 1024);) {
+      assertEquals(ser.toBytes(this.small).length, arch.addEntry(this.small));
+      assertEquals(largeSize, arch.addEntry(this.large));
+      assertEquals(2, arch.getEntries());
+      assertEquals(1, arch.getTwoPassEntries());
+    }
+
+    try (InputStream is = Files.newInputStream(out);
+        BufferedInputStream bis = new BufferedInputStream(is);
+        TarArchiveEntryCommunicationIterator iter = new TarArchiveEntryCommunicationIterator(bis);) {
+      assertTrue(iter.hasNext());
+      assertEquals(this.small, iter.next());
+      assertTrue(iter.hasNext());
+      assertEquals(this.large, iter.next());
+      assertFalse(iter.hasNext());
+    }
+  }
+
+  @Test
+  public void readerSkipsFilteredEntries() throws Exception {
+    Path out = this.tf.newFile("filtered.tar").toPath();
+    try (OutputStream os = Files.newOutputStream(out);
+        StreamingCommunicationArchiver arch = new StreamingCommunicationArchiver(os);) {
+      arch.addEntry(this.small);
+      arch.addEntry(this.large);
+    }
+
+    CommunicationSerializer ser = new CompactCommunicationSerializer();
+    try (InputStream is = Files.newInputStream(out);
+        CommunicationArchiveReader reader = new CommunicationArchiveReader(is, false);) {
+      byte[] b = reader.next(name -> name.startsWith("large"));
+      assertEquals(this.large, ser.fromBytes(b));
+      assertTrue(reader.getEntryName().startsWith("large"));
+      assertNull(reader.next(name -> name.startsWith("small")));
+    }
+  }
+
+  @Test
+  public void failedTwoPassEntryStopsTheArchive() throws Exception {
+    Path out = this.tf.newFile("failed.tar").toPath();
+    // shrinks between the counting pass and the writing pass
+    AtomicInteger passes = new AtomicInteger();
+    StreamingCommunicationArchiver.ThriftStructWriter changing = p -> new Communication(this.large)
+        .setText(StringUtils.repeat("Much longer text. ", 1000 - passes.getAndIncrement()))
+        .write(p);
+    try (OutputStream os = Files.newOutputStream(out);
+        StreamingCommunicationArchiver arch = new StreamingCommunicationArchiver(os, 1024);) {
+      arch.addEntry(this.small);
+      try {
+        arch.addEntry("changing.comm", changing);
+        fail("Expected the size check to fail");
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("changed size"));
+      }
+      assertTrue(arch.isFailed());
+      try {
+        arch.addEntry(this.small);
+        fail("Expected the archive to refuse further entries");
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().contains("incomplete"));
+      }
+      assertEquals(1, arch.getEntries());
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.languages;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Optional;
+
+import org.junit.Test;
+
+public class LanguageDetectorTest {
+
+  @Test
+  public void english() {
+    assertEquals(Optional.of(PipelineLanguage.ENGLISH),
+        LanguageDetector.detect("The cat sat on the mat, and it was happy with the view from the window."));
+  }
+
+  @Test
+  public void spanish() {
+    assertEquals(Optional.of(PipelineLanguage.SPANISH),
+        LanguageDetector.detect("¿Dónde está la biblioteca? El libro de los niños está en la mesa."));
+  }
+
+  @Test
+  public void chinese() {
+    assertEquals(Optional.of(PipelineLanguage.CHINESE),
+        LanguageDetector.detect("今天天气很好。我们去公园散步吧, OK?"));
+  }
+
+  @Test
+  public void tooLittleEvidence() {
+    assertFalse(LanguageDetector.detect("").isPresent());
+    assertFalse(LanguageDetector.detect("Hola. Hello.").isPresent());
+  }
+
+  @Test
+  public void languageCodes() {
+    assertEquals(PipelineLanguage.SPANISH, PipelineLanguage.getEnumeration("spa"));
+    assertEquals(PipelineLanguage.CHINESE, PipelineLanguage.getEnumeration("cmn"));
+    assertEquals(PipelineLanguage.ENGLISH, PipelineLanguage.getEnumeration("eng"));
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.Tokenization;
+import edu.jhu.hlt.concrete.metadata.AnnotationMetadataFactory;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
+import edu.jhu.hlt.tift.Tokenizer;
+
+/**
+ *
+ */
+public class DocumentMetricsTest {
+
+  private final Tokenization tkz = Tokenizer.WHITESPACE.tokenizeToConcrete("Some sample text .", 0);
+
+  /**
+   * Spend at least <code>millis</code> in <code>stage</code> of the
+   * document open on this thread.
+   */
+  static void spend(String stage, long millis) throws InterruptedException {
+    try (DocumentMetrics.Stage s = DocumentMetrics.stage(stage)) {
+      Thread.sleep(millis);
+    }
+  }
+
+  @Test
+  public void recordsWhileOpen() throws Exception {
+    final long size = SerializedSize.of(this.tkz.getTokenList());
+    try (DocumentMetrics m = DocumentMetrics.open("doc", true)) {
+      DocumentMetrics.recordSize(AnnotationType.TOKENS, this.tkz.getTokenList());
+      DocumentMetrics.recordSize(AnnotationType.TOKENS, this.tkz.getTokenList());
+      assertEquals(2 * size, m.getBytes(AnnotationType.TOKENS));
+      assertEquals(2 * size, m.getTotalBytes());
+      assertEquals(0, m.getBytes(AnnotationType.POS));
+    }
+    assertFalse(DocumentMetrics.current().isPresent());
+    // no-op when nothing is open
+    DocumentMetrics.recordSize(AnnotationType.TOKENS, this.tkz.getTokenList());
+    // not measured unless asked for
+    try (DocumentMetrics m = DocumentMetrics.open("doc")) {
+      DocumentMetrics.recordSize(AnnotationType.TOKENS, this.tkz.getTokenList());
+      assertEquals(0, m.getTotalBytes());
+    }
+  }
+
+  @Test
+  public void recordsStageTimesAndLength() throws Exception {
+    try (DocumentMetrics m = DocumentMetrics.open("doc")) {
+      spend("pos", 1);
+      spend("parse", 5);
+      spend("pos", 1);
+      DocumentMetrics.recordLength(2, 30, 20);
+      assertEquals(2, m.getStageNanos().size());
+      assertEquals("pos", m.getStageNanos().keySet().iterator().next());
+      assertTrue(m.getStageNanos().get("pos") >= 2_000_000);
+      assertTrue(m.getStageNanos().get("parse") >= 5_000_000);
+      assertEquals(2, m.getSentences());
+      assertEquals(30, m.getTokens());
+      assertEquals(20, m.getMaxSentenceTokens());
+
+      StageTimingReport r = new StageTimingReport();
+      r.add(m);
+      assertEquals(1, r.getDocuments());
+      assertEquals(30, r.getTokens());
+      assertEquals(1, r.get("parse").getCount());
+    }
+  }
+
+  @Test
+  public void stagesRecordWhileOpen() throws Exception {
+    try (DocumentMetrics m = DocumentMetrics.open("doc")) {
+      try (DocumentMetrics.Stage s = DocumentMetrics.stage("lemma")) {
+        Thread.sleep(2);
+      }
+      try (DocumentMetrics.Stage s = DocumentMetrics.stage("lemma")) {
+        Thread.sleep(2);
+      }
+      assertEquals(1, m.getStageNanos().size());
+      assertTrue(m.getStageNanos().get("lemma") >= 4_000_000);
+    }
+    // no-op when nothing is open
+    DocumentMetrics.stage("lemma").close();
+  }
+
+  @Test
+  public void sizeMatchesSerializer() throws Exception {
+    Communication c = new Communication()
+        .setId("size")
+        .setUuid(new AnalyticUUIDGeneratorFactory().create().next())
+        .setType("doc")
+        .setText("Some sample text .")
+        .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("test"));
+    assertEquals(new CompactCommunicationSerializer().toBytes(c).length, SerializedSize.of(c));
+  }
+}
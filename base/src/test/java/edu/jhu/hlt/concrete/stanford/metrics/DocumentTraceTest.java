@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class DocumentTraceTest {
+
+  @Rule
+  public TemporaryFolder tf = new TemporaryFolder();
+
+  @Test
+  public void writesOneLinePerDocument() throws Exception {
+    Path p = this.tf.getRoot().toPath().resolve("out.tar.gz.trace.jsonl");
+    DocumentMetrics ok = DocumentMetrics.open("a\"b");
+    DocumentMetricsTest.spend("pos", 1);
+    DocumentMetrics.recordLength(2, 30, 20);
+    ok.close();
+    DocumentMetrics failed = DocumentMetrics.open("c");
+    failed.close();
+    IOException error = new IOException("wrapped", new IllegalStateException("too long\n"));
+
+    RunReport report = new RunReport(1);
+    try (DocumentTrace t = new DocumentTrace(p)) {
+      report.add(ok);
+      t.write(ok, 123, null);
+      report.addFailure(failed, error);
+      t.write(failed, 0, error);
+    }
+
+    List<String> lines = Files.readAllLines(p, StandardCharsets.UTF_8);
+    assertEquals(2, lines.size());
+    assertTrue(lines.get(0), lines.get(0).startsWith("{\"id\":\"a\\\"b\",\"chars\":0,\"sentences\":2,\"tokens\":30,"
+        + "\"max_sentence_tokens\":20,"));
+    assertTrue(lines.get(0), lines.get(0).contains("\"stages_us\":{\"pos\":"));
+    assertTrue(lines.get(0), lines.get(0).endsWith(",\"output_bytes\":123,\"outcome\":\"ok\"}"));
+    assertTrue(lines.get(1), lines.get(1).endsWith(
+        "\"outcome\":\"failed\",\"error\":\"java.lang.IllegalStateException: too long\\n\"}"));
+
+    assertEquals(1, report.getFailures());
+    String summary = String.join("\n", report.lines());
+    assertTrue(summary, summary.contains("Slowest 1 documents:"));
+    assertTrue(summary, summary.contains("java.lang.IllegalStateException"));
+  }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class LogHistogramTest {
+
+  @Test
+  public void bucketsAreContiguous() {
+    for (int i = 1; i < 400; i++) {
+      assertEquals(LogHistogram.upperBound(i - 1) + 1, LogHistogram.lowerBound(i));
+      assertEquals(i, LogHistogram.index(LogHistogram.lowerBound(i)));
+      assertEquals(i, LogHistogram.index(LogHistogram.upperBound(i)));
+    }
+  }
+
+  @Test
+  public void percentiles() {
+    LogHistogram h = new LogHistogram();
+    for (int i = 1; i <= 1000; i++)
+      h.record(i);
+    assertEquals(1000, h.getCount());
+    assertEquals(500500, h.getTotal());
+    assertEquals(1, h.getMin());
+    assertEquals(1000, h.getMax());
+    long p50 = h.getPercentile(0.5);
+    assertTrue(p50 >= 500 && p50 <= 500 * 1.125);
+    long p99 = h.getPercentile(0.99);
+    assertTrue(p99 >= 990 && p99 <= 1000);
+    assertEquals(1000, h.getPercentile(1.0));
+  }
+
+  @Test
+  public void merge() {
+    LogHistogram a = new LogHistogram();
+    LogHistogram b = new LogHistogram();
+    a.record(3);
+    b.record(5);
+    b.record(-1);
+    a.merge(b);
+    assertEquals(3, a.getCount());
+    assertEquals(8, a.getTotal());
+    assertEquals(0, a.getMin());
+    assertEquals(5, a.getMax());
+  }
+}
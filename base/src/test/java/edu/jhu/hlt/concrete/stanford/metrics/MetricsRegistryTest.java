@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.SortedMap;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class MetricsRegistryTest {
+
+  @Test
+  public void recordsDocuments() throws Exception {
+    MetricsRegistry r = new MetricsRegistry();
+    r.gauge("queue", () -> 3);
+    try (DocumentMetrics m = DocumentMetrics.open("doc")) {
+      DocumentMetricsTest.spend("parse", 2);
+      DocumentMetrics.recordLength(2, 30, 20);
+      r.record(m);
+    }
+    r.counter(MetricsRegistry.FAILURES).increment();
+
+    SortedMap<String, Number> s = r.snapshot();
+    assertEquals(1L, s.get(MetricsRegistry.DOCUMENTS));
+    assertEquals(30L, s.get(MetricsRegistry.TOKENS));
+    assertEquals(2L, s.get(MetricsRegistry.SENTENCES));
+    assertEquals(1L, s.get(MetricsRegistry.FAILURES));
+    assertEquals(3L, s.get("queue"));
+    assertEquals(1L, s.get(MetricsRegistry.STAGE_TIME + "parse.count"));
+    assertTrue(s.get(MetricsRegistry.STAGE_TIME + "parse.max_us").longValue() >= 1_500);
+  }
+
+  @Test
+  public void servesOverHttp() throws Exception {
+    MetricsRegistry r = new MetricsRegistry();
+    r.counter(MetricsRegistry.DOCUMENTS).add(5);
+    try (MetricsHttpServer http = new MetricsHttpServer(0, r)) {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      try (InputStream in = new URL("http://127.0.0.1:" + http.getPort() + "/metrics").openStream()) {
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0)
+          body.write(buf, 0, n);
+      }
+      assertTrue(new String(body.toByteArray(), StandardCharsets.UTF_8).contains("documents 5\n"));
+    }
+  }
+}
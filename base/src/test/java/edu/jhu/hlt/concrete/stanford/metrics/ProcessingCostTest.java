@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.jhu.hlt.concrete.Communication;
+
+/**
+ *
+ */
+public class ProcessingCostTest {
+
+  @Test
+  public void recordsAndReadsBack() throws Exception {
+    Communication c = new Communication().setId("doc");
+    assertTrue(ProcessingCost.get(c).isEmpty());
+    assertEquals(-1, ProcessingCost.getLong(c, ProcessingCost.TOKENS_KEY));
+    assertTrue(ProcessingCost.getStageMicros(c).isEmpty());
+
+    c.putToKeyValueMap("other", "kept");
+    try (DocumentMetrics m = DocumentMetrics.open("doc")) {
+      DocumentMetricsTest.spend("to-concrete:tokens", 3);
+      DocumentMetricsTest.spend("parse", 5);
+      DocumentMetrics.recordLength(2, 30, 20);
+      m.close();
+      ProcessingCost.record(c, m, "run-coref=false;annotators=pos,parse");
+    }
+
+    assertEquals(6, ProcessingCost.get(c).size());
+    assertEquals("kept", c.getKeyValueMap().get("other"));
+    assertEquals(2, ProcessingCost.getLong(c, ProcessingCost.SENTENCES_KEY));
+    assertEquals(30, ProcessingCost.getLong(c, ProcessingCost.TOKENS_KEY));
+    assertEquals(20, ProcessingCost.getLong(c, ProcessingCost.MAX_SENTENCE_TOKENS_KEY));
+    assertTrue(ProcessingCost.getLong(c, ProcessingCost.ELAPSED_KEY) >= 0);
+    assertEquals("run-coref=false;annotators=pos,parse", c.getKeyValueMap().get(ProcessingCost.PIPELINE_KEY));
+
+    Map<String, Long> stages = ProcessingCost.getStageMicros(c);
+    assertEquals("to-concrete:tokens", stages.keySet().iterator().next());
+    assertTrue(stages.get("to-concrete:tokens") >= 3_000);
+    assertTrue(stages.get("parse") >= 5_000);
+  }
+}
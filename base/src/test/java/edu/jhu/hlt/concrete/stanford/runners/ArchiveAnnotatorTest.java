@@ -0,0 +1,181 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.runners;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.metadata.AnnotationMetadataFactory;
+import edu.jhu.hlt.concrete.serialization.CommunicationSerializer;
+import edu.jhu.hlt.concrete.serialization.CompactCommunicationSerializer;
+import edu.jhu.hlt.concrete.stanford.io.CommunicationArchiveReader;
+import edu.jhu.hlt.concrete.stanford.io.StreamingCommunicationArchiver;
+import edu.jhu.hlt.concrete.stanford.metrics.RunReport;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory;
+import edu.jhu.hlt.concrete.uuid.AnalyticUUIDGeneratorFactory.AnalyticUUIDGenerator;
+
+/**
+ *
+ */
+public class ArchiveAnnotatorTest {
+
+  private static final int DOCUMENTS = 8;
+
+  @Rule
+  public TemporaryFolder tf = new TemporaryFolder();
+
+  private final CommunicationSerializer ser = new CompactCommunicationSerializer();
+  private ExecutorService executor;
+  private Path input;
+
+  @Before
+  public void setUp() throws Exception {
+    this.executor = Executors.newFixedThreadPool(4);
+    this.input = this.tf.newFile("in.tar").toPath();
+    AnalyticUUIDGenerator g = new AnalyticUUIDGeneratorFactory().create();
+    try (OutputStream os = Files.newOutputStream(this.input);
+        StreamingCommunicationArchiver arch = new StreamingCommunicationArchiver(os);) {
+      for (int i = 0; i < DOCUMENTS; i++)
+        arch.addEntry(new Communication()
+            .setId("doc-" + i)
+            .setUuid(g.next())
+            .setType("doc")
+            .setText("Document " + i + ".")
+            .setMetadata(AnnotationMetadataFactory.fromCurrentLocalTime().setTool("test")));
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.executor.shutdownNow();
+    this.executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  // earlier documents take longer, so they finish out of order
+  private static Communication slowFirst(Communication c) {
+    final int i = Integer.parseInt(c.getId().substring("doc-".length()));
+    try {
+      Thread.sleep(10 * (DOCUMENTS - i));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return c;
+  }
+
+  private List<String> ids(Path archive) throws Exception {
+    List<String> ids = new ArrayList<>();
+    try (InputStream is = Files.newInputStream(archive);
+        CommunicationArchiveReader reader = new CommunicationArchiveReader(is, true);) {
+      byte[] b;
+      while ((b = reader.next()) != null)
+        ids.add(this.ser.fromBytes(b).getId());
+    }
+    return ids;
+  }
+
+  private List<String> files() throws Exception {
+    try (Stream<Path> s = Files.list(this.tf.getRoot().toPath())) {
+      return s.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+    }
+  }
+
+  @Test
+  public void writesInInputOrder() throws Exception {
+    StanfordParameterDelegate params = new StanfordParameterDelegate();
+    params.isTraceEnabled = true;
+    Path out = this.tf.getRoot().toPath().resolve("out.tar.gz");
+    List<String> seen = new ArrayList<>();
+    new ArchiveAnnotator(ArchiveAnnotatorTest::slowFirst, params, "test")
+        .run(ImmutableList.of(this.input), out, this.executor, 4, (id, chars, tokens, ok) -> seen.add(id));
+
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < DOCUMENTS; i++)
+      expected.add("doc-" + i);
+    assertEquals(expected, this.ids(out));
+    assertEquals(expected, seen);
+    assertEquals(ImmutableList.of("in.tar", "out.tar.gz", "out.tar.gz.summary.txt", "out.tar.gz.trace.jsonl"),
+        this.files());
+  }
+
+  @Test
+  public void uncheckedExceptionFailsOnlyThatDocument() throws Exception {
+    StanfordParameterDelegate params = new StanfordParameterDelegate();
+    Path out = this.tf.getRoot().toPath().resolve("out.tar.gz");
+    List<String> failed = new ArrayList<>();
+    RunReport report = new ArchiveAnnotator(c -> {
+      if (c.getId().equals("doc-3"))
+        throw new StringIndexOutOfBoundsException(-1);
+      return c;
+    }, params, "test").run(ImmutableList.of(this.input), out, this.executor, 4, (id, chars, tokens, ok) -> {
+      if (!ok)
+        failed.add(id);
+    });
+
+    assertEquals(ImmutableList.of("doc-3"), failed);
+    assertEquals(1, report.getFailures());
+    List<String> ids = this.ids(out);
+    assertEquals(DOCUMENTS - 1, ids.size());
+    assertFalse(ids.contains("doc-3"));
+  }
+
+  @Test
+  public void cancelLeavesEarlierOutput() throws Exception {
+    StanfordParameterDelegate params = new StanfordParameterDelegate();
+    params.isTraceEnabled = true;
+    Path out = this.tf.getRoot().toPath().resolve("out.tar.gz");
+    final byte[] earlier = "earlier".getBytes(StandardCharsets.UTF_8);
+    Files.write(out, earlier);
+    AtomicInteger documents = new AtomicInteger();
+    try {
+      new ArchiveAnnotator(ArchiveAnnotatorTest::slowFirst, params, "test")
+          .run(ImmutableList.of(this.input), out, this.executor, 2, new ArchiveAnnotator.Listener() {
+            @Override
+            public void onDocument(String id, long chars, long tokens, boolean ok) {
+              documents.incrementAndGet();
+            }
+
+            @Override
+            public boolean isCancelled() {
+              return documents.get() >= 2;
+            }
+          });
+      fail("Expected the run to be cancelled");
+    } catch (CancellationException e) {
+      // expected
+    }
+    assertTrue(documents.get() < DOCUMENTS);
+    assertArrayEquals(earlier, Files.readAllBytes(out));
+    // no side files or temporary files left behind
+    assertEquals(ImmutableList.of("in.tar", "out.tar.gz"), this.files());
+    assertFalse(Files.exists(out.resolveSibling("out.tar.gz.trace.jsonl")));
+  }
+}
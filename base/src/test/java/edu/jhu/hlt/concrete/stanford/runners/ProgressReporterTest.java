@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.runners;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ *
+ */
+public class ProgressReporterTest {
+
+  @Test
+  public void estimatesFromRecentRate() {
+    try (ProgressReporter p = new ProgressReporter(4L * 1024 * 1024)) {
+      final long t0 = System.nanoTime();
+      String first = p.line(t0);
+      assertTrue(first, first.contains("ETA unknown"));
+
+      p.onInputRead(1024 * 1024);
+      p.onDocument("a", 100, 50, true);
+      p.onDocument("b", 100, 0, false);
+      String line = p.line(t0 + 10_000_000_000L);
+      assertTrue(line, line.startsWith("Progress: 25.0% of input (1.0 MB of 4.0 MB), 1 documents, 1 failed"));
+      // 1 MB in 10 s, 3 MB to go
+      assertTrue(line, line.contains("ETA 30s"));
+      assertTrue(line, line.contains(" in flight"));
+    }
+  }
+
+  @Test
+  public void formatsDurations() {
+    assertEquals("59s", ProgressReporter.duration(59));
+    assertEquals("2m05s", ProgressReporter.duration(125));
+    assertEquals("26h03m", ProgressReporter.duration(26 * 3600 + 200));
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Options controlling how a {@link PooledAnnotateClient} connects to
+ * annotation servers.
+ */
+public class ClientParameterDelegate {
+
+  @Parameter(names = "--server",
+      description = "An annotation server, as host:port. May be given several times, or as a comma-separated "
+          + "list; requests go to the server with the fewest outstanding requests.")
+  List<String> servers = new ArrayList<>();
+
+  @Parameter(names = "--connections-per-server",
+      description = "The most connections, and so requests in flight, to each server.")
+  int connectionsPerServer = 4;
+
+  @Parameter(names = "--retries",
+      description = "How many times to retry a request, on another server if there is one, after a connection error. "
+          + "Requests that may not run twice, such as bulk jobs, are retried only if they were never sent.")
+  int retries = 2;
+
+  @Parameter(names = "--timeout-ms",
+      description = "Socket timeout for requests. Annotating a long document can take minutes; if 0, no timeout.")
+  int timeoutMs = 0;
+
+  @Parameter(names = "--server-down-ms",
+      description = "After a connection error, send no requests to that server for this long, "
+          + "unless every server is down.")
+  long serverDownMs = 1000;
+
+  @Parameter(names = "--shared-memory",
+      description = "The servers are on this host, and their ports are the shared-memory ports "
+          + "(the servers' --shm-port) rather than the Thrift ports.")
+  boolean sharedMemory = false;
+
+  /**
+   * @return the configured servers, or <code>localhost:33221</code> if none are
+   * @throws IllegalArgumentException if a server is not a host:port
+   */
+  public List<Endpoint> getEndpoints() {
+    List<Endpoint> eps = new ArrayList<>();
+    for (String s : this.servers)
+      eps.add(Endpoint.parse(s.trim()));
+    if (eps.isEmpty())
+      eps.add(new Endpoint("localhost", 33221));
+    return eps;
+  }
+}
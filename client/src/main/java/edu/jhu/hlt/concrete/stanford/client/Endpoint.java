@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.client;
+
+/**
+ * The host and port of an annotation server.
+ */
+public final class Endpoint {
+
+  private final String host;
+  private final int port;
+
+  public Endpoint(String host, int port) {
+    this.host = host;
+    this.port = port;
+  }
+
+  /**
+   * @param s <code>host:port</code>, or <code>port</code> for a server on
+   * this host
+   * @throws IllegalArgumentException if <code>s</code> is not of that form
+   */
+  public static Endpoint parse(String s) {
+    final int colon = s.lastIndexOf(':');
+    final String host = colon < 0 ? "localhost" : s.substring(0, colon);
+    try {
+      final int port = Integer.parseInt(s.substring(colon + 1));
+      if (host.isEmpty() || port <= 0 || port > 65535)
+        throw new IllegalArgumentException("Not a host:port: " + s);
+      return new Endpoint(host, port);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Not a host:port: " + s, e);
+    }
+  }
+
+  public String getHost() {
+    return this.host;
+  }
+
+  public int getPort() {
+    return this.port;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#hashCode()
+   */
+  @Override
+  public int hashCode() {
+    return 31 * this.host.hashCode() + this.port;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#equals(java.lang.Object)
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof Endpoint))
+      return false;
+    Endpoint o = (Endpoint) obj;
+    return this.port == o.port && this.host.equals(o.host);
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see java.lang.Object#toString()
+   */
+  @Override
+  public String toString() {
+    return this.host + ":" + this.port;
+  }
+}
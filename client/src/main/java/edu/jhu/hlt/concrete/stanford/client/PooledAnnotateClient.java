@@ -0,0 +1,450 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.client;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import edu.jhu.hlt.concrete.AnnotationMetadata;
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.annotate.AnnotateCommunicationService;
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+import edu.jhu.hlt.concrete.stanford.metrics.LogHistogram;
+
+/**
+ * Client for one or more annotation servers, usually several server
+ * processes on the same host.
+ * <br>
+ * <br>
+ * Each server gets a small pool of framed, compact-protocol connections,
+ * or of shared-memory channels, opened on demand and reused. Each request goes to the server with the
+ * fewest requests outstanding from this client, so a server busy with a
+ * long document gets fewer new ones. If a request fails with a connection
+ * error, the connection is dropped, the server is skipped for a while, and
+ * the request is retried on another server. A request is retried only if
+ * it was never sent, or if it is idempotent, such as annotate: a server
+ * may already have run a request that timed out. Errors reported by the
+ * server, such as a document it cannot annotate, are not retried.
+ * <br>
+ * <br>
+ * {@link #annotateAsync(Communication)} keeps up to
+ * <code>connectionsPerServer</code> requests in flight on each server, and
+ * queues the rest. Request latency, including time waiting for a
+ * connection, is kept per server in microseconds.
+ * <br>
+ * <br>
+ * This implements the service interface, so code written against a
+ * single-connection client can use it unchanged. Instances are thread safe.
+ */
+public class PooledAnnotateClient implements AnnotateCommunicationService.Iface, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PooledAnnotateClient.class);
+
+  /**
+   * A call on a connection to one server.
+   */
+  @FunctionalInterface
+  public interface Call<T> {
+    T call(AnnotateCommunicationService.Client client) throws TException;
+  }
+
+  // a connection error before the request was sent, which any call may retry
+  private static final class NotSentException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    NotSentException(TTransportException cause) {
+      super(cause);
+    }
+
+    TTransportException getTransportException() {
+      return (TTransportException) this.getCause();
+    }
+  }
+
+  private static final class Connection {
+    final TTransport transport;
+    final AnnotateCommunicationService.Client client;
+
+    Connection(TTransport transport) {
+      this.transport = transport;
+      this.client = new AnnotateCommunicationService.Client(new TCompactProtocol(transport));
+    }
+  }
+
+  private final class Server {
+    final Endpoint endpoint;
+    final Semaphore slots;
+    final AtomicInteger outstanding = new AtomicInteger();
+    final AtomicLong errors = new AtomicLong();
+    final LogHistogram latency = new LogHistogram();
+    // guarded by itself
+    final Deque<Connection> idle = new ArrayDeque<>();
+    volatile long downUntil = 0;
+
+    Server(Endpoint endpoint) {
+      this.endpoint = endpoint;
+      this.slots = new Semaphore(PooledAnnotateClient.this.connectionsPerServer, true);
+    }
+
+    boolean isUp(long now) {
+      return now >= this.downUntil;
+    }
+
+    Connection borrow() throws TTransportException {
+      synchronized (this.idle) {
+        Connection c = this.idle.pollFirst();
+        if (c != null)
+          return c;
+      }
+      final int timeout = PooledAnnotateClient.this.timeoutMs;
+      TTransport t = PooledAnnotateClient.this.sharedMemory
+          ? new SharedMemoryTransport(this.endpoint.getHost(), this.endpoint.getPort(), timeout)
+          : new TFramedTransport(new TSocket(this.endpoint.getHost(), this.endpoint.getPort(), timeout),
+              Integer.MAX_VALUE);
+      t.open();
+      return new Connection(t);
+    }
+
+    void giveBack(Connection c) {
+      synchronized (this.idle) {
+        if (!PooledAnnotateClient.this.closed) {
+          this.idle.addFirst(c);
+          return;
+        }
+      }
+      c.transport.close();
+    }
+
+    <T> T call(Call<T> call) throws TException, NotSentException {
+      final long start = System.nanoTime();
+      this.outstanding.incrementAndGet();
+      try {
+        this.slots.acquire();
+      } catch (InterruptedException e) {
+        this.outstanding.decrementAndGet();
+        Thread.currentThread().interrupt();
+        throw new TException("Interrupted while waiting for a connection to " + this.endpoint);
+      }
+
+      Connection c = null;
+      boolean reusable = false;
+      try {
+        c = this.borrow();
+        try {
+          T t = call.call(c.client);
+          reusable = true;
+          return t;
+        } catch (ConcreteThriftException | TApplicationException e) {
+          // the server answered with an error, so the connection is in a known state
+          reusable = true;
+          throw e;
+        }
+      } catch (TTransportException e) {
+        this.errors.incrementAndGet();
+        this.downUntil = System.currentTimeMillis() + PooledAnnotateClient.this.serverDownMs;
+        if (c == null)
+          throw new NotSentException(e);
+        throw e;
+      } finally {
+        if (c != null) {
+          if (reusable)
+            this.giveBack(c);
+          else
+            c.transport.close();
+        }
+        this.slots.release();
+        this.outstanding.decrementAndGet();
+        this.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+      }
+    }
+
+    void close() {
+      synchronized (this.idle) {
+        for (Connection c : this.idle)
+          c.transport.close();
+        this.idle.clear();
+      }
+    }
+  }
+
+  private final int connectionsPerServer;
+  private final int retries;
+  private final int timeoutMs;
+  private final long serverDownMs;
+  private final boolean sharedMemory;
+  private final ImmutableList<Server> servers;
+  private final ExecutorService async;
+  private final AtomicInteger rotation = new AtomicInteger();
+  private final AtomicLong retried = new AtomicLong();
+  private volatile boolean closed = false;
+
+  /**
+   * @param endpoints the servers to send requests to
+   * @param connectionsPerServer the most requests in flight to each server
+   * @param retries how many times to retry a request after a connection error
+   * @param timeoutMs socket timeout; if 0, none
+   * @param serverDownMs how long to skip a server after a connection error
+   */
+  public PooledAnnotateClient(List<Endpoint> endpoints, int connectionsPerServer, int retries,
+      int timeoutMs, long serverDownMs) {
+    this(endpoints, connectionsPerServer, retries, timeoutMs, serverDownMs, false);
+  }
+
+  /**
+   * @param endpoints the servers to send requests to
+   * @param connectionsPerServer the most requests in flight to each server
+   * @param retries how many times to retry a request after a connection error
+   * @param timeoutMs socket timeout; if 0, none
+   * @param serverDownMs how long to skip a server after a connection error
+   * @param sharedMemory if true, <code>endpoints</code> are the shared-memory
+   * ports of servers on this host; see {@link SharedMemoryTransport}
+   */
+  public PooledAnnotateClient(List<Endpoint> endpoints, int connectionsPerServer, int retries,
+      int timeoutMs, long serverDownMs, boolean sharedMemory) {
+    if (endpoints.isEmpty())
+      throw new IllegalArgumentException("At least one server is required");
+    this.connectionsPerServer = Math.max(1, connectionsPerServer);
+    this.retries = Math.max(0, retries);
+    this.timeoutMs = Math.max(0, timeoutMs);
+    this.serverDownMs = Math.max(0, serverDownMs);
+    this.sharedMemory = sharedMemory;
+    ImmutableList.Builder<Server> b = ImmutableList.builder();
+    for (Endpoint e : endpoints)
+      b.add(new Server(e));
+    this.servers = b.build();
+    this.async = Executors.newFixedThreadPool(this.servers.size() * this.connectionsPerServer,
+        new ThreadFactoryBuilder().setNameFormat("annotate-client-%d").setDaemon(true).build());
+    LOGGER.info("Annotating on {} with up to {} {} connections each", endpoints, this.connectionsPerServer,
+        sharedMemory ? "shared-memory" : "socket");
+  }
+
+  public PooledAnnotateClient(ClientParameterDelegate params) {
+    this(params.getEndpoints(), params.connectionsPerServer, params.retries, params.timeoutMs,
+        params.serverDownMs, params.sharedMemory);
+  }
+
+  // fewest outstanding among servers that are up, or among all if none are;
+  // ties go round robin so idle servers share the load.
+  private Server choose(Server avoid) {
+    final long now = System.currentTimeMillis();
+    final int n = this.servers.size();
+    final int first = Math.floorMod(this.rotation.getAndIncrement(), n);
+    Server best = null;
+    boolean bestUp = false;
+    for (int i = 0; i < n; i++) {
+      Server s = this.servers.get((first + i) % n);
+      if (s == avoid && n > 1)
+        continue;
+      final boolean up = s.isUp(now);
+      if (best == null || (up && !bestUp)
+          || (up == bestUp && s.outstanding.get() < best.outstanding.get())) {
+        best = s;
+        bestUp = up;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Run <code>call</code> on a connection to the least busy server,
+   * retrying on errors connecting to a server. Use this for extension
+   * methods that must not run twice, such as submitting a job.
+   *
+   * @throws TException the error of the last attempt
+   */
+  public <T> T call(Call<T> call) throws TException {
+    return this.call(call, false);
+  }
+
+  /**
+   * Run <code>call</code> on a connection to the least busy server,
+   * retrying on connection errors.
+   *
+   * @param idempotent if true, also retry after a connection error once the
+   * request was sent, such as a timeout, when a server may have run it
+   * already; if false, only retry if it was never sent
+   * @throws TException the error of the last attempt
+   */
+  public <T> T call(Call<T> call, boolean idempotent) throws TException {
+    if (this.closed)
+      throw new TException("Client is closed");
+    Server avoid = null;
+    TTransportException last = null;
+    for (int attempt = 0; attempt <= this.retries; attempt++) {
+      Server s = this.choose(avoid);
+      try {
+        return s.call(call);
+      } catch (NotSentException e) {
+        last = e.getTransportException();
+      } catch (TTransportException e) {
+        if (!idempotent)
+          throw e;
+        last = e;
+      }
+      LOGGER.warn("Connection error on {} (attempt {} of {}): {}", s.endpoint, attempt + 1,
+          this.retries + 1, last.getMessage());
+      avoid = s;
+      if (attempt < this.retries)
+        this.retried.incrementAndGet();
+    }
+    throw last;
+  }
+
+  /* (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.annotate.AnnotateCommunicationService.Iface#annotate(edu.jhu.hlt.concrete.Communication)
+   */
+  @Override
+  public Communication annotate(Communication original) throws TException {
+    return this.call(c -> c.annotate(original), true);
+  }
+
+  /**
+   * Annotate <code>original</code> without waiting for the result.
+   *
+   * @return the annotated Communication; completes exceptionally with the
+   * {@link TException} that {@link #annotate(Communication)} would throw
+   */
+  public CompletableFuture<Communication> annotateAsync(Communication original) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return this.annotate(original);
+      } catch (TException e) {
+        throw new CompletionException(e);
+      }
+    }, this.async);
+  }
+
+  /* (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.annotate.AnnotateCommunicationService.Iface#getMetadata()
+   */
+  @Override
+  public AnnotationMetadata getMetadata() throws TException {
+    return this.call(AnnotateCommunicationService.Client::getMetadata, true);
+  }
+
+  /* (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.annotate.AnnotateCommunicationService.Iface#getDocumentation()
+   */
+  @Override
+  public String getDocumentation() throws TException {
+    return this.call(AnnotateCommunicationService.Client::getDocumentation, true);
+  }
+
+  /**
+   * Ask every server to shut down.
+   *
+   * @throws TException the first error, after every server was asked
+   */
+  @Override
+  public void shutdown() throws TException {
+    TException first = null;
+    for (Server s : this.servers)
+      try {
+        s.call(c -> {
+          c.shutdown();
+          return null;
+        });
+      } catch (NotSentException e) {
+        if (first == null)
+          first = e.getTransportException();
+      } catch (TException e) {
+        if (first == null)
+          first = e;
+      }
+    if (first != null)
+      throw first;
+  }
+
+  /**
+   * @return the servers requests are sent to
+   */
+  public List<Endpoint> getEndpoints() {
+    ImmutableList.Builder<Endpoint> b = ImmutableList.builder();
+    for (Server s : this.servers)
+      b.add(s.endpoint);
+    return b.build();
+  }
+
+  private Server server(Endpoint e) {
+    for (Server s : this.servers)
+      if (s.endpoint.equals(e))
+        return s;
+    throw new IllegalArgumentException("Not a server of this client: " + e);
+  }
+
+  /**
+   * @return latency, in microseconds, of requests sent to <code>e</code>
+   */
+  public LogHistogram getLatencyMicros(Endpoint e) {
+    return this.server(e).latency;
+  }
+
+  /**
+   * @return latency, in microseconds, of requests sent to any server
+   */
+  public LogHistogram getLatencyMicros() {
+    LogHistogram h = new LogHistogram();
+    for (Server s : this.servers)
+      h.merge(s.latency);
+    return h;
+  }
+
+  /**
+   * @return requests sent to, or waiting for a connection to, <code>e</code>
+   */
+  public int getOutstanding(Endpoint e) {
+    return this.server(e).outstanding.get();
+  }
+
+  /**
+   * @return connection errors on <code>e</code>
+   */
+  public long getErrors(Endpoint e) {
+    return this.server(e).errors.get();
+  }
+
+  /**
+   * @return the number of retries after connection errors
+   */
+  public long getRetries() {
+    return this.retried.get();
+  }
+
+  /**
+   * Close idle connections, and stop running asynchronous requests.
+   * Connections in use are closed as their requests finish.
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    this.async.shutdownNow();
+    for (Server s : this.servers)
+      s.close();
+    for (Server s : this.servers)
+      LOGGER.info("{}: latency (us) {}, {} connection errors", s.endpoint, s.latency, s.errors.get());
+  }
+}
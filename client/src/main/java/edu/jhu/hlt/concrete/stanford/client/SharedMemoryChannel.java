@@ -0,0 +1,184 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.client;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * One end of a shared-memory channel between an annotation server and a
+ * client on the same host.
+ * <br>
+ * <br>
+ * The channel is a file, mapped into both processes, holding one region
+ * for requests and one for responses. A message is written into its
+ * region, and its length is then sent over a loopback socket, which wakes
+ * the other side and orders the write before the read; Java offers no
+ * cross-process memory fences on mapped buffers, so the socket serves as
+ * one. Thrift calls on a connection alternate between request and
+ * response, so each region holds at most one message at a time. Messages
+ * larger than a region are sent over the socket instead, up to a limit
+ * set by the receiving side.
+ * <br>
+ * <br>
+ * The server creates the file, readable only by its own user, and removes
+ * it once the client has mapped it, so no file outlives the connection.
+ * <br>
+ * <br>
+ * Wire format of the socket: on connect, the server writes the channel
+ * path (<code>writeUTF</code>) and the region size (<code>int</code>), and
+ * the client answers with one byte once it has mapped the file. Each
+ * message is then an <code>int</code> length and a <code>boolean</code>
+ * that is true if the message follows on the socket rather than being in
+ * the region.
+ */
+public final class SharedMemoryChannel {
+
+  private static final int MAGIC = 0x43534d31;
+  private static final int HEADER_BYTES = 16;
+
+  private final MappedByteBuffer map;
+  private final int regionBytes;
+  private final int maxMessageBytes;
+  private final int inOffset;
+  private final int outOffset;
+  private final DataInputStream sockIn;
+  private final DataOutputStream sockOut;
+
+  private SharedMemoryChannel(MappedByteBuffer map, int regionBytes, int maxMessageBytes, boolean server,
+      DataInputStream sockIn, DataOutputStream sockOut) {
+    this.map = map;
+    this.regionBytes = regionBytes;
+    this.maxMessageBytes = Math.max(regionBytes, maxMessageBytes);
+    final int requests = HEADER_BYTES;
+    final int responses = HEADER_BYTES + regionBytes;
+    this.inOffset = server ? requests : responses;
+    this.outOffset = server ? responses : requests;
+    this.sockIn = sockIn;
+    this.sockOut = sockOut;
+  }
+
+  /**
+   * @return the directory to create channel files in by default:
+   * <code>/dev/shm</code> if it exists, otherwise the temporary directory
+   */
+  public static Path defaultDirectory() {
+    Path shm = Paths.get("/dev/shm");
+    return Files.isDirectory(shm) ? shm : Paths.get(System.getProperty("java.io.tmpdir"));
+  }
+
+  /**
+   * Server side: create a channel file in <code>dir</code>, send its path to
+   * the client, and remove the file once the client has mapped it.
+   *
+   * @param maxMessageBytes the largest request to receive; larger ones
+   * close the channel before they are read
+   * @throws IOException if the file cannot be created, or the client fails
+   * to map it
+   */
+  public static SharedMemoryChannel accept(Path dir, int regionBytes, int maxMessageBytes, DataInputStream sockIn,
+      DataOutputStream sockOut) throws IOException {
+    Path p = FileSystems.getDefault().supportedFileAttributeViews().contains("posix")
+        ? Files.createTempFile(dir, "concrete-stanford-", ".chan",
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+        : Files.createTempFile(dir, "concrete-stanford-", ".chan");
+    try {
+      MappedByteBuffer map;
+      try (FileChannel fc = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        map = fc.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + 2L * regionBytes);
+      }
+      map.putInt(0, MAGIC);
+      map.putInt(4, regionBytes);
+      sockOut.writeUTF(p.toString());
+      sockOut.writeInt(regionBytes);
+      sockOut.flush();
+      if (sockIn.readByte() != 1)
+        throw new IOException("Client failed to map the channel");
+      return new SharedMemoryChannel(map, regionBytes, maxMessageBytes, true, sockIn, sockOut);
+    } finally {
+      Files.deleteIfExists(p);
+    }
+  }
+
+  /**
+   * Client side: map the channel file the server sent.
+   *
+   * @throws IOException if the file cannot be mapped
+   */
+  public static SharedMemoryChannel connect(DataInputStream sockIn, DataOutputStream sockOut)
+      throws IOException {
+    final Path p = Paths.get(sockIn.readUTF());
+    final int regionBytes = sockIn.readInt();
+    MappedByteBuffer map;
+    try (FileChannel fc = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      map = fc.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + 2L * regionBytes);
+    } catch (IOException e) {
+      sockOut.writeByte(0);
+      sockOut.flush();
+      throw e;
+    }
+    if (map.getInt(0) != MAGIC || map.getInt(4) != regionBytes) {
+      sockOut.writeByte(0);
+      sockOut.flush();
+      throw new IOException("Not a channel file: " + p);
+    }
+    sockOut.writeByte(1);
+    sockOut.flush();
+    return new SharedMemoryChannel(map, regionBytes, Integer.MAX_VALUE, false, sockIn, sockOut);
+  }
+
+  /**
+   * Send <code>len</code> bytes of <code>b</code> to the other side.
+   */
+  public void send(byte[] b, int len) throws IOException {
+    if (len <= this.regionBytes) {
+      ByteBuffer region = this.map.duplicate();
+      region.position(this.outOffset);
+      region.put(b, 0, len);
+      this.sockOut.writeInt(len);
+      this.sockOut.writeBoolean(false);
+    } else {
+      this.sockOut.writeInt(len);
+      this.sockOut.writeBoolean(true);
+      this.sockOut.write(b, 0, len);
+    }
+    this.sockOut.flush();
+  }
+
+  /**
+   * Wait for, and return, the next message from the other side.
+   *
+   * @throws java.io.EOFException if the other side closed the channel
+   * @throws IOException if the message is larger than this side accepts
+   */
+  public byte[] receive() throws IOException {
+    final int len = this.sockIn.readInt();
+    final boolean inline = this.sockIn.readBoolean();
+    if (len < 0 || (!inline && len > this.regionBytes))
+      throw new IOException("Bad message length: " + len);
+    // checked before allocating, as the length comes from the other process
+    if (len > this.maxMessageBytes)
+      throw new IOException("Message of " + len + " bytes is larger than the limit of " + this.maxMessageBytes);
+    byte[] b = new byte[len];
+    if (inline) {
+      this.sockIn.readFully(b);
+    } else {
+      ByteBuffer region = this.map.duplicate();
+      region.position(this.inOffset);
+      region.get(b);
+    }
+    return b;
+  }
+}
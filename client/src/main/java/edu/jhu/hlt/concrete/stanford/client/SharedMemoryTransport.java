@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * Client transport to the shared-memory port of an annotation server on
+ * the same host; see {@link SharedMemoryChannel}. Use it in place of a
+ * framed socket transport, with the compact protocol:
+ * <pre>
+ * TTransport t = new SharedMemoryTransport("localhost", shmPort, 0);
+ * t.open();
+ * AnnotateCommunicationService.Client c =
+ *     new AnnotateCommunicationService.Client(new TCompactProtocol(t));
+ * </pre>
+ * Like a framed transport, writes are buffered until {@link #flush()}, which
+ * sends them as one message.
+ */
+public class SharedMemoryTransport extends TTransport {
+
+  private final String host;
+  private final int port;
+  private final int timeoutMs;
+
+  private Socket socket = null;
+  private SharedMemoryChannel channel = null;
+
+  private byte[] writeBuf = new byte[8192];
+  private int writeLen = 0;
+  private byte[] readBuf = new byte[0];
+  private int readPos = 0;
+
+  /**
+   * @param timeoutMs socket timeout; if 0, none
+   */
+  public SharedMemoryTransport(String host, int port, int timeoutMs) {
+    this.host = host;
+    this.port = port;
+    this.timeoutMs = timeoutMs;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.apache.thrift.transport.TTransport#isOpen()
+   */
+  @Override
+  public boolean isOpen() {
+    return this.channel != null && !this.socket.isClosed();
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.apache.thrift.transport.TTransport#open()
+   */
+  @Override
+  public void open() throws TTransportException {
+    if (this.isOpen())
+      throw new TTransportException(TTransportException.ALREADY_OPEN, "Transport is already open");
+    Socket s = new Socket();
+    try {
+      s.setTcpNoDelay(true);
+      s.setSoTimeout(this.timeoutMs);
+      s.connect(new InetSocketAddress(this.host, this.port), this.timeoutMs);
+      this.channel = SharedMemoryChannel.connect(
+          new DataInputStream(new BufferedInputStream(s.getInputStream())),
+          new DataOutputStream(new BufferedOutputStream(s.getOutputStream())));
+      this.socket = s;
+    } catch (IOException e) {
+      try {
+        s.close();
+      } catch (IOException e1) {
+        // already failing
+      }
+      throw new TTransportException(TTransportException.NOT_OPEN,
+          "Failed to open a shared-memory channel to " + this.host + ":" + this.port, e);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.apache.thrift.transport.TTransport#close()
+   */
+  @Override
+  public void close() {
+    if (this.socket != null) {
+      try {
+        this.socket.close();
+      } catch (IOException e) {
+        // nothing to do
+      }
+      this.socket = null;
+    }
+    this.channel = null;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.apache.thrift.transport.TTransport#read(byte[], int, int)
+   */
+  @Override
+  public int read(byte[] buf, int off, int len) throws TTransportException {
+    if (!this.isOpen())
+      throw new TTransportException(TTransportException.NOT_OPEN, "Transport is not open");
+    if (this.readPos == this.readBuf.length) {
+      try {
+        this.readBuf = this.channel.receive();
+        this.readPos = 0;
+      } catch (EOFException e) {
+        throw new TTransportException(TTransportException.END_OF_FILE, "Server closed the channel", e);
+      } catch (IOException e) {
+        throw new TTransportException(TTransportException.UNKNOWN, e);
+      }
+    }
+    final int n = Math.min(len, this.readBuf.length - this.readPos);
+    System.arraycopy(this.readBuf, this.readPos, buf, off, n);
+    this.readPos += n;
+    return n;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.apache.thrift.transport.TTransport#write(byte[], int, int)
+   */
+  @Override
+  public void write(byte[] buf, int off, int len) throws TTransportException {
+    if (this.writeLen + len > this.writeBuf.length) {
+      byte[] b = new byte[Math.max(this.writeBuf.length * 2, this.writeLen + len)];
+      System.arraycopy(this.writeBuf, 0, b, 0, this.writeLen);
+      this.writeBuf = b;
+    }
+    System.arraycopy(buf, off, this.writeBuf, this.writeLen, len);
+    this.writeLen += len;
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see org.apache.thrift.transport.TTransport#flush()
+   */
+  @Override
+  public void flush() throws TTransportException {
+    if (!this.isOpen())
+      throw new TTransportException(TTransportException.NOT_OPEN, "Transport is not open");
+    try {
+      this.channel.send(this.writeBuf, this.writeLen);
+    } catch (IOException e) {
+      throw new TTransportException(TTransportException.UNKNOWN, e);
+    } finally {
+      this.writeLen = 0;
+    }
+  }
+}
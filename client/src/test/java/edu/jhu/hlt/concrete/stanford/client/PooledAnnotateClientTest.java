@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TServerSocket;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.jhu.hlt.concrete.AnnotationMetadata;
+import edu.jhu.hlt.concrete.Communication;
+import edu.jhu.hlt.concrete.annotate.AnnotateCommunicationService;
+import edu.jhu.hlt.concrete.services.ConcreteThriftException;
+
+/**
+ *
+ */
+public class PooledAnnotateClientTest {
+
+  private final List<TServer> servers = new ArrayList<>();
+
+  private static class CountingService implements AnnotateCommunicationService.Iface {
+    final AtomicInteger calls = new AtomicInteger();
+
+    @Override
+    public Communication annotate(Communication original) throws ConcreteThriftException, TException {
+      this.calls.incrementAndGet();
+      if (original.getId().equals("bad"))
+        throw new ConcreteThriftException("bad document");
+      try {
+        Thread.sleep(original.getId().equals("slow") ? 500 : 20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return new Communication(original).setType("annotated");
+    }
+
+    @Override
+    public AnnotationMetadata getMetadata() throws TException {
+      return new AnnotationMetadata().setTool("test").setTimestamp(0);
+    }
+
+    @Override
+    public String getDocumentation() throws TException {
+      return "test";
+    }
+
+    @Override
+    public void shutdown() throws TException {
+    }
+  }
+
+  private Endpoint start(CountingService svc) throws Exception {
+    TServerSocket socket = new TServerSocket(0);
+    TServer srv = new TThreadPoolServer(new TThreadPoolServer.Args(socket)
+        .processor(new AnnotateCommunicationService.Processor<>(svc))
+        .transportFactory(new TFramedTransport.Factory())
+        .protocolFactory(new TCompactProtocol.Factory()));
+    Thread t = new Thread(srv::serve);
+    t.setDaemon(true);
+    t.start();
+    while (!srv.isServing())
+      Thread.sleep(5);
+    this.servers.add(srv);
+    return new Endpoint("localhost", socket.getServerSocket().getLocalPort());
+  }
+
+  private static Endpoint unusedPort() throws IOException {
+    try (ServerSocket s = new ServerSocket(0)) {
+      return new Endpoint("localhost", s.getLocalPort());
+    }
+  }
+
+  private static Communication comm(String id) {
+    return new Communication().setId(id).setType("test").setText("text");
+  }
+
+  @After
+  public void tearDown() {
+    for (TServer s : this.servers)
+      s.stop();
+  }
+
+  @Test
+  public void spreadsConcurrentRequests() throws Exception {
+    CountingService a = new CountingService();
+    CountingService b = new CountingService();
+    try (PooledAnnotateClient client = new PooledAnnotateClient(
+        ImmutableList.of(this.start(a), this.start(b)), 4, 0, 0, 1000)) {
+      List<CompletableFuture<Communication>> fs = new ArrayList<>();
+      for (int i = 0; i < 16; i++)
+        fs.add(client.annotateAsync(comm("d" + i)));
+      for (CompletableFuture<Communication> f : fs)
+        assertEquals("annotated", f.get().getType());
+      assertEquals(16, a.calls.get() + b.calls.get());
+      assertTrue(a.calls.get() >= 4);
+      assertTrue(b.calls.get() >= 4);
+      assertEquals(16, client.getLatencyMicros().getCount());
+    }
+  }
+
+  @Test
+  public void retriesOnAnotherServer() throws Exception {
+    CountingService a = new CountingService();
+    Endpoint down = unusedPort();
+    Endpoint up = this.start(a);
+    try (PooledAnnotateClient client = new PooledAnnotateClient(ImmutableList.of(down, up), 2, 1, 0, 60000)) {
+      for (int i = 0; i < 5; i++)
+        assertEquals("annotated", client.annotate(comm("d" + i)).getType());
+      assertEquals(5, a.calls.get());
+      // once down, the server is skipped rather than retried
+      assertEquals(1, client.getRetries());
+      assertEquals(1, client.getErrors(down));
+    }
+  }
+
+  @Test
+  public void retriesSentRequestsOnlyIfIdempotent() throws Exception {
+    CountingService a = new CountingService();
+    CountingService b = new CountingService();
+    try (PooledAnnotateClient client = new PooledAnnotateClient(
+        ImmutableList.of(this.start(a), this.start(b)), 1, 1, 100, 0)) {
+      try {
+        client.call(c -> c.annotate(comm("slow")));
+        fail("Expected a timeout");
+      } catch (TTransportException e) {
+        assertEquals(1, a.calls.get() + b.calls.get());
+        assertEquals(0, client.getRetries());
+      }
+
+      try {
+        client.annotate(comm("slow"));
+        fail("Expected a timeout");
+      } catch (TTransportException e) {
+        assertEquals(3, a.calls.get() + b.calls.get());
+        assertEquals(1, client.getRetries());
+      }
+    }
+  }
+
+  @Test(expected = ConcreteThriftException.class)
+  public void doesNotRetryServerErrors() throws Exception {
+    CountingService a = new CountingService();
+    CountingService b = new CountingService();
+    try (PooledAnnotateClient client = new PooledAnnotateClient(
+        ImmutableList.of(this.start(a), this.start(b)), 1, 3, 0, 1000)) {
+      try {
+        client.annotate(comm("bad"));
+      } finally {
+        assertEquals(1, a.calls.get() + b.calls.get());
+      }
+    }
+  }
+}
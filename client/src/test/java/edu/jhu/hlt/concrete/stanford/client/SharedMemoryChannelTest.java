@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ */
+public class SharedMemoryChannelTest {
+
+  @Rule
+  public TemporaryFolder tf = new TemporaryFolder();
+
+  private static byte[] roundTrip(SharedMemoryTransport t, byte[] msg) throws Exception {
+    t.write(msg, 0, msg.length);
+    t.flush();
+    byte[] back = new byte[msg.length];
+    int off = 0;
+    while (off < back.length)
+      off += t.read(back, off, back.length - off);
+    return back;
+  }
+
+  @Test
+  public void echoesThroughRegionAndSocket() throws Exception {
+    final Path dir = this.tf.getRoot().toPath();
+    try (ServerSocket ss = new ServerSocket(0)) {
+      Thread echo = new Thread(() -> {
+        try (Socket s = ss.accept()) {
+          SharedMemoryChannel ch = SharedMemoryChannel.accept(dir, 1024, 1_000_000,
+              new DataInputStream(new BufferedInputStream(s.getInputStream())),
+              new DataOutputStream(new BufferedOutputStream(s.getOutputStream())));
+          while (true) {
+            byte[] b = ch.receive();
+            ch.send(b, b.length);
+          }
+        } catch (EOFException e) {
+          // client closed
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+      echo.setDaemon(true);
+      echo.start();
+
+      SharedMemoryTransport t = new SharedMemoryTransport("localhost", ss.getLocalPort(), 10000);
+      t.open();
+      try {
+        Random r = new Random(1);
+        byte[] small = new byte[1000];
+        r.nextBytes(small);
+        assertArrayEquals(small, roundTrip(t, small));
+        byte[] large = new byte[100_000];
+        r.nextBytes(large);
+        assertArrayEquals(large, roundTrip(t, large));
+        assertArrayEquals(small, roundTrip(t, small));
+      } finally {
+        t.close();
+      }
+    }
+  }
+
+  @Test
+  public void refusesMessagesOverTheLimit() throws Exception {
+    final Path dir = this.tf.getRoot().toPath();
+    try (ServerSocket ss = new ServerSocket(0)) {
+      CompletableFuture<Exception> refused = new CompletableFuture<>();
+      Thread server = new Thread(() -> {
+        try (Socket s = ss.accept()) {
+          SharedMemoryChannel ch = SharedMemoryChannel.accept(dir, 1024, 4096,
+              new DataInputStream(new BufferedInputStream(s.getInputStream())),
+              new DataOutputStream(new BufferedOutputStream(s.getOutputStream())));
+          ch.receive();
+          refused.complete(null);
+        } catch (Exception e) {
+          refused.complete(e);
+        }
+      });
+      server.setDaemon(true);
+      server.start();
+
+      SharedMemoryTransport t = new SharedMemoryTransport("localhost", ss.getLocalPort(), 10000);
+      t.open();
+      try {
+        byte[] large = new byte[100_000];
+        t.write(large, 0, large.length);
+        try {
+          t.flush();
+        } catch (TTransportException e) {
+          // the server may close the channel before the message is sent
+        }
+        Exception e = refused.get(10, TimeUnit.SECONDS);
+        assertTrue(String.valueOf(e), e instanceof IOException && e.getMessage().contains("limit"));
+      } finally {
+        t.close();
+      }
+    }
+  }
+}
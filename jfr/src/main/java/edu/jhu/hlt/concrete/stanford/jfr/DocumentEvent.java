@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Communication annotated, from the opening of its
+ * {@link edu.jhu.hlt.concrete.stanford.metrics.DocumentMetrics} to its
+ * closing.
+ */
+@Name("edu.jhu.hlt.concrete.stanford.Document")
+@Label("Document")
+@Category("Concrete Stanford")
+@Description("A Communication annotated")
+@StackTrace(false)
+class DocumentEvent extends jdk.jfr.Event {
+
+  @Label("Communication ID")
+  String id;
+
+  @Label("Characters")
+  long chars;
+
+  @Label("Sentences")
+  int sentences;
+
+  @Label("Tokens")
+  long tokens;
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.jfr;
+
+import edu.jhu.hlt.concrete.stanford.metrics.Probe;
+import jdk.jfr.EventType;
+
+/**
+ * Records documents and stages as Flight Recorder events, named
+ * <code>edu.jhu.hlt.concrete.stanford.Document</code> and
+ * <code>edu.jhu.hlt.concrete.stanford.Stage</code>.
+ * <br>
+ * <br>
+ * Found by {@link java.util.ServiceLoader} when this module is on the
+ * classpath. While no recording has an event enabled, its spans are not
+ * created, so the cost is one check per document or stage.
+ */
+public class JfrProbe implements Probe {
+
+  private static final EventType DOCUMENT = EventType.getEventType(DocumentEvent.class);
+  private static final EventType STAGE = EventType.getEventType(StageEvent.class);
+
+  /*
+   * (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.stanford.metrics.Probe#beginDocument(java.lang.String, long)
+   */
+  @Override
+  public DocumentSpan beginDocument(String id, long chars) {
+    if (!DOCUMENT.isEnabled())
+      return null;
+    DocumentEvent e = new DocumentEvent();
+    e.id = id;
+    e.chars = chars;
+    e.begin();
+    return (sentences, tokens) -> {
+      e.sentences = sentences;
+      e.tokens = tokens;
+      e.commit();
+    };
+  }
+
+  /*
+   * (non-Javadoc)
+   * @see edu.jhu.hlt.concrete.stanford.metrics.Probe#beginStage(java.lang.String, java.lang.String)
+   */
+  @Override
+  public StageSpan beginStage(String stage, String documentId) {
+    if (!STAGE.isEnabled())
+      return null;
+    StageEvent e = new StageEvent();
+    e.stage = stage;
+    e.document = documentId;
+    e.begin();
+    return e::commit;
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2012-2017 Johns Hopkins University HLTCOE. All rights reserved.
+ * See LICENSE in the project root directory.
+ */
+package edu.jhu.hlt.concrete.stanford.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * An annotator or Concrete conversion stage run on a document; see
+ * {@link edu.jhu.hlt.concrete.stanford.metrics.DocumentMetrics#stage(String)}.
+ */
+@Name("edu.jhu.hlt.concrete.stanford.Stage")
+@Label("Stage")
+@Category("Concrete Stanford")
+@Description("An annotator or Concrete conversion stage run on a document")
+@StackTrace(false)
+class StageEvent extends jdk.jfr.Event {
+
+  @Label("Stage")
+  String stage;
+
+  @Label("Communication ID")
+  String document;
+}